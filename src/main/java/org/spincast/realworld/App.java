@@ -9,12 +9,15 @@ import org.spincast.plugins.flywayutils.SpincastFlywayUtilsPlugin;
 import org.spincast.plugins.jdbc.SpincastJdbcPlugin;
 import org.spincast.plugins.routing.DefaultRouter;
 import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.controllers.AdminController;
 import org.spincast.realworld.controllers.ArticleController;
 import org.spincast.realworld.controllers.ErrorController;
+import org.spincast.realworld.controllers.MetricsController;
 import org.spincast.realworld.controllers.UserController;
 import org.spincast.realworld.db.DatabaseManager;
 import org.spincast.realworld.db.DatabaseMigrater;
 import org.spincast.realworld.filters.AuthFilter;
+import org.spincast.realworld.filters.RequestConnectionFilter;
 
 import com.google.inject.Inject;
 
@@ -43,6 +46,9 @@ public class App {
     private final DatabaseManager databaseManager;
     private final DatabaseMigrater databaseMigrationsManager;
     private final AuthFilter authFilter;
+    private final RequestConnectionFilter requestConnectionFilter;
+    private final MetricsController metricsController;
+    private final AdminController adminController;
 
     protected Server getServer() {
         return this.server;
@@ -80,6 +86,18 @@ public class App {
         return this.authFilter;
     }
 
+    protected RequestConnectionFilter getRequestConnectionFilter() {
+        return this.requestConnectionFilter;
+    }
+
+    protected MetricsController getMetricsController() {
+        return this.metricsController;
+    }
+
+    protected AdminController getAdminController() {
+        return this.adminController;
+    }
+
     /**
      * The application constructor in which Guice will inject
      * the required dependencies when the context is ready.
@@ -93,7 +111,10 @@ public class App {
                DatabaseManager databaseManager,
                DatabaseMigrater databaseMigrater,
                AuthFilter authFilter,
-               ArticleController articleController) {
+               ArticleController articleController,
+               RequestConnectionFilter requestConnectionFilter,
+               MetricsController metricsController,
+               AdminController adminController) {
         this.server = server;
         this.router = router;
         this.appConfig = appConfig;
@@ -103,6 +124,9 @@ public class App {
         this.databaseManager = databaseManager;
         this.databaseMigrationsManager = databaseMigrater;
         this.authFilter = authFilter;
+        this.requestConnectionFilter = requestConnectionFilter;
+        this.metricsController = metricsController;
+        this.adminController = adminController;
     }
 
     /**
@@ -145,6 +169,8 @@ public class App {
         getRouter().notFound(getErrorController()::notFound);
         getRouter().exception(getErrorController()::exception);
         getRouter().ALL("/api/*{path}").pos(-100).found().handle(getAuthFilter()::saveJwt);
+        getRouter().ALL("/api/*{path}").pos(-100).found().handle(getRequestConnectionFilter()::bind);
+        getRouter().ALL("/api/*{path}").pos(100).allRoutingTypes().handle(getRequestConnectionFilter()::release);
         getRouter().ALL("/api/*{path}").pos(-100).found().id("authFilter").handle(getAuthFilter()::validateJwt);
 
         getRouter().POST("/api/users").skip("authFilter").handle(getUserController()::register);
@@ -166,6 +192,12 @@ public class App {
         getRouter().POST("/api/articles/${slug}/favorite").handle(getArticleController()::favoriteArticle);
         getRouter().DELETE("/api/articles/${slug}/favorite").handle(getArticleController()::unfavoriteArticle);
         getRouter().GET("/api/tags").skip("authFilter").handle(getArticleController()::getTags);
+        getRouter().POST("/api/admin/import").handle(getAdminController()::importData);
+        getRouter().GET("/api/admin/export/articles").handle(getAdminController()::exportArticles);
+
+        if (getAppConfig().isMetricsRouteEnabled()) {
+            getRouter().GET("/internal/metrics").handle(getMetricsController()::metrics);
+        }
     }
 
 }
@@ -5,14 +5,27 @@ import javax.sql.DataSource;
 import org.spincast.core.guice.SpincastGuiceModuleBase;
 import org.spincast.realworld.configs.AppConfig;
 import org.spincast.realworld.configs.AppConfigDefault;
+import org.spincast.realworld.controllers.AdminController;
 import org.spincast.realworld.controllers.ArticleController;
+import org.spincast.realworld.controllers.MetricsController;
 import org.spincast.realworld.controllers.UserController;
+import org.spincast.realworld.controllers.utils.HttpCaching;
+import org.spincast.realworld.controllers.utils.HttpCachingDefault;
+import org.spincast.realworld.controllers.utils.JsonResponseWriter;
+import org.spincast.realworld.controllers.utils.JsonResponseWriterDefault;
 import org.spincast.realworld.controllers.utils.ToResponseEntityConverter;
 import org.spincast.realworld.controllers.utils.ToResponseEntityConverterDefault;
 import org.spincast.realworld.db.DataSourceProvider;
 import org.spincast.realworld.db.DatabaseManager;
 import org.spincast.realworld.db.DatabaseMigrater;
+import org.spincast.realworld.db.BatchLoaderFactory;
+import org.spincast.realworld.db.HikariMetricsTrackerFactory;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.metrics.MetricsRegistry;
 import org.spincast.realworld.filters.AuthFilter;
+import org.spincast.realworld.filters.RequestConnectionFilter;
 import org.spincast.realworld.models.EntityFactory;
 import org.spincast.realworld.models.articles.Article;
 import org.spincast.realworld.models.articles.ArticleDefault;
@@ -24,14 +37,26 @@ import org.spincast.realworld.models.users.ProfileDefault;
 import org.spincast.realworld.models.users.User;
 import org.spincast.realworld.models.users.UserDefault;
 import org.spincast.realworld.models.users.UserValidator;
+import org.spincast.realworld.repositories.ArticleCountCache;
+import org.spincast.realworld.repositories.ArticleFragmentCache;
 import org.spincast.realworld.repositories.ArticleRepository;
 import org.spincast.realworld.repositories.ArticleRepositoryDefault;
+import org.spincast.realworld.repositories.BulkRepository;
+import org.spincast.realworld.repositories.BulkRepositoryDefault;
+import org.spincast.realworld.repositories.TimelineRepository;
+import org.spincast.realworld.repositories.TimelineRepositoryDefault;
 import org.spincast.realworld.repositories.UserRepository;
 import org.spincast.realworld.repositories.UserRepositoryDefault;
 import org.spincast.realworld.services.ArticleService;
 import org.spincast.realworld.services.ArticleServiceDefault;
+import org.spincast.realworld.services.BulkService;
+import org.spincast.realworld.services.BulkServiceDefault;
+import org.spincast.realworld.services.JwtCache;
+import org.spincast.realworld.services.PasswordHasher;
+import org.spincast.realworld.services.UserCache;
 import org.spincast.realworld.services.UserService;
 import org.spincast.realworld.services.UserServiceDefault;
+import org.spincast.realworld.utils.ExecutorFactory;
 
 import com.google.inject.Scopes;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
@@ -48,14 +73,34 @@ public class AppModule extends SpincastGuiceModuleBase {
         bind(DatabaseManager.class).in(Scopes.SINGLETON);
         bind(DatabaseMigrater.class).in(Scopes.SINGLETON);
         bind(DataSource.class).toProvider(DataSourceProvider.class).in(Scopes.SINGLETON);
+        bind(RequestConnectionManager.class).in(Scopes.SINGLETON);
+        bind(SqlTemplateRegistry.class).in(Scopes.SINGLETON);
+        bind(BatchLoaderFactory.class).in(Scopes.SINGLETON);
+        bind(ReplicaRouting.class).in(Scopes.SINGLETON);
+        bind(MetricsRegistry.class).in(Scopes.SINGLETON);
+        bind(ExecutorFactory.class).in(Scopes.SINGLETON);
+        bind(HikariMetricsTrackerFactory.class).in(Scopes.SINGLETON);
+        bind(MetricsController.class).in(Scopes.SINGLETON);
         bind(UserController.class).in(Scopes.SINGLETON);
         bind(ArticleController.class).in(Scopes.SINGLETON);
+        bind(AdminController.class).in(Scopes.SINGLETON);
         bind(UserService.class).to(UserServiceDefault.class).in(Scopes.SINGLETON);
+        bind(UserCache.class).in(Scopes.SINGLETON);
+        bind(JwtCache.class).in(Scopes.SINGLETON);
+        bind(PasswordHasher.class).in(Scopes.SINGLETON);
         bind(ArticleService.class).to(ArticleServiceDefault.class).in(Scopes.SINGLETON);
+        bind(BulkService.class).to(BulkServiceDefault.class).in(Scopes.SINGLETON);
         bind(UserRepository.class).to(UserRepositoryDefault.class).in(Scopes.SINGLETON);
         bind(ArticleRepository.class).to(ArticleRepositoryDefault.class).in(Scopes.SINGLETON);
+        bind(ArticleCountCache.class).in(Scopes.SINGLETON);
+        bind(TimelineRepository.class).to(TimelineRepositoryDefault.class).in(Scopes.SINGLETON);
+        bind(BulkRepository.class).to(BulkRepositoryDefault.class).in(Scopes.SINGLETON);
         bind(AuthFilter.class).in(Scopes.SINGLETON);
+        bind(RequestConnectionFilter.class).in(Scopes.SINGLETON);
         bind(ToResponseEntityConverter.class).to(ToResponseEntityConverterDefault.class).in(Scopes.SINGLETON);
+        bind(JsonResponseWriter.class).to(JsonResponseWriterDefault.class).in(Scopes.SINGLETON);
+        bind(ArticleFragmentCache.class).in(Scopes.SINGLETON);
+        bind(HttpCaching.class).to(HttpCachingDefault.class).in(Scopes.SINGLETON);
         bind(UserValidator.class).in(Scopes.SINGLETON);
         bind(ArticleValidator.class).in(Scopes.SINGLETON);
 
@@ -1,5 +1,7 @@
 package org.spincast.realworld.configs;
 
+import java.util.List;
+
 import org.spincast.core.config.SpincastConfig;
 
 /**
@@ -17,8 +19,263 @@ public interface AppConfig extends SpincastConfig {
 
     public String getDbConnectionString();
 
+    /**
+     * If <code>true</code>, an article, its author profile,
+     * its tags and its favorites informations are loaded
+     * using a single SQL statement. Otherwise, separate
+     * queries are used.
+     */
+    public boolean isDbSingleQueryHydration();
+
+    /**
+     * If <code>true</code>, a single pooled connection
+     * is bound to an API request and shared by all the
+     * repository calls made while processing it. Read-only
+     * requests then also see a consistent snapshot.
+     */
+    public boolean isDbRequestScopedConnection();
+
+    /**
+     * If <code>true</code>, the total number of articles
+     * of the listings is cached, per combination of filters.
+     */
+    public boolean isDbCountCacheEnabled();
+
+    /**
+     * Maximum time a cached total is used, in seconds.
+     */
+    public int getDbCountCacheTtlSeconds();
+
+    /**
+     * If <code>true</code>, the total of the unfiltered
+     * listing of articles is estimated using the planner
+     * statistics instead of being counted.
+     */
+    public boolean isDbCountEstimateEnabled();
+
+    /**
+     * Under this number of estimated rows, the articles
+     * are still counted exactly.
+     */
+    public long getDbCountEstimateMinRows();
+
+    /**
+     * Number of threads adding the new articles to the
+     * timelines of the followers of their author.
+     */
+    public int getDbTimelineFanOutThreads();
+
+    /**
+     * From this number of followers, the articles of an
+     * author are not copied to the timelines anymore but
+     * merged when the feeds are read.
+     */
+    public long getDbTimelinePullAuthorMinFollowers();
+
+    /**
+     * Number of executions of a statement, on a given
+     * connection, before the driver uses a server-side
+     * prepared statement.
+     */
+    public int getDbPrepareThreshold();
+
+    /**
+     * If <code>true</code>, the profiles, followings and
+     * favorites lookups of concurrent requests are batched
+     * together.
+     * <p>
+     * A request having its own connection
+     * ({@link #isDbRequestScopedConnection()}) doesn't join
+     * the batches : its lookups are run on its connection,
+     * so they read the same snapshot as its other queries.
+     */
+    public boolean isDbBatchingEnabled();
+
+    /**
+     * How long a batch collects keys before being loaded.
+     */
+    public long getDbBatchingWindowMillis();
+
+    /**
+     * A batch is loaded as soon as it contains this
+     * number of keys.
+     */
+    public int getDbBatchingMaxKeys();
+
+    /**
+     * Number of threads loading the batches.
+     */
+    public int getDbBatchingThreads();
+
+    /**
+     * The connection strings of the read replicas. Empty
+     * if all the queries go to the primary.
+     */
+    public List<String> getDbReplicasConnectionStrings();
+
+    /**
+     * For how long after a write the queries of a user
+     * are all sent to the primary.
+     */
+    public long getDbReplicasReadYourWritesMillis();
+
+    /**
+     * How long to wait for a connection from a replica
+     * pool before using the primary.
+     */
+    public long getDbReplicasConnectionTimeoutMillis();
+
+    /**
+     * For how long a replica that failed to provide a
+     * connection is not used.
+     */
+    public long getDbReplicasUnhealthyMillis();
+
+    public String getDbPoolUsername();
+
+    public String getDbPoolPassword();
+
+    /**
+     * If <code>true</code>, the read-only requests use their
+     * own pool, when there are no replicas. Otherwise, the
+     * write pool gets the sizes of both pools.
+     */
+    public boolean isDbPoolSeparateRead();
+
+    public int getDbPoolWriteMaxSize();
+
+    public int getDbPoolWriteMinIdle();
+
+    public int getDbPoolReadMaxSize();
+
+    public int getDbPoolReadMinIdle();
+
+    public long getDbPoolConnectionTimeoutMillis();
+
+    public long getDbPoolIdleTimeoutMillis();
+
+    public long getDbPoolMaxLifetimeMillis();
+
+    /**
+     * <code>0</code> to disable the leak detection.
+     */
+    public long getDbPoolLeakDetectionThresholdMillis();
+
+    /**
+     * Number of prepared statements cached by the driver,
+     * per connection.
+     */
+    public int getDbPoolStatementCacheQueries();
+
+    /**
+     * If <code>true</code>, the maximum sizes of the pools
+     * are computed at startup from the number of cores and
+     * the measured latency of the database.
+     */
+    public boolean isDbPoolAutoSize();
+
+    /**
+     * Upper bound for the total number of connections of
+     * the auto-sized pools.
+     */
+    public int getDbPoolAutoSizeMax();
+
+    /**
+     * Number of rows fetched at once by the export.
+     */
+    public int getDbExportFetchSize();
+
+    /**
+     * If <code>true</code>, the metrics are exposed at
+     * "/internal/metrics".
+     */
+    public boolean isMetricsRouteEnabled();
+
+    /**
+     * If <code>true</code>, the listings of articles and
+     * of comments are written directly to the response,
+     * without building a tree of JSON objects first.
+     */
+    public boolean isJsonStreamingEnabled();
+
+    /**
+     * If <code>true</code>, the serialized part of the
+     * articles that doesn't depend on the viewer is cached.
+     * Used by the streamed listings only.
+     */
+    public boolean isJsonFragmentCacheEnabled();
+
+    /**
+     * Maximum size of the cached article fragments.
+     */
+    public int getJsonFragmentCacheMaxSizeMb();
+
+    /**
+     * The "max-age" of the responses that support
+     * conditional GETs, when the visitor is anonymous.
+     */
+    public int getHttpCacheAnonymousMaxAgeSeconds();
+
     public String getAuthJwtSecret();
 
+    /**
+     * The ids of the users allowed to use the
+     * "/api/admin" routes. Ids, since a user can change
+     * their username.
+     */
+    public List<Long> getAuthAdminUserIds();
+
+    /**
+     * If <code>true</code>, the users are cached to resolve
+     * the identity of the current user.
+     */
+    public boolean isAuthUserCacheEnabled();
+
+    /**
+     * Maximum time a user is cached, in seconds. A user
+     * modified by another instance of the application may
+     * be seen outdated for this long.
+     */
+    public int getAuthUserCacheTtlSeconds();
+
+    public int getAuthUserCacheMaxSize();
+
+    /**
+     * If <code>true</code>, the verified JWTs are cached so
+     * their signature is not verified on each request.
+     */
+    public boolean isAuthJwtCacheEnabled();
+
+    public int getAuthJwtCacheTtlSeconds();
+
+    public int getAuthJwtCacheMaxSize();
+
+    /**
+     * Number of threads hashing the passwords. Hashing is
+     * slow by design and uses the CPU.
+     */
+    public int getAuthPasswordHashingThreads();
+
+    /**
+     * Maximum number of passwords waiting to be hashed.
+     * Once reached, the requests needing a hash are
+     * rejected with a "503" status.
+     */
+    public int getAuthPasswordHashingQueueSize();
+
+    /**
+     * Number of iterations used to hash the new passwords.
+     * If <code>0</code>, it is calibrated at startup using
+     * {@link #getAuthPasswordHashingTargetMillis()}.
+     */
+    public int getAuthPasswordHashingIterations();
+
+    /**
+     * Time hashing a password should take on this hardware,
+     * when the number of iterations is calibrated.
+     */
+    public int getAuthPasswordHashingTargetMillis();
+
     public int getAuthJwtTtlMinutes();
 
 
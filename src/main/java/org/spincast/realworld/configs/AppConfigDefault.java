@@ -1,9 +1,13 @@
 package org.spincast.realworld.configs;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.spincast.core.guice.TestingMode;
 import org.spincast.core.utils.SpincastUtils;
 import org.spincast.plugins.config.SpincastConfigDefault;
 import org.spincast.plugins.config.SpincastConfigPluginConfig;
+import org.spincast.shaded.org.apache.commons.lang3.StringUtils;
 
 import com.google.inject.Inject;
 
@@ -78,11 +82,265 @@ public class AppConfigDefault extends SpincastConfigDefault implements AppConfig
         return getString("db.connectionString");
     }
 
+    @Override
+    public boolean isDbSingleQueryHydration() {
+        return getBoolean("db.singleQueryHydration");
+    }
+
+    @Override
+    public boolean isDbRequestScopedConnection() {
+        return getBoolean("db.requestScopedConnection");
+    }
+
+    @Override
+    public boolean isDbCountCacheEnabled() {
+        return getBoolean("db.countCache.enabled");
+    }
+
+    @Override
+    public int getDbCountCacheTtlSeconds() {
+        return getInteger("db.countCache.ttlSeconds");
+    }
+
+    @Override
+    public boolean isDbCountEstimateEnabled() {
+        return getBoolean("db.countEstimate.enabled");
+    }
+
+    @Override
+    public long getDbCountEstimateMinRows() {
+        return getLong("db.countEstimate.minRows");
+    }
+
+    @Override
+    public int getDbTimelineFanOutThreads() {
+        return getInteger("db.timeline.fanOutThreads");
+    }
+
+    @Override
+    public long getDbTimelinePullAuthorMinFollowers() {
+        return getLong("db.timeline.pullAuthorMinFollowers");
+    }
+
+    @Override
+    public int getDbPrepareThreshold() {
+        return getInteger("db.prepareThreshold");
+    }
+
+    @Override
+    public boolean isDbBatchingEnabled() {
+        return getBoolean("db.batching.enabled");
+    }
+
+    @Override
+    public long getDbBatchingWindowMillis() {
+        return getLong("db.batching.windowMillis");
+    }
+
+    @Override
+    public int getDbBatchingMaxKeys() {
+        return getInteger("db.batching.maxKeys");
+    }
+
+    @Override
+    public int getDbBatchingThreads() {
+        return getInteger("db.batching.threads");
+    }
+
+    @Override
+    public List<String> getDbReplicasConnectionStrings() {
+        List<String> connectionStrings = new ArrayList<>();
+        String connectionStringsStr = getString("db.replicas.connectionStrings", "");
+        for (String connectionString : connectionStringsStr.split(",")) {
+            if (!StringUtils.isBlank(connectionString)) {
+                connectionStrings.add(connectionString.trim());
+            }
+        }
+        return connectionStrings;
+    }
+
+    @Override
+    public long getDbReplicasReadYourWritesMillis() {
+        return getLong("db.replicas.readYourWritesMillis");
+    }
+
+    @Override
+    public long getDbReplicasConnectionTimeoutMillis() {
+        return getLong("db.replicas.connectionTimeoutMillis");
+    }
+
+    @Override
+    public long getDbReplicasUnhealthyMillis() {
+        return getLong("db.replicas.unhealthyMillis");
+    }
+
+    @Override
+    public String getDbPoolUsername() {
+        return getString("db.pool.username");
+    }
+
+    @Override
+    public String getDbPoolPassword() {
+        return getString("db.pool.password");
+    }
+
+    @Override
+    public boolean isDbPoolSeparateRead() {
+        return getBoolean("db.pool.separateRead");
+    }
+
+    @Override
+    public int getDbPoolWriteMaxSize() {
+        return getInteger("db.pool.write.maxSize");
+    }
+
+    @Override
+    public int getDbPoolWriteMinIdle() {
+        return getInteger("db.pool.write.minIdle");
+    }
+
+    @Override
+    public int getDbPoolReadMaxSize() {
+        return getInteger("db.pool.read.maxSize");
+    }
+
+    @Override
+    public int getDbPoolReadMinIdle() {
+        return getInteger("db.pool.read.minIdle");
+    }
+
+    @Override
+    public long getDbPoolConnectionTimeoutMillis() {
+        return getLong("db.pool.connectionTimeoutMillis");
+    }
+
+    @Override
+    public long getDbPoolIdleTimeoutMillis() {
+        return getLong("db.pool.idleTimeoutMillis");
+    }
+
+    @Override
+    public long getDbPoolMaxLifetimeMillis() {
+        return getLong("db.pool.maxLifetimeMillis");
+    }
+
+    @Override
+    public long getDbPoolLeakDetectionThresholdMillis() {
+        return getLong("db.pool.leakDetectionThresholdMillis");
+    }
+
+    @Override
+    public int getDbPoolStatementCacheQueries() {
+        return getInteger("db.pool.statementCacheQueries");
+    }
+
+    @Override
+    public boolean isDbPoolAutoSize() {
+        return getBoolean("db.pool.autoSize");
+    }
+
+    @Override
+    public int getDbPoolAutoSizeMax() {
+        return getInteger("db.pool.autoSizeMax");
+    }
+
+    @Override
+    public int getDbExportFetchSize() {
+        return getInteger("db.export.fetchSize");
+    }
+
+    @Override
+    public boolean isMetricsRouteEnabled() {
+        return getBoolean("metrics.routeEnabled");
+    }
+
+    @Override
+    public boolean isJsonStreamingEnabled() {
+        return getBoolean("json.streaming.enabled");
+    }
+
+    @Override
+    public boolean isJsonFragmentCacheEnabled() {
+        return getBoolean("json.fragmentCache.enabled");
+    }
+
+    @Override
+    public int getJsonFragmentCacheMaxSizeMb() {
+        return getInteger("json.fragmentCache.maxSizeMb");
+    }
+
+    @Override
+    public int getHttpCacheAnonymousMaxAgeSeconds() {
+        return getInteger("http.cache.anonymousMaxAgeSeconds");
+    }
+
     @Override
     public String getAuthJwtSecret() {
         return getString("auth.jwt.secret");
     }
 
+    @Override
+    public List<Long> getAuthAdminUserIds() {
+        List<Long> userIds = new ArrayList<>();
+        String userIdsStr = getString("auth.adminUserIds", "");
+        for (String userId : userIdsStr.split(",")) {
+            if (!StringUtils.isBlank(userId)) {
+                userIds.add(Long.parseLong(userId.trim()));
+            }
+        }
+        return userIds;
+    }
+
+    @Override
+    public boolean isAuthUserCacheEnabled() {
+        return getBoolean("auth.userCache.enabled");
+    }
+
+    @Override
+    public int getAuthUserCacheTtlSeconds() {
+        return getInteger("auth.userCache.ttlSeconds");
+    }
+
+    @Override
+    public int getAuthUserCacheMaxSize() {
+        return getInteger("auth.userCache.maxSize");
+    }
+
+    @Override
+    public boolean isAuthJwtCacheEnabled() {
+        return getBoolean("auth.jwt.cache.enabled");
+    }
+
+    @Override
+    public int getAuthJwtCacheTtlSeconds() {
+        return getInteger("auth.jwt.cache.ttlSeconds");
+    }
+
+    @Override
+    public int getAuthJwtCacheMaxSize() {
+        return getInteger("auth.jwt.cache.maxSize");
+    }
+
+    @Override
+    public int getAuthPasswordHashingThreads() {
+        return getInteger("auth.passwordHashing.threads");
+    }
+
+    @Override
+    public int getAuthPasswordHashingQueueSize() {
+        return getInteger("auth.passwordHashing.queueSize");
+    }
+
+    @Override
+    public int getAuthPasswordHashingIterations() {
+        return getInteger("auth.passwordHashing.iterations");
+    }
+
+    @Override
+    public int getAuthPasswordHashingTargetMillis() {
+        return getInteger("auth.passwordHashing.targetMillis");
+    }
+
     @Override
     public int getAuthJwtTtlMinutes() {
         return getInteger("auth.jwt.ttlMinutes");
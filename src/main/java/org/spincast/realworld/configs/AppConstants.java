@@ -6,6 +6,10 @@ public final class AppConstants {
     }
 
     public static final String CONTEXT_VARIABLES_DECODED_JWT = AppConstants.class.getName() + "jwt";
+    public static final String CONTEXT_VARIABLES_JWT_PROVIDED = AppConstants.class.getName() + "jwtProvided";
+
+    public static final String CONTEXT_VARIABLES_POOL_WAIT_MICROS = AppConstants.class.getName() + "poolWaitMicros";
 
     public static final String JWT_CLAIMS_USERNAME = "username";
+    public static final String JWT_CLAIMS_USER_ID = "uid";
 }
@@ -0,0 +1,98 @@
+package org.spincast.realworld.controllers;
+
+import java.util.Map;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.controllers.utils.ToResponseEntityConverter;
+import org.spincast.realworld.exceptions.ForbiddenException;
+import org.spincast.realworld.models.EntityFactory;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.services.BulkService;
+import org.spincast.realworld.services.UserService;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+
+/**
+ * Routes reserved to the users configured as
+ * administrators.
+ */
+public class AdminController extends BaseController {
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+
+    /**
+     * Number of characters of the export buffered before
+     * being flushed.
+     */
+    protected static final int EXPORT_FLUSH_CHARS = 64 * 1024;
+
+    private final AppConfig appConfig;
+    private final BulkService bulkService;
+
+    @Inject
+    public AdminController(EntityFactory entityFactory,
+                           UserService userService,
+                           ToResponseEntityConverter entityConverter,
+                           AppConfig appConfig,
+                           BulkService bulkService) {
+        super(entityFactory, userService, entityConverter);
+        this.appConfig = appConfig;
+        this.bulkService = bulkService;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected BulkService getBulkService() {
+        return this.bulkService;
+    }
+
+    /**
+     * Returns the current user.
+     *
+     * @throws ForbiddenException if the current user is
+     * not an administrator.
+     */
+    protected User getCurrentAdmin(DefaultRequestContext context) {
+        User user = getCurrentUser(context);
+        if (!getAppConfig().getAuthAdminUserIds().contains(user.getId())) {
+            throw new ForbiddenException();
+        }
+        return user;
+    }
+
+    /**
+     * Imports the NDJSON records of the request body.
+     */
+    public void importData(DefaultRequestContext context) {
+
+        getCurrentAdmin(context);
+
+        Map<String, Integer> counts = getBulkService().importNdjson(context.request().getBodyAsInputStream());
+
+        context.response().sendJson(ImmutableMap.of("imported", counts));
+    }
+
+    /**
+     * Exports all the articles as NDJSON. The lines are
+     * flushed to the client by chunks, as they are read
+     * from the database.
+     */
+    public void exportArticles(DefaultRequestContext context) {
+
+        getCurrentAdmin(context);
+
+        StringBuilder buffer = new StringBuilder(EXPORT_FLUSH_CHARS + 4096);
+        getBulkService().exportArticles(article -> {
+            buffer.append(article.toJsonString()).append('\n');
+            if (buffer.length() >= EXPORT_FLUSH_CHARS) {
+                context.response().sendCharacters(buffer.toString(), NDJSON_CONTENT_TYPE, true);
+                buffer.setLength(0);
+            }
+        });
+        context.response().sendCharacters(buffer.toString(), NDJSON_CONTENT_TYPE, true);
+    }
+}
@@ -6,12 +6,16 @@ import java.util.List;
 import org.spincast.core.exchange.DefaultRequestContext;
 import org.spincast.core.json.JsonObject;
 import org.spincast.plugins.jdbc.utils.ItemsAndTotalCount;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.controllers.utils.HttpCaching;
+import org.spincast.realworld.controllers.utils.JsonResponseWriter;
 import org.spincast.realworld.controllers.utils.ToResponseEntityConverter;
 import org.spincast.realworld.exceptions.BadRequestException;
 import org.spincast.realworld.exceptions.ForbiddenException;
 import org.spincast.realworld.exceptions.NotFoundException;
 import org.spincast.realworld.models.EntityFactory;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.Profile;
 import org.spincast.realworld.models.users.User;
@@ -26,20 +30,41 @@ import com.google.inject.Inject;
 public class ArticleController extends BaseController {
 
     private final ArticleService articleService;
+    private final JsonResponseWriter jsonResponseWriter;
+    private final HttpCaching httpCaching;
+    private final AppConfig appConfig;
 
     @Inject
     public ArticleController(EntityFactory entityFactory,
                              UserService userService,
                              ToResponseEntityConverter entityConverter,
-                             ArticleService articleService) {
+                             ArticleService articleService,
+                             JsonResponseWriter jsonResponseWriter,
+                             HttpCaching httpCaching,
+                             AppConfig appConfig) {
         super(entityFactory, userService, entityConverter);
         this.articleService = articleService;
+        this.jsonResponseWriter = jsonResponseWriter;
+        this.httpCaching = httpCaching;
+        this.appConfig = appConfig;
     }
 
     protected ArticleService getArticleService() {
         return this.articleService;
     }
 
+    protected JsonResponseWriter getJsonResponseWriter() {
+        return this.jsonResponseWriter;
+    }
+
+    protected HttpCaching getHttpCaching() {
+        return this.httpCaching;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
     public void createArticle(DefaultRequestContext context) {
 
         User user = getCurrentUser(context);
@@ -49,8 +74,6 @@ public class ArticleController extends BaseController {
 
         String title = newArticleObj.getString("article.title");
 
-        String slug = getArticleService().createUniqueSlug(title);
-
         Instant now = Instant.now();
 
         Article article = getEntityFactory().createArticle(null,
@@ -59,16 +82,16 @@ public class ArticleController extends BaseController {
                                                            userProfile,
                                                            newArticleObj.getJsonArrayOrEmpty("article.tagList")
                                                                         .convertToStringList(),
-                                                           slug,
+                                                           null,
                                                            title,
                                                            newArticleObj.getString("article.description"),
                                                            newArticleObj.getString("article.body"),
                                                            false,
                                                            0);
 
-        getArticleService().saveArticle(article);
+        Article savedArticle = getArticleService().saveArticle(article);
 
-        JsonObject articleToReturn = getEntityConverter().convertToOneArticle(article);
+        JsonObject articleToReturn = getEntityConverter().convertToOneArticle(savedArticle);
         context.response().sendJson(articleToReturn);
     }
 
@@ -87,6 +110,15 @@ public class ArticleController extends BaseController {
             throw new BadRequestException("The slug path param is required");
         }
 
+        //==========================================
+        // The version is checked before the article
+        // is loaded.
+        //==========================================
+        String version = getArticleService().getArticleVersion(slug, currentUser);
+        if (version != null && getHttpCaching().handleConditionalGet(context, "article:" + version, currentUser == null)) {
+            return;
+        }
+
         Article article = getArticleService().getArticle(slug, currentUser);
         if (article == null) {
             throw new NotFoundException("Article not found");
@@ -210,6 +242,7 @@ public class ArticleController extends BaseController {
         }
 
         Pair<Long, Integer> offsetAndLimit = getOffsetlAndLimit(context, 20, 1000);
+        ArticleCursor cursor = getArticleCursor(context);
 
         String tagFilter = context.request().getQueryStringParamFirst("tag");
         String authorUsernameFilter = context.request().getQueryStringParamFirst("author");
@@ -219,12 +252,14 @@ public class ArticleController extends BaseController {
                                                                                              tagFilter,
                                                                                              authorUsernameFilter,
                                                                                              favoritedByUsernameFilter,
+                                                                                             cursor,
                                                                                              offsetAndLimit.getLeft(),
                                                                                              offsetAndLimit.getRight());
 
-        JsonObject articlesToReturn =
-                getEntityConverter().convertToArticles(articlesAndTotalCount.getItems(), articlesAndTotalCount.getTotalCount());
-        context.response().sendJson(articlesToReturn);
+        sendArticles(context,
+                     articlesAndTotalCount.getItems(),
+                     articlesAndTotalCount.getTotalCount(),
+                     offsetAndLimit.getRight());
     }
 
     public void feed(DefaultRequestContext context) {
@@ -232,16 +267,57 @@ public class ArticleController extends BaseController {
         User currentUser = getCurrentUser(context);
 
         Pair<Long, Integer> offsetAndLimit = getOffsetlAndLimit(context, 20, 1000);
+        ArticleCursor cursor = getArticleCursor(context);
 
         ItemsAndTotalCount<Article> articlesAndTotalCount = getArticleService().getFeed(currentUser,
+                                                                                        cursor,
                                                                                         offsetAndLimit.getLeft(),
                                                                                         offsetAndLimit.getRight());
 
-        JsonObject articlesToReturn =
-                getEntityConverter().convertToArticles(articlesAndTotalCount.getItems(), articlesAndTotalCount.getTotalCount());
+        sendArticles(context,
+                     articlesAndTotalCount.getItems(),
+                     articlesAndTotalCount.getTotalCount(),
+                     offsetAndLimit.getRight());
+    }
+
+    /**
+     * The cursor to the next page is only added when the
+     * cursor pagination is used, so the other clients get
+     * the standard format.
+     */
+    protected void sendArticles(DefaultRequestContext context,
+                                List<Article> articles,
+                                long totalCount,
+                                int limit) {
+
+        boolean cursorPaging = isCursorPaging(context);
+        ArticleCursor nextCursor = cursorPaging ? getNextCursor(articles, limit) : null;
+
+        if (getAppConfig().isJsonStreamingEnabled()) {
+            if (cursorPaging) {
+                getJsonResponseWriter().sendArticles(context, articles, totalCount, nextCursor);
+            } else {
+                getJsonResponseWriter().sendArticles(context, articles, totalCount);
+            }
+            return;
+        }
+
+        JsonObject articlesToReturn = cursorPaging ? getEntityConverter().convertToArticles(articles, totalCount, nextCursor)
+                                                   : getEntityConverter().convertToArticles(articles, totalCount);
         context.response().sendJson(articlesToReturn);
     }
 
+    /**
+     * The cursor to the next page, or <code>null</code> if
+     * the current page is the last one.
+     */
+    protected ArticleCursor getNextCursor(List<Article> articles, int limit) {
+        if (articles == null || articles.size() == 0 || articles.size() < limit) {
+            return null;
+        }
+        return ArticleCursor.of(articles.get(articles.size() - 1));
+    }
+
     public void postComment(DefaultRequestContext context) {
 
         User currentUser = getCurrentUser(context);
@@ -279,6 +355,11 @@ public class ArticleController extends BaseController {
             throw new BadRequestException("The slug path param is required");
         }
 
+        String version = getArticleService().getCommentsVersion(slug, currentUser);
+        if (version != null && getHttpCaching().handleConditionalGet(context, "comments:" + version, currentUser == null)) {
+            return;
+        }
+
         Article article = getArticleService().getArticle(slug, currentUser);
         if (article == null) {
             throw new NotFoundException("Article not found");
@@ -286,6 +367,11 @@ public class ArticleController extends BaseController {
 
         List<Comment> comments = getArticleService().getComments(article.getId(), currentUser);
 
+        if (getAppConfig().isJsonStreamingEnabled()) {
+            getJsonResponseWriter().sendComments(context, comments);
+            return;
+        }
+
         JsonObject commentsToReturn = getEntityConverter().convertToComments(comments);
         context.response().sendJson(commentsToReturn);
     }
@@ -322,6 +408,16 @@ public class ArticleController extends BaseController {
 
         List<String> tags = getArticleService().getTags();
 
+        //==========================================
+        // The tags are the same for everyone and the
+        // query is as expensive as a version check would
+        // be : the ETag is computed from the tags
+        // themselves, to save the bandwidth.
+        //==========================================
+        if (getHttpCaching().handleConditionalGet(context, "tags:" + String.join(",", tags), true)) {
+            return;
+        }
+
         JsonObject commentsToReturn = getEntityConverter().convertToTags(tags);
         context.response().sendJson(commentsToReturn);
     }
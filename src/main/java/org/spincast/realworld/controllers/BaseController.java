@@ -3,14 +3,15 @@ package org.spincast.realworld.controllers;
 import org.spincast.core.exchange.DefaultRequestContext;
 import org.spincast.realworld.configs.AppConstants;
 import org.spincast.realworld.controllers.utils.ToResponseEntityConverter;
+import org.spincast.realworld.exceptions.BadRequestException;
 import org.spincast.realworld.exceptions.ForbiddenException;
 import org.spincast.realworld.models.EntityFactory;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.users.User;
 import org.spincast.realworld.services.UserService;
 import org.spincast.shaded.org.apache.commons.lang3.StringUtils;
 import org.spincast.shaded.org.apache.commons.lang3.tuple.Pair;
 
-import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.google.inject.Inject;
 
@@ -62,14 +63,7 @@ public abstract class BaseController {
             throw new ForbiddenException();
         }
 
-        Claim usernameClaim = decodedJWT.getClaim(AppConstants.JWT_CLAIMS_USERNAME);
-        if (usernameClaim.isNull()) {
-            throw new ForbiddenException();
-        }
-
-        String username = usernameClaim.asString();
-
-        User user = getUserService().getUserByUsername(username);
+        User user = getUserService().getJwtUser(decodedJWT);
         if (user == null) {
             throw new ForbiddenException();
         }
@@ -112,4 +106,32 @@ public abstract class BaseController {
 
         return Pair.of(offset, limit);
     }
+
+    /**
+     * <code>true</code> if the client uses the cursor
+     * pagination : the "cursor" querystring parameter is
+     * present. It is empty to get the first page.
+     */
+    protected boolean isCursorPaging(DefaultRequestContext context) {
+        return context.request().getQueryStringParamFirst("cursor") != null;
+    }
+
+    /**
+     * Returns the pagination cursor, if one is specified
+     * in the "cursor" querystring parameter.
+     *
+     * @throws BadRequestException if the cursor is not valid.
+     */
+    protected ArticleCursor getArticleCursor(DefaultRequestContext context) {
+        String cursorStr = context.request().getQueryStringParamFirst("cursor");
+        if (StringUtils.isBlank(cursorStr)) {
+            return null;
+        }
+
+        ArticleCursor cursor = ArticleCursor.decode(cursorStr);
+        if (cursor == null) {
+            throw new BadRequestException("Invalid cursor : " + cursorStr);
+        }
+        return cursor;
+    }
 }
@@ -9,10 +9,13 @@ import org.spincast.core.exchange.DefaultRequestContext;
 import org.spincast.core.json.JsonArray;
 import org.spincast.core.json.JsonObject;
 import org.spincast.core.utils.SpincastStatics;
+import org.spincast.realworld.exceptions.ServiceUnavailableException;
 import org.spincast.realworld.exceptions.ValidationError;
 import org.spincast.realworld.exceptions.ValidationErrorsException;
 import org.spincast.shaded.org.apache.http.HttpStatus;
 
+import com.google.common.net.HttpHeaders;
+
 /**
  * Formats the errors to return as required by the specs.
  */
@@ -44,6 +47,11 @@ public class ErrorController {
                 httpStatus = ((CustomStatusCodeException)exception).getStatusCode();
             }
 
+            if (exception instanceof ServiceUnavailableException) {
+                context.response().setHeader(HttpHeaders.RETRY_AFTER,
+                                             String.valueOf(((ServiceUnavailableException)exception).getRetryAfterSeconds()));
+            }
+
             generalException(context, httpStatus, msg);
         }
     }
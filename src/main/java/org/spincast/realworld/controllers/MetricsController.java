@@ -0,0 +1,135 @@
+package org.spincast.realworld.controllers;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+import org.spincast.realworld.db.BatchLoader;
+import org.spincast.realworld.db.BatchLoaderFactory;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.repositories.ArticleFragmentCache;
+import org.spincast.realworld.services.JwtCache;
+import org.spincast.realworld.services.UserCache;
+
+import com.google.inject.Inject;
+
+/**
+ * Exposes the metrics of the application, in the
+ * Prometheus text format.
+ */
+public class MetricsController {
+
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry metricsRegistry;
+    private final BatchLoaderFactory batchLoaderFactory;
+
+    @Inject
+    public MetricsController(MetricsRegistry metricsRegistry,
+                             RequestConnectionManager requestConnectionManager,
+                             SqlTemplateRegistry sqlTemplateRegistry,
+                             BatchLoaderFactory batchLoaderFactory,
+                             ArticleFragmentCache articleFragmentCache,
+                             UserCache userCache,
+                             JwtCache jwtCache) {
+        this.metricsRegistry = metricsRegistry;
+        this.batchLoaderFactory = batchLoaderFactory;
+
+        metricsRegistry.gauge("app_request_connections_acquired_total",
+                              "Connections acquired by requests",
+                              () -> requestConnectionManager.getAcquiredConnectionsNbr());
+        metricsRegistry.gauge("app_request_connections_wait_seconds_total",
+                              "Total time requests waited for a pooled connection",
+                              () -> requestConnectionManager.getPoolWaitNanosTotal() / 1000000000.0);
+        metricsRegistry.gauge("app_request_connections_wait_seconds_max",
+                              "Longest time a request waited for a pooled connection",
+                              () -> requestConnectionManager.getPoolWaitNanosMax() / 1000000000.0);
+
+        metricsRegistry.gauge("app_sql_templates",
+                              "Distinct SQL query shapes",
+                              () -> sqlTemplateRegistry.getTemplatesNbr());
+        metricsRegistry.gauge("app_sql_templates_compiled_total",
+                              "Number of times a query had to be parsed",
+                              () -> sqlTemplateRegistry.getCompiledNbr());
+
+        metricsRegistry.gauge("app_article_fragments",
+                              "Serialized article fragments cached",
+                              () -> articleFragmentCache.getFragmentsNbr());
+        metricsRegistry.gauge("app_article_fragments_hits_total",
+                              "Articles written using a cached fragment",
+                              () -> articleFragmentCache.getHitsNbr());
+        metricsRegistry.gauge("app_article_fragments_misses_total",
+                              "Articles written without a cached fragment",
+                              () -> articleFragmentCache.getMissesNbr());
+
+        metricsRegistry.gauge("app_user_cache_users",
+                              "Users cached to resolve the current user",
+                              () -> userCache.getUsersNbr());
+        metricsRegistry.gauge("app_user_cache_hits_total",
+                              "Current users resolved from the cache",
+                              () -> userCache.getHitsNbr());
+        metricsRegistry.gauge("app_user_cache_misses_total",
+                              "Current users loaded from the database",
+                              () -> userCache.getMissesNbr());
+        metricsRegistry.gauge("app_user_cache_evictions_total",
+                              "Users evicted from the cache because of its size or of their age",
+                              () -> userCache.getEvictionsNbr());
+
+        metricsRegistry.gauge("app_jwt_cache_tokens",
+                              "Verified JWTs cached",
+                              () -> jwtCache.getJwtsNbr());
+        metricsRegistry.gauge("app_jwt_cache_hits_total",
+                              "JWTs found already verified",
+                              () -> jwtCache.getHitsNbr());
+        metricsRegistry.gauge("app_jwt_cache_misses_total",
+                              "JWTs verified",
+                              () -> jwtCache.getMissesNbr());
+    }
+
+    protected MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    protected BatchLoaderFactory getBatchLoaderFactory() {
+        return this.batchLoaderFactory;
+    }
+
+    public void metrics(DefaultRequestContext context) {
+        registerBatchLoadersGauges();
+        context.response().sendCharacters(getMetricsRegistry().toPrometheusText(), PROMETHEUS_CONTENT_TYPE);
+    }
+
+    /**
+     * The loaders are created by the repositories, so they
+     * are registered when the metrics are requested.
+     */
+    protected void registerBatchLoadersGauges() {
+        for (BatchLoader<?, ?> batchLoader : getBatchLoaderFactory().getBatchLoaders()) {
+            String name = batchLoader.getName();
+            getMetricsRegistry().gauge("app_batch_loader_batches_total",
+                                       "Batches loaded",
+                                       () -> batchLoader.getBatchesNbr(),
+                                       "loader",
+                                       name);
+            getMetricsRegistry().gauge("app_batch_loader_keys_total",
+                                       "Keys loaded, all batches included",
+                                       () -> batchLoader.getKeysNbr(),
+                                       "loader",
+                                       name);
+            getMetricsRegistry().gauge("app_batch_loader_batch_size_max",
+                                       "Number of keys of the largest batch",
+                                       () -> batchLoader.getMaxBatchSize(),
+                                       "loader",
+                                       name);
+            getMetricsRegistry().gauge("app_batch_loader_wait_seconds_total",
+                                       "Total time the callers waited for their values",
+                                       () -> batchLoader.getWaitNanosTotal() / 1000000000.0,
+                                       "loader",
+                                       name);
+            getMetricsRegistry().gauge("app_batch_loader_wait_seconds_max",
+                                       "Longest time a caller waited for its values",
+                                       () -> batchLoader.getWaitNanosMax() / 1000000000.0,
+                                       "loader",
+                                       name);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.spincast.realworld.controllers;
 
 import org.spincast.core.exchange.DefaultRequestContext;
 import org.spincast.core.json.JsonObject;
+import org.spincast.realworld.configs.AppConstants;
+import org.spincast.realworld.controllers.utils.HttpCaching;
 import org.spincast.realworld.controllers.utils.ToResponseEntityConverter;
 import org.spincast.realworld.exceptions.BadRequestException;
 import org.spincast.realworld.exceptions.ForbiddenException;
@@ -12,15 +14,24 @@ import org.spincast.realworld.models.users.User;
 import org.spincast.realworld.services.UserService;
 import org.spincast.shaded.org.apache.commons.lang3.StringUtils;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.google.inject.Inject;
 
 public class UserController extends BaseController {
 
+    private final HttpCaching httpCaching;
+
     @Inject
     public UserController(EntityFactory entityFactory,
                           UserService userService,
-                          ToResponseEntityConverter entityConverter) {
+                          ToResponseEntityConverter entityConverter,
+                          HttpCaching httpCaching) {
         super(entityFactory, userService, entityConverter);
+        this.httpCaching = httpCaching;
+    }
+
+    protected HttpCaching getHttpCaching() {
+        return this.httpCaching;
     }
 
     public void register(DefaultRequestContext context) {
@@ -37,7 +48,7 @@ public class UserController extends BaseController {
                                                   null,
                                                   null);
 
-        getUserService().saveUser(user, newUserObj.getString("user.password"));
+        user = getUserService().saveUser(user, newUserObj.getString("user.password"));
 
         String jwt = getUserService().createJwtToken(user);
         outputUser(context, user, jwt);
@@ -100,7 +111,16 @@ public class UserController extends BaseController {
 
         getUserService().updateUser(currentUser, updatedUser, rawPassword);
 
-        outputUser(context, updatedUser, getDecodedJWT(context).getToken());
+        //==========================================
+        // A token without the id of the user is no longer
+        // valid once the username changes : a new one is
+        // returned.
+        //==========================================
+        DecodedJWT decodedJwt = getDecodedJWT(context);
+        String jwt = decodedJwt.getClaim(AppConstants.JWT_CLAIMS_USER_ID).isNull() ? getUserService().createJwtToken(updatedUser)
+                                                                                   : decodedJwt.getToken();
+
+        outputUser(context, updatedUser, jwt);
     }
 
     public void getProfile(DefaultRequestContext context) {
@@ -118,6 +138,11 @@ public class UserController extends BaseController {
             throw new BadRequestException("The username path param can't be empty");
         }
 
+        String version = getUserService().getProfileVersion(username, currentUser);
+        if (version != null && getHttpCaching().handleConditionalGet(context, "profile:" + version, currentUser == null)) {
+            return;
+        }
+
         Profile profile = getUserService().getProfileByUsername(username, currentUser);
         if (profile == null) {
             throw new NotFoundException("User not found");
@@ -0,0 +1,34 @@
+package org.spincast.realworld.controllers.utils;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+
+/**
+ * Conditional GET support : ETags and caching headers.
+ */
+public interface HttpCaching {
+
+    /**
+     * Adds the ETag of the specified version of the
+     * resource and the caching headers to the response.
+     * <p>
+     * If the client already has this version, a
+     * "304 - Not Modified" response is sent and there is
+     * nothing more to do.
+     *
+     * @param version anything that changes when the
+     * response would change. Its hash is used as the ETag.
+     *
+     * @param anonymous if <code>true</code>, the response
+     * can be cached by shared caches.
+     *
+     * @return <code>true</code> if the "304 - Not Modified"
+     * response has been sent.
+     */
+    public boolean handleConditionalGet(DefaultRequestContext context, String version, boolean anonymous);
+
+    /**
+     * The weak ETag of the specified version.
+     */
+    public String createETag(String version);
+
+}
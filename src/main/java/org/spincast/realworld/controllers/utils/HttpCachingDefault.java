@@ -0,0 +1,89 @@
+package org.spincast.realworld.controllers.utils;
+
+import java.nio.charset.StandardCharsets;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.shaded.org.apache.commons.lang3.StringUtils;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.hash.Hashing;
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
+/**
+ * The ETags are weak : the same version may be sent
+ * compressed or not.
+ */
+public class HttpCachingDefault implements HttpCaching {
+
+    /**
+     * Part of all the ETags, to change if the format of the
+     * responses changes.
+     */
+    protected static final String ETAG_FORMAT_VERSION = "1";
+
+    private final AppConfig appConfig;
+
+    @Inject
+    public HttpCachingDefault(AppConfig appConfig) {
+        this.appConfig = appConfig;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    @Override
+    public boolean handleConditionalGet(DefaultRequestContext context, String version, boolean anonymous) {
+
+        String etag = createETag(version);
+
+        context.response().setHeader(HttpHeaders.ETAG, etag);
+        context.response().setHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+        if (anonymous) {
+            context.response().setHeader(HttpHeaders.CACHE_CONTROL,
+                                         "public, max-age=" + getAppConfig().getHttpCacheAnonymousMaxAgeSeconds());
+        } else {
+            context.response().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        }
+
+        if (!isMatching(context.request().getHeaderFirst(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return false;
+        }
+
+        context.response().setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * Weak comparison, as required for "If-None-Match".
+     */
+    protected boolean isMatching(String ifNoneMatch, String etag) {
+        if (StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+
+        String opaqueTag = removeWeakPrefix(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate) || opaqueTag.equals(removeWeakPrefix(candidate))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected String removeWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    @Override
+    public String createETag(String version) {
+        String hash = Hashing.murmur3_128()
+                             .hashString(ETAG_FORMAT_VERSION + ":" + version, StandardCharsets.UTF_8)
+                             .toString();
+        return "W/\"" + hash + "\"";
+    }
+
+}
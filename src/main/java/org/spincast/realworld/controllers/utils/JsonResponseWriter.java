@@ -0,0 +1,48 @@
+package org.spincast.realworld.controllers.utils;
+
+import java.io.OutputStream;
+import java.util.List;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
+import org.spincast.realworld.models.articles.Comment;
+
+/**
+ * Writes the listings directly to the response, using a
+ * JSON generator, instead of building a tree of
+ * {@link org.spincast.core.json.JsonObject} first.
+ * <p>
+ * The output is the same as the one of the
+ * {@link ToResponseEntityConverter}, byte for byte.
+ */
+public interface JsonResponseWriter {
+
+    /**
+     * Sends the articles, in the format of
+     * {@link ToResponseEntityConverter#convertToArticles(List, long)}.
+     */
+    public void sendArticles(DefaultRequestContext context, List<Article> articles, long totalCount);
+
+    /**
+     * Sends the articles, in the format of
+     * {@link ToResponseEntityConverter#convertToArticles(List, long, ArticleCursor)}.
+     */
+    public void sendArticles(DefaultRequestContext context,
+                             List<Article> articles,
+                             long totalCount,
+                             ArticleCursor nextCursor);
+
+    /**
+     * Sends the comments, in the format of
+     * {@link ToResponseEntityConverter#convertToComments(List)}.
+     */
+    public void sendComments(DefaultRequestContext context, List<Comment> comments);
+
+    public void writeArticles(OutputStream out, List<Article> articles, long totalCount);
+
+    public void writeArticles(OutputStream out, List<Article> articles, long totalCount, ArticleCursor nextCursor);
+
+    public void writeComments(OutputStream out, List<Comment> comments);
+
+}
@@ -0,0 +1,311 @@
+package org.spincast.realworld.controllers.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+import org.spincast.core.json.JsonManager;
+import org.spincast.core.utils.ContentTypeDefaults;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
+import org.spincast.realworld.models.articles.Comment;
+import org.spincast.realworld.models.users.Profile;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.repositories.ArticleFragmentCache;
+import org.spincast.realworld.repositories.ArticleFragmentCache.ArticleFragment;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.inject.Inject;
+
+/**
+ * The fields are written in the order in which the
+ * {@link JsonManager} serializes the entities when
+ * converted by {@link ToResponseEntityConverterDefault}.
+ * The dates are serialized by the {@link JsonManager}
+ * itself, so their format is the same too.
+ * <p>
+ * When the {@link ArticleFragmentCache} is enabled, only
+ * the fields depending on the viewer are serialized for
+ * an article already cached.
+ */
+public class JsonResponseWriterDefault implements JsonResponseWriter {
+
+    /**
+     * Number of bytes buffered before being sent to the
+     * client. A smaller response is sent in one shot.
+     */
+    protected static final int CHUNK_SIZE = 32 * 1024;
+
+    protected static final byte[] FOLLOWING_TRUE = ",\"following\":true}".getBytes(StandardCharsets.UTF_8);
+    protected static final byte[] FOLLOWING_FALSE = ",\"following\":false}".getBytes(StandardCharsets.UTF_8);
+
+    private final JsonManager jsonManager;
+    private final ArticleFragmentCache articleFragmentCache;
+    private final JsonFactory jsonFactory;
+
+    @Inject
+    public JsonResponseWriterDefault(JsonManager jsonManager,
+                                     ArticleFragmentCache articleFragmentCache) {
+        this.jsonManager = jsonManager;
+        this.articleFragmentCache = articleFragmentCache;
+        this.jsonFactory = createJsonFactory();
+    }
+
+    protected JsonManager getJsonManager() {
+        return this.jsonManager;
+    }
+
+    protected ArticleFragmentCache getArticleFragmentCache() {
+        return this.articleFragmentCache;
+    }
+
+    protected JsonFactory getJsonFactory() {
+        return this.jsonFactory;
+    }
+
+    protected JsonFactory createJsonFactory() {
+        JsonFactory jsonFactory = new JsonFactory();
+
+        //==========================================
+        // The output stream is managed by the caller.
+        //==========================================
+        jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return jsonFactory;
+    }
+
+    @Override
+    public void sendArticles(DefaultRequestContext context, List<Article> articles, long totalCount) {
+        try (ResponseOutputStream out = createResponseOutputStream(context)) {
+            writeArticles(out, articles, totalCount);
+        }
+    }
+
+    @Override
+    public void sendArticles(DefaultRequestContext context,
+                             List<Article> articles,
+                             long totalCount,
+                             ArticleCursor nextCursor) {
+        try (ResponseOutputStream out = createResponseOutputStream(context)) {
+            writeArticles(out, articles, totalCount, nextCursor);
+        }
+    }
+
+    @Override
+    public void sendComments(DefaultRequestContext context, List<Comment> comments) {
+        try (ResponseOutputStream out = createResponseOutputStream(context)) {
+            writeComments(out, comments);
+        }
+    }
+
+    protected ResponseOutputStream createResponseOutputStream(DefaultRequestContext context) {
+        return new ResponseOutputStream(context, ContentTypeDefaults.JSON.getMainVariationWithUtf8Charset(), CHUNK_SIZE);
+    }
+
+    @Override
+    public void writeArticles(OutputStream out, List<Article> articles, long totalCount) {
+        writeArticles(out, articles, totalCount, false, null);
+    }
+
+    @Override
+    public void writeArticles(OutputStream out, List<Article> articles, long totalCount, ArticleCursor nextCursor) {
+        writeArticles(out, articles, totalCount, true, nextCursor);
+    }
+
+    protected void writeArticles(OutputStream out,
+                                 List<Article> articles,
+                                 long totalCount,
+                                 boolean cursorPaging,
+                                 ArticleCursor nextCursor) {
+        try (JsonGenerator gen = getJsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("articlesCount", totalCount);
+            gen.writeArrayFieldStart("articles");
+            if (articles != null) {
+                for (Article article : articles) {
+                    if (getArticleFragmentCache().isEnabled()) {
+                        writeArticleUsingFragment(gen, out, article);
+                    } else {
+                        writeArticle(gen, article);
+                    }
+                }
+            }
+            gen.writeEndArray();
+            if (cursorPaging) {
+                gen.writeStringField("nextCursor", nextCursor != null ? nextCursor.encode() : null);
+            }
+            gen.writeEndObject();
+        } catch (IOException ex) {
+            throw SpincastStatics.runtimize(ex);
+        }
+    }
+
+    @Override
+    public void writeComments(OutputStream out, List<Comment> comments) {
+        try (JsonGenerator gen = getJsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("comments");
+            if (comments != null) {
+                for (Comment comment : comments) {
+                    writeComment(gen, comment);
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        } catch (IOException ex) {
+            throw SpincastStatics.runtimize(ex);
+        }
+    }
+
+    protected void writeArticle(JsonGenerator gen, Article article) throws IOException {
+        gen.writeStartObject();
+        writeArticleHeadFields(gen, article);
+        gen.writeBooleanField("favorited", article.isFavorited());
+        gen.writeNumberField("favoritesCount", article.getFavoritesCount());
+        writeArticleTailFields(gen, article);
+        gen.writeBooleanField("following", article.getAuthorProfile().isFollowing());
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the article using its cached fragment, which
+     * is created if required. The generator is flushed so
+     * the bytes of the fragment can be written directly to
+     * the output stream.
+     */
+    protected void writeArticleUsingFragment(JsonGenerator gen, OutputStream out, Article article) throws IOException {
+        ArticleFragment fragment = getArticleFragmentCache().get(article);
+        if (fragment == null) {
+            fragment = createArticleFragment(article);
+            getArticleFragmentCache().put(article, fragment);
+        }
+
+        gen.writeStartObject();
+        gen.flush();
+        out.write(fragment.getHead());
+
+        //==========================================
+        // The generator sees "favorited" as the first
+        // field of the object.
+        //==========================================
+        gen.writeBooleanField("favorited", article.isFavorited());
+        gen.writeNumberField("favoritesCount", article.getFavoritesCount());
+        gen.flush();
+        out.write(fragment.getTail());
+        out.write(article.getAuthorProfile().isFollowing() ? FOLLOWING_TRUE : FOLLOWING_FALSE);
+        gen.writeEndObject();
+    }
+
+    /**
+     * The head of the fragment ends with a comma and its
+     * tail starts with one, so the fields depending on the
+     * viewer can be written in between.
+     */
+    protected ArticleFragment createArticleFragment(Article article) throws IOException {
+
+        ByteArrayOutputStream headOut = new ByteArrayOutputStream(1024);
+        try (JsonGenerator gen = getJsonFactory().createGenerator(headOut, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            writeArticleHeadFields(gen, article);
+            gen.writeEndObject();
+        }
+
+        //==========================================
+        // {"slug":...,"body":...} => "slug":...,"body":...,
+        //==========================================
+        byte[] headBytes = headOut.toByteArray();
+        byte[] head = Arrays.copyOfRange(headBytes, 1, headBytes.length);
+        head[head.length - 1] = ',';
+
+        ByteArrayOutputStream tailOut = new ByteArrayOutputStream(512);
+        try (JsonGenerator gen = getJsonFactory().createGenerator(tailOut, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            writeArticleTailFields(gen, article);
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+
+        //==========================================
+        // {"createdAt":...,"author":{...,"image":...}}
+        // => ,"createdAt":...,"author":{...,"image":...
+        //==========================================
+        byte[] tailBytes = tailOut.toByteArray();
+        byte[] tail = Arrays.copyOfRange(tailBytes, 0, tailBytes.length - 2);
+        tail[0] = ',';
+
+        return new ArticleFragment(head, tail, article.getAuthorProfile().getUser());
+    }
+
+    protected void writeArticleHeadFields(JsonGenerator gen, Article article) throws IOException {
+        gen.writeStringField("slug", article.getSlug());
+        gen.writeStringField("title", article.getTitle());
+        gen.writeStringField("description", article.getDescription());
+        gen.writeStringField("body", article.getBody());
+    }
+
+    /**
+     * Leaves the author object opened, so its "following"
+     * field can be added.
+     */
+    protected void writeArticleTailFields(JsonGenerator gen, Article article) throws IOException {
+        writeInstantField(gen, "createdAt", article.getCreatedAt());
+        writeInstantField(gen, "updatedAt", article.getUpdatedAt());
+
+        List<String> tags = article.getTagList();
+        if (tags == null) {
+            gen.writeNullField("tagList");
+        } else {
+            gen.writeArrayFieldStart("tagList");
+            for (String tag : tags) {
+                gen.writeString(tag);
+            }
+            gen.writeEndArray();
+        }
+
+        User author = article.getAuthorProfile().getUser();
+        gen.writeFieldName("author");
+        gen.writeStartObject();
+        gen.writeStringField("username", author.getUsername());
+        gen.writeStringField("bio", author.getBio());
+        gen.writeStringField("image", author.getImage());
+    }
+
+    protected void writeComment(JsonGenerator gen, Comment comment) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", comment.getId());
+        writeInstantField(gen, "createdAt", comment.getCreatedAt());
+        writeInstantField(gen, "updatedAt", comment.getUpdatedAt());
+        gen.writeStringField("body", comment.getBody());
+        gen.writeFieldName("author");
+        writeProfile(gen, comment.getAuthorProfile());
+        gen.writeEndObject();
+    }
+
+    protected void writeProfile(JsonGenerator gen, Profile profile) throws IOException {
+        User user = profile.getUser();
+        gen.writeStartObject();
+        gen.writeStringField("username", user.getUsername());
+        gen.writeStringField("bio", user.getBio());
+        gen.writeStringField("image", user.getImage());
+        gen.writeBooleanField("following", profile.isFollowing());
+        gen.writeEndObject();
+    }
+
+    protected void writeInstantField(JsonGenerator gen, String fieldName, Instant instant) throws IOException {
+        gen.writeFieldName(fieldName);
+        if (instant == null) {
+            gen.writeNull();
+        } else {
+            gen.writeRawValue(getJsonManager().toJsonString(instant));
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.spincast.realworld.controllers.utils;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.spincast.core.exchange.DefaultRequestContext;
+
+/**
+ * Sends the bytes written to it to the response, by
+ * chunks.
+ * <p>
+ * Nothing is flushed before the first chunk is full, so a
+ * small response is sent in one shot, as if it had been
+ * sent using <code>sendBytes(...)</code> directly.
+ */
+public class ResponseOutputStream extends OutputStream {
+
+    private final DefaultRequestContext context;
+    private final String contentType;
+    private final byte[] buffer;
+    private int count = 0;
+    private boolean closed = false;
+
+    public ResponseOutputStream(DefaultRequestContext context, String contentType, int chunkSize) {
+        this.context = context;
+        this.contentType = contentType;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) {
+        if (this.count == this.buffer.length) {
+            sendChunk(true);
+        }
+        this.buffer[this.count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (this.count == this.buffer.length) {
+                sendChunk(true);
+            }
+            int nbr = Math.min(length, this.buffer.length - this.count);
+            System.arraycopy(bytes, offset, this.buffer, this.count, nbr);
+            this.count += nbr;
+            offset += nbr;
+            length -= nbr;
+        }
+    }
+
+    /**
+     * Does nothing : the chunks are sent when they are
+     * full, and the remaining bytes on {@link #close()}.
+     */
+    @Override
+    public void flush() {
+        // nothing
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        sendChunk(false);
+    }
+
+    protected void sendChunk(boolean flush) {
+        this.context.response().sendBytes(Arrays.copyOf(this.buffer, this.count), this.contentType, flush);
+        this.count = 0;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.spincast.core.json.JsonObject;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.Profile;
 import org.spincast.realworld.models.users.User;
@@ -28,6 +29,16 @@ public interface ToResponseEntityConverter {
 
     public JsonObject convertToArticles(List<Article> articles, long totalCount);
 
+    /**
+     * For the cursor pagination : a "nextCursor" field is
+     * added.
+     *
+     * @param nextCursor the cursor to use to get the next
+     * page, or <code>null</code> if there are no more
+     * articles.
+     */
+    public JsonObject convertToArticles(List<Article> articles, long totalCount, ArticleCursor nextCursor);
+
     public JsonObject convertComment(Comment comment);
 
     public JsonObject convertToOneComment(Comment comment);
@@ -6,6 +6,7 @@ import org.spincast.core.json.JsonArray;
 import org.spincast.core.json.JsonManager;
 import org.spincast.core.json.JsonObject;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.Profile;
 import org.spincast.realworld.models.users.User;
@@ -90,6 +91,18 @@ public class ToResponseEntityConverterDefault implements ToResponseEntityConvert
 
     @Override
     public JsonObject convertToArticles(List<Article> articles, long totalCount) {
+        return convertToArticles(articles, totalCount, false, null);
+    }
+
+    @Override
+    public JsonObject convertToArticles(List<Article> articles, long totalCount, ArticleCursor nextCursor) {
+        return convertToArticles(articles, totalCount, true, nextCursor);
+    }
+
+    protected JsonObject convertToArticles(List<Article> articles,
+                                           long totalCount,
+                                           boolean cursorPaging,
+                                           ArticleCursor nextCursor) {
         JsonObject wrapObj = getJsonManager().create();
         wrapObj.set("articlesCount", totalCount);
 
@@ -100,6 +113,9 @@ public class ToResponseEntityConverterDefault implements ToResponseEntityConvert
             }
         }
         wrapObj.set("articles", articlesArray);
+        if (cursorPaging) {
+            wrapObj.set("nextCursor", nextCursor != null ? nextCursor.encode() : null);
+        }
 
         return wrapObj;
     }
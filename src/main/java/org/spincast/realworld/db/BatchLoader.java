@@ -0,0 +1,256 @@
+package org.spincast.realworld.db;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Collects the keys requested by concurrent callers
+ * during a short window and loads them all using a
+ * single call to the <code>loader</code>.
+ * <p>
+ * A batch is loaded when the window expires or when it
+ * contains the maximum number of keys, whichever comes
+ * first. Each caller then receives the values of its own
+ * keys only.
+ * <p>
+ * The loader is run by a thread of the load executor,
+ * so it can't use the connection bound to the request of
+ * any of the callers. A caller already holding a
+ * connection doesn't join the batches : its keys are
+ * loaded on its own thread, using its connection and
+ * snapshot. Otherwise, callers waiting for a batch while
+ * holding all the connections of the pool would block
+ * the batch itself.
+ */
+public class BatchLoader<K, V> {
+
+    private final String name;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxKeys;
+    private final Function<Set<K>, Map<K, V>> loader;
+    private final ScheduledExecutorService scheduler;
+    private final Executor loadExecutor;
+    private final BooleanSupplier loadOnCaller;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Batch<K, V> currentBatch;
+
+    private final LongAdder batchesNbr = new LongAdder();
+    private final LongAdder keysNbr = new LongAdder();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final LongAdder waitNanosTotal = new LongAdder();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+
+    public BatchLoader(String name,
+                       boolean enabled,
+                       long windowMillis,
+                       int maxKeys,
+                       Function<Set<K>, Map<K, V>> loader,
+                       ScheduledExecutorService scheduler,
+                       Executor loadExecutor,
+                       BooleanSupplier loadOnCaller) {
+        this.name = name;
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+        this.maxKeys = maxKeys;
+        this.loader = loader;
+        this.scheduler = scheduler;
+        this.loadExecutor = loadExecutor;
+        this.loadOnCaller = loadOnCaller;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    protected Function<Set<K>, Map<K, V>> getLoader() {
+        return this.loader;
+    }
+
+    /**
+     * Triggers the flush of the batches when their window
+     * expires.
+     */
+    protected ScheduledExecutorService getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * Runs the loader.
+     */
+    protected Executor getLoadExecutor() {
+        return this.loadExecutor;
+    }
+
+    /**
+     * <code>true</code> if the keys of the current caller
+     * must be loaded on its own thread.
+     */
+    protected BooleanSupplier getLoadOnCaller() {
+        return this.loadOnCaller;
+    }
+
+    /**
+     * Loads the values of the specified keys. A key without
+     * value is absent from the returned map.
+     */
+    public Map<K, V> loadAll(Set<K> keys) {
+        if (keys == null || keys.size() == 0) {
+            return new HashMap<K, V>();
+        }
+
+        if (!isEnabled() || getLoadOnCaller().getAsBoolean()) {
+            return getLoader().apply(keys);
+        }
+
+        long start = System.nanoTime();
+
+        Batch<K, V> batch;
+        boolean full = false;
+        this.lock.lock();
+        try {
+            if (this.currentBatch == null) {
+                Batch<K, V> newBatch = new Batch<>();
+                newBatch.scheduledFlush = getScheduler().schedule(() -> getLoadExecutor().execute(() -> flush(newBatch)),
+                                                                  this.windowMillis,
+                                                                  TimeUnit.MILLISECONDS);
+                this.currentBatch = newBatch;
+            }
+            batch = this.currentBatch;
+            batch.keys.addAll(keys);
+
+            if (batch.keys.size() >= this.maxKeys) {
+                this.currentBatch = null;
+                full = true;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (full) {
+            batch.scheduledFlush.cancel(false);
+            getLoadExecutor().execute(() -> flush(batch));
+        }
+
+        Map<K, V> allValues;
+        try {
+            allValues = batch.values.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            recordWait(System.nanoTime() - start);
+        }
+
+        Map<K, V> values = new HashMap<K, V>();
+        for (K key : keys) {
+            V value = allValues.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    protected void flush(Batch<K, V> batch) {
+        this.lock.lock();
+        try {
+            if (batch.flushed) {
+                return;
+            }
+            batch.flushed = true;
+            if (this.currentBatch == batch) {
+                this.currentBatch = null;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        this.batchesNbr.increment();
+        this.keysNbr.add(batch.keys.size());
+        this.maxBatchSize.accumulateAndGet(batch.keys.size(), Math::max);
+
+        try {
+            Map<K, V> values = getLoader().apply(Collections.unmodifiableSet(batch.keys));
+            batch.values.complete(values != null ? values : new HashMap<K, V>());
+        } catch (Throwable ex) {
+            batch.values.completeExceptionally(ex);
+        }
+    }
+
+    protected void recordWait(long nanos) {
+        this.waitNanosTotal.add(nanos);
+        this.waitNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Number of batches loaded.
+     */
+    public long getBatchesNbr() {
+        return this.batchesNbr.sum();
+    }
+
+    /**
+     * Total number of keys loaded, all batches included.
+     */
+    public long getKeysNbr() {
+        return this.keysNbr.sum();
+    }
+
+    /**
+     * Number of keys of the largest batch.
+     */
+    public long getMaxBatchSize() {
+        return this.maxBatchSize.get();
+    }
+
+    /**
+     * Total time the callers waited for their values,
+     * in nanoseconds.
+     */
+    public long getWaitNanosTotal() {
+        return this.waitNanosTotal.sum();
+    }
+
+    /**
+     * Longest time a caller waited for its values,
+     * in nanoseconds.
+     */
+    public long getWaitNanosMax() {
+        return this.waitNanosMax.get();
+    }
+
+    /**
+     * The keys collected during a window and their
+     * values, once loaded.
+     */
+    protected static class Batch<K, V> {
+
+        private final Set<K> keys = new HashSet<>();
+        private final CompletableFuture<Map<K, V>> values = new CompletableFuture<>();
+        private ScheduledFuture<?> scheduledFlush;
+        private boolean flushed = false;
+    }
+}
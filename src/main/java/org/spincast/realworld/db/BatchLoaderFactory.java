@@ -0,0 +1,91 @@
+package org.spincast.realworld.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.utils.ExecutorFactory;
+
+import com.google.inject.Inject;
+
+/**
+ * Creates the {@link BatchLoader} used by the
+ * repositories. They all share the same executors.
+ */
+public class BatchLoaderFactory {
+
+    private final AppConfig appConfig;
+    private final ExecutorFactory executorFactory;
+    private final RequestConnectionManager requestConnectionManager;
+    private final List<BatchLoader<?, ?>> batchLoaders = new CopyOnWriteArrayList<>();
+    private final ReentrantLock executorsLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+    private ExecutorService loadExecutor;
+
+    @Inject
+    public BatchLoaderFactory(AppConfig appConfig,
+                              ExecutorFactory executorFactory,
+                              RequestConnectionManager requestConnectionManager) {
+        this.appConfig = appConfig;
+        this.executorFactory = executorFactory;
+        this.requestConnectionManager = requestConnectionManager;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected ExecutorFactory getExecutorFactory() {
+        return this.executorFactory;
+    }
+
+    protected RequestConnectionManager getRequestConnectionManager() {
+        return this.requestConnectionManager;
+    }
+
+    public <K, V> BatchLoader<K, V> create(String name, Function<Set<K>, Map<K, V>> loader) {
+        boolean enabled = getAppConfig().isDbBatchingEnabled();
+        if (enabled) {
+            initExecutors();
+        }
+        BatchLoader<K, V> batchLoader = new BatchLoader<K, V>(name,
+                                                              enabled,
+                                                              getAppConfig().getDbBatchingWindowMillis(),
+                                                              getAppConfig().getDbBatchingMaxKeys(),
+                                                              loader,
+                                                              this.scheduler,
+                                                              this.loadExecutor,
+                                                              () -> getRequestConnectionManager().isConnectionHeld());
+        this.batchLoaders.add(batchLoader);
+        return batchLoader;
+    }
+
+    /**
+     * All the loaders created, for their metrics.
+     */
+    public List<BatchLoader<?, ?>> getBatchLoaders() {
+        return this.batchLoaders;
+    }
+
+    /**
+     * The scheduler also runs the loaders.
+     */
+    protected void initExecutors() {
+        this.executorsLock.lock();
+        try {
+            if (this.scheduler == null) {
+                this.scheduler = getExecutorFactory().createScheduledExecutor("batch-loader",
+                                                                              getAppConfig().getDbBatchingThreads());
+                this.loadExecutor = this.scheduler;
+            }
+        } finally {
+            this.executorsLock.unlock();
+        }
+    }
+}
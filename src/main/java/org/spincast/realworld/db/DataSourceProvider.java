@@ -1,7 +1,18 @@
 package org.spincast.realworld.db;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.spincast.plugins.jdbc.SpincastDataSource;
 import org.spincast.plugins.jdbc.SpincastDataSourceFactory;
 import org.spincast.realworld.configs.AppConfig;
@@ -14,18 +25,39 @@ import com.zaxxer.hikari.HikariDataSource;
 /**
  * Creates the main {@link DataSource} using
  * a <a href="https://github.com/brettwooldridge/HikariCP">Hikari</a> connection pool.
+ * <p>
+ * The read-only requests can use their own pool, so
+ * long write transactions don't make them wait for a
+ * connection. When replicas are configured, a pool is
+ * created for each of them and they replace that read
+ * pool.
  */
 public class DataSourceProvider implements Provider<DataSource> {
 
+    protected final Logger logger = LoggerFactory.getLogger(DataSourceProvider.class);
+
+    /**
+     * Number of queries run to measure the latency of
+     * the database.
+     */
+    protected static final int LATENCY_PROBES_NBR = 20;
+
     private final SpincastDataSourceFactory spincastDataSourceFactory;
     private final AppConfig appConfig;
-    private SpincastDataSource dataSource;
+    private final ReplicaRouting replicaRouting;
+    private final HikariMetricsTrackerFactory hikariMetricsTrackerFactory;
+    private final ReentrantLock initLock = new ReentrantLock();
+    private volatile SpincastDataSource dataSource;
 
     @Inject
     public DataSourceProvider(SpincastDataSourceFactory spincastDataSourceFactory,
-                              AppConfig appConfig) {
+                              AppConfig appConfig,
+                              ReplicaRouting replicaRouting,
+                              HikariMetricsTrackerFactory hikariMetricsTrackerFactory) {
         this.spincastDataSourceFactory = spincastDataSourceFactory;
         this.appConfig = appConfig;
+        this.replicaRouting = replicaRouting;
+        this.hikariMetricsTrackerFactory = hikariMetricsTrackerFactory;
     }
 
     protected SpincastDataSourceFactory getSpincastDataSourceFactory() {
@@ -36,17 +68,225 @@ public class DataSourceProvider implements Provider<DataSource> {
         return this.appConfig;
     }
 
+    protected ReplicaRouting getReplicaRouting() {
+        return this.replicaRouting;
+    }
+
+    protected HikariMetricsTrackerFactory getHikariMetricsTrackerFactory() {
+        return this.hikariMetricsTrackerFactory;
+    }
+
+    /**
+     * The pools are created by the first caller, under a
+     * lock.
+     */
     @Override
     public DataSource get() {
-        if (this.dataSource == null) {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(getAppConfig().getDbConnectionString());
-            config.setUsername("postgres");
-            config.setPassword("postgres");
-            config.setMaximumPoolSize(10);
-            DataSource ds = new HikariDataSource(config);
-            this.dataSource = getSpincastDataSourceFactory().create(ds);
-        }
-        return this.dataSource;
+        SpincastDataSource ds = this.dataSource;
+        if (ds != null) {
+            return ds;
+        }
+
+        this.initLock.lock();
+        try {
+            if (this.dataSource == null) {
+                this.dataSource = createDataSource();
+            }
+            return this.dataSource;
+        } finally {
+            this.initLock.unlock();
+        }
+    }
+
+    protected SpincastDataSource createDataSource() {
+
+        PoolSizes poolSizes = computePoolSizes();
+        int writeMaxSize = poolSizes.getWriteMaxSize();
+        int readMaxSize = poolSizes.getReadMaxSize();
+
+        DataSource primary = createPool("write",
+                                        getAppConfig().getDbConnectionString(),
+                                        false,
+                                        writeMaxSize,
+                                        getAppConfig().getDbPoolWriteMinIdle(),
+                                        getAppConfig().getDbPoolConnectionTimeoutMillis());
+
+        List<DataSource> readDataSources = new ArrayList<>();
+        List<String> replicasConnectionStrings = getAppConfig().getDbReplicasConnectionStrings();
+        for (int i = 0; i < replicasConnectionStrings.size(); i++) {
+            readDataSources.add(createPool("replica-" + (i + 1),
+                                           replicasConnectionStrings.get(i),
+                                           true,
+                                           readMaxSize,
+                                           getAppConfig().getDbPoolReadMinIdle(),
+                                           getAppConfig().getDbReplicasConnectionTimeoutMillis()));
+        }
+        if (readDataSources.size() == 0 && getAppConfig().isDbPoolSeparateRead()) {
+            readDataSources.add(createPool("read",
+                                           getAppConfig().getDbConnectionString(),
+                                           true,
+                                           readMaxSize,
+                                           getAppConfig().getDbPoolReadMinIdle(),
+                                           getAppConfig().getDbPoolConnectionTimeoutMillis()));
+        }
+
+        DataSource ds = primary;
+        if (readDataSources.size() > 0) {
+            ds = new RoutingDataSource(primary,
+                                       readDataSources,
+                                       replicasConnectionStrings.size() > 0,
+                                       getReplicaRouting(),
+                                       getAppConfig().getDbReplicasUnhealthyMillis());
+        }
+        return getSpincastDataSourceFactory().create(ds);
+    }
+
+    protected DataSource createPool(String name,
+                                    String connectionString,
+                                    boolean readOnly,
+                                    int maxSize,
+                                    int minIdle,
+                                    long connectionTimeoutMillis) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(connectionString);
+        config.setUsername(getAppConfig().getDbPoolUsername());
+        config.setPassword(getAppConfig().getDbPoolPassword());
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(Math.min(minIdle, maxSize));
+        config.setConnectionTimeout(connectionTimeoutMillis);
+        config.setIdleTimeout(getAppConfig().getDbPoolIdleTimeoutMillis());
+        config.setMaxLifetime(getAppConfig().getDbPoolMaxLifetimeMillis());
+        config.setLeakDetectionThreshold(getAppConfig().getDbPoolLeakDetectionThresholdMillis());
+        config.setReadOnly(readOnly);
+        config.setMetricsTrackerFactory(getHikariMetricsTrackerFactory());
+
+        //==========================================
+        // Once a statement has been executed this number
+        // of times on a connection, the driver switches to
+        // a named server-side prepared statement, so Postgres
+        // doesn't parse and plan it again. Those are kept
+        // in a per connection cache.
+        //==========================================
+        config.addDataSourceProperty("prepareThreshold", getAppConfig().getDbPrepareThreshold());
+        config.addDataSourceProperty("preparedStatementCacheQueries", getAppConfig().getDbPoolStatementCacheQueries());
+
+        this.logger.info("Creating the '" + name + "' pool with a maximum of " + maxSize + " connections");
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * The maximum sizes of the pools : the configured ones
+     * or, with "autoSize", the computed ones.
+     * <p>
+     * The auto-sizing computes the total number of
+     * connections of the instance, capped by "autoSizeMax".
+     * When there is a read pool, it gets two thirds of
+     * them : most requests are reads.
+     * <p>
+     * Without a read pool, the write pool gets the
+     * configured sizes of both pools, so the total number
+     * of connections of the instance doesn't change.
+     */
+    protected PoolSizes computePoolSizes() {
+        if (getAppConfig().isDbPoolAutoSize()) {
+            int total = computeAutoSize(getAppConfig().getDbConnectionString());
+            if (total > 0 && !hasReadPool()) {
+                return new PoolSizes(total, 0);
+            }
+            if (total > 0) {
+                int writeMaxSize = Math.max(2, total / 3);
+                int readMaxSize = Math.max(2, total - writeMaxSize);
+                return new PoolSizes(writeMaxSize, readMaxSize);
+            }
+        }
+        if (!hasReadPool()) {
+            return new PoolSizes(getAppConfig().getDbPoolWriteMaxSize() + getAppConfig().getDbPoolReadMaxSize(), 0);
+        }
+        return new PoolSizes(getAppConfig().getDbPoolWriteMaxSize(), getAppConfig().getDbPoolReadMaxSize());
+    }
+
+    protected boolean hasReadPool() {
+        return getAppConfig().getDbReplicasConnectionStrings().size() > 0 || getAppConfig().isDbPoolSeparateRead();
+    }
+
+    /**
+     * Computes the number of connections of the instance
+     * from the number of cores and the latency of the
+     * database.
+     * <p>
+     * The base is the usual "cores * 2 + 1". When the
+     * database is remote, a connection spends more time
+     * waiting on the network, so one connection per core
+     * is added for each millisecond of round trip.
+     *
+     * @return the size or <code>-1</code> if the latency
+     * could not be measured.
+     */
+    protected int computeAutoSize(String connectionString) {
+        long latencyMicros = measureLatencyMicros(connectionString);
+        if (latencyMicros < 0) {
+            return -1;
+        }
+
+        int cores = getCoresNbr();
+        long size = cores * 2 + 1 + cores * (latencyMicros / 1000);
+        size = Math.min(size, getAppConfig().getDbPoolAutoSizeMax());
+
+        this.logger.info("Pool auto-sizing : " + cores + " cores, " + latencyMicros + " us round trip, " +
+                         size + " connections");
+        return (int)size;
+    }
+
+    protected int getCoresNbr() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The median duration of a trivial query.
+     */
+    protected long measureLatencyMicros(String connectionString) {
+        try (Connection connection = DriverManager.getConnection(connectionString,
+                                                                 getAppConfig().getDbPoolUsername(),
+                                                                 getAppConfig().getDbPoolPassword());
+                Statement stm = connection.createStatement()) {
+
+            long[] durations = new long[LATENCY_PROBES_NBR];
+            for (int i = 0; i < LATENCY_PROBES_NBR; i++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = stm.executeQuery("SELECT 1")) {
+                    rs.next();
+                }
+                durations[i] = (System.nanoTime() - start) / 1000;
+            }
+            Arrays.sort(durations);
+            return durations[LATENCY_PROBES_NBR / 2];
+        } catch (Exception ex) {
+            this.logger.warn("Unable to measure the database latency, the configured pool sizes will be used", ex);
+            return -1;
+        }
+    }
+
+    /**
+     * The maximum sizes of the write and read pools.
+     */
+    public static class PoolSizes {
+
+        private final int writeMaxSize;
+        private final int readMaxSize;
+
+        public PoolSizes(int writeMaxSize, int readMaxSize) {
+            this.writeMaxSize = writeMaxSize;
+            this.readMaxSize = readMaxSize;
+        }
+
+        public int getWriteMaxSize() {
+            return this.writeMaxSize;
+        }
+
+        public int getReadMaxSize() {
+            return this.readMaxSize;
+        }
     }
 }
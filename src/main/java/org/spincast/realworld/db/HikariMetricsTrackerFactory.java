@@ -0,0 +1,102 @@
+package org.spincast.realworld.db;
+
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.metrics.MetricsRegistry.Counter;
+import org.spincast.realworld.metrics.MetricsRegistry.Histogram;
+
+import com.google.inject.Inject;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Records the metrics of the Hikari pools in the
+ * {@link MetricsRegistry}, labeled with the name of
+ * the pool.
+ */
+public class HikariMetricsTrackerFactory implements MetricsTrackerFactory {
+
+    private final MetricsRegistry metricsRegistry;
+
+    @Inject
+    public HikariMetricsTrackerFactory(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    protected MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+
+        getMetricsRegistry().gauge("hikari_connections_active",
+                                   "Connections in use",
+                                   () -> poolStats.getActiveConnections(),
+                                   "pool",
+                                   poolName);
+        getMetricsRegistry().gauge("hikari_connections_idle",
+                                   "Idle connections",
+                                   () -> poolStats.getIdleConnections(),
+                                   "pool",
+                                   poolName);
+        getMetricsRegistry().gauge("hikari_connections_total",
+                                   "Connections, in use or idle",
+                                   () -> poolStats.getTotalConnections(),
+                                   "pool",
+                                   poolName);
+        getMetricsRegistry().gauge("hikari_connections_max",
+                                   "Maximum size of the pool",
+                                   () -> poolStats.getMaxConnections(),
+                                   "pool",
+                                   poolName);
+        getMetricsRegistry().gauge("hikari_connections_pending",
+                                   "Threads waiting for a connection",
+                                   () -> poolStats.getPendingThreads(),
+                                   "pool",
+                                   poolName);
+
+        Histogram acquire = getMetricsRegistry().histogram("hikari_connection_acquire_seconds",
+                                                           "Time to get a connection from the pool",
+                                                           MetricsRegistry.DURATION_BUCKETS,
+                                                           "pool",
+                                                           poolName);
+        Histogram usage = getMetricsRegistry().histogram("hikari_connection_usage_seconds",
+                                                         "Time a connection is used before being returned",
+                                                         MetricsRegistry.DURATION_BUCKETS,
+                                                         "pool",
+                                                         poolName);
+        Histogram creation = getMetricsRegistry().histogram("hikari_connection_creation_seconds",
+                                                            "Time to open a new physical connection",
+                                                            MetricsRegistry.DURATION_BUCKETS,
+                                                            "pool",
+                                                            poolName);
+        Counter timeouts = getMetricsRegistry().counter("hikari_connection_timeouts_total",
+                                                        "Connection requests which timed out",
+                                                        "pool",
+                                                        poolName);
+
+        return new IMetricsTracker() {
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquire.observe(elapsedAcquiredNanos / 1000000000.0);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usage.observe(elapsedBorrowedMillis / 1000.0);
+            }
+
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                creation.observe(connectionCreatedMillis / 1000.0);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.inc();
+            }
+        };
+    }
+}
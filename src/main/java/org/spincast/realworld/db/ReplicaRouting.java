@@ -0,0 +1,96 @@
+package org.spincast.realworld.db;
+
+import java.util.concurrent.TimeUnit;
+
+import org.spincast.realworld.configs.AppConfig;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Decides if the queries of the current request can be
+ * sent to a replica, or to the read pool when there are
+ * no replicas.
+ * <p>
+ * Only read-only requests can use a replica, and only if
+ * their user didn't modify anything recently : a user
+ * must always see their own writes, even if the replicas
+ * lag behind the primary.
+ */
+public class ReplicaRouting {
+
+    private final ThreadLocal<Boolean> replicaAllowed = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> replicaRead = new ThreadLocal<>();
+    private final Cache<String, Boolean> recentWriters;
+
+    @Inject
+    public ReplicaRouting(AppConfig appConfig) {
+        this(appConfig.getDbReplicasReadYourWritesMillis());
+    }
+
+    public ReplicaRouting(long readYourWritesMillis) {
+        this.recentWriters = CacheBuilder.newBuilder()
+                                         .expireAfterWrite(readYourWritesMillis, TimeUnit.MILLISECONDS)
+                                         .build();
+    }
+
+    protected Cache<String, Boolean> getRecentWriters() {
+        return this.recentWriters;
+    }
+
+    /**
+     * Starts the routing for the current request.
+     *
+     * @param userKey identifies the user making the request,
+     * or <code>null</code> if anonymous.
+     */
+    public void begin(boolean readOnly, String userKey) {
+        boolean allowed = readOnly && (userKey == null || !hasWrittenRecently(userKey));
+        this.replicaAllowed.set(allowed);
+        this.replicaRead.remove();
+    }
+
+    public void end() {
+        this.replicaAllowed.remove();
+        this.replicaRead.remove();
+    }
+
+    /**
+     * <code>false</code> when no request is being processed
+     * by the current thread.
+     */
+    public boolean isReplicaAllowed() {
+        Boolean allowed = this.replicaAllowed.get();
+        return allowed != null && allowed;
+    }
+
+    /**
+     * Records that the current request got a connection to
+     * a replica.
+     */
+    public void recordReplicaRead() {
+        this.replicaRead.set(true);
+    }
+
+    /**
+     * <code>true</code> if the current request read from a
+     * replica : its data may lag behind the primary.
+     */
+    public boolean isReplicaRead() {
+        Boolean read = this.replicaRead.get();
+        return read != null && read;
+    }
+
+    /**
+     * The user will read from the primary for the
+     * configured delay.
+     */
+    public void recordWrite(String userKey) {
+        getRecentWriters().put(userKey, true);
+    }
+
+    public boolean hasWrittenRecently(String userKey) {
+        return getRecentWriters().getIfPresent(userKey) != null;
+    }
+}
@@ -0,0 +1,424 @@
+package org.spincast.realworld.db;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spincast.plugins.jdbc.SpincastDataSourceFactory;
+import org.spincast.realworld.configs.AppConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Binds a single pooled connection to the current
+ * request, so all the repository work done while
+ * processing that request uses the same connection.
+ * <p>
+ * The connection is only acquired from the pool when
+ * a first query is actually run. For read-only requests,
+ * a <code>REPEATABLE READ READ ONLY</code> transaction is
+ * started so all the queries see the same snapshot.
+ */
+public class RequestConnectionManager {
+
+    protected final Logger logger = LoggerFactory.getLogger(RequestConnectionManager.class);
+
+    private final AppConfig appConfig;
+    private final SpincastDataSourceFactory spincastDataSourceFactory;
+    private final ThreadLocal<RequestConnection> currentRequestConnection = new ThreadLocal<>();
+    private final ThreadLocal<int[]> openScopesNbr = ThreadLocal.withInitial(() -> new int[1]);
+    private final Map<DataSource, DataSource> wrappedDataSources = new ConcurrentHashMap<>();
+
+    private final LongAdder acquiredConnectionsNbr = new LongAdder();
+    private final LongAdder poolWaitNanosTotal = new LongAdder();
+    private final AtomicLong poolWaitNanosMax = new AtomicLong();
+
+    @Inject
+    public RequestConnectionManager(AppConfig appConfig,
+                                    SpincastDataSourceFactory spincastDataSourceFactory) {
+        this.appConfig = appConfig;
+        this.spincastDataSourceFactory = spincastDataSourceFactory;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected SpincastDataSourceFactory getSpincastDataSourceFactory() {
+        return this.spincastDataSourceFactory;
+    }
+
+    /**
+     * Returns a {@link DataSource} that will provide the
+     * connection bound to the current request, if any, or
+     * a connection from the specified <code>dataSource</code>
+     * otherwise.
+     */
+    public DataSource wrap(DataSource dataSource) {
+        if (!getAppConfig().isDbRequestScopedConnection()) {
+            return dataSource;
+        }
+        return this.wrappedDataSources.computeIfAbsent(dataSource,
+                                                       ds -> getSpincastDataSourceFactory().create(new RequestScopedDataSource(ds)));
+    }
+
+    /**
+     * Starts a unit of work for the current request.
+     *
+     * @param readOnly if <code>true</code>, all the queries
+     * of the request will use the same read-only snapshot.
+     */
+    public void begin(boolean readOnly) {
+        if (!getAppConfig().isDbRequestScopedConnection()) {
+            return;
+        }
+
+        RequestConnection previous = this.currentRequestConnection.get();
+        if (previous != null) {
+            this.logger.warn("A request connection was still bound to the current thread, releasing it.");
+            end(false);
+        }
+
+        this.currentRequestConnection.set(new RequestConnection(readOnly));
+    }
+
+    /**
+     * Ends the unit of work of the current request and
+     * returns its connection to the pool, if one was
+     * acquired.
+     *
+     * @return the time spent waiting for the pool, in
+     * nanoseconds, or <code>-1</code> if no connection
+     * was acquired.
+     */
+    public long end(boolean success) {
+        RequestConnection requestConnection = this.currentRequestConnection.get();
+        if (requestConnection == null) {
+            return -1;
+        }
+        this.currentRequestConnection.remove();
+        return requestConnection.release(success);
+    }
+
+    public boolean isBound() {
+        return this.currentRequestConnection.get() != null;
+    }
+
+    /**
+     * Called when a repository scope starts on the current
+     * thread.
+     */
+    public void scopeOpened() {
+        this.openScopesNbr.get()[0]++;
+    }
+
+    /**
+     * Called when a repository scope ends on the current
+     * thread.
+     */
+    public void scopeClosed() {
+        this.openScopesNbr.get()[0]--;
+    }
+
+    /**
+     * <code>true</code> if the current thread holds a
+     * connection : a connection is bound to its request or
+     * it runs inside a repository scope. Waiting for a
+     * work needing another connection of the pool could
+     * then exhaust it.
+     */
+    public boolean isConnectionHeld() {
+        return isBound() || this.openScopesNbr.get()[0] > 0;
+    }
+
+    /**
+     * When the current request uses a read-only snapshot,
+     * the moment, as given by {@link System#nanoTime()},
+     * just before its connection was acquired. Everything
+     * committed before that moment is visible to the
+     * queries of the request.
+     *
+     * @return <code>null</code> if there is no snapshot yet.
+     */
+    public Long getSnapshotStartNanos() {
+        RequestConnection requestConnection = this.currentRequestConnection.get();
+        if (requestConnection == null) {
+            return null;
+        }
+        return requestConnection.getSnapshotStartNanos();
+    }
+
+    /**
+     * The moment from which the data is read : when the
+     * snapshot of the current request was taken or, without
+     * snapshot, now.
+     * <p>
+     * Must be called before the first query of the data
+     * to cache, so a modification committed after it can
+     * be detected.
+     */
+    public long getReadStartNanos() {
+        Long snapshotStartNanos = getSnapshotStartNanos();
+        if (snapshotStartNanos != null) {
+            return snapshotStartNanos;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Number of connections acquired by requests.
+     */
+    public long getAcquiredConnectionsNbr() {
+        return this.acquiredConnectionsNbr.sum();
+    }
+
+    /**
+     * Total time requests waited for a pooled connection,
+     * in nanoseconds.
+     */
+    public long getPoolWaitNanosTotal() {
+        return this.poolWaitNanosTotal.sum();
+    }
+
+    /**
+     * Longest time a request waited for a pooled connection,
+     * in nanoseconds.
+     */
+    public long getPoolWaitNanosMax() {
+        return this.poolWaitNanosMax.get();
+    }
+
+    protected void recordPoolWait(long nanos) {
+        this.acquiredConnectionsNbr.increment();
+        this.poolWaitNanosTotal.add(nanos);
+        this.poolWaitNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * The state of the connection bound to a request.
+     */
+    protected class RequestConnection {
+
+        private final boolean readOnly;
+        private Connection connection;
+        private int originalIsolation;
+        private int openHandlesNbr = 0;
+        private long poolWaitNanos = -1;
+        private Long snapshotStartNanos = null;
+
+        public RequestConnection(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+
+        public Connection getHandle(DataSource dataSource) throws SQLException {
+            if (this.connection == null) {
+                long start = System.nanoTime();
+                this.connection = dataSource.getConnection();
+                this.poolWaitNanos = System.nanoTime() - start;
+                recordPoolWait(this.poolWaitNanos);
+
+                if (this.readOnly) {
+                    this.snapshotStartNanos = start;
+                    this.originalIsolation = this.connection.getTransactionIsolation();
+                    this.connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                    this.connection.setReadOnly(true);
+                    this.connection.setAutoCommit(false);
+                }
+            }
+            this.openHandlesNbr++;
+
+            return (Connection)Proxy.newProxyInstance(RequestConnectionManager.class.getClassLoader(),
+                                                      new Class<?>[]{Connection.class},
+                                                      new ConnectionHandle(this));
+        }
+
+        /**
+         * Called when a repository scope closes its
+         * connection.
+         */
+        protected void handleClosed() throws SQLException {
+            this.openHandlesNbr--;
+
+            //==========================================
+            // In read/write mode, the connection must be
+            // back in auto-commit mode once the outermost
+            // scope is done, even if a transaction was
+            // not committed.
+            //==========================================
+            if (!this.readOnly && this.openHandlesNbr <= 0 && !this.connection.getAutoCommit()) {
+                this.connection.rollback();
+                this.connection.setAutoCommit(true);
+            }
+        }
+
+        public long release(boolean success) {
+            if (this.connection == null) {
+                return -1;
+            }
+
+            try {
+                if (this.readOnly) {
+                    if (success) {
+                        this.connection.commit();
+                    } else {
+                        this.connection.rollback();
+                    }
+                    this.connection.setAutoCommit(true);
+                    this.connection.setReadOnly(false);
+                    this.connection.setTransactionIsolation(this.originalIsolation);
+                } else if (!this.connection.getAutoCommit()) {
+                    this.connection.rollback();
+                    this.connection.setAutoCommit(true);
+                }
+            } catch (Exception ex) {
+                RequestConnectionManager.this.logger.warn("Error resetting the request connection", ex);
+            } finally {
+                try {
+                    this.connection.close();
+                } catch (Exception ex) {
+                    RequestConnectionManager.this.logger.warn("Error closing the request connection", ex);
+                }
+                this.connection = null;
+                this.snapshotStartNanos = null;
+            }
+
+            return this.poolWaitNanos;
+        }
+
+        public boolean isReadOnly() {
+            return this.readOnly;
+        }
+
+        public Long getSnapshotStartNanos() {
+            return this.snapshotStartNanos;
+        }
+
+        public Connection getConnection() {
+            return this.connection;
+        }
+    }
+
+    /**
+     * A handle on the request connection. Closing it doesn't
+     * return the connection to the pool and, for a read-only
+     * request, the snapshot transaction can't be altered.
+     */
+    protected static class ConnectionHandle implements InvocationHandler {
+
+        private final RequestConnection requestConnection;
+        private boolean closed = false;
+
+        public ConnectionHandle(RequestConnection requestConnection) {
+            this.requestConnection = requestConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!this.closed) {
+                    this.closed = true;
+                    this.requestConnection.handleClosed();
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return this.closed;
+            }
+
+            if (this.requestConnection.isReadOnly() &&
+                ("setAutoCommit".equals(name) ||
+                 "commit".equals(name) ||
+                 ("rollback".equals(name) && (args == null || args.length == 0)) ||
+                 "setReadOnly".equals(name) ||
+                 "setTransactionIsolation".equals(name))) {
+                return null;
+            }
+
+            try {
+                return method.invoke(this.requestConnection.getConnection(), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * A {@link DataSource} returning the connection bound to
+     * the current request, when there is one.
+     */
+    protected class RequestScopedDataSource implements DataSource {
+
+        private final DataSource delegate;
+
+        public RequestScopedDataSource(DataSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            RequestConnection requestConnection = RequestConnectionManager.this.currentRequestConnection.get();
+            if (requestConnection == null) {
+                return this.delegate.getConnection();
+            }
+            return requestConnection.getHandle(this.delegate);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return this.delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            this.delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            this.delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return this.delegate.getLoginTimeout();
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return this.delegate.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(this)) {
+                return iface.cast(this);
+            }
+            return this.delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(this) || this.delegate.isWrapperFor(iface);
+        }
+    }
+}
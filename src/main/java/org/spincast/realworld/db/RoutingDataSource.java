@@ -0,0 +1,176 @@
+package org.spincast.realworld.db;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Returns connections to a replica, or to the read pool,
+ * when the {@link ReplicaRouting} allows it, and to the
+ * primary otherwise.
+ * <p>
+ * The replicas are used in turn. If a replica can't
+ * provide a connection, the primary is used and that
+ * replica is skipped for a back-off period, so the
+ * following requests don't wait for it too.
+ */
+public class RoutingDataSource implements DataSource {
+
+    protected final Logger logger = LoggerFactory.getLogger(RoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final ReplicaRouting replicaRouting;
+    private final boolean lagging;
+    private final long unhealthyNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * The <code>System.nanoTime()</code> until which each
+     * replica is skipped, <code>0</code> if it is healthy.
+     */
+    private final AtomicLongArray unhealthyUntilNanos;
+
+    /**
+     * @param replicas the replicas, or the read pool.
+     * @param lagging <code>true</code> if those are actual
+     * replicas, which may lag behind the primary.
+     * @param unhealthyMillis for how long a replica that
+     * failed to provide a connection is skipped.
+     */
+    public RoutingDataSource(DataSource primary,
+                             List<DataSource> replicas,
+                             boolean lagging,
+                             ReplicaRouting replicaRouting,
+                             long unhealthyMillis) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.lagging = lagging;
+        this.replicaRouting = replicaRouting;
+        this.unhealthyNanos = TimeUnit.MILLISECONDS.toNanos(unhealthyMillis);
+        this.unhealthyUntilNanos = new AtomicLongArray(replicas.size());
+    }
+
+    protected DataSource getPrimary() {
+        return this.primary;
+    }
+
+    protected List<DataSource> getReplicas() {
+        return this.replicas;
+    }
+
+    protected boolean isLagging() {
+        return this.lagging;
+    }
+
+    protected ReplicaRouting getReplicaRouting() {
+        return this.replicaRouting;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (getReplicas().size() == 0 || !getReplicaRouting().isReplicaAllowed()) {
+            return getPrimary().getConnection();
+        }
+
+        int pos = nextHealthyReplica();
+        if (pos < 0) {
+            return getPrimary().getConnection();
+        }
+
+        Connection connection;
+        try {
+            connection = getReplicas().get(pos).getConnection();
+        } catch (SQLException ex) {
+            this.logger.warn("Replica #" + pos + " unavailable, using the primary : " + ex.getMessage());
+            markUnhealthy(pos);
+            return getPrimary().getConnection();
+        }
+
+        if (isLagging()) {
+            getReplicaRouting().recordReplicaRead();
+        }
+        return connection;
+    }
+
+    /**
+     * The position of the next replica to use, skipping
+     * the unhealthy ones.
+     *
+     * @return <code>-1</code> if all the replicas are
+     * unhealthy.
+     */
+    protected int nextHealthyReplica() {
+        int replicasNbr = getReplicas().size();
+        int start = this.nextReplica.getAndIncrement();
+        for (int i = 0; i < replicasNbr; i++) {
+            int pos = Math.floorMod(start + i, replicasNbr);
+            if (isHealthy(pos)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    protected boolean isHealthy(int pos) {
+        long until = this.unhealthyUntilNanos.get(pos);
+        return until == 0 || System.nanoTime() - until >= 0;
+    }
+
+    protected void markUnhealthy(int pos) {
+        this.unhealthyUntilNanos.set(pos, System.nanoTime() + this.unhealthyNanos);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return getPrimary().getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        getPrimary().setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        getPrimary().setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return getPrimary().getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return getPrimary().getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return getPrimary().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || getPrimary().isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,91 @@
+package org.spincast.realworld.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A SQL statement with its named parameters
+ * (<code>:name</code>) already replaced by positional
+ * ones (<code>?</code>).
+ * <p>
+ * Parsing is done only once per statement shape, the
+ * result is then kept in the {@link SqlTemplateRegistry}.
+ */
+public class SqlTemplate {
+
+    private final String sql;
+    private final List<String> paramNames;
+
+    protected SqlTemplate(String sql, List<String> paramNames) {
+        this.sql = sql;
+        this.paramNames = Collections.unmodifiableList(paramNames);
+    }
+
+    /**
+     * The SQL to send to the driver, with positional
+     * parameters.
+     */
+    public String getSql() {
+        return this.sql;
+    }
+
+    /**
+     * The name of the parameter at each position. A name
+     * is repeated if the parameter is used more than once.
+     */
+    public List<String> getParamNames() {
+        return this.paramNames;
+    }
+
+    /**
+     * Parses a SQL statement using named parameters.
+     * <p>
+     * Casts (<code>::</code>), string literals, quoted
+     * identifiers and comments are left untouched.
+     */
+    public static SqlTemplate compile(String namedSql) {
+
+        StringBuilder sql = new StringBuilder(namedSql.length());
+        List<String> paramNames = new ArrayList<>();
+
+        int length = namedSql.length();
+        int i = 0;
+        while (i < length) {
+            char c = namedSql.charAt(i);
+
+            if (c == '\'' || c == '"') {
+                int end = namedSql.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                sql.append(namedSql, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < length && namedSql.charAt(i + 1) == '-') {
+                int end = namedSql.indexOf('\n', i);
+                end = end < 0 ? length : end;
+                sql.append(namedSql, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < length && namedSql.charAt(i + 1) == '*') {
+                int end = namedSql.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                sql.append(namedSql, i, end);
+                i = end;
+            } else if (c == ':' && i + 1 < length && namedSql.charAt(i + 1) == ':') {
+                sql.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(namedSql.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < length && Character.isJavaIdentifierPart(namedSql.charAt(end))) {
+                    end++;
+                }
+                paramNames.add(namedSql.substring(i + 1, end));
+                sql.append('?');
+                i = end;
+            } else {
+                sql.append(c);
+                i++;
+            }
+        }
+
+        return new SqlTemplate(sql.toString(), paramNames);
+    }
+}
@@ -0,0 +1,74 @@
+package org.spincast.realworld.db;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps the parsed {@link SqlTemplate}, keyed by the
+ * SQL using named parameters.
+ * <p>
+ * Since the values are always bound and never inlined,
+ * this SQL only varies with the shape of the query (for
+ * example, which optional filters are active), so the
+ * number of entries stays small.
+ */
+public class SqlTemplateRegistry {
+
+    /**
+     * Protects against a query inlining values by
+     * mistake.
+     */
+    protected static final int MAX_TEMPLATES = 1000;
+
+    private final Cache<String, SqlTemplate> templates = CacheBuilder.newBuilder()
+                                                                     .maximumSize(MAX_TEMPLATES)
+                                                                     .build();
+    private final LongAdder compiledNbr = new LongAdder();
+
+    protected Cache<String, SqlTemplate> getTemplates() {
+        return this.templates;
+    }
+
+    public SqlTemplate getTemplate(String namedSql) {
+        SqlTemplate template = getTemplates().getIfPresent(namedSql);
+        if (template != null) {
+            return template;
+        }
+
+        try {
+            return getTemplates().get(namedSql, () -> {
+                this.compiledNbr.increment();
+                return SqlTemplate.compile(namedSql);
+            });
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Called before a statement is run. Does nothing by
+     * default : can be overridden to inspect the statements
+     * of the repositories, for example to validate their
+     * plans.
+     */
+    public void beforeExecute(TemplateStatement statement) {
+        // nothing by default
+    }
+
+    /**
+     * Number of distinct query shapes currently kept.
+     */
+    public long getTemplatesNbr() {
+        return getTemplates().size();
+    }
+
+    /**
+     * Number of times a query had to be parsed.
+     */
+    public long getCompiledNbr() {
+        return this.compiledNbr.sum();
+    }
+}
@@ -0,0 +1,359 @@
+package org.spincast.realworld.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.spincast.plugins.jdbc.SpincastResultSet;
+import org.spincast.plugins.jdbc.statements.ResultSetHandler;
+
+import com.google.common.primitives.Primitives;
+
+/**
+ * A statement using named parameters, like the Spincast
+ * JDBC statements, but which parses its SQL only once per
+ * shape, using the {@link SqlTemplateRegistry}.
+ * <p>
+ * Lists are bound as a single array parameter, to be used
+ * with <code>= ANY(:ids)</code> or <code>UNNEST(:ids)</code>,
+ * so the SQL doesn't change with the number of elements
+ * and the driver can reuse its server-side prepared
+ * statements.
+ */
+public class TemplateStatement {
+
+    /**
+     * The suffixes of the {@link SpincastResultSet} helpers.
+     */
+    protected static final String[] HELPER_SUFFIXES = {"OrNull", "OrZero", "OrFalse"};
+
+    private final Connection connection;
+    private final SqlTemplateRegistry sqlTemplateRegistry;
+    private final StringBuilder namedSql = new StringBuilder(256);
+    private final Map<String, ParamBinder> params = new HashMap<>();
+    private int fetchSize = 0;
+
+    public TemplateStatement(Connection connection, SqlTemplateRegistry sqlTemplateRegistry) {
+        this.connection = connection;
+        this.sqlTemplateRegistry = sqlTemplateRegistry;
+    }
+
+    protected Connection getConnection() {
+        return this.connection;
+    }
+
+    protected SqlTemplateRegistry getSqlTemplateRegistry() {
+        return this.sqlTemplateRegistry;
+    }
+
+    /**
+     * Appends SQL to the statement.
+     */
+    public void sql(String sql) {
+        this.namedSql.append(sql);
+    }
+
+    /**
+     * The SQL, using named parameters.
+     */
+    public String getNamedSql() {
+        return this.namedSql.toString();
+    }
+
+    public void setString(String name, String value) {
+        this.params.put(name, (stm, pos) -> stm.setString(pos, value));
+    }
+
+    public void setLong(String name, Long value) {
+        this.params.put(name, (stm, pos) -> {
+            if (value == null) {
+                stm.setNull(pos, Types.BIGINT);
+            } else {
+                stm.setLong(pos, value);
+            }
+        });
+    }
+
+    public void setInteger(String name, Integer value) {
+        this.params.put(name, (stm, pos) -> {
+            if (value == null) {
+                stm.setNull(pos, Types.INTEGER);
+            } else {
+                stm.setInt(pos, value);
+            }
+        });
+    }
+
+    public void setBoolean(String name, Boolean value) {
+        this.params.put(name, (stm, pos) -> {
+            if (value == null) {
+                stm.setNull(pos, Types.BOOLEAN);
+            } else {
+                stm.setBoolean(pos, value);
+            }
+        });
+    }
+
+    public void setInstant(String name, Instant value) {
+        this.params.put(name, (stm, pos) -> stm.setTimestamp(pos, value != null ? Timestamp.from(value) : null));
+    }
+
+    /**
+     * Binds the values as a <code>bigint[]</code>.
+     */
+    public void setLongArray(String name, Collection<Long> values) {
+        this.params.put(name, (stm, pos) -> {
+            Array array = getConnection().createArrayOf("bigint", values.toArray());
+            stm.setArray(pos, array);
+        });
+    }
+
+    /**
+     * Binds the values as a <code>varchar[]</code>.
+     */
+    public void setStringArray(String name, Collection<String> values) {
+        this.params.put(name, (stm, pos) -> {
+            Array array = getConnection().createArrayOf("varchar", values.toArray());
+            stm.setArray(pos, array);
+        });
+    }
+
+    /**
+     * The number of rows fetched at once. When the connection
+     * is not in auto-commit mode, the driver then uses a
+     * server-side cursor instead of loading all the rows
+     * in memory.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public <T> T selectOne(ResultSetHandler<T> handler) {
+        List<T> results = select(handler, 1);
+        return results.size() > 0 ? results.get(0) : null;
+    }
+
+    public <T> List<T> selectList(ResultSetHandler<T> handler) {
+        return select(handler, 0);
+    }
+
+    public int update() {
+        try (PreparedStatement stm = prepare(null)) {
+            return stm.executeUpdate();
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    public int delete() {
+        return update();
+    }
+
+    public int insert() {
+        return update();
+    }
+
+    public long insertGetGeneratedId(String idColumnName) {
+        try (PreparedStatement stm = prepare(new String[]{idColumnName})) {
+            stm.executeUpdate();
+            try (ResultSet rs = stm.getGeneratedKeys()) {
+                if (!rs.next()) {
+                    throw new RuntimeException("No generated id returned");
+                }
+                return rs.getLong(1);
+            }
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Returns the plan of the statement, as JSON, using the
+     * bound values. The statement itself is not run.
+     */
+    public String explain() {
+        try (PreparedStatement stm = prepare("EXPLAIN (FORMAT JSON) ", null);
+                ResultSet rs = stm.executeQuery()) {
+            if (!rs.next()) {
+                throw new RuntimeException("No plan returned for : " + this.namedSql);
+            }
+            return rs.getString(1);
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected <T> List<T> select(ResultSetHandler<T> handler, int maxRows) {
+        try (PreparedStatement stm = prepare(null)) {
+            if (maxRows > 0) {
+                stm.setMaxRows(maxRows);
+            }
+            if (this.fetchSize > 0) {
+                stm.setFetchSize(this.fetchSize);
+            }
+            List<T> results = new ArrayList<>();
+            try (ResultSet rs = stm.executeQuery()) {
+                SpincastResultSet spincastRs = wrapResultSet(rs);
+                while (rs.next()) {
+                    T result = handler.handle(spincastRs);
+                    if (result != null) {
+                        results.add(result);
+                    }
+                }
+            }
+            return results;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected PreparedStatement prepare(String[] generatedColumns) throws SQLException {
+        getSqlTemplateRegistry().beforeExecute(this);
+        return prepare("", generatedColumns);
+    }
+
+    protected PreparedStatement prepare(String sqlPrefix, String[] generatedColumns) throws SQLException {
+
+        SqlTemplate template = getSqlTemplateRegistry().getTemplate(this.namedSql.toString());
+        String sql = sqlPrefix + template.getSql();
+
+        PreparedStatement stm = generatedColumns != null ? getConnection().prepareStatement(sql, generatedColumns)
+                                                         : getConnection().prepareStatement(sql);
+        try {
+            int pos = 1;
+            for (String paramName : template.getParamNames()) {
+                ParamBinder binder = this.params.get(paramName);
+                if (binder == null) {
+                    throw new RuntimeException("No value for the parameter '" + paramName + "' in : " + this.namedSql);
+                }
+                binder.bind(stm, pos++);
+            }
+        } catch (SQLException | RuntimeException ex) {
+            stm.close();
+            throw ex;
+        }
+        return stm;
+    }
+
+    /**
+     * Adds the Spincast helpers to a plain {@link ResultSet},
+     * so the existing {@link ResultSetHandler} can be used.
+     */
+    protected SpincastResultSet wrapResultSet(ResultSet rs) {
+        return (SpincastResultSet)Proxy.newProxyInstance(TemplateStatement.class.getClassLoader(),
+                                                         new Class<?>[]{SpincastResultSet.class},
+                                                         new SpincastResultSetHandler(rs));
+    }
+
+    @FunctionalInterface
+    protected static interface ParamBinder {
+
+        public void bind(PreparedStatement stm, int pos) throws SQLException;
+    }
+
+    /**
+     * Implements the {@link SpincastResultSet} helpers over a
+     * plain {@link ResultSet}.
+     * <p>
+     * The methods of {@link ResultSet} itself are delegated.
+     * A helper like <code>getXxxOrNull(column)</code>,
+     * <code>getXxxOrZero(column)</code> or
+     * <code>getXxxOrFalse(column)</code> is delegated to the
+     * matching <code>getXxx(column)</code> getter, the SQL
+     * <code>NULL</code> being converted as its name says.
+     */
+    protected static class SpincastResultSetHandler implements InvocationHandler {
+
+        private final ResultSet rs;
+
+        public SpincastResultSetHandler(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            Method target = method;
+            boolean nullIfWasNull = false;
+
+            if (method.getDeclaringClass() == SpincastResultSet.class) {
+                if ("getInstant".equals(method.getName())) {
+                    Timestamp value = (Timestamp)invokeOn(this.rs,
+                                                          ResultSet.class.getMethod("getTimestamp", method.getParameterTypes()),
+                                                          args);
+                    return value != null ? value.toInstant() : null;
+                }
+
+                target = findResultSetGetter(method);
+                if (target == null) {
+                    throw new SQLFeatureNotSupportedException("Not supported on this result set : " + method);
+                }
+                nullIfWasNull = method.getName().endsWith("OrNull");
+            }
+
+            Object value = invokeOn(this.rs, target, args);
+            if (nullIfWasNull && this.rs.wasNull()) {
+                return null;
+            }
+            return value;
+        }
+
+        protected Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        /**
+         * The {@link ResultSet} getter a helper delegates to :
+         * <code>getLongOrZero(String)</code> to
+         * <code>getLong(String)</code>,
+         * <code>getIntegerOrNull(String)</code> to
+         * <code>getInt(String)</code>, etc.
+         *
+         * @return <code>null</code> if there is none.
+         */
+        protected Method findResultSetGetter(Method helper) {
+            String name = helper.getName();
+            for (String suffix : HELPER_SUFFIXES) {
+                if (name.endsWith(suffix)) {
+                    name = name.substring(0, name.length() - suffix.length());
+                    break;
+                }
+            }
+            if ("getInteger".equals(name)) {
+                name = "getInt";
+            }
+
+            try {
+                Method getter = ResultSet.class.getMethod(name, helper.getParameterTypes());
+                return isAssignable(helper.getReturnType(), getter.getReturnType()) ? getter : null;
+            } catch (NoSuchMethodException ex) {
+                return null;
+            }
+        }
+
+        protected boolean isAssignable(Class<?> to, Class<?> from) {
+            return Primitives.wrap(to).isAssignableFrom(Primitives.wrap(from));
+        }
+    }
+}
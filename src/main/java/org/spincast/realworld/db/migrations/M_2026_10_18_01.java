@@ -0,0 +1,36 @@
+package org.spincast.realworld.db.migrations;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.spincast.plugins.flywayutils.SpincastFlywayMigrationBase;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.statements.UpdateStatement;
+
+import com.google.inject.Inject;
+
+/**
+ * Index for the keyset pagination of the articles.
+ */
+public class M_2026_10_18_01 extends SpincastFlywayMigrationBase {
+
+    @Inject
+    public M_2026_10_18_01(DataSource dataSource,
+                           JdbcUtils jdbcUtils) {
+        super(dataSource, jdbcUtils);
+    }
+
+    @Override
+    protected void runMigration(Connection connection) {
+
+        //==========================================
+        // Matches the "ORDER BY creation_date DESC, id DESC"
+        // and the (creation_date, id) seek predicate of
+        // the listings.
+        //==========================================
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE INDEX articles_creation_date_id_idx ON articles(creation_date DESC, id DESC)");
+        stm.update();
+    }
+}
@@ -0,0 +1,46 @@
+package org.spincast.realworld.db.migrations;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.spincast.plugins.flywayutils.SpincastFlywayMigrationBase;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.statements.UpdateStatement;
+
+import com.google.inject.Inject;
+
+/**
+ * Denormalized number of favorites of the articles.
+ */
+public class M_2026_10_18_02 extends SpincastFlywayMigrationBase {
+
+    @Inject
+    public M_2026_10_18_02(DataSource dataSource,
+                           JdbcUtils jdbcUtils) {
+        super(dataSource, jdbcUtils);
+    }
+
+    @Override
+    protected void runMigration(Connection connection) {
+
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("ALTER TABLE articles " +
+                "ADD COLUMN favorites_count INTEGER NOT NULL DEFAULT 0 CHECK (favorites_count >= 0)");
+        stm.update();
+
+        //==========================================
+        // Backfill from the existing favorites
+        //==========================================
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("UPDATE articles " +
+                "SET favorites_count = counts.nbr " +
+                "FROM ( " +
+                "   SELECT article_id, COUNT(*) AS nbr " +
+                "   FROM favorites " +
+                "   GROUP BY article_id " +
+                ") counts " +
+                "WHERE counts.article_id = articles.id ");
+        stm.update();
+    }
+}
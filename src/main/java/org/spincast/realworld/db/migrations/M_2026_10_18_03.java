@@ -0,0 +1,50 @@
+package org.spincast.realworld.db.migrations;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.spincast.plugins.flywayutils.SpincastFlywayMigrationBase;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.statements.UpdateStatement;
+
+import com.google.inject.Inject;
+
+/**
+ * Indexes matching the filters and the sorts of the
+ * articles and comments listings.
+ */
+public class M_2026_10_18_03 extends SpincastFlywayMigrationBase {
+
+    @Inject
+    public M_2026_10_18_03(DataSource dataSource,
+                           JdbcUtils jdbcUtils) {
+        super(dataSource, jdbcUtils);
+    }
+
+    @Override
+    protected void runMigration(Connection connection) {
+
+        //==========================================
+        // Articles of an author, and the feed, in
+        // listing order.
+        //==========================================
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE INDEX articles_author_id_creation_date_id_idx " +
+                "ON articles(author_id, creation_date DESC, id DESC)");
+        stm.update();
+
+        //==========================================
+        // Comments of an article, in listing order.
+        // It replaces the index on "article_id" only.
+        //==========================================
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE INDEX comments_article_id_creation_date_idx " +
+                "ON comments(article_id, creation_date DESC)");
+        stm.update();
+
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("DROP INDEX IF EXISTS comments_article_id_idx");
+        stm.update();
+    }
+}
@@ -0,0 +1,55 @@
+package org.spincast.realworld.db.migrations;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.spincast.plugins.flywayutils.SpincastFlywayMigrationBase;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.statements.UpdateStatement;
+
+import com.google.inject.Inject;
+
+/**
+ * Counters used to allocate unique slugs.
+ */
+public class M_2026_10_18_04 extends SpincastFlywayMigrationBase {
+
+    @Inject
+    public M_2026_10_18_04(DataSource dataSource,
+                           JdbcUtils jdbcUtils) {
+        super(dataSource, jdbcUtils);
+    }
+
+    @Override
+    protected void runMigration(Connection connection) {
+
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE TABLE slug_counters (" +
+                "   base_slug VARCHAR(512) PRIMARY KEY, " +
+                "   counter INTEGER NOT NULL " +
+                ")");
+        stm.update();
+
+        //==========================================
+        // Backfill from the existing slugs. A slug
+        // ending with "-[number]" may have been generated
+        // from the base without the number or be a base
+        // itself, so both are counted.
+        //==========================================
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("INSERT INTO slug_counters(base_slug, counter) " +
+                "SELECT base_slug, MAX(nbr) " +
+                "FROM ( " +
+                "   SELECT slug AS base_slug, 1 AS nbr " +
+                "   FROM articles " +
+                "   UNION ALL " +
+                "   SELECT regexp_replace(slug, '-[0-9]{1,9}$', '') AS base_slug, " +
+                "          substring(slug FROM '-([0-9]{1,9})$')::integer AS nbr " +
+                "   FROM articles " +
+                "   WHERE slug ~ '-[0-9]{1,9}$' " +
+                ") slugs " +
+                "GROUP BY base_slug ");
+        stm.update();
+    }
+}
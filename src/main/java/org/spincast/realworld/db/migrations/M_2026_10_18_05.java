@@ -0,0 +1,88 @@
+package org.spincast.realworld.db.migrations;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.spincast.plugins.flywayutils.SpincastFlywayMigrationBase;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.statements.UpdateStatement;
+
+import com.google.inject.Inject;
+
+/**
+ * Materialized home timelines, used by the feed.
+ */
+public class M_2026_10_18_05 extends SpincastFlywayMigrationBase {
+
+    @Inject
+    public M_2026_10_18_05(DataSource dataSource,
+                           JdbcUtils jdbcUtils) {
+        super(dataSource, jdbcUtils);
+    }
+
+    @Override
+    protected void runMigration(Connection connection) {
+        createTimelinesTable(connection);
+        createTimelinePullAuthorsTable(connection);
+        backfillTimelines(connection);
+    }
+
+    protected void createTimelinesTable(Connection connection) {
+
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+
+        //==========================================
+        // The author and the creation date are copied
+        // from the article so the feed can be read
+        // and pruned without joining "articles".
+        //==========================================
+        stm.sql("CREATE TABLE timelines (" +
+                "   user_id INTEGER NOT NULL REFERENCES users(id), " +
+                "   article_id INTEGER NOT NULL REFERENCES articles(id), " +
+                "   author_id INTEGER NOT NULL REFERENCES users(id), " +
+                "   creation_date TIMESTAMPTZ NOT NULL, " +
+                "   PRIMARY KEY (user_id, article_id) " +
+                ")");
+        stm.update();
+
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE INDEX timelines_user_id_creation_date_article_id_idx " +
+                "ON timelines(user_id, creation_date DESC, article_id DESC)");
+        stm.update();
+
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE INDEX ON timelines(article_id)");
+        stm.update();
+
+        stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE INDEX ON timelines(author_id, user_id)");
+        stm.update();
+    }
+
+    /**
+     * Authors with so many followers that their articles
+     * are not copied to the timelines but merged when the
+     * feeds are read.
+     */
+    protected void createTimelinePullAuthorsTable(Connection connection) {
+
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("CREATE TABLE timeline_pull_authors (" +
+                "   author_id INTEGER PRIMARY KEY REFERENCES users(id), " +
+                "   creation_date TIMESTAMPTZ NOT NULL DEFAULT clock_timestamp() " +
+                ")");
+        stm.update();
+    }
+
+    protected void backfillTimelines(Connection connection) {
+
+        UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+        stm.sql("INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                "SELECT followings.source_user_id, articles.id, articles.author_id, articles.creation_date " +
+                "FROM followings " +
+                "INNER JOIN articles " +
+                "ON articles.author_id = followings.target_user_id ");
+        stm.update();
+    }
+}
@@ -0,0 +1,38 @@
+package org.spincast.realworld.exceptions;
+
+import org.spincast.core.exceptions.PublicExceptionNoLog;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+/**
+ * The response has a "Retry-After" header, so the clients
+ * know when to try again.
+ */
+public class ServiceUnavailableException extends PublicExceptionNoLog {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    private final int retryAfterSeconds;
+
+    public ServiceUnavailableException() {
+        this("The server is busy, please try again later.");
+    }
+
+    public ServiceUnavailableException(String msg) {
+        this(msg, DEFAULT_RETRY_AFTER_SECONDS);
+    }
+
+    public ServiceUnavailableException(String msg, int retryAfterSeconds) {
+        super(msg, HttpStatus.SC_SERVICE_UNAVAILABLE);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * The number of seconds the client should wait before
+     * trying again.
+     */
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+}
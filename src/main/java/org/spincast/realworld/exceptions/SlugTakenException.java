@@ -0,0 +1,14 @@
+package org.spincast.realworld.exceptions;
+
+/**
+ * Thrown by the repositories when the slug of an article
+ * is already used by another one.
+ */
+public class SlugTakenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SlugTakenException(String slug, Throwable cause) {
+        super("The slug is already taken : " + slug, cause);
+    }
+}
@@ -12,6 +12,12 @@ import com.google.inject.Inject;
 
 /**
  * JWT validation filter.
+ * <p>
+ * The "Authorization" header is parsed and the token
+ * decoded once per request, by {@link #saveJwt(DefaultRequestContext)}.
+ * The validation is a distinct filter only so the public
+ * routes can skip it : it reuses the result of the first
+ * one.
  */
 public class AuthFilter {
 
@@ -30,19 +36,20 @@ public class AuthFilter {
      * If present, saves the JWT as a request variable.
      */
     public void saveJwt(DefaultRequestContext context) {
-        DecodedJWT decodedJwt = null;
         String jwt = extractJwt(context);
-        if (!StringUtils.isBlank(jwt)) {
-            decodedJwt = getUserService().decodeJwt(jwt);
+        if (StringUtils.isBlank(jwt)) {
+            return;
         }
+        context.variables().set(AppConstants.CONTEXT_VARIABLES_JWT_PROVIDED, true);
+
+        DecodedJWT decodedJwt = getUserService().decodeJwt(jwt);
         if (decodedJwt != null) {
             context.variables().set(AppConstants.CONTEXT_VARIABLES_DECODED_JWT, decodedJwt);
         }
     }
 
     public void validateJwt(DefaultRequestContext context) {
-        String jwt = extractJwt(context);
-        if (StringUtils.isBlank(jwt)) {
+        if (context.variables().get(AppConstants.CONTEXT_VARIABLES_JWT_PROVIDED) == null) {
             throw new UnauthorizeException();
         }
         DecodedJWT decodedJwt = (DecodedJWT)context.variables().get(AppConstants.CONTEXT_VARIABLES_DECODED_JWT);
@@ -0,0 +1,108 @@
+package org.spincast.realworld.filters;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spincast.core.config.SpincastConstants.RequestScopedVariables;
+import org.spincast.core.exchange.DefaultRequestContext;
+import org.spincast.core.routing.HttpMethod;
+import org.spincast.realworld.configs.AppConstants;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.db.RequestConnectionManager;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.inject.Inject;
+
+/**
+ * Binds a database connection to the current request
+ * and releases it once the request has been processed.
+ */
+public class RequestConnectionFilter {
+
+    protected final Logger logger = LoggerFactory.getLogger(RequestConnectionFilter.class);
+
+    private final RequestConnectionManager requestConnectionManager;
+    private final ReplicaRouting replicaRouting;
+
+    @Inject
+    public RequestConnectionFilter(RequestConnectionManager requestConnectionManager,
+                                   ReplicaRouting replicaRouting) {
+        this.requestConnectionManager = requestConnectionManager;
+        this.replicaRouting = replicaRouting;
+    }
+
+    protected RequestConnectionManager getRequestConnectionManager() {
+        return this.requestConnectionManager;
+    }
+
+    protected ReplicaRouting getReplicaRouting() {
+        return this.replicaRouting;
+    }
+
+    /**
+     * "GET" and "HEAD" requests are read-only and use
+     * a single snapshot for all their queries. They may
+     * be sent to a replica.
+     */
+    public void bind(DefaultRequestContext context) {
+        boolean readOnly = isReadOnly(context);
+        getReplicaRouting().begin(readOnly, getUserKey(context));
+        getRequestConnectionManager().begin(readOnly);
+    }
+
+    protected boolean isReadOnly(DefaultRequestContext context) {
+        HttpMethod method = context.request().getHttpMethod();
+        return method == HttpMethod.GET || method == HttpMethod.HEAD;
+    }
+
+    /**
+     * The user the writes are tracked for, from the JWT.
+     */
+    protected String getUserKey(DefaultRequestContext context) {
+        DecodedJWT decodedJwt = (DecodedJWT)context.variables().get(AppConstants.CONTEXT_VARIABLES_DECODED_JWT);
+        if (decodedJwt == null) {
+            return null;
+        }
+
+        //==========================================
+        // The id doesn't change when the user is renamed.
+        //==========================================
+        Long userId = decodedJwt.getClaim(AppConstants.JWT_CLAIMS_USER_ID).asLong();
+        if (userId != null) {
+            return String.valueOf(userId);
+        }
+        return decodedJwt.getClaim(AppConstants.JWT_CLAIMS_USERNAME).asString();
+    }
+
+    /**
+     * Commits or rolls back the work of the request,
+     * depending on whether an exception occured, and
+     * returns the connection to the pool.
+     */
+    public void release(DefaultRequestContext context) {
+        boolean success = context.variables().get(RequestScopedVariables.EXCEPTION) == null;
+        long poolWaitNanos = getRequestConnectionManager().end(success);
+
+        //==========================================
+        // After a write, the user reads from the primary
+        // for a while, so the replicas have time to
+        // catch up.
+        //==========================================
+        getReplicaRouting().end();
+        String userKey = getUserKey(context);
+        if (userKey != null && !isReadOnly(context)) {
+            getReplicaRouting().recordWrite(userKey);
+        }
+
+        if (poolWaitNanos < 0) {
+            return;
+        }
+
+        long poolWaitMicros = TimeUnit.NANOSECONDS.toMicros(poolWaitNanos);
+        context.variables().set(AppConstants.CONTEXT_VARIABLES_POOL_WAIT_MICROS, poolWaitMicros);
+        if (this.logger.isTraceEnabled()) {
+            this.logger.trace("Pool wait for " + context.request().getRequestPath() + " : " + poolWaitMicros + " us");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.spincast.realworld.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the metrics of the application and formats
+ * them using the Prometheus text format.
+ * <p>
+ * A metric is identified by its name and its labels,
+ * passed as alternating names and values.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Buckets for durations, in seconds.
+     */
+    public static final double[] DURATION_BUCKETS = new double[]{0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+                                                                 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /**
+     * Buckets for numbers of rows.
+     */
+    public static final double[] ROWS_BUCKETS = new double[]{0, 1, 5, 10, 20, 50, 100, 500, 1000, 10000};
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter)getFamily(name, help, "counter").getOrCreate(formatLabels(labels), () -> new Counter());
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram)getFamily(name, help, "histogram").getOrCreate(formatLabels(labels), () -> new Histogram(buckets));
+    }
+
+    /**
+     * Registers a gauge which value is read each time the
+     * metrics are exported.
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        getFamily(name, help, "gauge").put(formatLabels(labels), new Gauge(supplier));
+    }
+
+    protected Family getFamily(String name, String help, String type) {
+        Family family = this.families.get(name);
+        if (family == null) {
+            family = this.families.computeIfAbsent(name, k -> new Family(name, help, type));
+        }
+        return family;
+    }
+
+    /**
+     * The metrics, in the Prometheus text format.
+     */
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder(8192);
+        for (Family family : this.families.values()) {
+            builder.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> entry : family.metrics.entrySet()) {
+                entry.getValue().write(builder, family.name, entry.getKey());
+            }
+        }
+        return builder.toString();
+    }
+
+    protected String formatLabels(String... labels) {
+        if (labels == null || labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("The labels must be names and values pairs");
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"");
+            String value = labels[i + 1] != null ? labels[i + 1] : "";
+            builder.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+            builder.append('"');
+        }
+        return builder.toString();
+    }
+
+    protected static String formatValue(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long)value);
+        }
+        return Double.toString(value);
+    }
+
+    protected static void writeSample(StringBuilder builder, String name, String labels, double value) {
+        builder.append(name);
+        if (labels.length() > 0) {
+            builder.append('{').append(labels).append('}');
+        }
+        builder.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    protected static class Family {
+
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+        public Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        public Metric getOrCreate(String labels, Supplier<Metric> factory) {
+            Metric metric = this.metrics.get(labels);
+            if (metric == null) {
+                metric = this.metrics.computeIfAbsent(labels, k -> factory.get());
+            }
+            return metric;
+        }
+
+        public void put(String labels, Metric metric) {
+            this.metrics.put(labels, metric);
+        }
+    }
+
+    protected static interface Metric {
+
+        public void write(StringBuilder builder, String name, String labels);
+    }
+
+    public static class Counter implements Metric {
+
+        private final DoubleAdder value = new DoubleAdder();
+
+        public void inc() {
+            this.value.add(1);
+        }
+
+        public void inc(double amount) {
+            this.value.add(amount);
+        }
+
+        @Override
+        public void write(StringBuilder builder, String name, String labels) {
+            writeSample(builder, name, labels, this.value.sum());
+        }
+    }
+
+    public static class Gauge implements Metric {
+
+        private final DoubleSupplier supplier;
+
+        public Gauge(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void write(StringBuilder builder, String name, String labels) {
+            writeSample(builder, name, labels, this.supplier.getAsDouble());
+        }
+    }
+
+    public static class Histogram implements Metric {
+
+        private final double[] buckets;
+        private final LongAdder[] bucketCounts;
+        private final DoubleAdder sum = new DoubleAdder();
+        private final LongAdder count = new LongAdder();
+
+        public Histogram(double[] buckets) {
+            this.buckets = buckets;
+            this.bucketCounts = new LongAdder[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                this.bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            for (int i = 0; i < this.buckets.length; i++) {
+                if (value <= this.buckets[i]) {
+                    this.bucketCounts[i].increment();
+                    break;
+                }
+            }
+            this.sum.add(value);
+            this.count.increment();
+        }
+
+        @Override
+        public void write(StringBuilder builder, String name, String labels) {
+            String prefix = labels.length() > 0 ? labels + "," : "";
+            long cumulative = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                cumulative += this.bucketCounts[i].sum();
+                writeSample(builder, name + "_bucket", prefix + "le=\"" + formatValue(this.buckets[i]) + "\"", cumulative);
+            }
+            writeSample(builder, name + "_bucket", prefix + "le=\"+Inf\"", this.count.sum());
+            writeSample(builder, name + "_sum", labels, this.sum.sum());
+            writeSample(builder, name + "_count", labels, this.count.sum());
+        }
+    }
+}
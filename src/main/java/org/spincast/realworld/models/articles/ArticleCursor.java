@@ -0,0 +1,86 @@
+package org.spincast.realworld.models.articles;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position of an article in a listing sorted by
+ * creation date and id, both descending.
+ * <p>
+ * Used for keyset pagination : the next page starts
+ * right after the article this cursor points to, no
+ * matter how deep in the listing it is.
+ * <p>
+ * Sent to the clients as an opaque string.
+ */
+public class ArticleCursor {
+
+    private final Instant createdAt;
+    private final long id;
+
+    public ArticleCursor(Instant createdAt, long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    /**
+     * Creates a cursor pointing to the specified article.
+     */
+    public static ArticleCursor of(Article article) {
+        return new ArticleCursor(article.getCreatedAt(), article.getId());
+    }
+
+    /**
+     * Decodes a cursor previously created with
+     * {@link #encode()}.
+     *
+     * @return <code>null</code> if the cursor is
+     * not valid.
+     */
+    public static ArticleCursor decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int pos = decoded.indexOf(':');
+            if (pos < 1) {
+                return null;
+            }
+
+            long epochMicros = Long.parseLong(decoded.substring(0, pos));
+            long id = Long.parseLong(decoded.substring(pos + 1));
+
+            Instant createdAt = Instant.ofEpochSecond(Math.floorDiv(epochMicros, 1000000L),
+                                                      Math.floorMod(epochMicros, 1000000L) * 1000L);
+            return new ArticleCursor(createdAt, id);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    public Instant getCreatedAt() {
+        return this.createdAt;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * The creation date is kept at the microsecond
+     * precision, as stored by Postgres.
+     */
+    public String encode() {
+        long epochMicros = Math.addExact(Math.multiplyExact(getCreatedAt().getEpochSecond(), 1000000L),
+                                         getCreatedAt().getNano() / 1000L);
+        String raw = epochMicros + ":" + getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
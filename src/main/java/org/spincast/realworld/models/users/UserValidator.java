@@ -44,6 +44,25 @@ public class UserValidator {
      * not valid.
      */
     public void validateUser(User user, String rawPassword, User currentUser, boolean isNewUser) {
+        boolean validatePassword = currentUser == null || rawPassword != null;
+        validateUser(user, rawPassword, validatePassword, currentUser, isNewUser);
+    }
+
+    /**
+     * Validate a {@link User}.
+     *
+     * @param validatePassword <code>false</code> if the
+     * password is already hashed, for example when the user
+     * is imported.
+     *
+     * @throws {@link ValidationErrorsException} if something is
+     * not valid.
+     */
+    public void validateUser(User user,
+                             String rawPassword,
+                             boolean validatePassword,
+                             User currentUser,
+                             boolean isNewUser) {
 
         List<ValidationError> errors = new ArrayList<>();
 
@@ -71,7 +90,6 @@ public class UserValidator {
                                            "The username contains whitespaces or invalid characters: " + user.getUsername()));
         }
 
-        boolean validatePassword = currentUser == null || rawPassword != null;
         if (validatePassword && (rawPassword == null ||
                                  rawPassword.length() < 6 ||
                                  rawPassword.length() > 255)) {
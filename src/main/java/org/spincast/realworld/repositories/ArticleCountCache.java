@@ -0,0 +1,241 @@
+package org.spincast.realworld.repositories;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.db.RequestConnectionManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Caches the total number of articles of the listings,
+ * per combination of filters, so paginating doesn't
+ * require a full count on every page.
+ * <p>
+ * The repositories invalidate the affected totals when
+ * they modify the data. The entries also expire after a
+ * configurable delay.
+ * <p>
+ * A total is only cached if no invalidation occured since
+ * the data it was computed from was read. When the
+ * request uses a read-only snapshot, this is when the
+ * snapshot was taken, not when the count was run. A
+ * total read from a replica is never cached : the replica
+ * may not have replayed the last invalidated changes yet.
+ */
+public class ArticleCountCache {
+
+    private final AppConfig appConfig;
+    private final RequestConnectionManager requestConnectionManager;
+    private final ReplicaRouting replicaRouting;
+    private final Cache<CountKey, Long> counts;
+
+    /**
+     * The moment of the last invalidation, as given by
+     * {@link System#nanoTime()}.
+     */
+    private final AtomicLong lastInvalidationNanos = new AtomicLong(System.nanoTime());
+
+    @Inject
+    public ArticleCountCache(AppConfig appConfig,
+                             RequestConnectionManager requestConnectionManager,
+                             ReplicaRouting replicaRouting) {
+        this.appConfig = appConfig;
+        this.requestConnectionManager = requestConnectionManager;
+        this.replicaRouting = replicaRouting;
+        this.counts = CacheBuilder.newBuilder()
+                                  .maximumSize(10000)
+                                  .expireAfterWrite(appConfig.getDbCountCacheTtlSeconds(), TimeUnit.SECONDS)
+                                  .build();
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected RequestConnectionManager getRequestConnectionManager() {
+        return this.requestConnectionManager;
+    }
+
+    protected ReplicaRouting getReplicaRouting() {
+        return this.replicaRouting;
+    }
+
+    protected Cache<CountKey, Long> getCounts() {
+        return this.counts;
+    }
+
+    /**
+     * Returns the cached total for the specified key or
+     * computes it using the <code>counter</code>.
+     */
+    public long getCount(CountKey key, LongSupplier counter) {
+        if (!getAppConfig().isDbCountCacheEnabled()) {
+            return counter.getAsLong();
+        }
+
+        Long count = getCounts().getIfPresent(key);
+        if (count != null) {
+            return count;
+        }
+
+        long readStartNanos = getReadStartNanos();
+        count = counter.getAsLong();
+        putCount(key, count, readStartNanos);
+        return count;
+    }
+
+    /**
+     * Caches a total that is known without having to
+     * count, for example when a first page is not full.
+     *
+     * @param readStartNanos the value returned by
+     * {@link #getReadStartNanos()} before the total
+     * was computed.
+     */
+    public void putCount(CountKey key, long count, long readStartNanos) {
+        if (getAppConfig().isDbCountCacheEnabled() &&
+            !getReplicaRouting().isReplicaRead() &&
+            this.lastInvalidationNanos.get() - readStartNanos < 0) {
+            getCounts().put(key, count);
+        }
+    }
+
+    /**
+     * See {@link RequestConnectionManager#getReadStartNanos()}.
+     * <p>
+     * Must be called before the first query the total
+     * depends on.
+     */
+    public long getReadStartNanos() {
+        return getRequestConnectionManager().getReadStartNanos();
+    }
+
+    public void invalidateAll() {
+        markInvalidation();
+        getCounts().invalidateAll();
+    }
+
+    public void invalidateIf(Predicate<CountKey> predicate) {
+        markInvalidation();
+        getCounts().asMap().keySet().removeIf(predicate);
+    }
+
+    protected void markInvalidation() {
+        long now = System.nanoTime();
+        this.lastInvalidationNanos.accumulateAndGet(now, (last, current) -> current - last > 0 ? current : last);
+    }
+
+    /**
+     * Invalidates the totals of the listings filtered on
+     * the articles favorited by the specified user.
+     */
+    public void invalidateFavoritedBy(String username) {
+        invalidateIf(key -> Objects.equals(key.getFavoritedByUsername(), username));
+    }
+
+    /**
+     * Invalidates the total of the feed of the specified
+     * user.
+     */
+    public void invalidateFeed(long feedOwnerId) {
+        invalidateIf(key -> Objects.equals(key.getFeedOwnerId(), feedOwnerId));
+    }
+
+    /**
+     * Invalidates the totals of all the feeds.
+     */
+    public void invalidateFeeds() {
+        invalidateIf(key -> key.getFeedOwnerId() != null);
+    }
+
+    /**
+     * Invalidates the totals depending on usernames.
+     */
+    public void invalidateUsernameFilters() {
+        invalidateIf(key -> key.getAuthorUsername() != null || key.getFavoritedByUsername() != null);
+    }
+
+    /**
+     * Invalidates the totals depending on tags.
+     */
+    public void invalidateTagFilters() {
+        invalidateIf(key -> key.getTag() != null);
+    }
+
+    /**
+     * Identifies a listing.
+     */
+    public static class CountKey {
+
+        private final String tag;
+        private final String authorUsername;
+        private final String favoritedByUsername;
+        private final Long feedOwnerId;
+
+        protected CountKey(String tag, String authorUsername, String favoritedByUsername, Long feedOwnerId) {
+            this.tag = tag;
+            this.authorUsername = authorUsername;
+            this.favoritedByUsername = favoritedByUsername;
+            this.feedOwnerId = feedOwnerId;
+        }
+
+        public static CountKey listing(String tag, String authorUsername, String favoritedByUsername) {
+            return new CountKey(tag, authorUsername, favoritedByUsername, null);
+        }
+
+        public static CountKey feed(long feedOwnerId) {
+            return new CountKey(null, null, null, feedOwnerId);
+        }
+
+        public String getTag() {
+            return this.tag;
+        }
+
+        public String getAuthorUsername() {
+            return this.authorUsername;
+        }
+
+        public String getFavoritedByUsername() {
+            return this.favoritedByUsername;
+        }
+
+        public Long getFeedOwnerId() {
+            return this.feedOwnerId;
+        }
+
+        public boolean isUnfiltered() {
+            return getTag() == null &&
+                   getAuthorUsername() == null &&
+                   getFavoritedByUsername() == null &&
+                   getFeedOwnerId() == null;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.tag, this.authorUsername, this.favoritedByUsername, this.feedOwnerId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CountKey)) {
+                return false;
+            }
+            CountKey other = (CountKey)obj;
+            return Objects.equals(this.tag, other.tag) &&
+                   Objects.equals(this.authorUsername, other.authorUsername) &&
+                   Objects.equals(this.favoritedByUsername, other.favoritedByUsername) &&
+                   Objects.equals(this.feedOwnerId, other.feedOwnerId);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.spincast.realworld.repositories;
+
+import java.time.Instant;
+import java.util.Objects;
+
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.users.User;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Caches the serialized part of the articles that is the
+ * same for all the viewers, so it is not serialized again
+ * on every request.
+ * <p>
+ * A fragment is keyed by the id of the article and its
+ * modification date, so a modified article never uses an
+ * outdated fragment. The author infos are validated on
+ * each hit since modifying a user doesn't change the
+ * modification date of their articles.
+ */
+public class ArticleFragmentCache {
+
+    private final AppConfig appConfig;
+    private final Cache<FragmentKey, ArticleFragment> fragments;
+
+    @Inject
+    public ArticleFragmentCache(AppConfig appConfig) {
+        this.appConfig = appConfig;
+        this.fragments = CacheBuilder.newBuilder()
+                                     .maximumWeight(appConfig.getJsonFragmentCacheMaxSizeMb() * 1024L * 1024L)
+                                     .<FragmentKey, ArticleFragment>weigher((key, fragment) -> fragment.getSize())
+                                     .recordStats()
+                                     .build();
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected Cache<FragmentKey, ArticleFragment> getFragments() {
+        return this.fragments;
+    }
+
+    public boolean isEnabled() {
+        return getAppConfig().isJsonFragmentCacheEnabled();
+    }
+
+    /**
+     * The cached fragment of the article.
+     *
+     * @return <code>null</code> if there is no fragment for
+     * the current version of the article and of its author.
+     */
+    public ArticleFragment get(Article article) {
+        FragmentKey key = FragmentKey.of(article);
+        if (key == null) {
+            return null;
+        }
+
+        ArticleFragment fragment = getFragments().getIfPresent(key);
+        if (fragment == null) {
+            return null;
+        }
+        if (!fragment.isSameAuthor(article.getAuthorProfile().getUser())) {
+            getFragments().invalidate(key);
+            return null;
+        }
+        return fragment;
+    }
+
+    public void put(Article article, ArticleFragment fragment) {
+        FragmentKey key = FragmentKey.of(article);
+        if (key != null) {
+            getFragments().put(key, fragment);
+        }
+    }
+
+    public void invalidateArticle(long articleId) {
+        getFragments().asMap().keySet().removeIf(key -> key.getArticleId() == articleId);
+    }
+
+    public void invalidateAuthor(long authorId) {
+        getFragments().asMap().values().removeIf(fragment -> fragment.getAuthorId() == authorId);
+    }
+
+    public long getFragmentsNbr() {
+        return getFragments().size();
+    }
+
+    public long getHitsNbr() {
+        return getFragments().stats().hitCount();
+    }
+
+    public long getMissesNbr() {
+        return getFragments().stats().missCount();
+    }
+
+    /**
+     * The UTF-8 bytes of the parts of an article that don't
+     * depend on the viewer.
+     */
+    public static class ArticleFragment {
+
+        private final byte[] head;
+        private final byte[] tail;
+        private final long authorId;
+        private final String authorUsername;
+        private final String authorBio;
+        private final String authorImage;
+
+        public ArticleFragment(byte[] head, byte[] tail, User author) {
+            this.head = head;
+            this.tail = tail;
+            this.authorId = author.getId();
+            this.authorUsername = author.getUsername();
+            this.authorBio = author.getBio();
+            this.authorImage = author.getImage();
+        }
+
+        /**
+         * The fields before "favorited".
+         */
+        public byte[] getHead() {
+            return this.head;
+        }
+
+        /**
+         * The fields after "favoritesCount", up to the
+         * "following" field of the author.
+         */
+        public byte[] getTail() {
+            return this.tail;
+        }
+
+        public long getAuthorId() {
+            return this.authorId;
+        }
+
+        public int getSize() {
+            return getHead().length + getTail().length;
+        }
+
+        public boolean isSameAuthor(User author) {
+            return author.getId() == this.authorId &&
+                   Objects.equals(author.getUsername(), this.authorUsername) &&
+                   Objects.equals(author.getBio(), this.authorBio) &&
+                   Objects.equals(author.getImage(), this.authorImage);
+        }
+    }
+
+    protected static class FragmentKey {
+
+        private final long articleId;
+        private final Instant modificationDate;
+
+        protected FragmentKey(long articleId, Instant modificationDate) {
+            this.articleId = articleId;
+            this.modificationDate = modificationDate;
+        }
+
+        /**
+         * @return <code>null</code> if the article is not
+         * saved.
+         */
+        public static FragmentKey of(Article article) {
+            if (article.getId() == null || article.getUpdatedAt() == null) {
+                return null;
+            }
+            return new FragmentKey(article.getId(), article.getUpdatedAt());
+        }
+
+        public long getArticleId() {
+            return this.articleId;
+        }
+
+        public Instant getModificationDate() {
+            return this.modificationDate;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.articleId, this.modificationDate);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FragmentKey)) {
+                return false;
+            }
+            FragmentKey other = (FragmentKey)obj;
+            return this.articleId == other.articleId &&
+                   Objects.equals(this.modificationDate, other.modificationDate);
+        }
+    }
+}
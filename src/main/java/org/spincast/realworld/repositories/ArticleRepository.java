@@ -3,15 +3,25 @@ package org.spincast.realworld.repositories;
 import java.util.List;
 
 import org.spincast.plugins.jdbc.utils.ItemsAndTotalCount;
+import org.spincast.realworld.exceptions.SlugTakenException;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.User;
 
 public interface ArticleRepository {
 
+    /**
+     * @throws SlugTakenException if the slug is already
+     * used by another article.
+     */
     public Article saveArticle(Article article);
 
-    public int getSlugsNbrWithBody(String slugBody);
+    /**
+     * Atomically allocates the next number for the specified
+     * base slug. The first allocation returns <code>1</code>.
+     */
+    public int allocateSlugNumber(String baseSlug);
 
     /**
      * @param currentUser can be <code>null</code> if not
@@ -19,12 +29,28 @@ public interface ArticleRepository {
      */
     public Article getArticle(String articleSlug, User currentUser);
 
+    /**
+     * A string that changes when the article, as seen by
+     * the current user, changes. Cheaper than loading the
+     * article.
+     *
+     * @param currentUser can be <code>null</code> if not
+     * logged in.
+     *
+     * @return <code>null</code> if the article is not found.
+     */
+    public String getArticleVersion(String articleSlug, User currentUser);
+
     public List<String> getTags(String articleSlug);
 
     public int getFavoritesCount(String articleSlug);
 
     public boolean isFavorited(String articleSlug, long userId);
 
+    /**
+     * @throws SlugTakenException if the slug is already
+     * used by another article.
+     */
     public Article updateArticle(Article article);
 
     public void deleteArticle(long articleId);
@@ -36,15 +62,25 @@ public interface ArticleRepository {
     /**
      * @param currentUser can be <code>null</code> if not
      * logged in.
+     * @param cursor if not <code>null</code>, the articles
+     * following this cursor are returned and the
+     * <code>offset</code> is ignored.
      */
     public ItemsAndTotalCount<Article> findArticles(User currentUser,
                                                     String tagFilter,
                                                     String authorUsernameFilter,
                                                     String favoritedByUsernameFilter,
+                                                    ArticleCursor cursor,
                                                     long offset,
                                                     int limit);
 
+    /**
+     * @param cursor if not <code>null</code>, the articles
+     * following this cursor are returned and the
+     * <code>offset</code> is ignored.
+     */
     public ItemsAndTotalCount<Article> getFeed(User currentUser,
+                                               ArticleCursor cursor,
                                                long offset,
                                                int limit);
 
@@ -58,6 +94,17 @@ public interface ArticleRepository {
      */
     public List<Comment> getComments(long articleId, User currentUser);
 
+    /**
+     * A string that changes when the comments of the
+     * article, as seen by the current user, change.
+     *
+     * @param currentUser can be <code>null</code> if not
+     * logged in.
+     *
+     * @return <code>null</code> if the article is not found.
+     */
+    public String getCommentsVersion(String articleSlug, User currentUser);
+
     public void deleteComment(long commentId);
 
     public List<String> getTags();
@@ -1,15 +1,18 @@
 package org.spincast.realworld.repositories;
 
+import java.sql.Array;
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.sql.DataSource;
 
@@ -20,20 +23,26 @@ import org.spincast.core.json.JsonObject;
 import org.spincast.plugins.jdbc.JdbcQueries;
 import org.spincast.plugins.jdbc.JdbcUtils;
 import org.spincast.plugins.jdbc.SpincastResultSet;
-import org.spincast.plugins.jdbc.statements.BatchInsertStatement;
-import org.spincast.plugins.jdbc.statements.DeleteStatement;
-import org.spincast.plugins.jdbc.statements.InsertStatement;
 import org.spincast.plugins.jdbc.statements.ResultSetHandler;
-import org.spincast.plugins.jdbc.statements.SelectStatement;
-import org.spincast.plugins.jdbc.statements.UpdateStatement;
 import org.spincast.plugins.jdbc.utils.ItemsAndTotalCount;
 import org.spincast.plugins.jdbc.utils.ItemsAndTotalCountDefault;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.BatchLoader;
+import org.spincast.realworld.db.BatchLoaderFactory;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.exceptions.SlugTakenException;
+import org.spincast.realworld.metrics.MetricsRegistry;
 import org.spincast.realworld.models.EntityFactory;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.Profile;
 import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.repositories.ArticleCountCache.CountKey;
 import org.spincast.realworld.services.UserService;
+import org.spincast.shaded.org.apache.commons.lang3.tuple.Pair;
 
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
@@ -43,19 +52,40 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
     protected final static Logger logger = LoggerFactory.getLogger(ArticleRepositoryDefault.class);
 
+    /**
+     * The unique constraint on the slugs.
+     */
+    protected static final String SLUG_UNIQUE_CONSTRAINT = "articles_slug_key";
+
     private final JsonManager jsonManager;
     private final UserRepository userRepository;
+    private final ArticleCountCache articleCountCache;
+    private final TimelineRepository timelineRepository;
+    private final BatchLoader<Pair<Long, Long>, Boolean> favoritesBatchLoader;
+    private final ArticleFragmentCache articleFragmentCache;
 
     @Inject
     public ArticleRepositoryDefault(Provider<DataSource> dataSource,
                                     JdbcUtils jdbcUtils,
                                     EntityFactory entityFactory,
                                     UserService userService,
+                                    AppConfig appConfig,
+                                    RequestConnectionManager requestConnectionManager,
+                                    SqlTemplateRegistry sqlTemplateRegistry,
+                                    MetricsRegistry metricsRegistry,
                                     JsonManager jsonManager,
-                                    UserRepository userRepository) {
-        super(dataSource, jdbcUtils, entityFactory, userService);
+                                    UserRepository userRepository,
+                                    ArticleCountCache articleCountCache,
+                                    TimelineRepository timelineRepository,
+                                    BatchLoaderFactory batchLoaderFactory,
+                                    ArticleFragmentCache articleFragmentCache) {
+        super(dataSource, jdbcUtils, entityFactory, userService, appConfig, requestConnectionManager, sqlTemplateRegistry, metricsRegistry);
         this.jsonManager = jsonManager;
         this.userRepository = userRepository;
+        this.articleCountCache = articleCountCache;
+        this.timelineRepository = timelineRepository;
+        this.favoritesBatchLoader = batchLoaderFactory.create("favorites", this::loadFavorited);
+        this.articleFragmentCache = articleFragmentCache;
     }
 
     protected JsonManager getJsonManager() {
@@ -66,15 +96,49 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
         return this.userRepository;
     }
 
+    protected ArticleCountCache getArticleCountCache() {
+        return this.articleCountCache;
+    }
+
+    protected ArticleFragmentCache getArticleFragmentCache() {
+        return this.articleFragmentCache;
+    }
+
+    protected TimelineRepository getTimelineRepository() {
+        return this.timelineRepository;
+    }
+
+    protected BatchLoader<Pair<Long, Long>, Boolean> getFavoritesBatchLoader() {
+        return this.favoritesBatchLoader;
+    }
+
     @Override
     public Article saveArticle(Article article) {
+        Article savedArticle;
+        try {
+            savedArticle = insertArticle(article);
+        } catch (RuntimeException ex) {
+            if (isUniqueViolation(ex, SLUG_UNIQUE_CONSTRAINT)) {
+                throw new SlugTakenException(article.getSlug(), ex);
+            }
+            throw ex;
+        }
+
+        getArticleCountCache().invalidateAll();
+
+        getTimelineRepository().fanOutArticle(savedArticle.getId(), savedArticle.getAuthorProfile().getUser().getId());
+
+        return savedArticle;
+    }
+
+    protected Article insertArticle(Article article) {
 
-        return getJdbcUtils().scopes().transactional(getDataSource(), new JdbcQueries<Article>() {
+        return transactional("saveArticle", new JdbcQueries<Article>() {
 
             @Override
             public Article run(Connection connection) {
 
-                InsertStatement stm = getJdbcUtils().statements().createInsertStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 //==========================================
                 // Article itself
@@ -115,49 +179,61 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
     @Override
     public Article updateArticle(Article article) {
-        getJdbcUtils().scopes().transactional(getDataSource(), new JdbcQueries<Void>() {
+        try {
+            transactional("updateArticle", new JdbcQueries<Void>() {
+
+                @Override
+                public Void run(Connection connection) {
+
+                    TemplateStatement stm = createStatement(connection);
+
+                    //==========================================
+                    // Article itself. The modification date is
+                    // the version of its cached fragments.
+                    //==========================================
+                    stm.sql("UPDATE articles " +
+                            "SET slug = :slug, " +
+                            "    title = :title, " +
+                            "    description = :description, " +
+                            "    body = :body, " +
+                            "    modification_date = clock_timestamp() " +
+                            "WHERE " +
+                            "   id = :id");
+
+                    stm.setLong("id", article.getId());
+                    stm.setString("slug", article.getSlug());
+                    stm.setString("title", article.getTitle());
+                    stm.setString("description", article.getDescription());
+                    stm.setString("body", article.getBody());
+
+                    stm.update();
+
+                    //==========================================
+                    // Tags
+                    //
+                    // Postgres 11 is supposed to have proper
+                    // MERGE support.
+                    //==========================================
+                    TemplateStatement stm2 = createStatement(connection);
+                    stm2.sql("DELETE FROM tags " +
+                             "WHERE article_id = :article_id ");
+                    stm2.setLong("article_id", article.getId());
+                    stm2.delete();
+
+                    saveTags(connection, article.getId(), article.getTagList());
 
-            @Override
-            public Void run(Connection connection) {
-
-                UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
-
-                //==========================================
-                // Article itself
-                //==========================================
-                stm.sql("UPDATE articles " +
-                        "SET slug = :slug, " +
-                        "    title = :title, " +
-                        "    description = :description, " +
-                        "    body = :body " +
-                        "WHERE " +
-                        "   id = :id");
-
-                stm.setLong("id", article.getId());
-                stm.setString("slug", article.getSlug());
-                stm.setString("title", article.getTitle());
-                stm.setString("description", article.getDescription());
-                stm.setString("body", article.getBody());
-
-                stm.update();
-
-                //==========================================
-                // Tags
-                //
-                // Postgres 11 is supposed to have proper
-                // MERGE support.
-                //==========================================
-                DeleteStatement stm2 = getJdbcUtils().statements().createDeleteStatement(connection);
-                stm2.sql("DELETE FROM tags " +
-                         "WHERE article_id = :article_id ");
-                stm2.setLong("article_id", article.getId());
-                stm2.delete();
-
-                saveTags(connection, article.getId(), article.getTagList());
-
-                return null;
+                    return null;
+                }
+            });
+        } catch (RuntimeException ex) {
+            if (isUniqueViolation(ex, SLUG_UNIQUE_CONSTRAINT)) {
+                throw new SlugTakenException(article.getSlug(), ex);
             }
-        });
+            throw ex;
+        }
+
+        getArticleCountCache().invalidateTagFilters();
+        getArticleFragmentCache().invalidateArticle(article.getId());
 
         return article;
     }
@@ -165,56 +241,104 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
     /**
      * For an UPDATE, current tags must already have
      * been deleted.
+     * <p>
+     * All the tags are inserted using a single statement,
+     * whatever their number.
      */
     protected void saveTags(Connection connection, long articleId, List<String> tags) {
         if (tags.size() > 0) {
-            BatchInsertStatement stm2 = getJdbcUtils().statements().createBatchInsertStatement(connection);
+            TemplateStatement stm2 = createStatement(connection);
             stm2.sql("INSERT INTO tags(tag, article_id) " +
-                     "VALUES (:tag, :article_id) " +
+                     "SELECT UNNEST(:tags::varchar[]), :article_id " +
                      "ON CONFLICT (tag, article_id) DO NOTHING ");
 
-            for (String tag : tags) {
-                stm2.setString("tag", tag);
-                stm2.setLong("article_id", articleId);
-                stm2.addBatch();
-            }
-            stm2.batchInsert();
+            stm2.setStringArray("tags", tags);
+            stm2.setLong("article_id", articleId);
+            stm2.insert();
         }
     }
 
     @Override
-    public int getSlugsNbrWithBody(String slugBody) {
+    public int allocateSlugNumber(String baseSlug) {
 
-        Integer nbr = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Integer>() {
+        Integer nbr = autoCommit("allocateSlugNumber", new JdbcQueries<Integer>() {
 
             @Override
             public Integer run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("SELECT COUNT(*) as nbr " +
-                        "FROM articles " +
-                        "WHERE slug = :slugBody " +
-                        "OR (slug ~* (:slugBody || '-[0-9]+')) ");
+                stm.sql("INSERT INTO slug_counters(base_slug, counter) " +
+                        "VALUES (:baseSlug, 1) " +
+                        "ON CONFLICT (base_slug) DO UPDATE " +
+                        "SET counter = slug_counters.counter + 1 " +
+                        "RETURNING counter ");
 
-                stm.setString("slugBody", slugBody);
+                stm.setString("baseSlug", baseSlug);
 
                 return stm.selectOne(new ResultSetHandler<Integer>() {
 
                     @Override
                     public Integer handle(SpincastResultSet rs) throws Exception {
-                        return rs.getIntegerOrZero("nbr");
+                        return rs.getIntegerOrZero("counter");
                     }
                 });
             }
         });
 
         if (nbr == null) {
-            nbr = 0;
+            throw new RuntimeException("No slug number allocated for : " + baseSlug);
         }
         return nbr;
     }
 
+    @Override
+    public String getArticleVersion(String articleSlug, User currentUser) {
+
+        return autoCommit("getArticleVersion", new JdbcQueries<String>() {
+
+            @Override
+            public String run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                //==========================================
+                // The tags are only modified with the article
+                // itself, so its modification date covers them.
+                //==========================================
+                stm.sql("SELECT articles.id, articles.modification_date, articles.favorites_count, " +
+                        "       users.modification_date AS author_modification_date, " +
+                        "       EXISTS (SELECT 1 " +
+                        "               FROM favorites " +
+                        "               WHERE favorites.article_id = articles.id " +
+                        "               AND favorites.user_id = :current_user_id) AS favorited, " +
+                        "       EXISTS (SELECT 1 " +
+                        "               FROM followings " +
+                        "               WHERE followings.source_user_id = :current_user_id " +
+                        "               AND followings.target_user_id = articles.author_id) AS following " +
+                        "FROM articles " +
+                        "JOIN users ON users.id = articles.author_id " +
+                        "WHERE articles.slug = :slug ");
+
+                stm.setString("slug", articleSlug);
+                stm.setLong("current_user_id", currentUser != null ? currentUser.getId() : -1);
+
+                return stm.selectOne(new ResultSetHandler<String>() {
+
+                    @Override
+                    public String handle(SpincastResultSet rs) throws Exception {
+                        return rs.getLong("id") + ":" +
+                               rs.getInstant("modification_date") + ":" +
+                               rs.getInt("favorites_count") + ":" +
+                               rs.getInstant("author_modification_date") + ":" +
+                               rs.getBoolean("favorited") + ":" +
+                               rs.getBoolean("following");
+                    }
+                });
+            }
+        });
+    }
+
     @Override
     public Article getArticle(String articleSlug, User currentUser) {
         List<Article> articles = getArticles(null, articleSlug, currentUser);
@@ -238,128 +362,299 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
     protected List<Article> getArticles(List<Long> ids, String articleSlug, User currentUser) {
 
-        return getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<List<Article>>() {
+        //==========================================
+        // An article is returned once, at the position
+        // of its first id, whatever the hydration used.
+        //==========================================
+        if (ids != null && ids.size() > 1) {
+            ids = new ArrayList<>(new LinkedHashSet<>(ids));
+        }
+
+        if (getAppConfig().isDbSingleQueryHydration()) {
+            return getArticlesSingleQuery(ids, articleSlug, currentUser);
+        }
+        return getArticlesMultiQueries(ids, articleSlug, currentUser);
+    }
+
+    /**
+     * Loads the articles, their author profile, their tags
+     * and their favorites informations using a single
+     * SQL statement.
+     */
+    protected List<Article> getArticlesSingleQuery(List<Long> ids, String articleSlug, User currentUser) {
+
+        return autoCommit("getArticlesSingleQuery", new JdbcQueries<List<Article>>() {
 
             @Override
             public List<Article> run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
+
+                boolean byIds = ids != null && ids.size() > 0;
 
                 //==========================================
-                // Get main article informations
+                // Main article informations
                 //==========================================
-                stm.sql("SELECT articles.id, slug, title, description, body, author_id, creation_date, modification_date " +
-                        "FROM articles ");
-
-                if (ids != null && ids.size() > 0) {
-                    stm.sql("INNER JOIN UNNEST('{:idsList}'::int[]) WITH ORDINALITY o(id, ord) ON o.id = articles.id ");
-                    stm.setLongList("idsList", ids);
+                stm.sql("WITH base AS ( " +
+                        "   SELECT articles.id, articles.slug, articles.title, articles.description, articles.body, " +
+                        "          articles.author_id, articles.creation_date, articles.modification_date, " +
+                        "          articles.favorites_count, ");
+
+                if (byIds) {
+                    stm.sql("      o.ord " +
+                            "   FROM articles " +
+                            "   INNER JOIN UNNEST(:ids::bigint[]) WITH ORDINALITY o(id, ord) ON o.id = articles.id ");
+                    stm.setLongArray("ids", ids);
+                } else {
+                    stm.sql("      0 AS ord " +
+                            "   FROM articles ");
                 }
 
                 if (articleSlug != null) {
-                    stm.sql("WHERE slug = :slug ");
+                    stm.sql("   WHERE articles.slug = :slug ");
                     stm.setString("slug", articleSlug);
                 }
 
-                if (ids != null && ids.size() > 0) {
-                    stm.sql("ORDER BY o.ord ");
+                //==========================================
+                // Tags, aggregated by article
+                //==========================================
+                stm.sql("), " +
+                        "tags_agg AS ( " +
+                        "   SELECT tags.article_id, array_agg(tags.tag) AS tags " +
+                        "   FROM tags " +
+                        "   INNER JOIN base ON base.id = tags.article_id " +
+                        "   GROUP BY tags.article_id " +
+                        ") " +
+                        "SELECT base.id, base.slug, base.title, base.description, base.body, base.author_id, " +
+                        "       base.creation_date, base.modification_date, " +
+                        "       users.email, users.username, users.hashed_password, users.password_salt, " +
+                        "       users.bio, users.image, " +
+                        "       COALESCE(tags_agg.tags, '{}') AS tags, " +
+                        "       base.favorites_count, ");
+
+                //==========================================
+                // Informations specific to the current user
+                //==========================================
+                if (currentUser != null) {
+                    stm.sql("   EXISTS( " +
+                            "       SELECT 1 " +
+                            "       FROM favorites " +
+                            "       WHERE favorites.article_id = base.id " +
+                            "       AND favorites.user_id = :favorited_user_id " +
+                            "   ) AS favorited, " +
+                            "   EXISTS( " +
+                            "       SELECT 1 " +
+                            "       FROM followings " +
+                            "       WHERE followings.source_user_id = :following_user_id " +
+                            "       AND followings.target_user_id = base.author_id " +
+                            "   ) AS following ");
+                    stm.setLong("favorited_user_id", currentUser.getId());
+                    stm.setLong("following_user_id", currentUser.getId());
+                } else {
+                    stm.sql("   FALSE AS favorited, " +
+                            "   FALSE AS following ");
                 }
 
-                LinkedHashMap<Long, JsonObject> articleIdToBaseRows = new LinkedHashMap<Long, JsonObject>();
+                stm.sql("FROM base " +
+                        "INNER JOIN users ON users.id = base.author_id " +
+                        "LEFT JOIN tags_agg ON tags_agg.article_id = base.id " +
+                        "ORDER BY base.ord ");
 
-                stm.selectList(new ResultSetHandler<Void>() {
+                List<Article> articles = stm.selectList(new ResultSetHandler<Article>() {
 
                     @Override
-                    public Void handle(SpincastResultSet rs) throws Exception {
-
-                        long articleId = rs.getLongOrNull("id");
-                        JsonObject infos = articleIdToBaseRows.get(articleId);
-                        if (infos == null) {
-                            infos = getJsonManager().create();
-                            articleIdToBaseRows.put(articleId, infos);
+                    public Article handle(SpincastResultSet rs) throws Exception {
+
+                        User author = getEntityFactory().createUser(rs.getLongOrNull("author_id"),
+                                                                    rs.getString("email"),
+                                                                    rs.getString("username"),
+                                                                    rs.getString("hashed_password"),
+                                                                    rs.getString("password_salt"),
+                                                                    rs.getString("bio"),
+                                                                    rs.getString("image"));
+                        Profile authorProfile = getEntityFactory().createProfile(author, rs.getBoolean("following"));
+
+                        List<String> tags = new ArrayList<>();
+                        Array tagsArray = rs.getArray("tags");
+                        if (tagsArray != null) {
+                            Collections.addAll(tags, (String[])tagsArray.getArray());
                         }
 
-                        infos.set("id", articleId);
-                        infos.set("slug", rs.getString("slug"));
-                        infos.set("title", rs.getString("title"));
-                        infos.set("description", rs.getString("description"));
-                        infos.set("body", rs.getString("body"));
-                        infos.set("author_id", rs.getLongOrNull("author_id"));
-                        infos.set("creation_date", rs.getInstant("creation_date"));
-                        infos.set("modification_date", rs.getInstant("modification_date"));
-                        return null;
+                        Article article = getEntityFactory().createArticle(rs.getLongOrNull("id"),
+                                                                           rs.getInstant("creation_date"),
+                                                                           rs.getInstant("modification_date"),
+                                                                           authorProfile,
+                                                                           tags,
+                                                                           rs.getString("slug"),
+                                                                           rs.getString("title"),
+                                                                           rs.getString("description"),
+                                                                           rs.getString("body"),
+                                                                           rs.getBoolean("favorited"),
+                                                                           rs.getIntegerOrZero("favorites_count"));
+                        return article;
                     }
                 });
 
-                if (articleIdToBaseRows == null || articleIdToBaseRows.size() == 0) {
-                    return new ArrayList<Article>();
-                }
-                Set<Long> articleIds = new HashSet<>();
-                Set<Long> authorsIds = new HashSet<>();
-                for (Entry<Long, JsonObject> entry : articleIdToBaseRows.entrySet()) {
-                    JsonObject baseInfo = entry.getValue();
-                    articleIds.add(entry.getKey());
-                    authorsIds.add(baseInfo.getLong("author_id"));
-                }
+                return articles != null ? articles : new ArrayList<Article>();
+            }
+        });
+    }
 
-                //==========================================
-                // Get authors profiles
-                //==========================================
-                Map<Long, Profile> authorsProfilesMap = getUserRepository().getProfilesByUserIds(authorsIds, currentUser);
+    /**
+     * Loads the articles using one query for the base
+     * informations and then separate queries for the
+     * authors profiles, the tags and the favorites.
+     */
+    protected List<Article> getArticlesMultiQueries(List<Long> ids, String articleSlug, User currentUser) {
+
+        //==========================================
+        // The connection used to load the base
+        // informations is released before the
+        // hydration : the authors and favorites may be
+        // loaded by a batch, which needs a connection
+        // of its own.
+        //==========================================
+        LinkedHashMap<Long, JsonObject> articleIdToBaseRows =
+                autoCommit("getArticlesBaseInfos", new JdbcQueries<LinkedHashMap<Long, JsonObject>>() {
 
-                //==========================================
-                // Get tags
-                //==========================================
-                Map<Long, Set<String>> tagsMap = getTagsByArticlesIds(articleIds);
+                    @Override
+                    public LinkedHashMap<Long, JsonObject> run(Connection connection) {
+                        return getArticlesBaseInfos(connection, ids, articleSlug);
+                    }
+                });
+        if (articleIdToBaseRows.size() == 0) {
+            return new ArrayList<Article>();
+        }
 
-                //==========================================
-                // Get isFavoriteds
-                //==========================================
-                Map<Long, Boolean> isFavoritedsMap =
-                        currentUser != null ? getFavoritedByArticles(articleIds, currentUser.getId()) : null;
+        Set<Long> articleIds = new HashSet<>();
+        Set<Long> authorsIds = new HashSet<>();
+        collectIds(articleIdToBaseRows, articleIds, authorsIds);
 
-                //==========================================
-                // Get favoritesCounts
-                //==========================================
-                Map<Long, Integer> favoritesCountsMap = getFavoritesCountByArticles(articleIds);
+        //==========================================
+        // Get authors profiles
+        //==========================================
+        Map<Long, Profile> authorsProfilesMap = getUserRepository().getProfilesByUserIds(authorsIds, currentUser);
 
-                //==========================================
-                // Build final articles
-                //==========================================
-                List<Article> articles = new ArrayList<>();
-                for (Entry<Long, JsonObject> entry : articleIdToBaseRows.entrySet()) {
+        //==========================================
+        // Get tags
+        //==========================================
+        Map<Long, Set<String>> tagsMap = getTagsByArticlesIds(articleIds);
 
-                    long articleId = entry.getKey();
-                    JsonObject baseInfos = entry.getValue();
+        //==========================================
+        // Get isFavoriteds
+        //==========================================
+        Map<Long, Boolean> isFavoritedsMap =
+                currentUser != null ? getFavoritedByArticles(articleIds, currentUser.getId()) : null;
 
-                    long authorId = baseInfos.getLong("author_id");
+        return buildArticles(articleIdToBaseRows, authorsProfilesMap, tagsMap, isFavoritedsMap, currentUser);
+    }
 
-                    Profile authorProfile = authorsProfilesMap.get(authorId);
-                    Set<String> tags = tagsMap.get(articleId);
-                    Boolean favorited = currentUser != null ? isFavoritedsMap.get(articleId) : false;
-                    Integer favoritesCount = favoritesCountsMap.get(articleId);
-                    if (authorProfile == null || tags == null || favorited == null || favoritesCount == null) {
-                        logger.warn("At least one of authorProfile, tags, favorited or favoritesCount is null for article #" +
-                                    articleId);
-                        continue;
-                    }
+    /**
+     * Loads the main informations of the articles, by
+     * article id, in order.
+     */
+    protected LinkedHashMap<Long, JsonObject> getArticlesBaseInfos(Connection connection, List<Long> ids, String articleSlug) {
+
+        TemplateStatement stm = createStatement(connection);
+
+        stm.sql("SELECT articles.id, slug, title, description, body, author_id, creation_date, modification_date, " +
+                "       favorites_count " +
+                "FROM articles ");
+
+        if (ids != null && ids.size() > 0) {
+            stm.sql("INNER JOIN UNNEST(:ids::bigint[]) WITH ORDINALITY o(id, ord) ON o.id = articles.id ");
+            stm.setLongArray("ids", ids);
+        }
 
-                    Article article = getEntityFactory().createArticle(articleId,
-                                                                       baseInfos.getInstant("creation_date"),
-                                                                       baseInfos.getInstant("modification_date"),
-                                                                       authorProfile,
-                                                                       new ArrayList<>(tags),
-                                                                       baseInfos.getString("slug"),
-                                                                       baseInfos.getString("title"),
-                                                                       baseInfos.getString("description"),
-                                                                       baseInfos.getString("body"),
-                                                                       favorited,
-                                                                       favoritesCount);
-                    articles.add(article);
+        if (articleSlug != null) {
+            stm.sql("WHERE slug = :slug ");
+            stm.setString("slug", articleSlug);
+        }
+
+        if (ids != null && ids.size() > 0) {
+            stm.sql("ORDER BY o.ord ");
+        }
+
+        LinkedHashMap<Long, JsonObject> articleIdToBaseRows = new LinkedHashMap<Long, JsonObject>();
+
+        stm.selectList(new ResultSetHandler<Void>() {
+
+            @Override
+            public Void handle(SpincastResultSet rs) throws Exception {
+
+                long articleId = rs.getLongOrNull("id");
+                JsonObject infos = articleIdToBaseRows.get(articleId);
+                if (infos == null) {
+                    infos = getJsonManager().create();
+                    articleIdToBaseRows.put(articleId, infos);
                 }
-                return articles;
+
+                infos.set("id", articleId);
+                infos.set("slug", rs.getString("slug"));
+                infos.set("title", rs.getString("title"));
+                infos.set("description", rs.getString("description"));
+                infos.set("body", rs.getString("body"));
+                infos.set("author_id", rs.getLongOrNull("author_id"));
+                infos.set("creation_date", rs.getInstant("creation_date"));
+                infos.set("modification_date", rs.getInstant("modification_date"));
+                infos.set("favorites_count", rs.getIntegerOrZero("favorites_count"));
+                return null;
             }
         });
+
+        return articleIdToBaseRows;
+    }
+
+    protected void collectIds(LinkedHashMap<Long, JsonObject> articleIdToBaseRows,
+                              Set<Long> articleIds,
+                              Set<Long> authorsIds) {
+        for (Entry<Long, JsonObject> entry : articleIdToBaseRows.entrySet()) {
+            articleIds.add(entry.getKey());
+            authorsIds.add(entry.getValue().getLong("author_id"));
+        }
+    }
+
+    /**
+     * Builds the final articles from their base informations
+     * and the results of the hydration queries.
+     */
+    protected List<Article> buildArticles(LinkedHashMap<Long, JsonObject> articleIdToBaseRows,
+                                          Map<Long, Profile> authorsProfilesMap,
+                                          Map<Long, Set<String>> tagsMap,
+                                          Map<Long, Boolean> isFavoritedsMap,
+                                          User currentUser) {
+        List<Article> articles = new ArrayList<>();
+        for (Entry<Long, JsonObject> entry : articleIdToBaseRows.entrySet()) {
+
+            long articleId = entry.getKey();
+            JsonObject baseInfos = entry.getValue();
+
+            long authorId = baseInfos.getLong("author_id");
+
+            Profile authorProfile = authorsProfilesMap.get(authorId);
+            Set<String> tags = tagsMap.get(articleId);
+            Boolean favorited = currentUser != null ? isFavoritedsMap.get(articleId) : false;
+            Integer favoritesCount = baseInfos.getInteger("favorites_count");
+            if (authorProfile == null || tags == null || favorited == null || favoritesCount == null) {
+                logger.warn("At least one of authorProfile, tags, favorited or favoritesCount is null for article #" +
+                            articleId);
+                continue;
+            }
+
+            Article article = getEntityFactory().createArticle(articleId,
+                                                               baseInfos.getInstant("creation_date"),
+                                                               baseInfos.getInstant("modification_date"),
+                                                               authorProfile,
+                                                               new ArrayList<>(tags),
+                                                               baseInfos.getString("slug"),
+                                                               baseInfos.getString("title"),
+                                                               baseInfos.getString("description"),
+                                                               baseInfos.getString("body"),
+                                                               favorited,
+                                                               favoritesCount);
+            articles.add(article);
+        }
+        return articles;
     }
 
     @Override
@@ -367,12 +662,12 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
         final List<String> tags = new ArrayList<>();
 
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("getTags", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT tag " +
                         "FROM tags " +
@@ -407,17 +702,17 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
             return tagsByArticles;
         }
 
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("getTagsByArticlesIds", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT article_id, tag " +
                         "FROM tags " +
-                        "WHERE article_id IN(:ids) ");
-                stm.setInLong("ids", articleIds);
+                        "WHERE article_id = ANY(:ids) ");
+                stm.setLongArray("ids", articleIds);
 
                 stm.selectList(new ResultSetHandler<Void>() {
 
@@ -444,20 +739,16 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
     @Override
     public int getFavoritesCount(String articleSlug) {
-        Integer nbr = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Integer>() {
+        Integer nbr = autoCommit("getFavoritesCount", new JdbcQueries<Integer>() {
 
             @Override
             public Integer run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("SELECT COUNT(*) as nbr " +
-                        "FROM favorites " +
-                        "WHERE article_id = " +
-                        "   ( SELECT id " +
-                        "       FROM articles " +
-                        "       WHERE slug = :slug " +
-                        "   ) ");
+                stm.sql("SELECT favorites_count as nbr " +
+                        "FROM articles " +
+                        "WHERE slug = :slug ");
 
                 stm.setString("slug", articleSlug);
 
@@ -477,55 +768,14 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
         return nbr;
     }
 
-    protected Map<Long, Integer> getFavoritesCountByArticles(Set<Long> articleIds) {
-
-        Map<Long, Integer> favoritesCountByArticles = new HashMap<>();
-        if (articleIds == null || articleIds.size() == 0) {
-            return favoritesCountByArticles;
-        }
-
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
-
-            @Override
-            public Void run(Connection connection) {
-
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
-
-                stm.sql("SELECT article_id, COUNT(*) as nbr " +
-                        "FROM favorites " +
-                        "WHERE article_id IN(:ids) " +
-                        "GROUP BY article_id ");
-                stm.setInLong("ids", articleIds);
-
-                stm.selectList(new ResultSetHandler<Void>() {
-
-                    @Override
-                    public Void handle(SpincastResultSet rs) throws Exception {
-                        favoritesCountByArticles.put(rs.getLongOrNull("article_id"), rs.getIntegerOrZero("nbr"));
-                        return null;
-                    }
-                });
-                return null;
-            }
-        });
-
-        for (Long articleId : articleIds) {
-            if (!favoritesCountByArticles.containsKey(articleId)) {
-                favoritesCountByArticles.put(articleId, 0);
-            }
-        }
-
-        return favoritesCountByArticles;
-    }
-
     @Override
     public boolean isFavorited(String articleSlug, long userId) {
-        Boolean favorited = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Boolean>() {
+        Boolean favorited = autoCommit("isFavorited", new JdbcQueries<Boolean>() {
 
             @Override
             public Boolean run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT 1 " +
                         "FROM favorites " +
@@ -562,25 +812,55 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
             return favoritedByArticles;
         }
 
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        Set<Pair<Long, Long>> keys = new HashSet<>();
+        for (Long articleId : articleIds) {
+            keys.add(Pair.of(sourceUserId, articleId));
+        }
+
+        Map<Pair<Long, Long>, Boolean> favoritedByKeys = getFavoritesBatchLoader().loadAll(keys);
+
+        for (Long articleId : articleIds) {
+            Boolean favorited = favoritedByKeys.get(Pair.of(sourceUserId, articleId));
+            favoritedByArticles.put(articleId, favorited != null ? favorited : false);
+        }
+
+        return favoritedByArticles;
+    }
+
+    /**
+     * Loads the favorites of any number of users at once.
+     */
+    protected Map<Pair<Long, Long>, Boolean> loadFavorited(Set<Pair<Long, Long>> keys) {
+
+        List<Long> usersIds = new ArrayList<>();
+        List<Long> articlesIds = new ArrayList<>();
+        for (Pair<Long, Long> key : keys) {
+            usersIds.add(key.getLeft());
+            articlesIds.add(key.getRight());
+        }
+
+        Map<Pair<Long, Long>, Boolean> favorited = new HashMap<>();
+
+        autoCommit("loadFavorited", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("SELECT article_id " +
-                        "FROM favorites " +
-                        "WHERE article_id IN(:ids) " +
-                        "AND user_id = :user_id ");
-                stm.setInLong("ids", articleIds);
-                stm.setLong("user_id", sourceUserId);
+                stm.sql("SELECT favorites.user_id, favorites.article_id " +
+                        "FROM UNNEST(:usersIds::bigint[], :articlesIds::bigint[]) AS k(user_id, article_id) " +
+                        "INNER JOIN favorites " +
+                        "ON favorites.user_id = k.user_id " +
+                        "AND favorites.article_id = k.article_id ");
+                stm.setLongArray("usersIds", usersIds);
+                stm.setLongArray("articlesIds", articlesIds);
 
                 stm.selectList(new ResultSetHandler<Void>() {
 
                     @Override
                     public Void handle(SpincastResultSet rs) throws Exception {
-                        favoritedByArticles.put(rs.getLongOrNull("article_id"), true);
+                        favorited.put(Pair.of(rs.getLongOrNull("user_id"), rs.getLongOrNull("article_id")), true);
                         return null;
                     }
                 });
@@ -588,24 +868,18 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
             }
         });
 
-        for (Long articleId : articleIds) {
-            if (!favoritedByArticles.containsKey(articleId)) {
-                favoritedByArticles.put(articleId, false);
-            }
-        }
-
-        return favoritedByArticles;
+        return favorited;
     }
 
     @Override
     public void deleteArticle(long articleId) {
 
-        getJdbcUtils().scopes().transactional(getDataSource(), new JdbcQueries<Void>() {
+        transactional("deleteArticle", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                DeleteStatement stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 //==========================================
                 // Delete favorites
@@ -618,16 +892,25 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
                 //==========================================
                 // Delete tags
                 //==========================================
-                stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                stm = createStatement(connection);
                 stm.sql("DELETE FROM tags " +
                         "WHERE article_id = :article_id ");
                 stm.setLong("article_id", articleId);
                 stm.delete();
 
+                //==========================================
+                // Delete from the timelines
+                //==========================================
+                stm = createStatement(connection);
+                stm.sql("DELETE FROM timelines " +
+                        "WHERE article_id = :article_id ");
+                stm.setLong("article_id", articleId);
+                stm.delete();
+
                 //==========================================
                 // Delete comments
                 //==========================================
-                stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                stm = createStatement(connection);
                 stm.sql("DELETE FROM comments " +
                         "WHERE article_id = :article_id ");
                 stm.setLong("article_id", articleId);
@@ -636,7 +919,7 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
                 //==========================================
                 // Delete article itself
                 //==========================================
-                stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                stm = createStatement(connection);
                 stm.sql("DELETE FROM articles " +
                         "WHERE id = :id ");
                 stm.setLong("id", articleId);
@@ -645,55 +928,82 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
                 return null;
             }
         });
+
+        getArticleCountCache().invalidateAll();
+        getArticleFragmentCache().invalidateArticle(articleId);
     }
 
     @Override
     public Article favoriteArticle(long articleId, User currentUser) {
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("favoriteArticle", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                InsertStatement stm = getJdbcUtils().statements().createInsertStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("INSERT INTO favorites(user_id, article_id) " +
-                        "VALUES (:user_id, :article_id) " +
-                        "ON CONFLICT (user_id, article_id) DO NOTHING ");
+                //==========================================
+                // The count is only incremented if the
+                // favorite didn't already exist.
+                //==========================================
+                stm.sql("WITH inserted AS ( " +
+                        "   INSERT INTO favorites(user_id, article_id) " +
+                        "   VALUES (:user_id, :article_id) " +
+                        "   ON CONFLICT (user_id, article_id) DO NOTHING " +
+                        "   RETURNING article_id " +
+                        ") " +
+                        "UPDATE articles " +
+                        "SET favorites_count = favorites_count + 1 " +
+                        "WHERE id IN (SELECT article_id FROM inserted) ");
 
                 stm.setLong("user_id", currentUser.getId());
                 stm.setLong("article_id", articleId);
 
-                stm.insert();
+                stm.update();
 
                 return null;
             }
         });
 
+        getArticleCountCache().invalidateFavoritedBy(currentUser.getUsername());
+
         return getArticleById(articleId, currentUser);
     }
 
     @Override
     public Article unfavoriteArticle(long articleId, User currentUser) {
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("unfavoriteArticle", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                DeleteStatement stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("DELETE FROM favorites " +
-                        "WHERE user_id = :user_id " +
-                        "AND article_id = :article_id ");
+                //==========================================
+                // The count is only decremented if a
+                // favorite was actually deleted.
+                //==========================================
+                stm.sql("WITH deleted AS ( " +
+                        "   DELETE FROM favorites " +
+                        "   WHERE user_id = :user_id " +
+                        "   AND article_id = :article_id " +
+                        "   RETURNING article_id " +
+                        ") " +
+                        "UPDATE articles " +
+                        "SET favorites_count = favorites_count - 1 " +
+                        "WHERE id IN (SELECT article_id FROM deleted) ");
 
                 stm.setLong("user_id", currentUser.getId());
                 stm.setLong("article_id", articleId);
 
-                stm.delete();
+                stm.update();
 
                 return null;
             }
         });
 
+        getArticleCountCache().invalidateFavoritedBy(currentUser.getUsername());
+
         return getArticleById(articleId, currentUser);
     }
 
@@ -702,62 +1012,80 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
                                                     String tagFilter,
                                                     String authorUsernameFilter,
                                                     String favoritedByUsernameFilter,
+                                                    ArticleCursor cursor,
                                                     long offset,
                                                     int limit) {
+
+        CountKey countKey = CountKey.listing(tagFilter, authorUsernameFilter, favoritedByUsernameFilter);
+
+        return getArticlesPage(currentUser,
+                               countKey,
+                               stm -> {
+                                   stm.sql("SELECT articles.id as articleId " +
+                                           "FROM articles ");
+                                   addFindArticlesFilters(stm, tagFilter, authorUsernameFilter, favoritedByUsernameFilter);
+                                   addPagination(stm, cursor, offset, limit);
+                               },
+                               stm -> {
+                                   stm.sql("SELECT COUNT(*) as total " +
+                                           "FROM articles ");
+                                   addFindArticlesFilters(stm, tagFilter, authorUsernameFilter, favoritedByUsernameFilter);
+                               },
+                               cursor,
+                               offset,
+                               limit);
+    }
+
+    @Override
+    public ItemsAndTotalCount<Article> getFeed(User currentUser, ArticleCursor cursor, long offset, int limit) {
+
+        CountKey countKey = CountKey.feed(currentUser.getId());
+
+        return getArticlesPage(currentUser,
+                               countKey,
+                               stm -> addFeedQuery(stm, currentUser, cursor, offset, limit),
+                               stm -> addFeedCountQuery(stm, currentUser),
+                               cursor,
+                               offset,
+                               limit);
+    }
+
+    /**
+     * Gets a page of articles and the total number of
+     * articles of the listing.
+     *
+     * @param idsQuery adds the query selecting the ids of
+     * the articles of the page, as "articleId".
+     * @param countQuery adds the query counting all the
+     * articles of the listing, as "total".
+     */
+    protected ItemsAndTotalCount<Article> getArticlesPage(User currentUser,
+                                                          CountKey countKey,
+                                                          Consumer<TemplateStatement> idsQuery,
+                                                          Consumer<TemplateStatement> countQuery,
+                                                          ArticleCursor cursor,
+                                                          long offset,
+                                                          int limit) {
         ItemsAndTotalCount<Article> articlesAndTotalCount =
-                getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<ItemsAndTotalCount<Article>>() {
+                autoCommit("getArticlesPage", new JdbcQueries<ItemsAndTotalCount<Article>>() {
 
                     @Override
                     public ItemsAndTotalCount<Article> run(Connection connection) throws Exception {
-                        SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
 
                         //==========================================
-                        // Get the articles ids to return
+                        // Before the first query, so a total read
+                        // from an older snapshot than the last
+                        // invalidation is not cached.
                         //==========================================
-                        stm.sql("SELECT articles.id as articleId " +
-                                "FROM articles ");
-
-                        if (tagFilter != null) {
-                            stm.sql("INNER JOIN tags " +
-                                    "ON tags.article_id = articles.id " +
-                                    "AND tag = :tag ");
-                            stm.setString("tag", tagFilter);
-                        }
-
-                        if (favoritedByUsernameFilter != null) {
-                            stm.sql("INNER JOIN favorites " +
-                                    "ON favorites.article_id = articles.id " +
-                                    "AND user_id = (" +
-                                    "   SELECT id " +
-                                    "   FROM users " +
-                                    "   WHERE username = :favUsername " +
-                                    ") ");
-                            stm.setString("favUsername", favoritedByUsernameFilter);
-                        }
-
-                        stm.sql("WHERE 1=1 ");
-
-                        if (authorUsernameFilter != null) {
-                            stm.sql(" AND articles.author_id = (" +
-                                    "   SELECT id " +
-                                    "   FROM users " +
-                                    "   WHERE username = :authorUsername " +
-                                    ") ");
-                            stm.setString("authorUsername", authorUsernameFilter);
-                        }
-
-                        stm.sql("ORDER BY articles.creation_date DESC ");
+                        long countReadStartNanos = getArticleCountCache().getReadStartNanos();
 
-                        if (limit > 0) {
-                            stm.sql("LIMIT :limit ");
-                            stm.setInteger("limit", limit);
-                        }
-                        if (offset > 0) {
-                            stm.sql("OFFSET  :offset ");
-                            stm.setLong("offset", offset);
-                        }
+                        //==========================================
+                        // Get the articles ids to return
+                        //==========================================
+                        TemplateStatement stm = createStatement(connection);
+                        idsQuery.accept(stm);
 
-                        ItemsAndTotalCount<Long> articleIdsAndTotalCount = stm.selectListAndTotal(new ResultSetHandler<Long>() {
+                        List<Long> articleIds = stm.selectList(new ResultSetHandler<Long>() {
 
                             @Override
                             public Long handle(SpincastResultSet rs) throws Exception {
@@ -765,16 +1093,33 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
                             }
                         });
 
-                        if (articleIdsAndTotalCount.getTotalCount() == 0) {
-                            return new ItemsAndTotalCountDefault<Article>();
+                        //==========================================
+                        // When the end of the listing is reached
+                        // using an offset, the total is known.
+                        // Otherwise, it is taken from the cache
+                        // or counted.
+                        //==========================================
+                        long totalCount;
+                        if (cursor == null &&
+                            (limit <= 0 || articleIds.size() < limit) &&
+                            (articleIds.size() > 0 || offset == 0)) {
+                            totalCount = offset + articleIds.size();
+                            getArticleCountCache().putCount(countKey, totalCount, countReadStartNanos);
+                        } else {
+                            totalCount = getArticleCountCache().getCount(countKey,
+                                                                         () -> countArticles(connection, countKey, countQuery));
+                        }
+
+                        if (articleIds.size() == 0) {
+                            return new ItemsAndTotalCountDefault<Article>(new ArrayList<Article>(), totalCount);
                         }
 
                         //==========================================
                         // Get the articles themselves
                         //==========================================
-                        List<Article> articles = getArticles(articleIdsAndTotalCount.getItems(), currentUser);
+                        List<Article> articles = getArticles(articleIds, currentUser);
 
-                        return new ItemsAndTotalCountDefault<Article>(articles, articleIdsAndTotalCount.getTotalCount());
+                        return new ItemsAndTotalCountDefault<Article>(articles, totalCount);
                     }
                 });
 
@@ -785,61 +1130,226 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
         return articlesAndTotalCount;
     }
 
-    @Override
-    public ItemsAndTotalCount<Article> getFeed(User currentUser, long offset, int limit) {
-        ItemsAndTotalCount<Article> articlesAndTotalCount =
-                getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<ItemsAndTotalCount<Article>>() {
+    protected void addFindArticlesFilters(TemplateStatement stm,
+                                          String tagFilter,
+                                          String authorUsernameFilter,
+                                          String favoritedByUsernameFilter) {
 
-                    @Override
-                    public ItemsAndTotalCount<Article> run(Connection connection) throws Exception {
-                        SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+        if (tagFilter != null) {
+            stm.sql("INNER JOIN tags " +
+                    "ON tags.article_id = articles.id " +
+                    "AND tag = :tag ");
+            stm.setString("tag", tagFilter);
+        }
 
-                        //==========================================
-                        // Get the articles ids to return
-                        //==========================================
-                        stm.sql("SELECT articles.id as articleId " +
-                                "FROM articles " +
-                                "INNER JOIN followings " +
-                                "ON followings.source_user_id = :source_user_id " +
-                                "WHERE followings.target_user_id = articles.author_id " +
-                                "ORDER BY articles.creation_date DESC ");
-                        stm.setLong("source_user_id", currentUser.getId());
-
-                        if (limit > 0) {
-                            stm.sql("LIMIT :limit ");
-                            stm.setInteger("limit", limit);
-                        }
-                        if (offset > 0) {
-                            stm.sql("OFFSET  :offset ");
-                            stm.setLong("offset", offset);
-                        }
+        if (favoritedByUsernameFilter != null) {
+            stm.sql("INNER JOIN favorites " +
+                    "ON favorites.article_id = articles.id " +
+                    "AND user_id = (" +
+                    "   SELECT id " +
+                    "   FROM users " +
+                    "   WHERE username = :favUsername " +
+                    ") ");
+            stm.setString("favUsername", favoritedByUsernameFilter);
+        }
 
-                        ItemsAndTotalCount<Long> articleIdsAndTotalCount = stm.selectListAndTotal(new ResultSetHandler<Long>() {
+        stm.sql("WHERE 1=1 ");
 
-                            @Override
-                            public Long handle(SpincastResultSet rs) throws Exception {
-                                return rs.getLongOrNull("articleId");
-                            }
-                        });
+        if (authorUsernameFilter != null) {
+            stm.sql(" AND articles.author_id = (" +
+                    "   SELECT id " +
+                    "   FROM users " +
+                    "   WHERE username = :authorUsername " +
+                    ") ");
+            stm.setString("authorUsername", authorUsernameFilter);
+        }
+    }
 
-                        if (articleIdsAndTotalCount.getTotalCount() == 0) {
-                            return new ItemsAndTotalCountDefault<Article>();
-                        }
+    /**
+     * The feed is read from the materialized timeline of
+     * the user, merged with the articles of the followed
+     * authors in "pull" mode. Both parts are read in order
+     * from an index and are limited before being merged.
+     */
+    protected void addFeedQuery(TemplateStatement stm, User currentUser, ArticleCursor cursor, long offset, int limit) {
+
+        long partLimit = cursor == null ? offset + limit : limit;
+
+        stm.sql("SELECT feed.article_id as articleId " +
+                "FROM ( " +
+                "   ( " +
+                "       SELECT timelines.article_id, timelines.creation_date " +
+                "       FROM timelines " +
+                "       WHERE timelines.user_id = :user_id ");
+        stm.setLong("user_id", currentUser.getId());
+
+        if (cursor != null) {
+            stm.sql("   AND (timelines.creation_date, timelines.article_id) < (:cursorDate, :cursorId) ");
+            stm.setInstant("cursorDate", cursor.getCreatedAt());
+            stm.setLong("cursorId", cursor.getId());
+        }
+        stm.sql("       ORDER BY timelines.creation_date DESC, timelines.article_id DESC ");
+        if (limit > 0) {
+            stm.sql("   LIMIT :partLimit ");
+            stm.setLong("partLimit", partLimit);
+        }
 
-                        //==========================================
-                        // Get the articles themselves
-                        //==========================================
-                        List<Article> articles = getArticles(articleIdsAndTotalCount.getItems(), currentUser);
+        stm.sql("   ) " +
+                "   UNION " +
+                "   ( " +
+                "       SELECT articles.id, articles.creation_date " +
+                "       FROM timeline_pull_authors " +
+                "       INNER JOIN followings " +
+                "       ON followings.target_user_id = timeline_pull_authors.author_id " +
+                "       AND followings.source_user_id = :pull_user_id " +
+                "       INNER JOIN articles " +
+                "       ON articles.author_id = timeline_pull_authors.author_id ");
+        stm.setLong("pull_user_id", currentUser.getId());
+
+        if (cursor != null) {
+            stm.sql("   WHERE (articles.creation_date, articles.id) < (:pullCursorDate, :pullCursorId) ");
+            stm.setInstant("pullCursorDate", cursor.getCreatedAt());
+            stm.setLong("pullCursorId", cursor.getId());
+        }
+        stm.sql("       ORDER BY articles.creation_date DESC, articles.id DESC ");
+        if (limit > 0) {
+            stm.sql("   LIMIT :pullPartLimit ");
+            stm.setLong("pullPartLimit", partLimit);
+        }
 
-                        return new ItemsAndTotalCountDefault<Article>(articles, articleIdsAndTotalCount.getTotalCount());
-                    }
-                });
+        stm.sql("   ) " +
+                ") feed " +
+                "ORDER BY feed.creation_date DESC, feed.article_id DESC ");
 
-        if (articlesAndTotalCount == null) {
-            articlesAndTotalCount = new ItemsAndTotalCountDefault<Article>();
+        if (limit > 0) {
+            stm.sql("LIMIT :limit ");
+            stm.setInteger("limit", limit);
         }
+        if (cursor == null && offset > 0) {
+            stm.sql("OFFSET  :offset ");
+            stm.setLong("offset", offset);
+        }
+    }
 
-        return articlesAndTotalCount;
+    /**
+     * The rows of the timeline copied from a "pull" author
+     * are ignored : they can exist when the author switched
+     * to the "pull" mode while a fan-out was running, and
+     * the articles are then already counted with the ones
+     * merged at read time.
+     */
+    protected void addFeedCountQuery(TemplateStatement stm, User currentUser) {
+        stm.sql("SELECT ( " +
+                "   SELECT COUNT(*) " +
+                "   FROM timelines " +
+                "   WHERE timelines.user_id = :user_id " +
+                "   AND NOT EXISTS ( " +
+                "       SELECT 1 " +
+                "       FROM timeline_pull_authors " +
+                "       WHERE timeline_pull_authors.author_id = timelines.author_id " +
+                "   ) " +
+                ") + ( " +
+                "   SELECT COUNT(*) " +
+                "   FROM timeline_pull_authors " +
+                "   INNER JOIN followings " +
+                "   ON followings.target_user_id = timeline_pull_authors.author_id " +
+                "   AND followings.source_user_id = :pull_user_id " +
+                "   INNER JOIN articles " +
+                "   ON articles.author_id = timeline_pull_authors.author_id " +
+                ") as total ");
+        stm.setLong("user_id", currentUser.getId());
+        stm.setLong("pull_user_id", currentUser.getId());
+    }
+
+    /**
+     * Adds the sort and the pagination clauses. The "WHERE"
+     * clause must already be started.
+     * <p>
+     * When a cursor is specified, a seek predicate is used
+     * instead of an offset : the rows before the cursor are
+     * skipped using the (creation_date, id) index instead of
+     * being read and thrown away.
+     */
+    protected void addPagination(TemplateStatement stm, ArticleCursor cursor, long offset, int limit) {
+
+        if (cursor != null) {
+            stm.sql("AND (articles.creation_date, articles.id) < (:cursorDate, :cursorId) ");
+            stm.setInstant("cursorDate", cursor.getCreatedAt());
+            stm.setLong("cursorId", cursor.getId());
+        }
+
+        //==========================================
+        // The id makes the order stable when articles
+        // share the same creation date.
+        //==========================================
+        stm.sql("ORDER BY articles.creation_date DESC, articles.id DESC ");
+
+        if (limit > 0) {
+            stm.sql("LIMIT :limit ");
+            stm.setInteger("limit", limit);
+        }
+        if (cursor == null && offset > 0) {
+            stm.sql("OFFSET  :offset ");
+            stm.setLong("offset", offset);
+        }
+    }
+
+    /**
+     * Counts the articles of a listing.
+     * <p>
+     * If enabled, the number of articles of the unfiltered
+     * listing is estimated from the planner statistics
+     * instead, unless the table is small.
+     */
+    protected long countArticles(Connection connection, CountKey countKey, Consumer<TemplateStatement> countQuery) {
+
+        if (countKey.isUnfiltered() && getAppConfig().isDbCountEstimateEnabled()) {
+            long estimate = estimateArticlesCount(connection);
+            if (estimate >= getAppConfig().getDbCountEstimateMinRows()) {
+                return estimate;
+            }
+        }
+
+        TemplateStatement stm = createStatement(connection);
+        countQuery.accept(stm);
+
+        Long total = stm.selectOne(new ResultSetHandler<Long>() {
+
+            @Override
+            public Long handle(SpincastResultSet rs) throws Exception {
+                return rs.getLongOrNull("total");
+            }
+        });
+        return total != null ? total : 0;
+    }
+
+    /**
+     * Estimates the number of rows of the "articles" table
+     * the same way the planner does : using the density
+     * of the last ANALYZE and the current size of the table.
+     *
+     * @return <code>-1</code> if the table has never been
+     * analyzed.
+     */
+    protected long estimateArticlesCount(Connection connection) {
+
+        TemplateStatement stm = createStatement(connection);
+        stm.sql("SELECT CASE " +
+                "   WHEN relpages > 0 AND reltuples > 0 " +
+                "   THEN (reltuples / relpages * (pg_relation_size(oid) / current_setting('block_size')::integer))::bigint " +
+                "   ELSE -1 " +
+                "END as estimate " +
+                "FROM pg_class " +
+                "WHERE oid = 'articles'::regclass ");
+
+        Long estimate = stm.selectOne(new ResultSetHandler<Long>() {
+
+            @Override
+            public Long handle(SpincastResultSet rs) throws Exception {
+                return rs.getLongOrNull("estimate");
+            }
+        });
+        return estimate != null ? estimate : -1;
     }
 
     @Override
@@ -852,105 +1362,155 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
     }
 
     @Override
-    public List<Comment> getComments(long articleId, User currentUser) {
-        return getComments(null, articleId, currentUser);
-    }
-
-    protected List<Comment> getComments(Long commentId, Long articleId, User currentUser) {
+    public String getCommentsVersion(String articleSlug, User currentUser) {
 
-        return getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<List<Comment>>() {
+        return autoCommit("getCommentsVersion", new JdbcQueries<String>() {
 
             @Override
-            public List<Comment> run(Connection connection) {
+            public String run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
 
                 //==========================================
-                // Get comments base infos
+                // The comments are never modified : adding
+                // one changes the max id, deleting one
+                // changes the count.
                 //==========================================
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                stm.sql("SELECT articles.id, " +
+                        "       COUNT(comments.id) AS comments_nbr, " +
+                        "       COALESCE(MAX(comments.id), 0) AS max_comment_id, " +
+                        "       MAX(users.modification_date) AS max_author_modification_date, " +
+                        "       COALESCE(STRING_AGG(DISTINCT followings.target_user_id::text, ','), '') AS followed_ids " +
+                        "FROM articles " +
+                        "LEFT JOIN comments ON comments.article_id = articles.id " +
+                        "LEFT JOIN users ON users.id = comments.author_id " +
+                        "LEFT JOIN followings ON followings.source_user_id = :current_user_id " +
+                        "                    AND followings.target_user_id = comments.author_id " +
+                        "WHERE articles.slug = :slug " +
+                        "GROUP BY articles.id ");
 
-                stm.sql("SELECT id, author_id, article_id, body, creation_date, modification_date " +
-                        "FROM comments " +
-                        "WHERE 1=1 ");
+                stm.setString("slug", articleSlug);
+                stm.setLong("current_user_id", currentUser != null ? currentUser.getId() : -1);
 
-                if (commentId != null) {
-                    stm.sql("AND id = :id ");
-                    stm.setLong("id", commentId);
-                }
+                return stm.selectOne(new ResultSetHandler<String>() {
 
-                if (articleId != null) {
-                    stm.sql("AND article_id = :article_id ");
-                    stm.setLong("article_id", articleId);
-                }
+                    @Override
+                    public String handle(SpincastResultSet rs) throws Exception {
+                        return rs.getLong("id") + ":" +
+                               rs.getLong("comments_nbr") + ":" +
+                               rs.getLong("max_comment_id") + ":" +
+                               rs.getInstant("max_author_modification_date") + ":" +
+                               rs.getString("followed_ids");
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public List<Comment> getComments(long articleId, User currentUser) {
+        return getComments(null, articleId, currentUser);
+    }
 
-                stm.sql("ORDER BY creation_date DESC ");
+    protected List<Comment> getComments(Long commentId, Long articleId, User currentUser) {
 
-                LinkedHashMap<Long, JsonObject> baseInfosByCommentId = new LinkedHashMap<>();
-                stm.selectList(new ResultSetHandler<Void>() {
+        //==========================================
+        // Get comments base infos. The connection is
+        // released before the authors are loaded, since
+        // they may be loaded by a batch.
+        //==========================================
+        LinkedHashMap<Long, JsonObject> baseInfosByCommentId =
+                autoCommit("getComments", new JdbcQueries<LinkedHashMap<Long, JsonObject>>() {
 
                     @Override
-                    public Void handle(SpincastResultSet rs) throws Exception {
+                    public LinkedHashMap<Long, JsonObject> run(Connection connection) {
 
-                        long commentId = rs.getLongOrNull("id");
-                        JsonObject baseInfos = getJsonManager().create();
-                        baseInfosByCommentId.put(commentId, baseInfos);
+                        TemplateStatement stm = createStatement(connection);
 
-                        baseInfos.set("id", commentId);
-                        baseInfos.set("author_id", rs.getLongOrNull("author_id"));
-                        baseInfos.set("article_id", rs.getLongOrNull("article_id"));
-                        baseInfos.set("body", rs.getString("body"));
-                        baseInfos.set("creation_date", rs.getInstant("creation_date"));
-                        baseInfos.set("modification_date", rs.getInstant("modification_date"));
+                        stm.sql("SELECT id, author_id, article_id, body, creation_date, modification_date " +
+                                "FROM comments " +
+                                "WHERE 1=1 ");
 
-                        return null;
-                    }
-                });
+                        if (commentId != null) {
+                            stm.sql("AND id = :id ");
+                            stm.setLong("id", commentId);
+                        }
 
-                if (baseInfosByCommentId.size() == 0) {
-                    return null;
-                }
+                        if (articleId != null) {
+                            stm.sql("AND article_id = :article_id ");
+                            stm.setLong("article_id", articleId);
+                        }
 
-                //==========================================
-                // Get authors profiles
-                //==========================================
-                Set<Long> authorIds = new HashSet<>();
-                for (JsonObject commentBaseInfos : baseInfosByCommentId.values()) {
-                    authorIds.add(commentBaseInfos.getLong("author_id"));
-                }
-                Map<Long, Profile> profilesByUserIds = getUserRepository().getProfilesByUserIds(authorIds, currentUser);
+                        stm.sql("ORDER BY creation_date DESC ");
 
-                //==========================================
-                // Build final comments
-                //==========================================
-                List<Comment> comments = new ArrayList<>();
-                for (JsonObject commentBaseInfos : baseInfosByCommentId.values()) {
+                        LinkedHashMap<Long, JsonObject> baseInfosByCommentId = new LinkedHashMap<>();
+                        stm.selectList(new ResultSetHandler<Void>() {
 
-                    long authorId = commentBaseInfos.getLong("author_id");
-                    Profile authorProfile = profilesByUserIds.get(authorId);
-                    if (authorProfile == null) {
-                        logger.error("Profile not found for comment author #" + authorId);
-                        return null;
+                            @Override
+                            public Void handle(SpincastResultSet rs) throws Exception {
+
+                                long commentId = rs.getLongOrNull("id");
+                                JsonObject baseInfos = getJsonManager().create();
+                                baseInfosByCommentId.put(commentId, baseInfos);
+
+                                baseInfos.set("id", commentId);
+                                baseInfos.set("author_id", rs.getLongOrNull("author_id"));
+                                baseInfos.set("article_id", rs.getLongOrNull("article_id"));
+                                baseInfos.set("body", rs.getString("body"));
+                                baseInfos.set("creation_date", rs.getInstant("creation_date"));
+                                baseInfos.set("modification_date", rs.getInstant("modification_date"));
+
+                                return null;
+                            }
+                        });
+                        return baseInfosByCommentId;
                     }
+                });
 
-                    Comment comment = getEntityFactory().createComment(commentBaseInfos.getLong("id"),
-                                                                       authorProfile,
-                                                                       commentBaseInfos.getString("body"),
-                                                                       commentBaseInfos.getInstant("creation_date"),
-                                                                       commentBaseInfos.getInstant("modification_date"));
-                    comments.add(comment);
-                }
-                return comments;
+        if (baseInfosByCommentId.size() == 0) {
+            return null;
+        }
+
+        //==========================================
+        // Get authors profiles
+        //==========================================
+        Set<Long> authorIds = new HashSet<>();
+        for (JsonObject commentBaseInfos : baseInfosByCommentId.values()) {
+            authorIds.add(commentBaseInfos.getLong("author_id"));
+        }
+        Map<Long, Profile> profilesByUserIds = getUserRepository().getProfilesByUserIds(authorIds, currentUser);
+
+        //==========================================
+        // Build final comments
+        //==========================================
+        List<Comment> comments = new ArrayList<>();
+        for (JsonObject commentBaseInfos : baseInfosByCommentId.values()) {
+
+            long authorId = commentBaseInfos.getLong("author_id");
+            Profile authorProfile = profilesByUserIds.get(authorId);
+            if (authorProfile == null) {
+                logger.error("Profile not found for comment author #" + authorId);
+                return null;
             }
-        });
+
+            Comment comment = getEntityFactory().createComment(commentBaseInfos.getLong("id"),
+                                                               authorProfile,
+                                                               commentBaseInfos.getString("body"),
+                                                               commentBaseInfos.getInstant("creation_date"),
+                                                               commentBaseInfos.getInstant("modification_date"));
+            comments.add(comment);
+        }
+        return comments;
     }
 
     @Override
     public Comment saveComment(long articleId, String body, User currentUser) {
-        return getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Comment>() {
+        return autoCommit("saveComment", new JdbcQueries<Comment>() {
 
             @Override
             public Comment run(Connection connection) {
 
-                InsertStatement stm = getJdbcUtils().statements().createInsertStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("INSERT INTO comments(author_id,  article_id,  body) " +
                         "VALUES              (:author_id, :article_id, :body) ");
@@ -970,12 +1530,12 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
     @Override
     public void deleteComment(long commentId) {
-        getJdbcUtils().scopes().transactional(getDataSource(), new JdbcQueries<Void>() {
+        transactional("deleteComment", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                DeleteStatement stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 //==========================================
                 // Delete favorites
@@ -992,15 +1552,40 @@ public class ArticleRepositoryDefault extends BaseRepository implements ArticleR
 
     @Override
     public List<String> getTags() {
-        List<String> tags = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<List<String>>() {
+        List<String> tags = autoCommit("getTags", new JdbcQueries<List<String>>() {
 
             @Override
             public List<String> run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("SELECT DISTINCT tag " +
-                        "FROM tags " +
+                //==========================================
+                // There are few distinct tags compared to
+                // the number of rows : the index on "tag" is
+                // used to jump from one tag to the next one,
+                // instead of scanning the whole table.
+                //==========================================
+                stm.sql("WITH RECURSIVE distinct_tags AS ( " +
+                        "   ( " +
+                        "       SELECT tag " +
+                        "       FROM tags " +
+                        "       ORDER BY tag " +
+                        "       LIMIT 1 " +
+                        "   ) " +
+                        "   UNION ALL " +
+                        "   SELECT ( " +
+                        "       SELECT tags.tag " +
+                        "       FROM tags " +
+                        "       WHERE tags.tag > distinct_tags.tag " +
+                        "       ORDER BY tags.tag " +
+                        "       LIMIT 1 " +
+                        "   ) " +
+                        "   FROM distinct_tags " +
+                        "   WHERE distinct_tags.tag IS NOT NULL " +
+                        ") " +
+                        "SELECT tag " +
+                        "FROM distinct_tags " +
+                        "WHERE tag IS NOT NULL " +
                         "ORDER BY tag ");
 
                 return stm.selectList(new ResultSetHandler<String>() {
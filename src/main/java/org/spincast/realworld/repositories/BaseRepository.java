@@ -1,8 +1,21 @@
 package org.spincast.realworld.repositories;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Supplier;
+
 import javax.sql.DataSource;
 
+import org.spincast.plugins.jdbc.JdbcQueries;
 import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.utils.ItemsAndTotalCount;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.metrics.MetricsRegistry;
 import org.spincast.realworld.models.EntityFactory;
 import org.spincast.realworld.services.UserService;
 
@@ -15,20 +28,36 @@ public abstract class BaseRepository {
     private final JdbcUtils jdbcUtils;
     private final EntityFactory entityFactory;
     private final UserService userService;
+    private final AppConfig appConfig;
+    private final RequestConnectionManager requestConnectionManager;
+    private final SqlTemplateRegistry sqlTemplateRegistry;
+    private final MetricsRegistry metricsRegistry;
 
     @Inject
     public BaseRepository(Provider<DataSource> dataSource,
                           JdbcUtils jdbcUtils,
                           EntityFactory entityFactory,
-                          UserService userService) {
+                          UserService userService,
+                          AppConfig appConfig,
+                          RequestConnectionManager requestConnectionManager,
+                          SqlTemplateRegistry sqlTemplateRegistry,
+                          MetricsRegistry metricsRegistry) {
         this.dataSource = dataSource;
         this.jdbcUtils = jdbcUtils;
         this.entityFactory = entityFactory;
         this.userService = userService;
+        this.appConfig = appConfig;
+        this.requestConnectionManager = requestConnectionManager;
+        this.sqlTemplateRegistry = sqlTemplateRegistry;
+        this.metricsRegistry = metricsRegistry;
     }
 
+    /**
+     * The DataSource to use. When a connection is bound
+     * to the current request, it is the one returned.
+     */
     protected DataSource getDataSource() {
-        return this.dataSource.get();
+        return getRequestConnectionManager().wrap(this.dataSource.get());
     }
 
     protected JdbcUtils getJdbcUtils() {
@@ -42,4 +71,130 @@ public abstract class BaseRepository {
     protected UserService getUserService() {
         return this.userService;
     }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected RequestConnectionManager getRequestConnectionManager() {
+        return this.requestConnectionManager;
+    }
+
+    protected SqlTemplateRegistry getSqlTemplateRegistry() {
+        return this.sqlTemplateRegistry;
+    }
+
+    /**
+     * Creates a statement which SQL is only parsed once
+     * per shape.
+     */
+    protected TemplateStatement createStatement(Connection connection) {
+        return new TemplateStatement(connection, getSqlTemplateRegistry());
+    }
+
+    protected MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * <code>true</code> if the exception, or one of its
+     * causes, is a violation of the specified unique
+     * constraint.
+     */
+    protected boolean isUniqueViolation(Throwable ex, String constraintName) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException &&
+                "23505".equals(((SQLException)cause).getSQLState()) &&
+                cause.getMessage() != null &&
+                cause.getMessage().contains("\"" + constraintName + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the queries in an "autoCommit" scope, timed
+     * as the specified repository method.
+     */
+    protected <T> T autoCommit(String method, JdbcQueries<T> queries) {
+        return timed(method, () -> inScope(() -> getJdbcUtils().scopes().autoCommit(getDataSource(), queries)));
+    }
+
+    /**
+     * Runs the queries in a "transactional" scope, timed
+     * as the specified repository method.
+     */
+    protected <T> T transactional(String method, JdbcQueries<T> queries) {
+        return timed(method, () -> inScope(() -> getJdbcUtils().scopes().transactional(getDataSource(), queries)));
+    }
+
+    /**
+     * Lets the {@link RequestConnectionManager} know a
+     * connection is held by the current thread while the
+     * scope runs.
+     */
+    protected <T> T inScope(Supplier<T> scope) {
+        getRequestConnectionManager().scopeOpened();
+        try {
+            return scope.get();
+        } finally {
+            getRequestConnectionManager().scopeClosed();
+        }
+    }
+
+    protected <T> T timed(String method, Supplier<T> scope) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = scope.get();
+            outcome = "success";
+
+            int rows = countRows(result);
+            if (rows >= 0) {
+                getMetricsRegistry().histogram("app_db_scope_rows",
+                                               "Rows returned by the repository methods",
+                                               MetricsRegistry.ROWS_BUCKETS,
+                                               "repository",
+                                               getRepositoryName(),
+                                               "method",
+                                               method)
+                                    .observe(rows);
+            }
+            return result;
+        } finally {
+            getMetricsRegistry().histogram("app_db_scope_duration_seconds",
+                                           "Duration of the repository database scopes, connection acquisition included",
+                                           MetricsRegistry.DURATION_BUCKETS,
+                                           "repository",
+                                           getRepositoryName(),
+                                           "method",
+                                           method,
+                                           "outcome",
+                                           outcome)
+                                .observe((System.nanoTime() - start) / 1000000000.0);
+        }
+    }
+
+    /**
+     * The number of rows of a scope result, or
+     * <code>-1</code> if the result is not a list
+     * of rows.
+     */
+    protected int countRows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>)result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>)result).size();
+        }
+        if (result instanceof ItemsAndTotalCount) {
+            return ((ItemsAndTotalCount<?>)result).getItems().size();
+        }
+        return -1;
+    }
+
+    protected String getRepositoryName() {
+        return getClass().getSimpleName();
+    }
 }
@@ -0,0 +1,33 @@
+package org.spincast.realworld.repositories;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.spincast.core.json.JsonObject;
+
+public interface BulkRepository {
+
+    /**
+     * Imports the specified records in a single transaction.
+     * <p>
+     * Each record has a "type" : "user", "article", "follow"
+     * or "favorite". The "article" records must also have
+     * a "baseSlug".
+     * <p>
+     * Records referencing a user or an article that doesn't
+     * exist are ignored, as are those already imported.
+     *
+     * @return the number of rows inserted, by table.
+     */
+    public Map<String, Integer> importRecords(Iterator<JsonObject> records);
+
+    /**
+     * Streams all the articles, with their author and their
+     * tags, in a format the import accepts. The articles are
+     * never all in memory.
+     *
+     * @return the number of articles exported.
+     */
+    public long exportArticles(Consumer<JsonObject> consumer);
+}
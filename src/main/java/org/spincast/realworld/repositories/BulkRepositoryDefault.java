@@ -0,0 +1,510 @@
+package org.spincast.realworld.repositories;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spincast.core.json.JsonManager;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.jdbc.JdbcQueries;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.SpincastResultSet;
+import org.spincast.plugins.jdbc.statements.ResultSetHandler;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.models.EntityFactory;
+import org.spincast.realworld.services.UserService;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+/**
+ * Bulk import using <code>COPY FROM STDIN</code>, and
+ * streaming export.
+ * <p>
+ * The records are streamed, as is, into a temporary
+ * staging table. They are then merged into the real tables
+ * using set-based statements, so the time and the memory
+ * used don't depend on the number of records the way one
+ * insert per record would.
+ */
+public class BulkRepositoryDefault extends BaseRepository implements BulkRepository {
+
+    protected final Logger logger = LoggerFactory.getLogger(BulkRepositoryDefault.class);
+
+    /**
+     * Number of characters buffered before being sent
+     * to the COPY stream.
+     */
+    protected static final int COPY_BUFFER_CHARS = 64 * 1024;
+
+    private final ArticleCountCache articleCountCache;
+    private final JsonManager jsonManager;
+
+    @Inject
+    public BulkRepositoryDefault(Provider<DataSource> dataSource,
+                                 JdbcUtils jdbcUtils,
+                                 EntityFactory entityFactory,
+                                 UserService userService,
+                                 AppConfig appConfig,
+                                 RequestConnectionManager requestConnectionManager,
+                                 SqlTemplateRegistry sqlTemplateRegistry,
+                                 MetricsRegistry metricsRegistry,
+                                 ArticleCountCache articleCountCache,
+                                 JsonManager jsonManager) {
+        super(dataSource, jdbcUtils, entityFactory, userService, appConfig, requestConnectionManager, sqlTemplateRegistry, metricsRegistry);
+        this.articleCountCache = articleCountCache;
+        this.jsonManager = jsonManager;
+    }
+
+    protected ArticleCountCache getArticleCountCache() {
+        return this.articleCountCache;
+    }
+
+    protected JsonManager getJsonManager() {
+        return this.jsonManager;
+    }
+
+    @Override
+    public Map<String, Integer> importRecords(Iterator<JsonObject> records) {
+
+        Map<String, Integer> counts = transactional("importRecords", new JdbcQueries<Map<String, Integer>>() {
+
+            @Override
+            public Map<String, Integer> run(Connection connection) throws Exception {
+
+                createStagingTables(connection);
+
+                Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+                counts.put("records", (int)copyRecords(connection, records));
+
+                //==========================================
+                // The temporary tables have no statistics
+                // otherwise.
+                //==========================================
+                execute(connection, "ANALYZE import_rows");
+
+                counts.put("users", mergeUsers(connection));
+                counts.put("articles", mergeArticles(connection));
+                counts.put("tags", mergeTags(connection));
+                counts.put("followings", mergeFollowings(connection));
+                counts.put("favorites", mergeFavorites(connection));
+                counts.put("timelines", mergeTimelines(connection));
+
+                return counts;
+            }
+        });
+
+        //==========================================
+        // Any listing may have changed.
+        //==========================================
+        getArticleCountCache().invalidateAll();
+
+        return counts;
+    }
+
+    protected int execute(Connection connection, String sql) {
+        TemplateStatement stm = createStatement(connection);
+        stm.sql(sql);
+        return stm.update();
+    }
+
+    /**
+     * The staging tables are dropped when the import
+     * transaction ends.
+     */
+    protected void createStagingTables(Connection connection) {
+
+        execute(connection,
+                "CREATE TEMP TABLE import_rows ( " +
+                        "   line_no BIGINT NOT NULL, " +
+                        "   kind VARCHAR(16) NOT NULL, " +
+                        "   base_slug VARCHAR(512), " +
+                        "   doc JSONB NOT NULL " +
+                        ") ON COMMIT DROP ");
+
+        execute(connection,
+                "CREATE TEMP TABLE import_followings ( " +
+                        "   source_user_id INTEGER NOT NULL, " +
+                        "   target_user_id INTEGER NOT NULL " +
+                        ") ON COMMIT DROP ");
+
+        execute(connection,
+                "CREATE TEMP TABLE import_favorites ( " +
+                        "   article_id INTEGER NOT NULL " +
+                        ") ON COMMIT DROP ");
+    }
+
+    /**
+     * Streams the records into the "import_rows" staging
+     * table.
+     *
+     * @return the number of records copied.
+     */
+    protected long copyRecords(Connection connection, Iterator<JsonObject> records) throws Exception {
+
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        CopyIn copyIn = copyManager.copyIn("COPY import_rows(line_no, kind, base_slug, doc) FROM STDIN");
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 1024);
+            long lineNo = 0;
+            while (records.hasNext()) {
+                JsonObject record = records.next();
+                lineNo++;
+
+                buffer.append(lineNo).append('\t');
+                appendCopyValue(buffer, record.getString("type"));
+                buffer.append('\t');
+                appendCopyValue(buffer, record.getString("baseSlug"));
+                buffer.append('\t');
+                appendCopyValue(buffer, record.toJsonString());
+                buffer.append('\n');
+
+                if (buffer.length() >= COPY_BUFFER_CHARS) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            writeToCopy(copyIn, buffer);
+
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Appends a value using the escaping of the
+     * COPY text format.
+     */
+    protected void appendCopyValue(StringBuilder buffer, String value) {
+        if (value == null) {
+            buffer.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                default:
+                    buffer.append(c);
+            }
+        }
+    }
+
+    protected void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws Exception {
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * A username or an email already used makes the user
+     * being ignored. In the records, the first user with
+     * a given username wins.
+     */
+    protected int mergeUsers(Connection connection) {
+
+        return execute(connection,
+                       "INSERT INTO users(username, email, hashed_password, password_salt, bio, image) " +
+                               "SELECT DISTINCT ON (LOWER(doc->>'username')) " +
+                               "       doc->>'username', doc->>'email', doc->>'hashedPassword', doc->>'passwordSalt', " +
+                               "       doc->>'bio', doc->>'image' " +
+                               "FROM import_rows " +
+                               "WHERE kind = 'user' " +
+                               "ORDER BY LOWER(doc->>'username'), line_no " +
+                               "ON CONFLICT DO NOTHING ");
+    }
+
+    /**
+     * The slugs are numbered the same way
+     * {@link ArticleRepository#allocateSlugNumber(String)}
+     * does, but for all the articles at once. A generated
+     * slug still colliding with an existing one gets a
+     * random suffix.
+     */
+    protected int mergeArticles(Connection connection) {
+
+        execute(connection,
+                "CREATE TEMP TABLE import_articles ON COMMIT DROP AS " +
+                        "SELECT import_rows.line_no, import_rows.doc, import_rows.base_slug, users.id AS author_id, " +
+                        "       ROW_NUMBER() OVER (PARTITION BY import_rows.base_slug ORDER BY import_rows.line_no) AS rank_nbr, " +
+                        "       COUNT(*) OVER (PARTITION BY import_rows.base_slug) AS group_size, " +
+                        "       NULL::INTEGER AS nbr, " +
+                        "       NULL::VARCHAR(512) AS slug, " +
+                        "       NULL::INTEGER AS article_id " +
+                        "FROM import_rows " +
+                        "INNER JOIN users ON LOWER(users.username) = LOWER(import_rows.doc->>'author') " +
+                        "WHERE import_rows.kind = 'article' ");
+
+        //==========================================
+        // Reserves a range of numbers per base slug.
+        // Only the counters of those base slugs are
+        // locked until the import is committed, the
+        // other slugs can still be allocated.
+        //==========================================
+        execute(connection,
+                "WITH reserved AS ( " +
+                        "   INSERT INTO slug_counters(base_slug, counter) " +
+                        "   SELECT base_slug, COUNT(*) " +
+                        "   FROM import_articles " +
+                        "   GROUP BY base_slug " +
+                        "   ORDER BY base_slug " +
+                        "   ON CONFLICT (base_slug) DO UPDATE " +
+                        "   SET counter = slug_counters.counter + EXCLUDED.counter " +
+                        "   RETURNING base_slug, counter " +
+                        ") " +
+                        "UPDATE import_articles " +
+                        "SET nbr = reserved.counter - import_articles.group_size + import_articles.rank_nbr " +
+                        "FROM reserved " +
+                        "WHERE reserved.base_slug = import_articles.base_slug ");
+
+        execute(connection,
+                "UPDATE import_articles " +
+                        "SET slug = CASE WHEN nbr > 1 THEN base_slug || '-' || nbr ELSE base_slug END ");
+
+        execute(connection, "CREATE INDEX ON import_articles(slug)");
+        execute(connection, "ANALYZE import_articles");
+
+        execute(connection,
+                "UPDATE import_articles " +
+                        "SET slug = base_slug || '-' || md5(line_no || ':' || random()) " +
+                        "WHERE EXISTS(SELECT 1 FROM articles WHERE articles.slug = import_articles.slug) " +
+                        "OR EXISTS( " +
+                        "   SELECT 1 " +
+                        "   FROM import_articles other " +
+                        "   WHERE other.slug = import_articles.slug " +
+                        "   AND other.line_no < import_articles.line_no " +
+                        ") ");
+
+        return execute(connection,
+                       "WITH inserted AS ( " +
+                               "   INSERT INTO articles(slug, author_id, title, description, body, creation_date, modification_date) " +
+                               "   SELECT slug, author_id, doc->>'title', doc->>'description', doc->>'body', " +
+                               "          COALESCE((doc->>'createdAt')::timestamptz, clock_timestamp()), " +
+                               "          COALESCE((doc->>'createdAt')::timestamptz, clock_timestamp()) " +
+                               "   FROM import_articles " +
+                               "   ORDER BY line_no " +
+                               "   RETURNING id, slug " +
+                               ") " +
+                               "UPDATE import_articles " +
+                               "SET article_id = inserted.id " +
+                               "FROM inserted " +
+                               "WHERE inserted.slug = import_articles.slug ");
+    }
+
+    protected int mergeTags(Connection connection) {
+
+        return execute(connection,
+                       "INSERT INTO tags(tag, article_id) " +
+                               "SELECT DISTINCT tags.tag, import_articles.article_id " +
+                               "FROM import_articles " +
+                               "CROSS JOIN LATERAL jsonb_array_elements_text(COALESCE(import_articles.doc->'tagList', '[]'::jsonb)) tags(tag) " +
+                               "ON CONFLICT DO NOTHING ");
+    }
+
+    /**
+     * The followings inserted are kept to backfill the
+     * timelines.
+     */
+    protected int mergeFollowings(Connection connection) {
+
+        return execute(connection,
+                       "WITH inserted AS ( " +
+                               "   INSERT INTO followings(source_user_id, target_user_id) " +
+                               "   SELECT DISTINCT sources.id, targets.id " +
+                               "   FROM import_rows " +
+                               "   INNER JOIN users sources ON LOWER(sources.username) = LOWER(import_rows.doc->>'follower') " +
+                               "   INNER JOIN users targets ON LOWER(targets.username) = LOWER(import_rows.doc->>'followed') " +
+                               "   WHERE import_rows.kind = 'follow' " +
+                               "   AND sources.id <> targets.id " +
+                               "   ON CONFLICT DO NOTHING " +
+                               "   RETURNING source_user_id, target_user_id " +
+                               ") " +
+                               "INSERT INTO import_followings(source_user_id, target_user_id) " +
+                               "SELECT source_user_id, target_user_id " +
+                               "FROM inserted ");
+    }
+
+    /**
+     * A favorite references an imported article by its
+     * "articleRef" or an existing article by its
+     * "articleSlug". The denormalized number of favorites
+     * is then incremented by the number of favorites
+     * actually inserted.
+     */
+    protected int mergeFavorites(Connection connection) {
+
+        int nbr = execute(connection,
+                          "WITH inserted AS ( " +
+                                  "   INSERT INTO favorites(user_id, article_id) " +
+                                  "   SELECT DISTINCT users.id, COALESCE(import_articles.article_id, articles.id) " +
+                                  "   FROM import_rows " +
+                                  "   INNER JOIN users ON LOWER(users.username) = LOWER(import_rows.doc->>'username') " +
+                                  "   LEFT JOIN import_articles ON import_articles.doc->>'ref' = import_rows.doc->>'articleRef' " +
+                                  "   LEFT JOIN articles ON articles.slug = import_rows.doc->>'articleSlug' " +
+                                  "   WHERE import_rows.kind = 'favorite' " +
+                                  "   AND COALESCE(import_articles.article_id, articles.id) IS NOT NULL " +
+                                  "   ON CONFLICT DO NOTHING " +
+                                  "   RETURNING article_id " +
+                                  ") " +
+                                  "INSERT INTO import_favorites(article_id) " +
+                                  "SELECT article_id " +
+                                  "FROM inserted ");
+
+        execute(connection,
+                "UPDATE articles " +
+                        "SET favorites_count = articles.favorites_count + counts.nbr " +
+                        "FROM ( " +
+                        "   SELECT article_id, COUNT(*) AS nbr " +
+                        "   FROM import_favorites " +
+                        "   GROUP BY article_id " +
+                        ") counts " +
+                        "WHERE counts.article_id = articles.id ");
+
+        return nbr;
+    }
+
+    /**
+     * Adds the imported articles to the timelines of the
+     * followers of their author, and the articles of the
+     * followed authors to the timelines of the imported
+     * followings. The authors having too many followers are
+     * switched to the "pull" mode first.
+     */
+    protected int mergeTimelines(Connection connection) {
+
+        TemplateStatement stm = createStatement(connection);
+        stm.sql("INSERT INTO timeline_pull_authors(author_id) " +
+                "SELECT followings.target_user_id " +
+                "FROM followings " +
+                "WHERE followings.target_user_id IN ( " +
+                "   SELECT target_user_id FROM import_followings " +
+                "   UNION " +
+                "   SELECT author_id FROM import_articles " +
+                ") " +
+                "GROUP BY followings.target_user_id " +
+                "HAVING COUNT(*) >= :min_followers " +
+                "ON CONFLICT (author_id) DO NOTHING ");
+        stm.setLong("min_followers", getAppConfig().getDbTimelinePullAuthorMinFollowers());
+        stm.insert();
+
+        execute(connection,
+                "DELETE FROM timelines " +
+                        "USING timeline_pull_authors " +
+                        "WHERE timelines.author_id = timeline_pull_authors.author_id ");
+
+        int nbr = execute(connection,
+                          "INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                                  "SELECT followings.source_user_id, articles.id, articles.author_id, articles.creation_date " +
+                                  "FROM import_articles " +
+                                  "INNER JOIN articles ON articles.id = import_articles.article_id " +
+                                  "INNER JOIN followings ON followings.target_user_id = articles.author_id " +
+                                  "WHERE NOT EXISTS( " +
+                                  "   SELECT 1 FROM timeline_pull_authors WHERE timeline_pull_authors.author_id = articles.author_id " +
+                                  ") " +
+                                  "ON CONFLICT (user_id, article_id) DO NOTHING ");
+
+        nbr += execute(connection,
+                       "INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                               "SELECT import_followings.source_user_id, articles.id, articles.author_id, articles.creation_date " +
+                               "FROM import_followings " +
+                               "INNER JOIN articles ON articles.author_id = import_followings.target_user_id " +
+                               "WHERE NOT EXISTS( " +
+                               "   SELECT 1 FROM timeline_pull_authors WHERE timeline_pull_authors.author_id = articles.author_id " +
+                               ") " +
+                               "ON CONFLICT (user_id, article_id) DO NOTHING ");
+
+        return nbr;
+    }
+
+    /**
+     * A single query, read using a server-side cursor : the
+     * rows are fetched by batches while the consumer
+     * processes them. The tags are aggregated per article in
+     * a lateral join, so the rows can be streamed in the
+     * order of the primary key.
+     */
+    @Override
+    public long exportArticles(Consumer<JsonObject> consumer) {
+
+        return transactional("exportArticles", new JdbcQueries<Long>() {
+
+            @Override
+            public Long run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+                stm.setFetchSize(getAppConfig().getDbExportFetchSize());
+
+                stm.sql("SELECT articles.id, articles.slug, articles.title, articles.description, articles.body, " +
+                        "       articles.creation_date, articles.modification_date, articles.favorites_count, " +
+                        "       users.username, " +
+                        "       COALESCE(article_tags.tags, '{}') AS tags " +
+                        "FROM articles " +
+                        "INNER JOIN users ON users.id = articles.author_id " +
+                        "LEFT JOIN LATERAL ( " +
+                        "   SELECT array_agg(tags.tag ORDER BY tags.tag) AS tags " +
+                        "   FROM tags " +
+                        "   WHERE tags.article_id = articles.id " +
+                        ") article_tags ON TRUE " +
+                        "ORDER BY articles.id ");
+
+                long[] nbr = new long[]{0};
+                stm.selectList(new ResultSetHandler<Void>() {
+
+                    @Override
+                    public Void handle(SpincastResultSet rs) throws Exception {
+
+                        JsonObject article = getJsonManager().create();
+                        article.set("type", "article");
+                        article.set("ref", rs.getString("slug"));
+                        article.set("slug", rs.getString("slug"));
+                        article.set("author", rs.getString("username"));
+                        article.set("title", rs.getString("title"));
+                        article.set("description", rs.getString("description"));
+                        article.set("body", rs.getString("body"));
+                        article.set("tagList", Arrays.asList((String[])rs.getArray("tags").getArray()));
+                        article.set("createdAt", rs.getInstant("creation_date"));
+                        article.set("updatedAt", rs.getInstant("modification_date"));
+                        article.set("favoritesCount", rs.getIntegerOrZero("favorites_count"));
+
+                        consumer.accept(article);
+                        nbr[0]++;
+                        return null;
+                    }
+                });
+
+                return nbr[0];
+            }
+        });
+    }
+}
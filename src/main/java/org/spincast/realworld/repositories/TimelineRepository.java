@@ -0,0 +1,31 @@
+package org.spincast.realworld.repositories;
+
+/**
+ * Maintains the materialized home timelines used
+ * by the feed.
+ * <p>
+ * The articles of most authors are copied to the timelines
+ * of their followers when they are created
+ * ("fan-out-on-write"). The articles of the authors having
+ * a lot of followers are instead merged when a feed is read.
+ */
+public interface TimelineRepository {
+
+    /**
+     * Adds a new article to the timelines of the followers
+     * of its author. This is done asynchronously.
+     */
+    public void fanOutArticle(long articleId, long authorId);
+
+    /**
+     * Adds the articles of an author to the timeline of a
+     * user who just followed this author.
+     */
+    public void backfill(long userId, long authorId);
+
+    /**
+     * Removes the articles of an author from the timeline
+     * of a user who just unfollowed this author.
+     */
+    public void prune(long userId, long authorId);
+}
@@ -0,0 +1,234 @@
+package org.spincast.realworld.repositories;
+
+import java.sql.Connection;
+import java.util.concurrent.ExecutorService;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spincast.plugins.jdbc.JdbcQueries;
+import org.spincast.plugins.jdbc.JdbcUtils;
+import org.spincast.plugins.jdbc.SpincastResultSet;
+import org.spincast.plugins.jdbc.statements.ResultSetHandler;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.models.EntityFactory;
+import org.spincast.realworld.services.UserService;
+import org.spincast.realworld.utils.ExecutorFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class TimelineRepositoryDefault extends BaseRepository implements TimelineRepository {
+
+    protected final Logger logger = LoggerFactory.getLogger(TimelineRepositoryDefault.class);
+
+    private final ArticleCountCache articleCountCache;
+    private final ExecutorFactory executorFactory;
+    private final ExecutorService fanOutExecutor;
+
+    @Inject
+    public TimelineRepositoryDefault(Provider<DataSource> dataSource,
+                                     JdbcUtils jdbcUtils,
+                                     EntityFactory entityFactory,
+                                     UserService userService,
+                                     AppConfig appConfig,
+                                     RequestConnectionManager requestConnectionManager,
+                                     SqlTemplateRegistry sqlTemplateRegistry,
+                                     MetricsRegistry metricsRegistry,
+                                     ArticleCountCache articleCountCache,
+                                     ExecutorFactory executorFactory) {
+        super(dataSource, jdbcUtils, entityFactory, userService, appConfig, requestConnectionManager, sqlTemplateRegistry, metricsRegistry);
+        this.articleCountCache = articleCountCache;
+        this.executorFactory = executorFactory;
+        this.fanOutExecutor = createFanOutExecutor();
+    }
+
+    protected ArticleCountCache getArticleCountCache() {
+        return this.articleCountCache;
+    }
+
+    protected ExecutorFactory getExecutorFactory() {
+        return this.executorFactory;
+    }
+
+    protected ExecutorService getFanOutExecutor() {
+        return this.fanOutExecutor;
+    }
+
+    protected ExecutorService createFanOutExecutor() {
+        return getExecutorFactory().createExecutor("timeline-fan-out", getAppConfig().getDbTimelineFanOutThreads());
+    }
+
+    @Override
+    public void fanOutArticle(long articleId, long authorId) {
+        getFanOutExecutor().execute(() -> {
+            try {
+                if (updatePullAuthor(authorId)) {
+                    return;
+                }
+                fanOut(articleId);
+
+                //==========================================
+                // The totals of the feeds changed.
+                //==========================================
+                getArticleCountCache().invalidateFeeds();
+            } catch (Exception ex) {
+                this.logger.error("Error adding article #" + articleId + " to the timelines", ex);
+            }
+        });
+    }
+
+    protected void fanOut(long articleId) {
+        autoCommit("fanOut", new JdbcQueries<Void>() {
+
+            @Override
+            public Void run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                //==========================================
+                // The followings are locked : an unfollow
+                // waits for the fan-out to be committed, so
+                // its prune sees the copied rows, and a
+                // follower who just unfollowed is skipped.
+                //==========================================
+                stm.sql("INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                        "SELECT followings.source_user_id, articles.id, articles.author_id, articles.creation_date " +
+                        "FROM articles " +
+                        "INNER JOIN followings " +
+                        "ON followings.target_user_id = articles.author_id " +
+                        "WHERE articles.id = :article_id " +
+                        "FOR SHARE OF followings " +
+                        "ON CONFLICT (user_id, article_id) DO NOTHING ");
+                stm.setLong("article_id", articleId);
+
+                stm.insert();
+
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void backfill(long userId, long authorId) {
+
+        if (updatePullAuthor(authorId)) {
+            return;
+        }
+
+        autoCommit("backfill", new JdbcQueries<Void>() {
+
+            @Override
+            public Void run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                //==========================================
+                // Only if the author is still followed, the
+                // following being locked as for the fan-out.
+                //==========================================
+                stm.sql("INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                        "SELECT followings.source_user_id, articles.id, articles.author_id, articles.creation_date " +
+                        "FROM followings " +
+                        "INNER JOIN articles " +
+                        "ON articles.author_id = followings.target_user_id " +
+                        "WHERE followings.source_user_id = :user_id " +
+                        "AND followings.target_user_id = :author_id " +
+                        "FOR SHARE OF followings " +
+                        "ON CONFLICT (user_id, article_id) DO NOTHING ");
+                stm.setLong("user_id", userId);
+                stm.setLong("author_id", authorId);
+
+                stm.insert();
+
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void prune(long userId, long authorId) {
+        autoCommit("prune", new JdbcQueries<Void>() {
+
+            @Override
+            public Void run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                stm.sql("DELETE FROM timelines " +
+                        "WHERE author_id = :author_id " +
+                        "AND user_id = :user_id ");
+                stm.setLong("user_id", userId);
+                stm.setLong("author_id", authorId);
+
+                stm.delete();
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Switches an author to the "pull" mode when the number
+     * of followers is too high : the articles of this author
+     * are then not copied to the timelines anymore but merged
+     * when the feeds are read. An author never goes back to
+     * the "push" mode.
+     *
+     * @return <code>true</code> if the author is in "pull" mode.
+     */
+    protected boolean updatePullAuthor(long authorId) {
+
+        return transactional("updatePullAuthor", new JdbcQueries<Boolean>() {
+
+            @Override
+            public Boolean run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                stm.sql("SELECT EXISTS(SELECT 1 FROM timeline_pull_authors WHERE author_id = :pull_author_id) as pull, " +
+                        "       (SELECT COUNT(*) FROM followings WHERE target_user_id = :target_user_id) as followers ");
+                stm.setLong("pull_author_id", authorId);
+                stm.setLong("target_user_id", authorId);
+
+                long[] pullAndFollowers = stm.selectOne(new ResultSetHandler<long[]>() {
+
+                    @Override
+                    public long[] handle(SpincastResultSet rs) throws Exception {
+                        return new long[]{rs.getBoolean("pull") ? 1 : 0, rs.getLong("followers")};
+                    }
+                });
+
+                if (pullAndFollowers[0] == 1) {
+                    return true;
+                }
+                if (pullAndFollowers[1] < getAppConfig().getDbTimelinePullAuthorMinFollowers()) {
+                    return false;
+                }
+
+                TemplateStatement insertStm = createStatement(connection);
+                insertStm.sql("INSERT INTO timeline_pull_authors(author_id) " +
+                              "VALUES (:author_id) " +
+                              "ON CONFLICT (author_id) DO NOTHING ");
+                insertStm.setLong("author_id", authorId);
+                insertStm.insert();
+
+                //==========================================
+                // The articles are now merged at read time.
+                //==========================================
+                TemplateStatement deleteStm = createStatement(connection);
+                deleteStm.sql("DELETE FROM timelines " +
+                              "WHERE author_id = :author_id ");
+                deleteStm.setLong("author_id", authorId);
+                deleteStm.delete();
+
+                return true;
+            }
+        });
+    }
+}
@@ -21,10 +21,32 @@ public interface UserRepository {
 
     public void updateUser(User user);
 
+    /**
+     * Replaces the hash of the password, without modifying
+     * the profile of the user. Nothing is updated if the
+     * current hash is not <code>previousHashedPassword</code>
+     * anymore : the password has been changed in between.
+     *
+     * @return <code>true</code> if the password has been
+     * updated.
+     */
+    public boolean updatePassword(long userId, String previousHashedPassword, String hashedPassword, String passwordSalt);
+
     public boolean isFollowingById(long sourceUserId, long targetUserId);
 
     public boolean isFollowingByUsername(long sourceUserId, String username);
 
+    /**
+     * A string that changes when the profile, as seen by
+     * the current user, changes.
+     *
+     * @param currentUser can be <code>null</code> if not
+     * logged in.
+     *
+     * @return <code>null</code> if the user is not found.
+     */
+    public String getProfileVersion(String username, User currentUser);
+
     public Map<Long, Boolean> getFollowingsByUsers(long sourceUserId, Set<Long> targetUserids);
 
     public void follow(long sourceUserId, long targetUserId);
@@ -2,7 +2,9 @@ package org.spincast.realworld.repositories;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,15 +14,19 @@ import javax.sql.DataSource;
 import org.spincast.plugins.jdbc.JdbcQueries;
 import org.spincast.plugins.jdbc.JdbcUtils;
 import org.spincast.plugins.jdbc.SpincastResultSet;
-import org.spincast.plugins.jdbc.statements.DeleteStatement;
-import org.spincast.plugins.jdbc.statements.InsertStatement;
 import org.spincast.plugins.jdbc.statements.ResultSetHandler;
-import org.spincast.plugins.jdbc.statements.SelectStatement;
-import org.spincast.plugins.jdbc.statements.UpdateStatement;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.BatchLoader;
+import org.spincast.realworld.db.BatchLoaderFactory;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.metrics.MetricsRegistry;
 import org.spincast.realworld.models.EntityFactory;
 import org.spincast.realworld.models.users.Profile;
 import org.spincast.realworld.models.users.User;
 import org.spincast.realworld.services.UserService;
+import org.spincast.shaded.org.apache.commons.lang3.tuple.Pair;
 
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
@@ -28,23 +34,65 @@ import com.google.inject.Provider;
 
 public class UserRepositoryDefault extends BaseRepository implements UserRepository {
 
+    private final ArticleCountCache articleCountCache;
+    private final TimelineRepository timelineRepository;
+    private final ArticleFragmentCache articleFragmentCache;
+    private final BatchLoader<Long, User> usersBatchLoader;
+    private final BatchLoader<Pair<Long, Long>, Boolean> followingsBatchLoader;
+
     @Inject
     public UserRepositoryDefault(Provider<DataSource> dataSource,
                                  JdbcUtils jdbcUtils,
                                  EntityFactory entityFactory,
-                                 UserService userService) {
-        super(dataSource, jdbcUtils, entityFactory, userService);
+                                 UserService userService,
+                                 AppConfig appConfig,
+                                 RequestConnectionManager requestConnectionManager,
+                                 SqlTemplateRegistry sqlTemplateRegistry,
+                                 MetricsRegistry metricsRegistry,
+                                 ArticleCountCache articleCountCache,
+                                 TimelineRepository timelineRepository,
+                                 BatchLoaderFactory batchLoaderFactory,
+                                 ArticleFragmentCache articleFragmentCache) {
+        super(dataSource, jdbcUtils, entityFactory, userService, appConfig, requestConnectionManager, sqlTemplateRegistry, metricsRegistry);
+        this.articleCountCache = articleCountCache;
+        this.timelineRepository = timelineRepository;
+        this.articleFragmentCache = articleFragmentCache;
+        this.usersBatchLoader = batchLoaderFactory.create("users", this::loadUsers);
+        this.followingsBatchLoader = batchLoaderFactory.create("followings", this::loadFollowings);
+    }
+
+    protected ArticleCountCache getArticleCountCache() {
+        return this.articleCountCache;
+    }
+
+    protected TimelineRepository getTimelineRepository() {
+        return this.timelineRepository;
+    }
+
+    protected ArticleFragmentCache getArticleFragmentCache() {
+        return this.articleFragmentCache;
+    }
+
+    protected BatchLoader<Long, User> getUsersBatchLoader() {
+        return this.usersBatchLoader;
+    }
+
+    /**
+     * Keys are (source user id, target user id) pairs.
+     */
+    protected BatchLoader<Pair<Long, Long>, Boolean> getFollowingsBatchLoader() {
+        return this.followingsBatchLoader;
     }
 
     @Override
     public User saveUser(User user) {
 
-        return getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<User>() {
+        return autoCommit("saveUser", new JdbcQueries<User>() {
 
             @Override
             public User run(Connection connection) {
 
-                InsertStatement stm = getJdbcUtils().statements().createInsertStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("INSERT INTO users( email,  username,  hashed_password,  password_salt,  bio,  image) " +
                         "VALUES           (:email, :username, :hashed_password, :password_salt, :bio, :image) ");
@@ -90,6 +138,14 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
         return getUser(userIds, null, null);
     }
 
+    protected Map<Long, User> loadUsers(Set<Long> userIds) {
+        Map<Long, User> usersByIds = new HashMap<>();
+        for (User user : getUsers(userIds)) {
+            usersByIds.put(user.getId(), user);
+        }
+        return usersByIds;
+    }
+
     protected User getFirstUserOrNull(List<User> users) {
         if (users == null || users.size() == 0) {
             return null;
@@ -103,20 +159,20 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
             throw new RuntimeException("The ids, email or username must be specified");
         }
 
-        List<User> users = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<List<User>>() {
+        List<User> users = autoCommit("getUser", new JdbcQueries<List<User>>() {
 
             @Override
             public List<User> run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT id, email, username, hashed_password, password_salt, bio, image " +
                         "FROM users " +
                         "WHERE 1=1 ");
 
                 if (ids != null && ids.size() > 0) {
-                    stm.sql("AND id IN(:ids) ");
-                    stm.setInLong("ids", ids);
+                    stm.sql("AND id = ANY(:ids) ");
+                    stm.setLongArray("ids", ids);
                 }
 
                 if (email != null) {
@@ -155,12 +211,12 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
 
     @Override
     public void updateUser(User user) {
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("updateUser", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("UPDATE users " +
                         "SET email = :email, " +
@@ -168,7 +224,8 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
                         "   hashed_password = :hashed_password, " +
                         "   password_salt = :password_salt, " +
                         "   bio = :bio, " +
-                        "   image = :image " +
+                        "   image = :image, " +
+                        "   modification_date = clock_timestamp() " +
                         "WHERE " +
                         "   id = :id");
 
@@ -185,6 +242,38 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
                 return null;
             }
         });
+
+        //==========================================
+        // The username may have changed
+        //==========================================
+        getArticleCountCache().invalidateUsernameFilters();
+        getArticleFragmentCache().invalidateAuthor(user.getId());
+    }
+
+    @Override
+    public boolean updatePassword(long userId, String previousHashedPassword, String hashedPassword, String passwordSalt) {
+        return autoCommit("updatePassword", new JdbcQueries<Boolean>() {
+
+            @Override
+            public Boolean run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                stm.sql("UPDATE users " +
+                        "SET hashed_password = :hashed_password, " +
+                        "   password_salt = :password_salt " +
+                        "WHERE " +
+                        "   id = :id " +
+                        "   AND hashed_password = :previous_hashed_password");
+
+                stm.setLong("id", userId);
+                stm.setString("previous_hashed_password", previousHashedPassword);
+                stm.setString("hashed_password", hashedPassword);
+                stm.setString("password_salt", passwordSalt);
+
+                return stm.update() > 0;
+            }
+        });
     }
 
     @Override
@@ -196,28 +285,57 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
     @Override
     public Map<Long, Boolean> getFollowingsByUsers(long sourceUserId, Set<Long> targetUsersIds) {
 
+        Set<Pair<Long, Long>> keys = new HashSet<>();
+        for (Long targetUserId : targetUsersIds) {
+            keys.add(Pair.of(sourceUserId, targetUserId));
+        }
+
+        Map<Pair<Long, Long>, Boolean> followingsByKeys = getFollowingsBatchLoader().loadAll(keys);
+
         final Map<Long, Boolean> followings = new HashMap<>();
+        for (Long targetUserId : targetUsersIds) {
+            Boolean following = followingsByKeys.get(Pair.of(sourceUserId, targetUserId));
+            followings.put(targetUserId, following != null ? following : false);
+        }
 
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        return followings;
+    }
+
+    /**
+     * Loads the followings of any number of users at once.
+     */
+    protected Map<Pair<Long, Long>, Boolean> loadFollowings(Set<Pair<Long, Long>> keys) {
+
+        List<Long> sourceUsersIds = new ArrayList<>();
+        List<Long> targetUsersIds = new ArrayList<>();
+        for (Pair<Long, Long> key : keys) {
+            sourceUsersIds.add(key.getLeft());
+            targetUsersIds.add(key.getRight());
+        }
+
+        final Map<Pair<Long, Long>, Boolean> followings = new HashMap<>();
+
+        autoCommit("loadFollowings", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
-                stm.sql("SELECT target_user_id " +
-                        "FROM followings " +
-                        "WHERE source_user_id = :source_user_id " +
-                        "AND target_user_id IN(:targetUsersIds) ");
+                stm.sql("SELECT followings.source_user_id, followings.target_user_id " +
+                        "FROM UNNEST(:sourceUsersIds::bigint[], :targetUsersIds::bigint[]) AS k(source_user_id, target_user_id) " +
+                        "INNER JOIN followings " +
+                        "ON followings.source_user_id = k.source_user_id " +
+                        "AND followings.target_user_id = k.target_user_id ");
 
-                stm.setLong("source_user_id", sourceUserId);
-                stm.setInLong("targetUsersIds", targetUsersIds);
+                stm.setLongArray("sourceUsersIds", sourceUsersIds);
+                stm.setLongArray("targetUsersIds", targetUsersIds);
 
                 stm.selectList(new ResultSetHandler<Void>() {
 
                     @Override
                     public Void handle(SpincastResultSet rs) throws Exception {
-                        followings.put(rs.getLongOrNull("target_user_id"), true);
+                        followings.put(Pair.of(rs.getLongOrNull("source_user_id"), rs.getLongOrNull("target_user_id")), true);
                         return null;
                     }
                 });
@@ -225,24 +343,18 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
             }
         });
 
-        for (Long targetUserId : targetUsersIds) {
-            if (!followings.containsKey(targetUserId)) {
-                followings.put(targetUserId, false);
-            }
-        }
-
         return followings;
     }
 
     @Override
     public boolean isFollowingByUsername(long sourceUserId, String username) {
 
-        Boolean following = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Boolean>() {
+        Boolean following = autoCommit("isFollowingByUsername", new JdbcQueries<Boolean>() {
 
             @Override
             public Boolean run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT 1 " +
                         "FROM followings " +
@@ -270,12 +382,12 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
 
     @Override
     public void follow(long sourceUserId, long targetUserId) {
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("follow", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                InsertStatement stm = getJdbcUtils().statements().createInsertStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("INSERT INTO followings(source_user_id, target_user_id) " +
                         "VALUES (:source_user_id, :target_user_id) " +
@@ -289,16 +401,19 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
                 return null;
             }
         });
+
+        getTimelineRepository().backfill(sourceUserId, targetUserId);
+        getArticleCountCache().invalidateFeed(sourceUserId);
     }
 
     @Override
     public void unfollow(long sourceUserId, long targetUserId) {
-        getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Void>() {
+        autoCommit("unfollow", new JdbcQueries<Void>() {
 
             @Override
             public Void run(Connection connection) {
 
-                DeleteStatement stm = getJdbcUtils().statements().createDeleteStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("DELETE FROM followings " +
                         "WHERE source_user_id = :source_user_id " +
@@ -312,6 +427,9 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
                 return null;
             }
         });
+
+        getTimelineRepository().prune(sourceUserId, targetUserId);
+        getArticleCountCache().invalidateFeed(sourceUserId);
     }
 
     @Override
@@ -322,7 +440,7 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
             return profilesByUsersIds;
         }
 
-        List<User> users = getUsers(userIds);
+        Collection<User> users = getUsersBatchLoader().loadAll(userIds).values();
         Map<Long, Boolean> followings = currentUser != null ? getFollowingsByUsers(currentUser.getId(), userIds) : null;
 
         for (User user : users) {
@@ -334,15 +452,49 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
         return profilesByUsersIds;
     }
 
+    @Override
+    public String getProfileVersion(String username, User currentUser) {
+
+        return autoCommit("getProfileVersion", new JdbcQueries<String>() {
+
+            @Override
+            public String run(Connection connection) {
+
+                TemplateStatement stm = createStatement(connection);
+
+                stm.sql("SELECT users.id, users.modification_date, " +
+                        "       EXISTS (SELECT 1 " +
+                        "               FROM followings " +
+                        "               WHERE followings.source_user_id = :current_user_id " +
+                        "               AND followings.target_user_id = users.id) AS following " +
+                        "FROM users " +
+                        "WHERE users.username = :username ");
+
+                stm.setString("username", username);
+                stm.setLong("current_user_id", currentUser != null ? currentUser.getId() : -1);
+
+                return stm.selectOne(new ResultSetHandler<String>() {
+
+                    @Override
+                    public String handle(SpincastResultSet rs) throws Exception {
+                        return rs.getLong("id") + ":" +
+                               rs.getInstant("modification_date") + ":" +
+                               rs.getBoolean("following");
+                    }
+                });
+            }
+        });
+    }
+
     @Override
     public boolean isEmailTaken(String email) {
 
-        Boolean taken = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Boolean>() {
+        Boolean taken = autoCommit("isEmailTaken", new JdbcQueries<Boolean>() {
 
             @Override
             public Boolean run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT 1 " +
                         "FROM users " +
@@ -364,12 +516,12 @@ public class UserRepositoryDefault extends BaseRepository implements UserReposit
 
     @Override
     public boolean isUsernameTaken(String username) {
-        Boolean taken = getJdbcUtils().scopes().autoCommit(getDataSource(), new JdbcQueries<Boolean>() {
+        Boolean taken = autoCommit("isUsernameTaken", new JdbcQueries<Boolean>() {
 
             @Override
             public Boolean run(Connection connection) {
 
-                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                TemplateStatement stm = createStatement(connection);
 
                 stm.sql("SELECT 1 " +
                         "FROM users " +
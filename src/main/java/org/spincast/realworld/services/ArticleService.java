@@ -4,14 +4,23 @@ import java.util.List;
 
 import org.spincast.plugins.jdbc.utils.ItemsAndTotalCount;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.User;
 
 public interface ArticleService {
 
+    /**
+     * The slug of the article is generated from its title,
+     * with a number added to make it unique if required.
+     */
     public Article saveArticle(Article article);
 
-    public String createUniqueSlug(String title);
+    /**
+     * The slug of a title, before a number is added to
+     * make it unique.
+     */
+    public String createBaseSlug(String title);
 
     /**
      * @param currentUser can be <code>null</code> if not
@@ -19,6 +28,14 @@ public interface ArticleService {
      */
     public Article getArticle(String slug, User currentUser);
 
+    /**
+     * A string that changes when the article, as seen by
+     * the current user, changes.
+     *
+     * @return <code>null</code> if the article is not found.
+     */
+    public String getArticleVersion(String articleSlug, User currentUser);
+
     public Article updateArticle(Article currentArticle,
                                  String title,
                                  String description,
@@ -34,15 +51,25 @@ public interface ArticleService {
     /**
      * @param currentUser can be <code>null</code> if not
      * logged in.
+     * @param cursor if not <code>null</code>, the articles
+     * following this cursor are returned and the
+     * <code>offset</code> is ignored.
      */
     public ItemsAndTotalCount<Article> findArticles(User currentUser,
                                                     String tagFilter,
                                                     String authorUsernameFilter,
                                                     String favoritedByUsernameFilter,
+                                                    ArticleCursor cursor,
                                                     long offset,
                                                     int limit);
 
+    /**
+     * @param cursor if not <code>null</code>, the articles
+     * following this cursor are returned and the
+     * <code>offset</code> is ignored.
+     */
     public ItemsAndTotalCount<Article> getFeed(User currentUser,
+                                               ArticleCursor cursor,
                                                long offset,
                                                int limit);
 
@@ -60,6 +87,14 @@ public interface ArticleService {
      */
     public List<Comment> getComments(long articleId, User currentUser);
 
+    /**
+     * A string that changes when the comments of the
+     * article, as seen by the current user, change.
+     *
+     * @return <code>null</code> if the article is not found.
+     */
+    public String getCommentsVersion(String articleSlug, User currentUser);
+
     public void deleteComment(Comment comment, User currentUser);
 
     public List<String> getTags();
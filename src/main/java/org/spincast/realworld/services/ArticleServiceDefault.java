@@ -4,11 +4,14 @@ import java.text.Normalizer;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 
 import org.spincast.plugins.jdbc.utils.ItemsAndTotalCount;
 import org.spincast.realworld.exceptions.ForbiddenException;
+import org.spincast.realworld.exceptions.SlugTakenException;
 import org.spincast.realworld.models.EntityFactory;
 import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
 import org.spincast.realworld.models.articles.ArticleValidator;
 import org.spincast.realworld.models.articles.Comment;
 import org.spincast.realworld.models.users.User;
@@ -19,6 +22,11 @@ import com.google.inject.Inject;
 
 public class ArticleServiceDefault implements ArticleService {
 
+    /**
+     * Numbers tried before a random slug is used.
+     */
+    protected static final int SLUG_ATTEMPTS_MAX = 10;
+
     private final ArticleRepository articleRepository;
     private final ArticleValidator articleValidator;
     private final EntityFactory entityFactory;
@@ -47,11 +55,53 @@ public class ArticleServiceDefault implements ArticleService {
     @Override
     public Article saveArticle(Article article) {
         getArticleValidator().validateArticle(article);
-        return getArticleRepository().saveArticle(article);
+        return saveWithUniqueSlug(article.getTitle(),
+                                  slug -> getArticleRepository().saveArticle(withSlug(article, slug)));
+    }
+
+    /**
+     * Saves the article using the next number of the base
+     * slug of its title.
+     * <p>
+     * The number is allocated atomically, so concurrent
+     * creations with the same title get distinct slugs. A
+     * generated slug may still collide with an existing one,
+     * for example "my-title-2" when "my-title" gets its
+     * second number : the save is then retried with the
+     * next number.
+     */
+    protected Article saveWithUniqueSlug(String title, Function<String, Article> saver) {
+
+        String baseSlug = createBaseSlug(title);
+        for (int i = 0; i < SLUG_ATTEMPTS_MAX; i++) {
+            int nbr = getArticleRepository().allocateSlugNumber(baseSlug);
+            String slug = nbr > 1 ? baseSlug + "-" + nbr : baseSlug;
+            try {
+                return saver.apply(slug);
+            } catch (SlugTakenException ex) {
+                // next number
+            }
+        }
+
+        return saver.apply(baseSlug + "-" + UUID.randomUUID().toString());
+    }
+
+    protected Article withSlug(Article article, String slug) {
+        return getEntityFactory().createArticle(article.getId(),
+                                                article.getCreatedAt(),
+                                                article.getUpdatedAt(),
+                                                article.getAuthorProfile(),
+                                                article.getTagList(),
+                                                slug,
+                                                article.getTitle(),
+                                                article.getDescription(),
+                                                article.getBody(),
+                                                article.isFavorited(),
+                                                article.getFavoritesCount());
     }
 
     @Override
-    public String createUniqueSlug(String title) {
+    public String createBaseSlug(String title) {
 
         String slug;
         if (StringUtils.isBlank(title)) {
@@ -73,11 +123,6 @@ public class ArticleServiceDefault implements ArticleService {
             slug = "feed1";
         }
 
-        int nbr = getArticleRepository().getSlugsNbrWithBody(slug);
-        if (nbr > 0) {
-            slug = slug + "-" + (nbr + 1);
-        }
-
         return slug;
     }
 
@@ -86,6 +131,11 @@ public class ArticleServiceDefault implements ArticleService {
         return getArticleRepository().getArticle(slug, currentUser);
     }
 
+    @Override
+    public String getArticleVersion(String articleSlug, User currentUser) {
+        return getArticleRepository().getArticleVersion(articleSlug, currentUser);
+    }
+
     @Override
     public Article updateArticle(Article currentArticle,
                                  String title,
@@ -93,17 +143,12 @@ public class ArticleServiceDefault implements ArticleService {
                                  String body,
                                  List<String> tags) {
 
-        String slug = currentArticle.getSlug();
-        if (!currentArticle.getTitle().equals(title)) {
-            slug = createUniqueSlug(title);
-        }
-
         Article updatedArticle = getEntityFactory().createArticle(currentArticle.getId(),
                                                                   currentArticle.getCreatedAt(),
                                                                   Instant.now(),
                                                                   currentArticle.getAuthorProfile(),
                                                                   tags,
-                                                                  slug,
+                                                                  currentArticle.getSlug(),
                                                                   title,
                                                                   description,
                                                                   body,
@@ -111,7 +156,11 @@ public class ArticleServiceDefault implements ArticleService {
                                                                   currentArticle.getFavoritesCount());
 
         getArticleValidator().validateArticle(updatedArticle);
-        return getArticleRepository().updateArticle(updatedArticle);
+
+        if (currentArticle.getTitle().equals(title)) {
+            return getArticleRepository().updateArticle(updatedArticle);
+        }
+        return saveWithUniqueSlug(title, slug -> getArticleRepository().updateArticle(withSlug(updatedArticle, slug)));
     }
 
     @Override
@@ -134,6 +183,7 @@ public class ArticleServiceDefault implements ArticleService {
                                                     String tagFilter,
                                                     String authorUsernameFilter,
                                                     String favoritedByUsernameFilter,
+                                                    ArticleCursor cursor,
                                                     long offset,
                                                     int limit) {
 
@@ -141,13 +191,15 @@ public class ArticleServiceDefault implements ArticleService {
                                                    tagFilter,
                                                    authorUsernameFilter,
                                                    favoritedByUsernameFilter,
+                                                   cursor,
                                                    offset,
                                                    limit);
     }
 
     @Override
-    public ItemsAndTotalCount<Article> getFeed(User currentUser, long offset, int limit) {
+    public ItemsAndTotalCount<Article> getFeed(User currentUser, ArticleCursor cursor, long offset, int limit) {
         return getArticleRepository().getFeed(currentUser,
+                                              cursor,
                                               offset,
                                               limit);
     }
@@ -167,6 +219,11 @@ public class ArticleServiceDefault implements ArticleService {
         return getArticleRepository().getComments(articleId, currentUser);
     }
 
+    @Override
+    public String getCommentsVersion(String articleSlug, User currentUser) {
+        return getArticleRepository().getCommentsVersion(articleSlug, currentUser);
+    }
+
     @Override
     public void deleteComment(Comment comment, User currentUser) {
         if (comment.getAuthorProfile().getUser().getId() != currentUser.getId()) {
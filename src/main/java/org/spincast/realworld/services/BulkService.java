@@ -0,0 +1,27 @@
+package org.spincast.realworld.services;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.spincast.core.json.JsonObject;
+
+public interface BulkService {
+
+    /**
+     * Imports users, articles, followings and favorites
+     * from NDJSON : one JSON record per line. If a record
+     * is not valid, nothing is imported.
+     *
+     * @return the number of rows inserted, by table.
+     */
+    public Map<String, Integer> importNdjson(InputStream in);
+
+    /**
+     * Streams all the articles, in a format the import
+     * accepts.
+     *
+     * @return the number of articles exported.
+     */
+    public long exportArticles(Consumer<JsonObject> consumer);
+}
@@ -0,0 +1,364 @@
+package org.spincast.realworld.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.spincast.core.json.JsonManager;
+import org.spincast.core.json.JsonObject;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.exceptions.BadRequestException;
+import org.spincast.realworld.exceptions.ValidationError;
+import org.spincast.realworld.exceptions.ValidationErrorsException;
+import org.spincast.realworld.models.EntityFactory;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleValidator;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.models.users.UserValidator;
+import org.spincast.realworld.repositories.BulkRepository;
+import org.spincast.shaded.org.apache.commons.lang3.StringUtils;
+
+import com.google.inject.Inject;
+
+/**
+ * The records are parsed and validated one at a time,
+ * while they are streamed to the database, so the whole
+ * input is never in memory.
+ * <p>
+ * The passwords of the next records are hashed
+ * concurrently, while the previous records are inserted.
+ * At most as many passwords as there are hashing threads
+ * are pending, so an import doesn't fill the queue the
+ * logins also use.
+ * <p>
+ * The supported records :
+ * <ul>
+ * <li>
+ * <code>{"type":"user", "username", "email", "password"}</code>,
+ * or with "hashedPassword" and "passwordSalt" instead of "password".
+ * "bio" and "image" are optional.
+ * </li>
+ * <li>
+ * <code>{"type":"article", "author", "title", "description", "body"}</code>.
+ * "tagList", "createdAt" and "ref", to be referenced by
+ * the favorites, are optional.
+ * </li>
+ * <li>
+ * <code>{"type":"follow", "follower", "followed"}</code>
+ * </li>
+ * <li>
+ * <code>{"type":"favorite", "username", "articleRef"}</code>,
+ * or with "articleSlug" for an existing article.
+ * </li>
+ * </ul>
+ */
+public class BulkServiceDefault implements BulkService {
+
+    private final BulkRepository bulkRepository;
+    private final ArticleService articleService;
+    private final UserService userService;
+    private final JsonManager jsonManager;
+    private final AppConfig appConfig;
+    private final EntityFactory entityFactory;
+    private final UserValidator userValidator;
+    private final ArticleValidator articleValidator;
+
+    @Inject
+    public BulkServiceDefault(BulkRepository bulkRepository,
+                              ArticleService articleService,
+                              UserService userService,
+                              JsonManager jsonManager,
+                              AppConfig appConfig,
+                              EntityFactory entityFactory,
+                              UserValidator userValidator,
+                              ArticleValidator articleValidator) {
+        this.bulkRepository = bulkRepository;
+        this.articleService = articleService;
+        this.userService = userService;
+        this.jsonManager = jsonManager;
+        this.appConfig = appConfig;
+        this.entityFactory = entityFactory;
+        this.userValidator = userValidator;
+        this.articleValidator = articleValidator;
+    }
+
+    protected BulkRepository getBulkRepository() {
+        return this.bulkRepository;
+    }
+
+    protected ArticleService getArticleService() {
+        return this.articleService;
+    }
+
+    protected UserService getUserService() {
+        return this.userService;
+    }
+
+    protected JsonManager getJsonManager() {
+        return this.jsonManager;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected EntityFactory getEntityFactory() {
+        return this.entityFactory;
+    }
+
+    protected UserValidator getUserValidator() {
+        return this.userValidator;
+    }
+
+    protected ArticleValidator getArticleValidator() {
+        return this.articleValidator;
+    }
+
+    /**
+     * Maximum number of records read ahead, waiting for
+     * their password to be hashed.
+     */
+    protected int getPendingRecordsMax() {
+        return Math.max(1, getAppConfig().getAuthPasswordHashingThreads());
+    }
+
+    @Override
+    public Map<String, Integer> importNdjson(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return getBulkRepository().importRecords(new NdjsonRecordsIterator(reader));
+    }
+
+    @Override
+    public long exportArticles(Consumer<JsonObject> consumer) {
+        return getBulkRepository().exportArticles(consumer);
+    }
+
+    /**
+     * Validates a record and adds the informations the
+     * repository requires.
+     *
+     * @return the record, with its password being hashed
+     * if it has one.
+     */
+    protected PendingRecord prepareRecord(JsonObject record, long lineNo) {
+
+        String type = record.getString("type");
+        if ("user".equals(type)) {
+            requireFields(record, lineNo, "username", "email");
+            if (record.contains("password")) {
+                String rawPassword = record.getString("password");
+                validateUser(record, lineNo, rawPassword, true);
+
+                String passwordSalt = getUserService().createPasswordSalt();
+                record.set("passwordSalt", passwordSalt);
+                record.remove("password");
+                return new PendingRecord(record, getUserService().hashPasswordAsync(rawPassword, passwordSalt));
+            }
+            requireFields(record, lineNo, "hashedPassword", "passwordSalt");
+            validateUser(record, lineNo, null, false);
+        } else if ("article".equals(type)) {
+            requireFields(record, lineNo, "author", "title", "description", "body");
+            try {
+                record.set("tagList", record.getJsonArrayOrEmpty("tagList"));
+            } catch (Exception ex) {
+                throw new BadRequestException("Line " + lineNo + " : \"tagList\" must be an array");
+            }
+            validateArticle(record, lineNo);
+            record.set("baseSlug", getArticleService().createBaseSlug(record.getString("title")));
+        } else if ("follow".equals(type)) {
+            requireFields(record, lineNo, "follower", "followed");
+        } else if ("favorite".equals(type)) {
+            requireFields(record, lineNo, "username");
+            if (StringUtils.isBlank(record.getString("articleRef")) && StringUtils.isBlank(record.getString("articleSlug"))) {
+                throw new BadRequestException("Line " + lineNo + " : \"articleRef\" or \"articleSlug\" is required");
+            }
+        } else {
+            throw new BadRequestException("Line " + lineNo + " : invalid type : " + type);
+        }
+        return new PendingRecord(record, null);
+    }
+
+    /**
+     * Validates the format of an imported user. The
+     * usernames and emails already taken are not checked
+     * here : the repository skips those users.
+     */
+    protected void validateUser(JsonObject record, long lineNo, String rawPassword, boolean validatePassword) {
+        User user = getEntityFactory().createUser(null,
+                                                  record.getString("email"),
+                                                  record.getString("username"),
+                                                  null,
+                                                  null,
+                                                  record.getString("bio"),
+                                                  record.getString("image"));
+        try {
+            getUserValidator().validateUser(user, rawPassword, validatePassword, null, false);
+        } catch (ValidationErrorsException ex) {
+            throw withLineNo(ex, lineNo);
+        }
+    }
+
+    protected void validateArticle(JsonObject record, long lineNo) {
+        Article article = getEntityFactory().createArticle(null,
+                                                           null,
+                                                           null,
+                                                           null,
+                                                           record.getJsonArrayOrEmpty("tagList").convertToStringList(),
+                                                           null,
+                                                           record.getString("title"),
+                                                           record.getString("description"),
+                                                           record.getString("body"),
+                                                           false,
+                                                           0);
+        try {
+            getArticleValidator().validateArticle(article);
+        } catch (ValidationErrorsException ex) {
+            throw withLineNo(ex, lineNo);
+        }
+    }
+
+    /**
+     * Prefixes the errors with the line of the record.
+     */
+    protected ValidationErrorsException withLineNo(ValidationErrorsException ex, long lineNo) {
+        List<ValidationError> errors = new ArrayList<>();
+        for (ValidationError error : ex.getValidationErrors()) {
+            List<String> messages = new ArrayList<>();
+            for (String message : error.getErrors()) {
+                messages.add("Line " + lineNo + " : " + message);
+            }
+            errors.add(new ValidationError(error.getFieldName(), messages));
+        }
+        return new ValidationErrorsException(errors);
+    }
+
+    protected void requireFields(JsonObject record, long lineNo, String... fields) {
+        for (String field : fields) {
+            if (StringUtils.isBlank(record.getString(field))) {
+                throw new BadRequestException("Line " + lineNo + " : \"" + field + "\" is required");
+            }
+        }
+    }
+
+    /**
+     * A prepared record, with its password possibly still
+     * being hashed.
+     */
+    protected class PendingRecord {
+
+        private final JsonObject record;
+        private final Future<String> hashedPassword;
+
+        public PendingRecord(JsonObject record, Future<String> hashedPassword) {
+            this.record = record;
+            this.hashedPassword = hashedPassword;
+        }
+
+        /**
+         * Waits for the password to be hashed, if required.
+         */
+        public JsonObject get() {
+            if (this.hashedPassword != null) {
+                this.record.set("hashedPassword", getUserService().getHashedPassword(this.hashedPassword));
+            }
+            return this.record;
+        }
+
+        public void cancel() {
+            if (this.hashedPassword != null) {
+                this.hashedPassword.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parses the lines lazily. The blank lines are skipped.
+     * <p>
+     * A few records are read ahead so their passwords are
+     * hashed while the current record is inserted.
+     */
+    protected class NdjsonRecordsIterator implements Iterator<JsonObject> {
+
+        private final BufferedReader reader;
+        private final Deque<PendingRecord> pendingRecords = new ArrayDeque<>();
+        private long lineNo = 0;
+        private boolean endReached = false;
+
+        public NdjsonRecordsIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                readAhead();
+            } catch (RuntimeException ex) {
+                cancelPendingRecords();
+                throw ex;
+            }
+            return this.pendingRecords.size() > 0;
+        }
+
+        @Override
+        public JsonObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return this.pendingRecords.removeFirst().get();
+            } catch (RuntimeException ex) {
+                cancelPendingRecords();
+                throw ex;
+            }
+        }
+
+        protected void readAhead() {
+            try {
+                while (!this.endReached && this.pendingRecords.size() < getPendingRecordsMax()) {
+                    String line = this.reader.readLine();
+                    if (line == null) {
+                        this.endReached = true;
+                        break;
+                    }
+                    this.lineNo++;
+                    if (StringUtils.isBlank(line)) {
+                        continue;
+                    }
+
+                    JsonObject record;
+                    try {
+                        record = getJsonManager().fromString(line);
+                    } catch (Exception ex) {
+                        throw new BadRequestException("Line " + this.lineNo + " : invalid JSON");
+                    }
+                    this.pendingRecords.addLast(prepareRecord(record, this.lineNo));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * The import failed : the passwords still pending are
+         * not hashed.
+         */
+        protected void cancelPendingRecords() {
+            for (PendingRecord pendingRecord : this.pendingRecords) {
+                pendingRecord.cancel();
+            }
+            this.pendingRecords.clear();
+        }
+    }
+}
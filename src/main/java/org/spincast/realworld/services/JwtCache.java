@@ -0,0 +1,109 @@
+package org.spincast.realworld.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.spincast.realworld.configs.AppConfig;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+
+/**
+ * Caches the verified JWTs, so the signature of a token
+ * is not verified and its claims not parsed again on each
+ * request.
+ * <p>
+ * The tokens are keyed by their SHA-256 digest. Only valid
+ * tokens are cached and a cached token is not returned
+ * anymore once it has expired.
+ */
+public class JwtCache {
+
+    private final AppConfig appConfig;
+    private final Cache<HashCode, DecodedJWT> jwts;
+
+    private final AtomicLong hitsNbr = new AtomicLong();
+    private final AtomicLong missesNbr = new AtomicLong();
+
+    @Inject
+    public JwtCache(AppConfig appConfig) {
+        this.appConfig = appConfig;
+        this.jwts = CacheBuilder.newBuilder()
+                                .maximumSize(appConfig.getAuthJwtCacheMaxSize())
+                                .expireAfterWrite(appConfig.getAuthJwtCacheTtlSeconds(), TimeUnit.SECONDS)
+                                .build();
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected Cache<HashCode, DecodedJWT> getJwts() {
+        return this.jwts;
+    }
+
+    /**
+     * Returns the cached verified token or verifies it using
+     * the <code>verifier</code>.
+     *
+     * @param verifier returns <code>null</code> if the token
+     * is not valid.
+     *
+     * @return <code>null</code> if the token is not valid or
+     * has expired.
+     */
+    public DecodedJWT getVerified(String token, Function<String, DecodedJWT> verifier) {
+        if (!getAppConfig().isAuthJwtCacheEnabled()) {
+            return verifier.apply(token);
+        }
+
+        HashCode key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+        DecodedJWT decodedJwt = getJwts().getIfPresent(key);
+        if (decodedJwt != null) {
+            if (isExpired(decodedJwt)) {
+                getJwts().invalidate(key);
+                return null;
+            }
+            this.hitsNbr.incrementAndGet();
+            return decodedJwt;
+        }
+
+        this.missesNbr.incrementAndGet();
+        decodedJwt = verifier.apply(token);
+        if (decodedJwt != null) {
+            getJwts().put(key, decodedJwt);
+        }
+        return decodedJwt;
+    }
+
+    /**
+     * Same rule as the verifier : no leeway.
+     */
+    protected boolean isExpired(DecodedJWT decodedJwt) {
+        Date expiresAt = decodedJwt.getExpiresAt();
+        return expiresAt != null && expiresAt.getTime() < System.currentTimeMillis();
+    }
+
+    public void invalidateAll() {
+        getJwts().invalidateAll();
+    }
+
+    public long getJwtsNbr() {
+        return getJwts().size();
+    }
+
+    public long getHitsNbr() {
+        return this.hitsNbr.get();
+    }
+
+    public long getMissesNbr() {
+        return this.missesNbr.get();
+    }
+}
@@ -0,0 +1,301 @@
+package org.spincast.realworld.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.crypto.SpincastCryptoUtils;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.exceptions.ServiceUnavailableException;
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.metrics.MetricsRegistry.Counter;
+import org.spincast.realworld.metrics.MetricsRegistry.Histogram;
+import org.spincast.realworld.utils.ExecutorFactory;
+
+import com.google.inject.Inject;
+
+/**
+ * Hashes the passwords on a dedicated pool of threads.
+ * <p>
+ * Hashing is slow by design : run on the request threads,
+ * a burst of logins would starve all the other routes.
+ * The number of passwords waiting to be hashed is limited
+ * and, once the limit is reached, the requests are
+ * rejected right away.
+ * <p>
+ * The hashes are stored as
+ * <code>pbkdf2-sha256$&lt;iterations&gt;$&lt;hash&gt;</code>,
+ * so the cost can be raised without breaking the existing
+ * passwords. Hashes without this format were created by
+ * {@link SpincastCryptoUtils#hashSecure(String, String)}
+ * and are still accepted.
+ */
+public class PasswordHasher {
+
+    protected final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+    public static final String FORMAT_PREFIX = "pbkdf2-sha256$";
+
+    protected static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    protected static final int KEY_LENGTH_BITS = 256;
+
+    /**
+     * The calibration never picks fewer iterations.
+     */
+    protected static final int MIN_ITERATIONS = 10000;
+    protected static final int CALIBRATION_ITERATIONS = 20000;
+
+    private final SpincastCryptoUtils spincastCryptoUtils;
+    private final ThreadPoolExecutor executor;
+    private final Histogram hashDuration;
+    private final Histogram queueWait;
+    private final Counter rejected;
+    private final int iterations;
+
+    @Inject
+    public PasswordHasher(AppConfig appConfig,
+                          SpincastCryptoUtils spincastCryptoUtils,
+                          ExecutorFactory executorFactory,
+                          MetricsRegistry metricsRegistry) {
+        this.spincastCryptoUtils = spincastCryptoUtils;
+        this.executor = executorFactory.createCpuBoundExecutor("password-hashing",
+                                                               appConfig.getAuthPasswordHashingThreads(),
+                                                               appConfig.getAuthPasswordHashingQueueSize());
+
+        int configuredIterations = appConfig.getAuthPasswordHashingIterations();
+        this.iterations = configuredIterations > 0 ? configuredIterations
+                                                   : calibrate(appConfig.getAuthPasswordHashingTargetMillis());
+
+        this.hashDuration = metricsRegistry.histogram("app_password_hash_duration_seconds",
+                                                      "Time to hash a password",
+                                                      MetricsRegistry.DURATION_BUCKETS);
+        this.queueWait = metricsRegistry.histogram("app_password_hash_queue_wait_seconds",
+                                                   "Time a password waited for a hashing thread",
+                                                   MetricsRegistry.DURATION_BUCKETS);
+        this.rejected = metricsRegistry.counter("app_password_hash_rejected_total",
+                                                "Passwords not hashed because too many were waiting");
+        metricsRegistry.gauge("app_password_hash_queue_depth",
+                              "Passwords waiting for a hashing thread",
+                              () -> getQueueDepth());
+        metricsRegistry.gauge("app_password_hash_active",
+                              "Passwords being hashed",
+                              () -> getExecutor().getActiveCount());
+        metricsRegistry.gauge("app_password_hash_iterations",
+                              "Iterations used to hash the new passwords",
+                              () -> getIterations());
+    }
+
+    protected SpincastCryptoUtils getSpincastCryptoUtils() {
+        return this.spincastCryptoUtils;
+    }
+
+    protected ThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * The number of iterations used to hash the new
+     * passwords.
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * Hashes the password using the salt and the current
+     * number of iterations.
+     *
+     * @throws ServiceUnavailableException if too many
+     * passwords are already waiting to be hashed.
+     */
+    public String hash(String rawPassword, String salt) {
+        return runOnPool(() -> hashNow(rawPassword, salt));
+    }
+
+    /**
+     * Same as {@link #hash(String, String)} but doesn't wait
+     * for the hash.
+     *
+     * @throws ServiceUnavailableException if too many
+     * passwords are already waiting to be hashed.
+     */
+    public Future<String> hashAsync(String rawPassword, String salt) {
+        return submitToPool(() -> hashNow(rawPassword, salt));
+    }
+
+    /**
+     * Validates a password against a stored hash, using the
+     * parameters of this hash. The comparison is done in
+     * constant time.
+     *
+     * @throws ServiceUnavailableException if too many
+     * passwords are already waiting to be hashed.
+     */
+    public boolean verify(String rawPassword, String salt, String storedHash) {
+        if (rawPassword == null || storedHash == null) {
+            return false;
+        }
+
+        String computed = runOnPool(() -> hashLike(rawPassword, salt, storedHash));
+        if (computed == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(computed.getBytes(StandardCharsets.UTF_8),
+                                     storedHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * <code>true</code> if the stored hash was created
+     * using an older format or fewer iterations than the
+     * current ones.
+     */
+    public boolean isRehashNeeded(String storedHash) {
+        int storedIterations = getIterations(storedHash);
+        return storedIterations < getIterations();
+    }
+
+    /**
+     * Hashes the password on the current thread.
+     */
+    protected String hashNow(String rawPassword, String salt) {
+        return FORMAT_PREFIX + getIterations() + "$" + pbkdf2(rawPassword, salt, getIterations());
+    }
+
+    /**
+     * Hashes the password on the current thread, using the
+     * format and the parameters of the stored hash.
+     *
+     * @return <code>null</code> if the stored hash is not
+     * valid.
+     */
+    protected String hashLike(String rawPassword, String salt, String storedHash) {
+        if (!storedHash.startsWith(FORMAT_PREFIX)) {
+            return getSpincastCryptoUtils().hashSecure(rawPassword, salt);
+        }
+
+        int storedIterations = getIterations(storedHash);
+        if (storedIterations < 1) {
+            return null;
+        }
+        return FORMAT_PREFIX + storedIterations + "$" + pbkdf2(rawPassword, salt, storedIterations);
+    }
+
+    /**
+     * The iterations of a stored hash.
+     *
+     * @return <code>0</code> if the hash doesn't use the
+     * current format or is not valid.
+     */
+    protected int getIterations(String storedHash) {
+        if (storedHash == null || !storedHash.startsWith(FORMAT_PREFIX)) {
+            return 0;
+        }
+        int pos = storedHash.indexOf('$', FORMAT_PREFIX.length());
+        if (pos < 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(storedHash.substring(FORMAT_PREFIX.length(), pos));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    protected String pbkdf2(String rawPassword, String salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(rawPassword.toCharArray(),
+                                         salt.getBytes(StandardCharsets.UTF_8),
+                                         iterations,
+                                         KEY_LENGTH_BITS);
+        try {
+            byte[] hash = SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (Exception ex) {
+            throw SpincastStatics.runtimize(ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Picks the number of iterations so hashing a password
+     * takes about <code>targetMillis</code> on this
+     * hardware. The best of a few runs is used, to ignore
+     * the warm up.
+     */
+    protected int calibrate(int targetMillis) {
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", "calibration", CALIBRATION_ITERATIONS);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        long iterations = CALIBRATION_ITERATIONS * (targetMillis * 1000000L) / Math.max(1, bestNanos);
+
+        //==========================================
+        // Rounded, so a small variation between two
+        // startups doesn't trigger rehashes.
+        //==========================================
+        iterations = (iterations / MIN_ITERATIONS) * MIN_ITERATIONS;
+        int calibrated = (int)Math.min(Integer.MAX_VALUE, Math.max(MIN_ITERATIONS, iterations));
+
+        this.logger.info("Passwords hashed using " + calibrated + " iterations, for a target of " + targetMillis + "ms");
+        return calibrated;
+    }
+
+    protected <T> T runOnPool(Callable<T> task) {
+        return await(submitToPool(task));
+    }
+
+    protected <T> Future<T> submitToPool(Callable<T> task) {
+        long submittedAt = System.nanoTime();
+        try {
+            return getExecutor().submit(() -> {
+                long startedAt = System.nanoTime();
+                this.queueWait.observe((startedAt - submittedAt) / 1000000000.0);
+                try {
+                    return task.call();
+                } finally {
+                    this.hashDuration.observe((System.nanoTime() - startedAt) / 1000000000.0);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.rejected.inc();
+            throw new ServiceUnavailableException();
+        }
+    }
+
+    /**
+     * Waits for a task submitted to the pool. The task is
+     * cancelled if the current thread is interrupted.
+     */
+    public <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw SpincastStatics.runtimize(ex);
+        } catch (ExecutionException ex) {
+            throw SpincastStatics.runtimize(ex.getCause());
+        }
+    }
+
+    /**
+     * Number of passwords waiting for a hashing thread.
+     */
+    public int getQueueDepth() {
+        return getExecutor().getQueue().size();
+    }
+}
@@ -0,0 +1,177 @@
+package org.spincast.realworld.services;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.models.users.User;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Caches the users, by id and by username, so the
+ * identity of the current user can be resolved without
+ * a query on each authenticated request.
+ * <p>
+ * The users are invalidated when they are modified by
+ * this instance of the application. The entries also
+ * expire after a configurable delay.
+ * <p>
+ * A user is only cached if no invalidation occured since
+ * it was read. When the request uses a read-only snapshot,
+ * this is when the snapshot was taken, not when the user
+ * was loaded. A user read from a replica is never cached.
+ */
+public class UserCache {
+
+    private final AppConfig appConfig;
+    private final RequestConnectionManager requestConnectionManager;
+    private final ReplicaRouting replicaRouting;
+    private final Cache<Long, User> usersById;
+    private final Cache<String, Long> idsByUsername;
+
+    /**
+     * The moment of the last invalidation, as given by
+     * {@link System#nanoTime()}.
+     */
+    private final AtomicLong lastInvalidationNanos = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong hitsNbr = new AtomicLong();
+    private final AtomicLong missesNbr = new AtomicLong();
+
+    @Inject
+    public UserCache(AppConfig appConfig,
+                     RequestConnectionManager requestConnectionManager,
+                     ReplicaRouting replicaRouting) {
+        this.appConfig = appConfig;
+        this.requestConnectionManager = requestConnectionManager;
+        this.replicaRouting = replicaRouting;
+        this.usersById = CacheBuilder.newBuilder()
+                                     .maximumSize(appConfig.getAuthUserCacheMaxSize())
+                                     .expireAfterWrite(appConfig.getAuthUserCacheTtlSeconds(), TimeUnit.SECONDS)
+                                     .recordStats()
+                                     .build();
+        this.idsByUsername = CacheBuilder.newBuilder()
+                                         .maximumSize(appConfig.getAuthUserCacheMaxSize())
+                                         .expireAfterWrite(appConfig.getAuthUserCacheTtlSeconds(), TimeUnit.SECONDS)
+                                         .build();
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    protected RequestConnectionManager getRequestConnectionManager() {
+        return this.requestConnectionManager;
+    }
+
+    protected ReplicaRouting getReplicaRouting() {
+        return this.replicaRouting;
+    }
+
+    protected Cache<Long, User> getUsersById() {
+        return this.usersById;
+    }
+
+    protected Cache<String, Long> getIdsByUsername() {
+        return this.idsByUsername;
+    }
+
+    /**
+     * Returns the cached user or loads it using the
+     * <code>loader</code>.
+     */
+    public User getUserById(long userId, Supplier<User> loader) {
+        if (!getAppConfig().isAuthUserCacheEnabled()) {
+            return loader.get();
+        }
+
+        User user = getUsersById().getIfPresent(userId);
+        if (user != null) {
+            this.hitsNbr.incrementAndGet();
+            return user;
+        }
+        return load(loader);
+    }
+
+    /**
+     * Returns the cached user or loads it using the
+     * <code>loader</code>.
+     */
+    public User getUserByUsername(String username, Supplier<User> loader) {
+        if (!getAppConfig().isAuthUserCacheEnabled()) {
+            return loader.get();
+        }
+
+        Long userId = getIdsByUsername().getIfPresent(username);
+        if (userId != null) {
+            User user = getUsersById().getIfPresent(userId);
+            if (user != null && Objects.equals(user.getUsername(), username)) {
+                this.hitsNbr.incrementAndGet();
+                return user;
+            }
+        }
+        return load(loader);
+    }
+
+    protected User load(Supplier<User> loader) {
+        this.missesNbr.incrementAndGet();
+        long readStartNanos = getRequestConnectionManager().getReadStartNanos();
+        User user = loader.get();
+        if (user != null &&
+            !getReplicaRouting().isReplicaRead() &&
+            this.lastInvalidationNanos.get() - readStartNanos < 0) {
+            getUsersById().put(user.getId(), user);
+            getIdsByUsername().put(user.getUsername(), user.getId());
+        }
+        return user;
+    }
+
+    /**
+     * Invalidates a user. Its previous username, if it has
+     * changed, doesn't resolve to it anymore either.
+     */
+    public void invalidate(User user) {
+        markInvalidation();
+
+        User cached = getUsersById().getIfPresent(user.getId());
+        getUsersById().invalidate(user.getId());
+        getIdsByUsername().invalidate(user.getUsername());
+        if (cached != null) {
+            getIdsByUsername().invalidate(cached.getUsername());
+        }
+    }
+
+    public void invalidateAll() {
+        markInvalidation();
+        getUsersById().invalidateAll();
+        getIdsByUsername().invalidateAll();
+    }
+
+    protected void markInvalidation() {
+        long now = System.nanoTime();
+        this.lastInvalidationNanos.accumulateAndGet(now, (last, current) -> current - last > 0 ? current : last);
+    }
+
+    public long getUsersNbr() {
+        return getUsersById().size();
+    }
+
+    public long getHitsNbr() {
+        return this.hitsNbr.get();
+    }
+
+    public long getMissesNbr() {
+        return this.missesNbr.get();
+    }
+
+    public long getEvictionsNbr() {
+        return getUsersById().stats().evictionCount();
+    }
+}
@@ -1,5 +1,8 @@
 package org.spincast.realworld.services;
 
+import java.util.concurrent.Future;
+
+import org.spincast.realworld.exceptions.ServiceUnavailableException;
 import org.spincast.realworld.models.users.Profile;
 import org.spincast.realworld.models.users.User;
 
@@ -11,8 +14,31 @@ public interface UserService {
 
     public String createJwtToken(User user);
 
+    /**
+     * The password is hashed on a dedicated pool of
+     * threads.
+     *
+     * @throws ServiceUnavailableException if too many
+     * passwords are already waiting to be hashed.
+     */
     public String hashPassword(String rawPassword, String salt);
 
+    /**
+     * Same as {@link #hashPassword(String, String)} but
+     * doesn't wait for the hash. Used to hash many passwords
+     * concurrently.
+     *
+     * @throws ServiceUnavailableException if too many
+     * passwords are already waiting to be hashed.
+     */
+    public Future<String> hashPasswordAsync(String rawPassword, String salt);
+
+    /**
+     * Waits for a password hashed by
+     * {@link #hashPasswordAsync(String, String)}.
+     */
+    public String getHashedPassword(Future<String> hashedPassword);
+
     public String createPasswordSalt();
 
     public boolean isJwtValid(String token);
@@ -44,6 +70,35 @@ public interface UserService {
      */
     public User getUserByUsername(String username);
 
+    /**
+     * @return the user or <code>null</code>
+     * if not found.
+     */
+    public User getUserById(long userId);
+
+    /**
+     * Same as {@link #getUserByUsername(String)} but the
+     * user may come from a cache. To resolve the identity of
+     * the current user, not to validate data.
+     */
+    public User getCachedUserByUsername(String username);
+
+    /**
+     * The user may come from a cache. To resolve the
+     * identity of the current user, not to validate data.
+     */
+    public User getCachedUserById(long userId);
+
+    /**
+     * The user identified by a decoded JWT. Uses the id of
+     * the user when the token contains it, its username
+     * otherwise. The user may come from a cache.
+     *
+     * @return the user or <code>null</code>
+     * if not found.
+     */
+    public User getJwtUser(DecodedJWT decodedJwt);
+
     public void updateUser(User currentUser, User newUserInfo, String rawPassword);
 
     /**
@@ -66,6 +121,14 @@ public interface UserService {
      */
     public Profile getProfileByUsername(String username, User currentUser);
 
+    /**
+     * A string that changes when the profile, as seen by
+     * the current user, changes.
+     *
+     * @return <code>null</code> if the user is not found.
+     */
+    public String getProfileVersion(String username, User currentUser);
+
     public boolean isFollowingById(long sourceUserId, long targetUserId);
 
     public boolean isFollowingByUsername(long sourceUserId, String username);
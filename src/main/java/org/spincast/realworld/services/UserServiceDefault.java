@@ -3,7 +3,11 @@ package org.spincast.realworld.services;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.spincast.core.exceptions.PublicExceptionNoLog;
 import org.spincast.core.json.JsonManager;
 import org.spincast.core.utils.SpincastStatics;
@@ -29,14 +33,24 @@ import com.google.inject.Inject;
 
 public class UserServiceDefault implements UserService {
 
+    protected final Logger logger = LoggerFactory.getLogger(UserServiceDefault.class);
+
     private final UserRepository userRepository;
     private final JsonManager jsonManager;
     private final UserValidator userValidator;
     private final AppConfig appConfig;
     private final SpincastCryptoUtils spincastCryptoUtils;
     private final EntityFactory entityFactory;
-    private JWTVerifier jwtVerifier;
-    private Algorithm jwtAlgorithm;
+    private final UserCache userCache;
+    private final JwtCache jwtCache;
+    private final PasswordHasher passwordHasher;
+
+    //==========================================
+    // Created lazily. Creating them twice is
+    // harmless, so no lock is required.
+    //==========================================
+    private volatile JWTVerifier jwtVerifier;
+    private volatile Algorithm jwtAlgorithm;
 
     @Inject
     public UserServiceDefault(UserRepository userRepository,
@@ -44,13 +58,19 @@ public class UserServiceDefault implements UserService {
                               UserValidator userValidator,
                               AppConfig appConfig,
                               SpincastCryptoUtils spincastCryptoUtils,
-                              EntityFactory entityFactory) {
+                              EntityFactory entityFactory,
+                              UserCache userCache,
+                              JwtCache jwtCache,
+                              PasswordHasher passwordHasher) {
         this.userRepository = userRepository;
         this.jsonManager = jsonManager;
         this.userValidator = userValidator;
         this.appConfig = appConfig;
         this.spincastCryptoUtils = spincastCryptoUtils;
         this.entityFactory = entityFactory;
+        this.userCache = userCache;
+        this.jwtCache = jwtCache;
+        this.passwordHasher = passwordHasher;
     }
 
     protected UserRepository getUserRepository() {
@@ -77,6 +97,18 @@ public class UserServiceDefault implements UserService {
         return this.entityFactory;
     }
 
+    protected UserCache getUserCache() {
+        return this.userCache;
+    }
+
+    protected JwtCache getJwtCache() {
+        return this.jwtCache;
+    }
+
+    protected PasswordHasher getPasswordHasher() {
+        return this.passwordHasher;
+    }
+
     @Override
     public User saveUser(User user, String rawPassword) {
         getUserValidator().validateUser(user, rawPassword, null, true);
@@ -88,7 +120,20 @@ public class UserServiceDefault implements UserService {
         if (rawPassword == null) {
             return null;
         }
-        return getSpincastCryptoUtils().hashSecure(rawPassword, salt);
+        return getPasswordHasher().hash(rawPassword, salt);
+    }
+
+    @Override
+    public Future<String> hashPasswordAsync(String rawPassword, String salt) {
+        if (rawPassword == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return getPasswordHasher().hashAsync(rawPassword, salt);
+    }
+
+    @Override
+    public String getHashedPassword(Future<String> hashedPassword) {
+        return getPasswordHasher().await(hashedPassword);
     }
 
     @Override
@@ -100,6 +145,7 @@ public class UserServiceDefault implements UserService {
     public String createJwtToken(User user) {
         try {
             String token = JWT.create()
+                              .withClaim(AppConstants.JWT_CLAIMS_USER_ID, user.getId())
                               .withClaim(AppConstants.JWT_CLAIMS_USERNAME, user.getUsername())
                               .withClaim(PublicClaims.EXPIRES_AT,
                                          Date.from(Instant.now().plus(getAppConfig().getAuthJwtTtlMinutes(),
@@ -132,7 +178,16 @@ public class UserServiceDefault implements UserService {
         if (StringUtils.isBlank(token)) {
             return null;
         }
+        return getJwtCache().getVerified(token, this::verifyJwt);
+    }
 
+    /**
+     * Verifies the signature and the expiration of the
+     * token.
+     *
+     * @return <code>null</code> if the token is not valid.
+     */
+    protected DecodedJWT verifyJwt(String token) {
         try {
             DecodedJWT jwt = getJwtVerifier().verify(token);
             return jwt;
@@ -159,26 +214,107 @@ public class UserServiceDefault implements UserService {
         return getUserRepository().getUserByUsername(username);
     }
 
+    @Override
     public User getUserById(long userId) {
         return getUserRepository().getUserById(userId);
     }
 
+    @Override
+    public User getCachedUserByUsername(String username) {
+        return getUserCache().getUserByUsername(username, () -> getUserByUsername(username));
+    }
+
+    @Override
+    public User getCachedUserById(long userId) {
+        return getUserCache().getUserById(userId, () -> getUserById(userId));
+    }
+
+    @Override
+    public User getJwtUser(DecodedJWT decodedJwt) {
+        if (decodedJwt == null) {
+            return null;
+        }
+
+        Long userId = decodedJwt.getClaim(AppConstants.JWT_CLAIMS_USER_ID).asLong();
+        if (userId != null) {
+            return getCachedUserById(userId);
+        }
+
+        //==========================================
+        // Tokens created before the id was added
+        //==========================================
+        String username = decodedJwt.getClaim(AppConstants.JWT_CLAIMS_USERNAME).asString();
+        if (username == null) {
+            return null;
+        }
+        return getCachedUserByUsername(username);
+    }
+
     @Override
     public User getUser(String email, String rawPassword) {
         User candidate = getUserByEmail(email);
 
         // Validate password
         if (candidate == null ||
-            !hashPassword(rawPassword, candidate.getPasswordSalt()).equals(candidate.getHashedPassword())) {
+            !getPasswordHasher().verify(rawPassword, candidate.getPasswordSalt(), candidate.getHashedPassword())) {
             return null;
         }
+
+        if (getPasswordHasher().isRehashNeeded(candidate.getHashedPassword())) {
+            candidate = rehashPassword(candidate, rawPassword);
+        }
         return candidate;
     }
 
+    /**
+     * Hashes the password again, using the current format
+     * and cost. The login still succeeds if this fails.
+     * <p>
+     * The hash is only replaced if it is still the one
+     * verified : a password changed while the rehash was
+     * running is kept.
+     */
+    protected User rehashPassword(User user, String rawPassword) {
+        try {
+            String passwordSalt = createPasswordSalt();
+            String hashedPassword = hashPassword(rawPassword, passwordSalt);
+            try {
+                if (!getUserRepository().updatePassword(user.getId(),
+                                                        user.getHashedPassword(),
+                                                        hashedPassword,
+                                                        passwordSalt)) {
+                    return user;
+                }
+            } finally {
+                getUserCache().invalidate(user);
+            }
+
+            return getEntityFactory().createUser(user.getId(),
+                                                 user.getEmail(),
+                                                 user.getUsername(),
+                                                 hashedPassword,
+                                                 passwordSalt,
+                                                 user.getBio(),
+                                                 user.getImage());
+        } catch (Exception ex) {
+            this.logger.warn("Unable to rehash the password of user #" + user.getId(), ex);
+            return user;
+        }
+    }
+
     @Override
     public void updateUser(User currentUser, User newUserInfo, String rawPassword) {
         getUserValidator().validateUser(newUserInfo, rawPassword, currentUser, false);
-        getUserRepository().updateUser(newUserInfo);
+        try {
+            getUserRepository().updateUser(newUserInfo);
+        } finally {
+            //==========================================
+            // The username may have changed : the cached
+            // user is found using its previous username.
+            //==========================================
+            getUserCache().invalidate(currentUser);
+            getUserCache().invalidate(newUserInfo);
+        }
     }
 
     @Override
@@ -191,6 +327,11 @@ public class UserServiceDefault implements UserService {
         return getProfile(null, username, currentUser);
     }
 
+    @Override
+    public String getProfileVersion(String username, User currentUser) {
+        return getUserRepository().getProfileVersion(username, currentUser);
+    }
+
     public Profile getProfile(Long userId, String username, User currentUser) {
 
         User user = userId != null ? getUserById(userId) : getUserByUsername(username);
@@ -0,0 +1,73 @@
+package org.spincast.realworld.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.spincast.realworld.configs.AppConfig;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Creates the executors used by the application for its
+ * background work. Their threads are named after the
+ * executor and are daemons, so they never prevent the
+ * application from stopping.
+ */
+public class ExecutorFactory {
+
+    private final AppConfig appConfig;
+
+    @Inject
+    public ExecutorFactory(AppConfig appConfig) {
+        this.appConfig = appConfig;
+    }
+
+    protected AppConfig getAppConfig() {
+        return this.appConfig;
+    }
+
+    /**
+     * Creates an executor running at most
+     * <code>threadsNbr</code> tasks at the same time.
+     */
+    public ExecutorService createExecutor(String name, int threadsNbr) {
+        return Executors.newFixedThreadPool(threadsNbr, createThreadFactory(name));
+    }
+
+    /**
+     * Creates an executor for CPU bound tasks. At most
+     * <code>queueSize</code> tasks can wait for a thread,
+     * the next ones are rejected with a
+     * {@link RejectedExecutionException}.
+     */
+    public ThreadPoolExecutor createCpuBoundExecutor(String name, int threadsNbr, int queueSize) {
+        int threads = Math.max(1, threadsNbr);
+        return new ThreadPoolExecutor(threads,
+                                      threads,
+                                      0L,
+                                      TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                                      createThreadFactory(name),
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Creates an executor for delayed tasks.
+     */
+    public ScheduledExecutorService createScheduledExecutor(String name, int threadsNbr) {
+        return Executors.newScheduledThreadPool(threadsNbr, createThreadFactory(name));
+    }
+
+    protected ThreadFactory createThreadFactory(String name) {
+        return new ThreadFactoryBuilder().setNameFormat(name + "-%d")
+                                         .setDaemon(true)
+                                         .build();
+    }
+}
@@ -0,0 +1,256 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AdminTest extends TestBase {
+
+    protected static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    @Inject
+    protected AppConfig appConfig;
+
+    String adminJwt = null;
+    String userJwt = null;
+
+    protected String register(String username) {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", username + "@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", username);
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        String jwt = response.getContentAsJsonObject().getString("user.token");
+        assertNotNull(jwt);
+        return jwt;
+    }
+
+    @Test
+    public void t01_register() {
+        this.adminJwt = register("admin");
+        this.userJwt = register("notadmin");
+
+        ((AppTestingConfig)this.appConfig).addAuthAdminUserId(getUserService().getUserByUsername("admin").getId());
+    }
+
+    @Test
+    public void t02_importNotAdmin() {
+
+        HttpResponse response = POST("/api/admin/import").setStringBody("{\"type\":\"follow\",\"follower\":\"admin\",\"followed\":\"notadmin\"}",
+                                                                        NDJSON_CONTENT_TYPE)
+                                                         .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.userJwt)
+                                                         .send();
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+    }
+
+    @Test
+    public void t03_import() {
+
+        String ndjson =
+                "{\"type\":\"user\",\"username\":\"imported1\",\"email\":\"imported1@example.com\",\"password\":\"12345678\"}\n" +
+                        "{\"type\":\"user\",\"username\":\"imported2\",\"email\":\"imported2@example.com\",\"password\":\"12345678\"}\n" +
+                        "\n" +
+                        "{\"type\":\"article\",\"ref\":\"a1\",\"author\":\"imported1\",\"title\":\"Same title\"," +
+                        "\"description\":\"desc\",\"body\":\"body\",\"tagList\":[\"tag1\",\"tag2\",\"tag1\"]}\n" +
+                        "{\"type\":\"article\",\"ref\":\"a2\",\"author\":\"imported1\",\"title\":\"Same title\"," +
+                        "\"description\":\"desc\\ttab\",\"body\":\"body\\\\backslash\"}\n" +
+                        "{\"type\":\"article\",\"author\":\"unknown\",\"title\":\"Ignored\",\"description\":\"desc\",\"body\":\"body\"}\n" +
+                        "{\"type\":\"follow\",\"follower\":\"imported2\",\"followed\":\"imported1\"}\n" +
+                        "{\"type\":\"favorite\",\"username\":\"imported2\",\"articleRef\":\"a1\"}\n" +
+                        "{\"type\":\"favorite\",\"username\":\"imported2\",\"articleRef\":\"a1\"}\n";
+
+        HttpResponse response = POST("/api/admin/import").setStringBody(ndjson, NDJSON_CONTENT_TYPE)
+                                                         .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                         .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        JsonObject imported = response.getContentAsJsonObject().getJsonObject("imported");
+        assertEquals(Integer.valueOf(8), imported.getInteger("records"));
+        assertEquals(Integer.valueOf(2), imported.getInteger("users"));
+        assertEquals(Integer.valueOf(2), imported.getInteger("articles"));
+        assertEquals(Integer.valueOf(2), imported.getInteger("tags"));
+        assertEquals(Integer.valueOf(1), imported.getInteger("followings"));
+        assertEquals(Integer.valueOf(1), imported.getInteger("favorites"));
+        assertEquals(Integer.valueOf(2), imported.getInteger("timelines"));
+
+        assertNotNull(getUserService().getUserByUsername("imported1"));
+        assertNotNull(getUserService().getUser("imported2@example.com", "12345678"));
+
+        Article first = getArticleService().getArticle("same-title", null);
+        assertNotNull(first);
+        assertEquals(1, first.getFavoritesCount());
+        List<String> tags = first.getTagList();
+        assertEquals(2, tags.size());
+        assertTrue(tags.contains("tag1"));
+        assertTrue(tags.contains("tag2"));
+
+        Article second = getArticleService().getArticle("same-title-2", null);
+        assertNotNull(second);
+        assertEquals("desc\ttab", second.getDescription());
+        assertEquals("body\\backslash", second.getBody());
+
+        //==========================================
+        // The slug counter has been updated.
+        //==========================================
+        assertEquals("same-title-3", createArticle(this.adminJwt, "Same title").getString("slug"));
+    }
+
+    @Test
+    public void t04_importInvalidRecord() {
+
+        String ndjson = "{\"type\":\"user\",\"username\":\"imported3\",\"email\":\"imported3@example.com\",\"password\":\"12345678\"}\n" +
+                        "{\"type\":\"article\",\"author\":\"imported3\"}\n";
+
+        HttpResponse response = POST("/api/admin/import").setStringBody(ndjson, NDJSON_CONTENT_TYPE)
+                                                         .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                         .send();
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
+
+        //==========================================
+        // Nothing imported.
+        //==========================================
+        assertNull(getUserService().getUserByUsername("imported3"));
+    }
+
+    @Test
+    public void t05_exportNotAdmin() {
+
+        HttpResponse response = GET("/api/admin/export/articles").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.userJwt)
+                                                                 .send();
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+    }
+
+    @Test
+    public void t06_export() {
+
+        HttpResponse response = GET("/api/admin/export/articles").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                                 .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertTrue(response.getHeaderFirst(HttpHeaders.CONTENT_TYPE).startsWith(NDJSON_CONTENT_TYPE));
+
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(3, lines.length);
+
+        JsonObject first = getSpincastJsonManager().fromString(lines[0]);
+        assertEquals("article", first.getString("type"));
+        assertEquals("same-title", first.getString("slug"));
+        assertEquals("imported1", first.getString("author"));
+        assertEquals(Integer.valueOf(1), first.getInteger("favoritesCount"));
+        assertEquals(2, first.getJsonArrayOrEmpty("tagList").size());
+
+        JsonObject second = getSpincastJsonManager().fromString(lines[1]);
+        assertEquals("same-title-2", second.getString("slug"));
+        assertEquals("desc\ttab", second.getString("description"));
+
+        JsonObject third = getSpincastJsonManager().fromString(lines[2]);
+        assertEquals("same-title-3", third.getString("slug"));
+        assertEquals("admin", third.getString("author"));
+    }
+
+    @Test
+    public void t07_importInvalidFields() {
+
+        String[] invalidRecords = new String[]{
+                "{\"type\":\"user\",\"username\":\"imported4\",\"email\":\"nope\",\"password\":\"12345678\"}\n",
+                "{\"type\":\"user\",\"username\":\"imported4\",\"email\":\"imported4@example.com\",\"password\":\"123\"}\n",
+                "{\"type\":\"user\",\"username\":\"imported 4\",\"email\":\"imported4@example.com\"," +
+                                                                                  "\"hashedPassword\":\"hash\",\"passwordSalt\":\"salt\"}\n",
+                "{\"type\":\"article\",\"author\":\"imported1\",\"title\":\"Invalid tags\",\"description\":\"desc\"," +
+                                                                                                        "\"body\":\"body\",\"tagList\":[\" \"]}\n"};
+
+        for (String invalidRecord : invalidRecords) {
+            String ndjson = "{\"type\":\"user\",\"username\":\"imported5\",\"email\":\"imported5@example.com\",\"password\":\"12345678\"}\n" +
+                            invalidRecord;
+
+            HttpResponse response = POST("/api/admin/import").setStringBody(ndjson, NDJSON_CONTENT_TYPE)
+                                                             .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                             .send();
+            assertEquals(invalidRecord, HttpStatus.SC_UNPROCESSABLE_ENTITY, response.getStatus());
+            assertTrue(response.getContentAsString().contains("Line 2 : "));
+        }
+
+        assertNull(getUserService().getUserByUsername("imported4"));
+        assertNull(getUserService().getUserByUsername("imported5"));
+    }
+
+    /**
+     * The administrators are identified by their id, not
+     * their username.
+     */
+    @Test
+    public void t08_adminUsernameChanged() {
+
+        JsonObject userToUpdate = getSpincastJsonManager().create();
+        userToUpdate.set("user.username", "formeradmin");
+        HttpResponse response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                                .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        userToUpdate.set("user.username", "admin");
+        response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                   .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.userJwt)
+                                   .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        response = GET("/api/admin/export/articles").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.userJwt)
+                                                    .send();
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+
+        response = GET("/api/admin/export/articles").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                    .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    /**
+     * The numbers are reserved after the existing
+     * counter and a number already taken by another
+     * slug is skipped.
+     */
+    @Test
+    public void t09_importExistingCounter() {
+
+        assertEquals("other-title-2", createArticle(this.adminJwt, "Other title 2").getString("slug"));
+
+        String ndjson =
+                "{\"type\":\"article\",\"author\":\"imported1\",\"title\":\"Same title\",\"description\":\"desc\",\"body\":\"body\"}\n" +
+                        "{\"type\":\"article\",\"author\":\"imported1\",\"title\":\"Other title\",\"description\":\"desc\",\"body\":\"body\"}\n" +
+                        "{\"type\":\"article\",\"author\":\"imported1\",\"title\":\"Other title\",\"description\":\"desc\",\"body\":\"body\"}\n";
+
+        HttpResponse response = POST("/api/admin/import").setStringBody(ndjson, NDJSON_CONTENT_TYPE)
+                                                         .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.adminJwt)
+                                                         .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(Integer.valueOf(3), response.getContentAsJsonObject().getJsonObject("imported").getInteger("articles"));
+
+        assertNotNull(getArticleService().getArticle("same-title-4", null));
+        assertNotNull(getArticleService().getArticle("other-title", null));
+        assertEquals("other-title-3", createArticle(this.adminJwt, "Other title").getString("slug"));
+    }
+}
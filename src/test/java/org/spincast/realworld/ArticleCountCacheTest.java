@@ -0,0 +1,143 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.repositories.ArticleCountCache;
+import org.spincast.realworld.repositories.ArticleCountCache.CountKey;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.inject.Inject;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArticleCountCacheTest extends TestBase {
+
+    @Inject
+    protected ArticleCountCache articleCountCache;
+
+    @Inject
+    protected RequestConnectionManager requestConnectionManager;
+
+    @Inject
+    protected ReplicaRouting replicaRouting;
+
+    String jwt = null;
+
+    protected int getArticlesCount(String tag) {
+        HttpResponse response = GET("/api/articles?limit=1&tag=" + tag).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        return response.getContentAsJsonObject().getInteger("articlesCount");
+    }
+
+    @Test
+    public void t01_init() {
+        this.jwt = registerUser("countcache");
+        createArticle(this.jwt, "Count 1", "counted");
+        createArticle(this.jwt, "Count 2", "counted");
+    }
+
+    @Test
+    public void t02_cachedThenInvalidated() {
+        CountKey key = CountKey.listing("cachedTag", null, null);
+
+        assertEquals(5, this.articleCountCache.getCount(key, () -> 5));
+        assertEquals(5, this.articleCountCache.getCount(key, () -> 6));
+
+        this.articleCountCache.invalidateTagFilters();
+        assertEquals(6, this.articleCountCache.getCount(key, () -> 6));
+
+        //==========================================
+        // Not affected by this invalidation.
+        //==========================================
+        this.articleCountCache.invalidateFeeds();
+        assertEquals(6, this.articleCountCache.getCount(key, () -> 7));
+    }
+
+    @Test
+    public void t03_olderSnapshotNotCached() {
+        CountKey key = CountKey.listing("snapshotTag", null, null);
+        DataSource dataSource = this.requestConnectionManager.wrap(getTestDataSource());
+
+        this.requestConnectionManager.begin(true);
+        try {
+            assertNull(this.requestConnectionManager.getSnapshotStartNanos());
+
+            //==========================================
+            // The first query takes the snapshot.
+            //==========================================
+            try (Connection connection = dataSource.getConnection();
+                    Statement stm = connection.createStatement();
+                    ResultSet rs = stm.executeQuery("SELECT COUNT(*) FROM articles")) {
+                rs.next();
+            } catch (Exception ex) {
+                throw SpincastStatics.runtimize(ex);
+            }
+            assertNotNull(this.requestConnectionManager.getSnapshotStartNanos());
+
+            //==========================================
+            // A modification is committed after the
+            // snapshot was taken : the total computed
+            // from the snapshot is stale.
+            //==========================================
+            this.articleCountCache.invalidateTagFilters();
+
+            long readStartNanos = this.articleCountCache.getReadStartNanos();
+            this.articleCountCache.putCount(key, 1, readStartNanos);
+        } finally {
+            this.requestConnectionManager.end(true);
+        }
+
+        assertEquals(2, this.articleCountCache.getCount(key, () -> 2));
+    }
+
+    @Test
+    public void t04_newArticleCounted() {
+        assertEquals(2, getArticlesCount("counted"));
+        assertEquals(2, getArticlesCount("counted"));
+
+        String slug = createArticle(this.jwt, "Count 3", "counted").getString("slug");
+        assertEquals(3, getArticlesCount("counted"));
+
+        getArticleService().deleteArticle(getArticleService().getArticle(slug, null).getId());
+        assertEquals(2, getArticlesCount("counted"));
+    }
+
+    /**
+     * A replica may not have replayed the last invalidated
+     * changes yet.
+     */
+    @Test
+    public void t05_replicaReadNotCached() {
+        CountKey key = CountKey.listing("replicaTag", null, null);
+
+        this.replicaRouting.begin(true, null);
+        try {
+            this.replicaRouting.recordReplicaRead();
+            assertEquals(1, this.articleCountCache.getCount(key, () -> 1));
+        } finally {
+            this.replicaRouting.end();
+        }
+
+        assertEquals(2, this.articleCountCache.getCount(key, () -> 2));
+        assertEquals(2, this.articleCountCache.getCount(key, () -> 3));
+    }
+}
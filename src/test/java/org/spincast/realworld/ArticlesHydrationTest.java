@@ -0,0 +1,229 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.guice.SpincastGuiceModuleBase;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.repositories.ArticleRepository;
+import org.spincast.realworld.repositories.ArticleRepositoryDefault;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigHydrationSwitch;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.util.Modules;
+
+/**
+ * Compares the single query hydration of the articles
+ * with the separate queries one, and the number of
+ * statements each one runs.
+ * <p>
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArticlesHydrationTest extends TestBase {
+
+    protected static final int ARTICLES_NBR = 20;
+
+    @Inject
+    protected AppConfig appConfig;
+
+    @Inject
+    protected ArticleRepository articleRepository;
+
+    @Inject
+    protected SqlTemplateRegistry sqlTemplateRegistry;
+
+    List<Long> ids = new ArrayList<>();
+    User reader = null;
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigHydrationSwitch.class;
+    }
+
+    @Override
+    protected Module getExtraOverridingModule() {
+        return Modules.override(super.getExtraOverridingModule()).with(new SpincastGuiceModuleBase() {
+
+            @Override
+            protected void configure() {
+                bind(SqlTemplateRegistry.class).to(StatementCapturingSqlTemplateRegistry.class).in(Scopes.SINGLETON);
+            }
+        });
+    }
+
+    protected void setSingleQueryHydration(boolean singleQueryHydration) {
+        ((AppTestingConfigHydrationSwitch)this.appConfig).setDbSingleQueryHydration(singleQueryHydration);
+    }
+
+    protected List<Article> getArticles(List<Long> ids, boolean singleQueryHydration) {
+        setSingleQueryHydration(singleQueryHydration);
+        try {
+            return ((ArticleRepositoryDefault)this.articleRepository).getArticles(ids, this.reader);
+        } finally {
+            setSingleQueryHydration(true);
+        }
+    }
+
+    @Test
+    public void t01_init() {
+        String authorJwt = registerUser("hydrationauthor");
+        String readerJwt = registerUser("hydrationreader");
+        this.reader = getUserService().getUserByUsername("hydrationreader");
+
+        for (int i = 0; i < ARTICLES_NBR; i++) {
+            String slug = createArticle(authorJwt, "Hydration " + i, "tag" + (i % 3), "hydration").getString("slug");
+            this.ids.add(getArticleService().getArticle(slug, null).getId());
+
+            if (i % 2 == 0) {
+                HttpResponse response = POST("/api/articles/" + slug + "/favorite").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                                   "Token " + readerJwt)
+                                                                                   .send();
+                assertEquals(HttpStatus.SC_OK, response.getStatus());
+            }
+        }
+
+        HttpResponse response = POST("/api/profiles/hydrationauthor/follow").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                            "Token " + readerJwt)
+                                                                            .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    @Test
+    public void t02_sameArticles() {
+
+        List<Article> single = getArticles(this.ids, true);
+        List<Article> multi = getArticles(this.ids, false);
+
+        assertEquals(ARTICLES_NBR, single.size());
+        assertEquals(ARTICLES_NBR, multi.size());
+
+        for (int i = 0; i < ARTICLES_NBR; i++) {
+            Article a = single.get(i);
+            Article b = multi.get(i);
+
+            assertEquals(this.ids.get(i), a.getId());
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getSlug(), b.getSlug());
+            assertEquals(a.getTitle(), b.getTitle());
+            assertEquals(a.getBody(), b.getBody());
+            assertEquals(a.getCreatedAt(), b.getCreatedAt());
+            assertEquals(new HashSet<>(a.getTagList()), new HashSet<>(b.getTagList()));
+            assertEquals(i % 2 == 0, a.isFavorited());
+            assertEquals(a.isFavorited(), b.isFavorited());
+            assertEquals(i % 2 == 0 ? 1 : 0, a.getFavoritesCount());
+            assertEquals(a.getFavoritesCount(), b.getFavoritesCount());
+            assertEquals(true, a.getAuthorProfile().isFollowing());
+            assertEquals(a.getAuthorProfile().isFollowing(), b.getAuthorProfile().isFollowing());
+        }
+    }
+
+    @Test
+    public void t03_duplicateIds() {
+
+        List<Long> withDuplicates = new ArrayList<>();
+        withDuplicates.add(this.ids.get(2));
+        withDuplicates.add(this.ids.get(0));
+        withDuplicates.add(this.ids.get(2));
+        withDuplicates.add(this.ids.get(1));
+        withDuplicates.add(this.ids.get(0));
+
+        for (boolean singleQueryHydration : new boolean[]{true, false}) {
+            List<Article> articles = getArticles(withDuplicates, singleQueryHydration);
+            assertEquals(3, articles.size());
+            assertEquals(this.ids.get(2), articles.get(0).getId());
+            assertEquals(this.ids.get(0), articles.get(1).getId());
+            assertEquals(this.ids.get(1), articles.get(2).getId());
+        }
+    }
+
+    /**
+     * A single statement loads a page of articles, instead
+     * of one for the base informations, the authors, the
+     * followings, the tags and the favorites.
+     */
+    @Test
+    public void t04_statementsNbr() {
+
+        List<String> single = getCapturingRegistry().capture(() -> getArticles(this.ids, true));
+        assertEquals(single.toString(), 1, single.size());
+
+        List<String> multi = getCapturingRegistry().capture(() -> getArticles(this.ids, false));
+        assertEquals(multi.toString(), 5, multi.size());
+
+        //==========================================
+        // Same number of statements, whatever the
+        // size of the page.
+        //==========================================
+        assertEquals(single, getCapturingRegistry().capture(() -> getArticles(this.ids.subList(0, 5), true)));
+        assertEquals(1, getCapturingRegistry().capture(() -> getArticles(this.ids.subList(0, 1), true)).size());
+    }
+
+    /**
+     * The SQL doesn't depend on the parameters values, so
+     * each query shape is only parsed once.
+     */
+    @Test
+    public void t05_templatesReused() {
+
+        getArticles(this.ids, true);
+        getArticles(this.ids, false);
+        long compiledNbr = this.sqlTemplateRegistry.getCompiledNbr();
+
+        for (int i = 1; i <= ARTICLES_NBR; i++) {
+            getArticles(this.ids.subList(0, i), true);
+            getArticles(this.ids.subList(0, i), false);
+        }
+        assertEquals(compiledNbr, this.sqlTemplateRegistry.getCompiledNbr());
+    }
+
+    protected StatementCapturingSqlTemplateRegistry getCapturingRegistry() {
+        return (StatementCapturingSqlTemplateRegistry)this.sqlTemplateRegistry;
+    }
+
+    /**
+     * Captures the SQL of the statements run by the
+     * repositories while a scenario runs.
+     */
+    protected static class StatementCapturingSqlTemplateRegistry extends SqlTemplateRegistry {
+
+        private volatile List<String> captured = null;
+
+        @Override
+        public void beforeExecute(TemplateStatement statement) {
+            List<String> captured = this.captured;
+            if (captured != null) {
+                captured.add(statement.getNamedSql());
+            }
+        }
+
+        public synchronized List<String> capture(Runnable scenario) {
+            this.captured = Collections.synchronizedList(new ArrayList<>());
+            try {
+                scenario.run();
+                return new ArrayList<>(this.captured);
+            } finally {
+                this.captured = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.spincast.realworld;
+
+import org.junit.FixMethodOrder;
+import org.junit.runners.MethodSorters;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigJsonStreaming;
+
+/**
+ * Runs the articles tests with the listings streamed and
+ * the article fragments cached.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArticlesJsonStreamingTest extends ArticlesTest {
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigJsonStreaming.class;
+    }
+}
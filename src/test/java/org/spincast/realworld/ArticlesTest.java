@@ -25,6 +25,8 @@ import com.google.common.net.HttpHeaders;
 public class ArticlesTest extends TestBase {
 
     String jwt = null;
+    String authorJwt = null;
+    String readerJwt = null;
 
     @Test
     public void t01_createArticleNotLoggedIn() {
@@ -104,4 +106,86 @@ public class ArticlesTest extends TestBase {
         assertEquals("feed", article.getString("article.title"));
         assertNotEquals("feed", article.getString("article.slug"));
     }
+
+    @Test
+    public void t05_slugAlreadyTaken() {
+
+        assertEquals("taken", createArticle(this.jwt, "Taken").getString("slug"));
+        assertEquals("taken-2", createArticle(this.jwt, "Taken 2").getString("slug"));
+
+        //==========================================
+        // "taken-2" is the next number for "taken" but
+        // is already used : the next one is used.
+        //==========================================
+        assertEquals("taken-3", createArticle(this.jwt, "Taken").getString("slug"));
+
+        String slug = createArticle(this.jwt, "Renamed").getString("slug");
+
+        JsonObject articleToUpdate = getSpincastJsonManager().create();
+        articleToUpdate.set("article.title", "Taken");
+
+        HttpResponse response = PUT("/api/articles/" + slug).setJsonStringBody(articleToUpdate)
+                                                            .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt)
+                                                            .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("taken-4", response.getContentAsJsonObject().getString("article.slug"));
+    }
+
+    protected JsonObject getProfilesArticle() {
+        HttpResponse response = GET("/api/articles?tag=profiles").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                 "Token " + this.readerJwt)
+                                                                 .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        JsonObject result = response.getContentAsJsonObject();
+        assertEquals(1, result.getJsonArrayOrEmpty("articles").size());
+        return result.getJsonObject("articles[0]");
+    }
+
+    @Test
+    public void t06_authorProfileAndFavorites() {
+
+        this.authorJwt = registerUser("profilesauthor");
+        this.readerJwt = registerUser("profilesreader");
+        String slug = createArticle(this.authorJwt, "Profiles", "profiles").getString("slug");
+
+        JsonObject article = getProfilesArticle();
+        assertEquals("profilesauthor", article.getString("author.username"));
+        assertEquals(false, article.getBoolean("author.following"));
+        assertEquals(false, article.getBoolean("favorited"));
+
+        HttpResponse response = POST("/api/profiles/profilesauthor/follow").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                           "Token " + this.readerJwt)
+                                                                           .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        response = POST("/api/articles/" + slug + "/favorite").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                              "Token " + this.readerJwt)
+                                                              .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        article = getProfilesArticle();
+        assertEquals(true, article.getBoolean("author.following"));
+        assertEquals(true, article.getBoolean("favorited"));
+        assertEquals(Integer.valueOf(1), article.getInteger("favoritesCount"));
+    }
+
+    @Test
+    public void t07_authorProfileUpdated() {
+
+        JsonObject userToUpdate = getSpincastJsonManager().create();
+        userToUpdate.set("user.bio", "Updated bio");
+        HttpResponse response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                                .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.authorJwt)
+                                                .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        assertEquals("Updated bio", getProfilesArticle().getString("author.bio"));
+
+        response = DELETE("/api/profiles/profilesauthor/follow").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                "Token " + this.readerJwt)
+                                                                .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(false, getProfilesArticle().getBoolean("author.following"));
+    }
 }
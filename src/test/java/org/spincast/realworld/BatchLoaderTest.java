@@ -0,0 +1,380 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import javax.sql.DataSource;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.guice.SpincastGuiceModuleBase;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.db.BatchLoader;
+import org.spincast.realworld.db.BatchLoaderFactory;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.Comment;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.repositories.ArticleRepository;
+import org.spincast.realworld.repositories.ArticleRepositoryDefault;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigBatching;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+import org.spincast.testing.core.postgres.SpincastTestingPostgres;
+
+import com.google.common.collect.Sets;
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
+import com.google.inject.util.Modules;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BatchLoaderTest extends TestBase {
+
+    protected static final int CALLERS_NBR = 8;
+
+    /**
+     * Connections of the testing pool.
+     */
+    protected static final int POOL_SIZE = 3;
+
+    /**
+     * Concurrent hydrations, more than the connections
+     * of the pool.
+     */
+    protected static final int HYDRATIONS_NBR = POOL_SIZE * 4;
+
+    protected static final int ARTICLES_NBR = 5;
+
+    @Inject
+    protected RequestConnectionManager requestConnectionManager;
+
+    @Inject
+    protected ArticleRepository articleRepository;
+
+    @Inject
+    protected BatchLoaderFactory batchLoaderFactory;
+
+    List<Long> ids = new ArrayList<>();
+    User reader = null;
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigBatching.class;
+    }
+
+    @Override
+    protected Module getExtraOverridingModule() {
+        return Modules.override(super.getExtraOverridingModule()).with(new SpincastGuiceModuleBase() {
+
+            @Override
+            protected void configure() {
+                bind(DataSource.class).toProvider(BoundedDataSourceProvider.class).in(Scopes.SINGLETON);
+            }
+        });
+    }
+
+    List<Thread> loaderThreads = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns "value-" + key for each key.
+     */
+    protected Map<Integer, String> load(Set<Integer> keys) {
+        this.loaderThreads.add(Thread.currentThread());
+        Map<Integer, String> values = new HashMap<>();
+        for (Integer key : keys) {
+            values.put(key, "value-" + key);
+        }
+        return values;
+    }
+
+    protected BatchLoader<Integer, String> createBatchLoader(ScheduledExecutorService scheduler,
+                                                             long windowMillis,
+                                                             BooleanSupplier loadOnCaller) {
+        return new BatchLoader<Integer, String>("test",
+                                                true,
+                                                windowMillis,
+                                                100,
+                                                this::load,
+                                                scheduler,
+                                                scheduler,
+                                                loadOnCaller);
+    }
+
+    @Test
+    public void t01_concurrentCallersBatched() throws Exception {
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS_NBR);
+        try {
+            BatchLoader<Integer, String> batchLoader = createBatchLoader(scheduler, 200, () -> false);
+
+            List<Future<Map<Integer, String>>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS_NBR; i++) {
+                int key = i;
+                futures.add(callers.submit(() -> batchLoader.loadAll(Sets.newHashSet(key, 100 + key))));
+            }
+
+            for (int i = 0; i < CALLERS_NBR; i++) {
+                Map<Integer, String> values = futures.get(i).get(10, TimeUnit.SECONDS);
+
+                //==========================================
+                // Only the keys of the caller.
+                //==========================================
+                assertEquals(2, values.size());
+                assertEquals("value-" + i, values.get(i));
+                assertEquals("value-" + (100 + i), values.get(100 + i));
+            }
+
+            assertTrue(batchLoader.getBatchesNbr() < CALLERS_NBR);
+            assertEquals(CALLERS_NBR * 2, batchLoader.getKeysNbr());
+        } finally {
+            callers.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void t02_connectionHeldLoadsOnCaller() {
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        try {
+            BatchLoader<Integer, String> batchLoader = createBatchLoader(scheduler,
+                                                                         200,
+                                                                         () -> this.requestConnectionManager.isConnectionHeld());
+
+            this.loaderThreads.clear();
+            this.requestConnectionManager.scopeOpened();
+            try {
+                assertEquals("value-1", batchLoader.loadAll(Sets.newHashSet(1)).get(1));
+            } finally {
+                this.requestConnectionManager.scopeClosed();
+            }
+
+            //==========================================
+            // Loaded by the caller itself, using the
+            // connection it holds : no batch.
+            //==========================================
+            assertEquals(1, this.loaderThreads.size());
+            assertSame(Thread.currentThread(), this.loaderThreads.get(0));
+            assertEquals(0, batchLoader.getBatchesNbr());
+
+            //==========================================
+            // Without connection held, batched.
+            //==========================================
+            assertEquals("value-2", batchLoader.loadAll(Sets.newHashSet(2)).get(2));
+            assertEquals(1, batchLoader.getBatchesNbr());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void t03_initHydrations() {
+        String authorJwt = registerUser("batchauthor");
+        String readerJwt = registerUser("batchreader");
+        this.reader = getUserService().getUserByUsername("batchreader");
+
+        for (int i = 0; i < ARTICLES_NBR; i++) {
+            String slug = createArticle(authorJwt, "Batch " + i, "batch").getString("slug");
+            this.ids.add(getArticleService().getArticle(slug, null).getId());
+
+            HttpResponse response = POST("/api/articles/" + slug + "/comments").setJsonStringBody("{\"comment\":{\"body\":\"Hi\"}}")
+                                                                               .addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                               "Token " + readerJwt)
+                                                                               .send();
+            assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+            if (i % 2 == 0) {
+                response = POST("/api/articles/" + slug + "/favorite").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                      "Token " + readerJwt)
+                                                                      .send();
+                assertEquals(HttpStatus.SC_OK, response.getStatus());
+            }
+        }
+    }
+
+    /**
+     * A caller waiting for a batch must not hold a
+     * connection : otherwise, as many waiting callers as
+     * there are connections would block the batches until
+     * the pool times out.
+     */
+    @Test
+    public void t04_moreHydrationsThanConnections() throws Exception {
+
+        long batchesBefore = getBatchesNbr();
+
+        ExecutorService callers = Executors.newFixedThreadPool(HYDRATIONS_NBR);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < HYDRATIONS_NBR; i++) {
+                futures.add(callers.submit(() -> {
+                    List<Article> articles = ((ArticleRepositoryDefault)this.articleRepository).getArticles(this.ids, this.reader);
+                    assertEquals(ARTICLES_NBR, articles.size());
+                    for (int j = 0; j < ARTICLES_NBR; j++) {
+                        assertEquals("batchauthor", articles.get(j).getAuthorProfile().getUser().getUsername());
+                        assertEquals(j % 2 == 0, articles.get(j).isFavorited());
+                    }
+
+                    List<Comment> comments = this.articleRepository.getComments(this.ids.get(0), this.reader);
+                    assertEquals(1, comments.size());
+                    assertEquals("batchreader", comments.get(0).getAuthorProfile().getUser().getUsername());
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertTrue(getBatchesNbr() > batchesBefore);
+    }
+
+    protected long getBatchesNbr() {
+        long batchesNbr = 0;
+        for (BatchLoader<?, ?> batchLoader : this.batchLoaderFactory.getBatchLoaders()) {
+            batchesNbr += batchLoader.getBatchesNbr();
+        }
+        return batchesNbr;
+    }
+
+    /**
+     * The testing database, limited to {@link #POOL_SIZE}
+     * connections at the same time. As Hikari, it fails
+     * when no connection is available after a timeout.
+     */
+    protected static class BoundedDataSourceProvider implements Provider<DataSource> {
+
+        private final SpincastTestingPostgres spincastTestingPostgres;
+
+        @Inject
+        public BoundedDataSourceProvider(SpincastTestingPostgres spincastTestingPostgres) {
+            this.spincastTestingPostgres = spincastTestingPostgres;
+        }
+
+        @Override
+        public DataSource get() {
+            return new BoundedDataSource(this.spincastTestingPostgres.get(), POOL_SIZE);
+        }
+    }
+
+    protected static class BoundedDataSource implements DataSource {
+
+        private final DataSource delegate;
+        private final Semaphore permits;
+
+        public BoundedDataSource(DataSource delegate, int maxConnections) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConnections);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            try {
+                if (!this.permits.tryAcquire(5, TimeUnit.SECONDS)) {
+                    throw new SQLException("Connection is not available, request timed out");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(ex);
+            }
+
+            Connection connection;
+            try {
+                connection = this.delegate.getConnection();
+            } catch (SQLException | RuntimeException ex) {
+                this.permits.release();
+                throw ex;
+            }
+
+            AtomicBoolean closed = new AtomicBoolean(false);
+            return (Connection)Proxy.newProxyInstance(BatchLoaderTest.class.getClassLoader(),
+                                                      new Class<?>[]{Connection.class},
+                                                      (proxy, method, args) -> {
+                                                          if ("close".equals(method.getName()) &&
+                                                              closed.compareAndSet(false, true)) {
+                                                              this.permits.release();
+                                                          }
+                                                          try {
+                                                              return method.invoke(connection, args);
+                                                          } catch (InvocationTargetException ex) {
+                                                              throw ex.getCause();
+                                                          }
+                                                      });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return this.delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            this.delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            this.delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return this.delegate.getLoginTimeout();
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return this.delegate.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return this.delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return this.delegate.isWrapperFor(iface);
+        }
+    }
+}
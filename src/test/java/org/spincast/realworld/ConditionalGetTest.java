@@ -0,0 +1,193 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.collect.Sets;
+import com.google.common.net.HttpHeaders;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ConditionalGetTest extends TestBase {
+
+    String authorJwt = null;
+    String readerJwt = null;
+    String articleETag = null;
+    String commentsETag = null;
+    String profileETag = null;
+    String tagsETag = null;
+
+    protected String register(String username) {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", username + "@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", username);
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        String jwt = response.getContentAsJsonObject().getString("user.token");
+        assertNotNull(jwt);
+        return jwt;
+    }
+
+    protected String getETag(HttpResponse response) {
+        String etag = response.getHeaderFirst(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("W/\""));
+        return etag;
+    }
+
+    @Test
+    public void t01_init() {
+        this.authorJwt = register("etagauthor");
+        this.readerJwt = register("etagreader");
+
+        JsonObject articleToCreate = getSpincastJsonManager().create();
+        articleToCreate.set("article.title", "ETag article");
+        articleToCreate.set("article.description", "desc");
+        articleToCreate.set("article.body", "body");
+        articleToCreate.set("article.tagList", Sets.newHashSet("etag1"));
+
+        HttpResponse response = POST("/api/articles").setJsonStringBody(articleToCreate)
+                                                     .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.authorJwt)
+                                                     .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    @Test
+    public void t02_article() {
+
+        HttpResponse response = GET("/api/articles/etag-article").send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        this.articleETag = getETag(response);
+        assertTrue(response.getHeaderFirst(HttpHeaders.CACHE_CONTROL).startsWith("public"));
+        assertEquals(HttpHeaders.AUTHORIZATION, response.getHeaderFirst(HttpHeaders.VARY));
+
+        response = GET("/api/articles/etag-article").addHeaderValue(HttpHeaders.IF_NONE_MATCH, this.articleETag).send();
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals(this.articleETag, response.getHeaderFirst(HttpHeaders.ETAG));
+
+        //==========================================
+        // Logged in
+        //==========================================
+        response = GET("/api/articles/etag-article").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.readerJwt)
+                                                    .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertTrue(response.getHeaderFirst(HttpHeaders.CACHE_CONTROL).startsWith("private"));
+    }
+
+    @Test
+    public void t03_articleFavorited() {
+
+        HttpResponse response = POST("/api/articles/etag-article/favorite").addHeaderValue(HttpHeaders.AUTHORIZATION,
+                                                                                          "Token " + this.readerJwt)
+                                                                          .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        //==========================================
+        // The favorites count changed.
+        //==========================================
+        response = GET("/api/articles/etag-article").addHeaderValue(HttpHeaders.IF_NONE_MATCH, this.articleETag).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(1, response.getContentAsJsonObject().getInteger("article.favoritesCount").intValue());
+        assertNotEquals(this.articleETag, getETag(response));
+    }
+
+    @Test
+    public void t04_articleUpdated() {
+
+        HttpResponse response = GET("/api/articles/etag-article").send();
+        String etag = getETag(response);
+
+        JsonObject articleToUpdate = getSpincastJsonManager().create();
+        articleToUpdate.set("article.body", "new body");
+        response = PUT("/api/articles/etag-article").setJsonStringBody(articleToUpdate)
+                                                    .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.authorJwt)
+                                                    .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        response = GET("/api/articles/etag-article").addHeaderValue(HttpHeaders.IF_NONE_MATCH, etag).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("new body", response.getContentAsJsonObject().getString("article.body"));
+    }
+
+    @Test
+    public void t05_comments() {
+
+        HttpResponse response = GET("/api/articles/etag-article/comments").send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        this.commentsETag = getETag(response);
+
+        response = GET("/api/articles/etag-article/comments").addHeaderValue(HttpHeaders.IF_NONE_MATCH, this.commentsETag)
+                                                             .send();
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatus());
+
+        JsonObject comment = getSpincastJsonManager().create();
+        comment.set("comment.body", "A comment");
+        response = POST("/api/articles/etag-article/comments").setJsonStringBody(comment)
+                                                              .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.readerJwt)
+                                                              .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        response = GET("/api/articles/etag-article/comments").addHeaderValue(HttpHeaders.IF_NONE_MATCH, this.commentsETag)
+                                                             .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(1, response.getContentAsJsonObject().getJsonArrayOrEmpty("comments").size());
+    }
+
+    @Test
+    public void t06_profile() {
+
+        HttpResponse response = GET("/api/profiles/etagauthor").send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        this.profileETag = getETag(response);
+
+        response = GET("/api/profiles/etagauthor").addHeaderValue(HttpHeaders.IF_NONE_MATCH, "\"other\", " + this.profileETag)
+                                                  .send();
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatus());
+
+        JsonObject userToUpdate = getSpincastJsonManager().create();
+        userToUpdate.set("user.bio", "New bio");
+        response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                   .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.authorJwt)
+                                   .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        response = GET("/api/profiles/etagauthor").addHeaderValue(HttpHeaders.IF_NONE_MATCH, this.profileETag).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("New bio", response.getContentAsJsonObject().getString("profile.bio"));
+    }
+
+    @Test
+    public void t07_tags() {
+
+        HttpResponse response = GET("/api/tags").send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        this.tagsETag = getETag(response);
+
+        response = GET("/api/tags").addHeaderValue(HttpHeaders.IF_NONE_MATCH, this.tagsETag).send();
+        assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getStatus());
+    }
+
+    @Test
+    public void t08_notFound() {
+
+        HttpResponse response = GET("/api/articles/nope").addHeaderValue(HttpHeaders.IF_NONE_MATCH, "*").send();
+        assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatus());
+    }
+}
@@ -0,0 +1,127 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.json.JsonArray;
+import org.spincast.core.json.JsonObject;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CursorPaginationTest extends TestBase {
+
+    protected static final int ARTICLES_NBR = 5;
+
+    List<String> slugs = new ArrayList<>();
+
+    protected JsonObject getPage(String cursor) {
+        HttpResponse response = GET("/api/articles?author=cursorauthor&limit=2&cursor=" + cursor).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        return response.getContentAsJsonObject();
+    }
+
+    protected List<String> getSlugs(JsonObject page) {
+        List<String> slugs = new ArrayList<>();
+        JsonArray articles = page.getJsonArrayOrEmpty("articles");
+        for (int i = 0; i < articles.size(); i++) {
+            slugs.add(articles.getJsonObject(i).getString("slug"));
+        }
+        return slugs;
+    }
+
+    /**
+     * Pages through all the articles of the author.
+     */
+    protected List<String> getAllSlugs() {
+        List<String> all = new ArrayList<>();
+        String cursor = "";
+        for (int i = 0; i <= ARTICLES_NBR; i++) {
+            JsonObject page = getPage(cursor);
+            all.addAll(getSlugs(page));
+            cursor = page.getString("nextCursor");
+            if (cursor == null) {
+                return all;
+            }
+        }
+        throw new AssertionError("The last page was never reached");
+    }
+
+    @Test
+    public void t01_init() {
+        String jwt = registerUser("cursorauthor");
+        for (int i = 0; i < ARTICLES_NBR; i++) {
+            this.slugs.add(0, createArticle(jwt, "Cursor " + i, "cursor").getString("slug"));
+        }
+    }
+
+    @Test
+    public void t02_noCursorField() {
+        HttpResponse response = GET("/api/articles?author=cursorauthor&limit=2").send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        JsonObject page = response.getContentAsJsonObject();
+        assertEquals(2, page.getJsonArrayOrEmpty("articles").size());
+        assertEquals(ARTICLES_NBR, page.getInteger("articlesCount").intValue());
+        assertFalse(page.contains("nextCursor"));
+    }
+
+    @Test
+    public void t03_firstAndNextPages() {
+        JsonObject first = getPage("");
+        assertEquals(this.slugs.subList(0, 2), getSlugs(first));
+        assertEquals(ARTICLES_NBR, first.getInteger("articlesCount").intValue());
+        assertNotNull(first.getString("nextCursor"));
+
+        JsonObject second = getPage(first.getString("nextCursor"));
+        assertEquals(this.slugs.subList(2, 4), getSlugs(second));
+
+        JsonObject last = getPage(second.getString("nextCursor"));
+        assertEquals(this.slugs.subList(4, 5), getSlugs(last));
+        assertTrue(last.contains("nextCursor"));
+        assertNull(last.getString("nextCursor"));
+
+        assertEquals(this.slugs, getAllSlugs());
+    }
+
+    @Test
+    public void t04_tiesOnCreationDate() {
+
+        //==========================================
+        // All the articles created at the same
+        // instant : the id breaks the ties.
+        //==========================================
+        try (Connection connection = getTestDataSource().getConnection();
+                PreparedStatement stm = connection.prepareStatement("UPDATE articles SET creation_date = '2019-01-01T00:00:00Z' " +
+                                                                    "WHERE author_id = (SELECT id FROM users WHERE username = 'cursorauthor')")) {
+            assertEquals(ARTICLES_NBR, stm.executeUpdate());
+        } catch (Exception ex) {
+            throw SpincastStatics.runtimize(ex);
+        }
+
+        assertEquals(this.slugs, getAllSlugs());
+    }
+
+    @Test
+    public void t05_invalidCursor() {
+        HttpResponse response = GET("/api/articles?author=cursorauthor&limit=2&cursor=nope").send();
+        assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatus());
+    }
+}
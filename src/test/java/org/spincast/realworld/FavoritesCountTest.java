@@ -0,0 +1,129 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class FavoritesCountTest extends TestBase {
+
+    protected static final int CONCURRENT_USERS_NBR = 8;
+
+    String authorJwt = null;
+    String readerJwt = null;
+    String slug = null;
+    List<String> concurrentJwts = new ArrayList<>();
+
+    protected int favorite(String jwt, boolean favorite) {
+        String url = "/api/articles/" + this.slug + "/favorite";
+        HttpResponse response;
+        if (favorite) {
+            response = POST(url).addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + jwt).send();
+        } else {
+            response = DELETE(url).addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + jwt).send();
+        }
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        return response.getContentAsJsonObject().getInteger("article.favoritesCount");
+    }
+
+    /**
+     * The stored count and the actual number of favorites.
+     */
+    protected int[] getCounts() {
+        try (Connection connection = getTestDataSource().getConnection();
+                PreparedStatement stm = connection.prepareStatement("SELECT favorites_count, " +
+                                                                    "       (SELECT COUNT(*) FROM favorites " +
+                                                                    "        WHERE favorites.article_id = articles.id) " +
+                                                                    "FROM articles " +
+                                                                    "WHERE slug = ?")) {
+            stm.setString(1, this.slug);
+            try (ResultSet rs = stm.executeQuery()) {
+                assertTrue(rs.next());
+                return new int[]{rs.getInt(1), rs.getInt(2)};
+            }
+        } catch (Exception ex) {
+            throw SpincastStatics.runtimize(ex);
+        }
+    }
+
+    @Test
+    public void t01_init() {
+        this.authorJwt = registerUser("favcountauthor");
+        this.readerJwt = registerUser("favcountreader");
+        for (int i = 0; i < CONCURRENT_USERS_NBR; i++) {
+            this.concurrentJwts.add(registerUser("favcount" + i));
+        }
+        this.slug = createArticle(this.authorJwt, "Favorites count").getString("slug");
+        assertEquals(0, getCounts()[0]);
+    }
+
+    @Test
+    public void t02_favoriteIsIdempotent() {
+        assertEquals(1, favorite(this.readerJwt, true));
+        assertEquals(1, favorite(this.readerJwt, true));
+        assertEquals(2, favorite(this.authorJwt, true));
+
+        int[] counts = getCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(counts[1], counts[0]);
+    }
+
+    @Test
+    public void t03_unfavoriteIsIdempotent() {
+        assertEquals(1, favorite(this.readerJwt, false));
+        assertEquals(1, favorite(this.readerJwt, false));
+
+        int[] counts = getCounts();
+        assertEquals(1, counts[0]);
+        assertEquals(counts[1], counts[0]);
+    }
+
+    @Test
+    public void t04_concurrentFavorites() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_USERS_NBR);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (String jwt : this.concurrentJwts) {
+                futures.add(executor.submit(() -> favorite(jwt, true)));
+                futures.add(executor.submit(() -> favorite(jwt, true)));
+            }
+            for (Future<Integer> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int[] counts = getCounts();
+        assertEquals(1 + CONCURRENT_USERS_NBR, counts[0]);
+        assertEquals(counts[1], counts[0]);
+
+        HttpResponse response = GET("/api/articles/" + this.slug).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(1 + CONCURRENT_USERS_NBR, (int)response.getContentAsJsonObject().getInteger("article.favoritesCount"));
+    }
+}
@@ -0,0 +1,16 @@
+package org.spincast.realworld;
+
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigJsonStreaming;
+
+/**
+ * Runs the streaming tests with the article fragments
+ * cached.
+ */
+public class JsonResponseWriterFragmentsTest extends JsonResponseWriterTest {
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigJsonStreaming.class;
+    }
+}
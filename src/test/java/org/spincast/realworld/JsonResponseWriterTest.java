@@ -0,0 +1,238 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.spincast.realworld.controllers.utils.JsonResponseWriter;
+import org.spincast.realworld.controllers.utils.ToResponseEntityConverter;
+import org.spincast.realworld.models.EntityFactory;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
+import org.spincast.realworld.models.articles.Comment;
+import org.spincast.realworld.models.users.Profile;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.utils.TestBase;
+
+import com.google.inject.Inject;
+
+/**
+ * The streamed listings must be the same, byte for byte,
+ * as the ones built using the converter.
+ */
+public class JsonResponseWriterTest extends TestBase {
+
+    @Inject
+    protected EntityFactory entityFactory;
+
+    @Inject
+    protected ToResponseEntityConverter entityConverter;
+
+    @Inject
+    protected JsonResponseWriter jsonResponseWriter;
+
+    protected List<Profile> createProfiles() {
+        User user1 = this.entityFactory.createUser(1L, "user1@example.com", "user1", "hash", "salt", "My \"bio\"\n", null);
+        User user2 = this.entityFactory.createUser(2L, "user2@example.com", "ûsér2", "hash", "salt", null, "http://example.com/a.png");
+
+        List<Profile> profiles = new ArrayList<Profile>();
+        profiles.add(this.entityFactory.createProfile(user1, false));
+        profiles.add(this.entityFactory.createProfile(user2, true));
+        return profiles;
+    }
+
+    protected String write(Writer writer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    protected interface Writer {
+
+        public void write(ByteArrayOutputStream out);
+    }
+
+    @Test
+    public void articles() {
+
+        List<Profile> profiles = createProfiles();
+        Instant now = Instant.parse("2019-03-04T05:06:07.123456Z");
+
+        List<Article> articles = new ArrayList<Article>();
+        articles.add(this.entityFactory.createArticle(1L,
+                                                      now,
+                                                      now.plusSeconds(60),
+                                                      profiles.get(0),
+                                                      Arrays.asList("tag1", "tâg2"),
+                                                      "title-1",
+                                                      "Title 1",
+                                                      "desc \\ \"quoted\" \t tab",
+                                                      "body é 日本 \u0001",
+                                                      true,
+                                                      42));
+        articles.add(this.entityFactory.createArticle(2L,
+                                                      now,
+                                                      now,
+                                                      profiles.get(1),
+                                                      Collections.emptyList(),
+                                                      "title-2",
+                                                      "Title 2",
+                                                      "",
+                                                      "body",
+                                                      false,
+                                                      0));
+
+        ArticleCursor nextCursor = ArticleCursor.of(articles.get(1));
+
+        assertEquals(this.entityConverter.convertToArticles(articles, 1234, nextCursor).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeArticles(out, articles, 1234, nextCursor)));
+
+        assertEquals(this.entityConverter.convertToArticles(articles, 2, null).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeArticles(out, articles, 2, null)));
+
+        //==========================================
+        // Again, with the fragments already cached if
+        // enabled.
+        //==========================================
+        assertEquals(this.entityConverter.convertToArticles(articles, 2, null).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeArticles(out, articles, 2, null)));
+
+        assertEquals(this.entityConverter.convertToArticles(new ArrayList<Article>(), 0, null).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeArticles(out, new ArrayList<Article>(), 0, null)));
+
+        //==========================================
+        // Without the cursor pagination, no
+        // "nextCursor" field.
+        //==========================================
+        String json = write(out -> this.jsonResponseWriter.writeArticles(out, articles, 2));
+        assertEquals(this.entityConverter.convertToArticles(articles, 2).toJsonString(), json);
+        assertFalse(json.contains("nextCursor"));
+        assertTrue(write(out -> this.jsonResponseWriter.writeArticles(out, articles, 2, null)).contains("\"nextCursor\":null"));
+    }
+
+    @Test
+    public void authorModified() {
+
+        Instant now = Instant.parse("2019-03-04T05:06:07Z");
+
+        User author = this.entityFactory.createUser(10L, "author@example.com", "author", "hash", "salt", "bio", null);
+        List<Article> articles = new ArrayList<Article>();
+        articles.add(this.entityFactory.createArticle(10L,
+                                                      now,
+                                                      now,
+                                                      this.entityFactory.createProfile(author, false),
+                                                      Arrays.asList("tag1"),
+                                                      "title-10",
+                                                      "Title 10",
+                                                      "desc",
+                                                      "body",
+                                                      false,
+                                                      0));
+
+        assertEquals(this.entityConverter.convertToArticles(articles, 1, null).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeArticles(out, articles, 1, null)));
+
+        //==========================================
+        // Same article version, but the bio of the
+        // author and the viewer dependent fields changed.
+        //==========================================
+        User authorModified = this.entityFactory.createUser(10L, "author@example.com", "author", "hash", "salt", "new bio", null);
+        List<Article> articlesModified = new ArrayList<Article>();
+        articlesModified.add(this.entityFactory.createArticle(10L,
+                                                              now,
+                                                              now,
+                                                              this.entityFactory.createProfile(authorModified, true),
+                                                              Arrays.asList("tag1"),
+                                                              "title-10",
+                                                              "Title 10",
+                                                              "desc",
+                                                              "body",
+                                                              true,
+                                                              1));
+
+        String json = write(out -> this.jsonResponseWriter.writeArticles(out, articlesModified, 1, null));
+        assertEquals(this.entityConverter.convertToArticles(articlesModified, 1, null).toJsonString(), json);
+        assertTrue(json.contains("\"new bio\""));
+    }
+
+    @Test
+    public void comments() {
+
+        List<Profile> profiles = createProfiles();
+        Instant now = Instant.parse("2019-03-04T05:06:07Z");
+
+        List<Comment> comments = new ArrayList<Comment>();
+        comments.add(this.entityFactory.createComment(1L, profiles.get(0), "comment \"1\"\n", now, now));
+        comments.add(this.entityFactory.createComment(2L, profiles.get(1), "comment 2 ü", now, now.plusMillis(1)));
+
+        assertEquals(this.entityConverter.convertToComments(comments).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeComments(out, comments)));
+
+        assertEquals(this.entityConverter.convertToComments(new ArrayList<Comment>()).toJsonString(),
+                     write(out -> this.jsonResponseWriter.writeComments(out, new ArrayList<Comment>())));
+    }
+
+    /**
+     * Writing a large page directly allocates less than
+     * building the tree and then serializing it.
+     */
+    @Test
+    public void allocations() {
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationsBean = (com.sun.management.ThreadMXBean)threadMXBean;
+        Assume.assumeTrue(allocationsBean.isThreadAllocatedMemorySupported() && allocationsBean.isThreadAllocatedMemoryEnabled());
+
+        List<Profile> profiles = createProfiles();
+        Instant now = Instant.parse("2019-03-04T05:06:07Z");
+
+        List<Article> articles = new ArrayList<Article>();
+        for (long i = 1; i <= 1000; i++) {
+            articles.add(this.entityFactory.createArticle(i,
+                                                          now,
+                                                          now,
+                                                          profiles.get((int)(i % 2)),
+                                                          Arrays.asList("tag1", "tag2"),
+                                                          "title-" + i,
+                                                          "Title " + i,
+                                                          "desc",
+                                                          "body " + i,
+                                                          i % 3 == 0,
+                                                          (int)i));
+        }
+
+        Runnable tree = () -> this.entityConverter.convertToArticles(articles, 1000, null).toJsonString();
+        Runnable streamed = () -> write(out -> this.jsonResponseWriter.writeArticles(out, articles, 1000, null));
+
+        long treeBytes = allocatedBytes(allocationsBean, tree);
+        long streamedBytes = allocatedBytes(allocationsBean, streamed);
+        assertTrue("streamed : " + streamedBytes + " bytes, tree : " + treeBytes + " bytes", streamedBytes < treeBytes);
+    }
+
+    /**
+     * The bytes allocated by the current thread to run
+     * the task, after a warm up.
+     */
+    protected long allocatedBytes(com.sun.management.ThreadMXBean allocationsBean, Runnable task) {
+        for (int i = 0; i < 5; i++) {
+            task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocationsBean.getThreadAllocatedBytes(threadId);
+        task.run();
+        return allocationsBean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,96 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.time.Instant;
+import java.util.Date;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.services.JwtCache;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class JwtCacheTest extends TestBase {
+
+    @Inject
+    protected JwtCache jwtCache;
+
+    String jwt = null;
+
+    @Test
+    public void t01_register() {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", "jwtcache@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", "jwtcache");
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        this.jwt = response.getContentAsJsonObject().getString("user.token");
+        assertNotNull(this.jwt);
+    }
+
+    @Test
+    public void t02_verifiedOnce() {
+
+        long missesBefore = this.jwtCache.getMissesNbr();
+        long hitsBefore = this.jwtCache.getHitsNbr();
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse response = GET("/api/user").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt).send();
+            assertEquals(HttpStatus.SC_OK, response.getStatus());
+        }
+
+        assertEquals(missesBefore + 1, this.jwtCache.getMissesNbr());
+        assertEquals(hitsBefore + 2, this.jwtCache.getHitsNbr());
+    }
+
+    @Test
+    public void t03_invalidNotCached() {
+
+        String invalidJwt = this.jwt.substring(0, this.jwt.length() - 2) + "xx";
+        for (int i = 0; i < 2; i++) {
+            HttpResponse response = GET("/api/user").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + invalidJwt).send();
+            assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+        }
+
+        HttpResponse response = GET("/api/user").send();
+        assertEquals(HttpStatus.SC_UNAUTHORIZED, response.getStatus());
+    }
+
+    @Test
+    public void t04_expiredNotReturned() {
+
+        String token = JWT.create()
+                          .withExpiresAt(Date.from(Instant.now().minusSeconds(10)))
+                          .sign(Algorithm.HMAC256("any"));
+        DecodedJWT decoded = JWT.decode(token);
+
+        //==========================================
+        // Cached without being verified, then rejected
+        // since it is expired.
+        //==========================================
+        assertSame(decoded, this.jwtCache.getVerified(token, t -> decoded));
+        assertNull(this.jwtCache.getVerified(token, t -> decoded));
+    }
+}
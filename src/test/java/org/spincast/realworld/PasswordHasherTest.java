@@ -0,0 +1,217 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.crypto.SpincastCryptoUtils;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.exceptions.ServiceUnavailableException;
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.repositories.UserRepository;
+import org.spincast.realworld.services.PasswordHasher;
+import org.spincast.realworld.utils.ExecutorFactory;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.inject.Inject;
+
+public class PasswordHasherTest extends TestBase {
+
+    @Inject
+    protected AppConfig appConfig;
+
+    @Inject
+    protected SpincastCryptoUtils spincastCryptoUtils;
+
+    @Inject
+    protected PasswordHasher passwordHasher;
+
+    @Inject
+    protected UserRepository userRepository;
+
+    @Test
+    public void registerAndLogin() {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", "hasher@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", "hasher");
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        JsonObject credentials = getSpincastJsonManager().create();
+        credentials.set("user.email", "hasher@example.com");
+        credentials.set("user.password", "12345678");
+
+        response = POST("/api/users/login").setJsonStringBody(credentials).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        credentials.set("user.password", "nope1234");
+        response = POST("/api/users/login").setJsonStringBody(credentials).send();
+        assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatus());
+    }
+
+    @Test
+    public void versionedFormat() {
+
+        String salt = this.spincastCryptoUtils.generateNewHashSecureSalt();
+        String hash = this.passwordHasher.hash("12345678", salt);
+        assertTrue(hash.startsWith(PasswordHasher.FORMAT_PREFIX + this.passwordHasher.getIterations() + "$"));
+
+        assertTrue(this.passwordHasher.verify("12345678", salt, hash));
+        assertFalse(this.passwordHasher.verify("12345679", salt, hash));
+        assertFalse(this.passwordHasher.verify("12345678", salt, PasswordHasher.FORMAT_PREFIX + "nope$abc"));
+        assertFalse(this.passwordHasher.isRehashNeeded(hash));
+
+        assertTrue(this.passwordHasher.isRehashNeeded(PasswordHasher.FORMAT_PREFIX + "10$abc"));
+        assertTrue(this.passwordHasher.isRehashNeeded(this.spincastCryptoUtils.hashSecure("12345678", salt)));
+    }
+
+    @Test
+    public void legacyHashRehashedOnLogin() {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", "legacy@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", "legacy");
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        //==========================================
+        // A hash created before the versioned format
+        //==========================================
+        User user = getUserService().getUserByUsername("legacy");
+        String salt = this.spincastCryptoUtils.generateNewHashSecureSalt();
+        assertTrue(this.userRepository.updatePassword(user.getId(),
+                                                      user.getHashedPassword(),
+                                                      this.spincastCryptoUtils.hashSecure("12345678", salt),
+                                                      salt));
+        assertFalse(getUserService().getUserByUsername("legacy").getHashedPassword()
+                                    .startsWith(PasswordHasher.FORMAT_PREFIX));
+
+        JsonObject credentials = getSpincastJsonManager().create();
+        credentials.set("user.email", "legacy@example.com");
+        credentials.set("user.password", "12345678");
+
+        response = POST("/api/users/login").setJsonStringBody(credentials).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        user = getUserService().getUserByUsername("legacy");
+        assertTrue(user.getHashedPassword().startsWith(PasswordHasher.FORMAT_PREFIX));
+        assertFalse(this.passwordHasher.isRehashNeeded(user.getHashedPassword()));
+
+        response = POST("/api/users/login").setJsonStringBody(credentials).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    @Test
+    public void rejectedWhenQueueFull() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+
+        //==========================================
+        // One thread, one password waiting at most. The
+        // hashes block until released.
+        //==========================================
+        ExecutorFactory executorFactory = new ExecutorFactory(this.appConfig) {
+
+            @Override
+            public ThreadPoolExecutor createCpuBoundExecutor(String name, int threadsNbr, int queueSize) {
+                return super.createCpuBoundExecutor(name, 1, 1);
+            }
+        };
+
+        PasswordHasher passwordHasher = new PasswordHasher(this.appConfig,
+                                                           this.spincastCryptoUtils,
+                                                           executorFactory,
+                                                           new MetricsRegistry()) {
+
+            @Override
+            protected String hashNow(String rawPassword, String salt) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return super.hashNow(rawPassword, salt);
+            }
+        };
+
+        String salt = this.spincastCryptoUtils.generateNewHashSecureSalt();
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = callers.submit(() -> passwordHasher.hash("password1", salt));
+            Future<String> second = callers.submit(() -> passwordHasher.hash("password2", salt));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (passwordHasher.getQueueDepth() < 1) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail();
+                }
+                Thread.sleep(10);
+            }
+
+            try {
+                passwordHasher.hash("password3", salt);
+                fail();
+            } catch (ServiceUnavailableException ex) {
+                assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, ex.getStatusCode());
+                assertTrue(ex.getRetryAfterSeconds() > 0);
+            }
+
+            release.countDown();
+            assertNotNull(first.get(5, TimeUnit.SECONDS));
+            assertNotNull(second.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+        }
+    }
+
+    /**
+     * A rehash computed from a hash that has been replaced
+     * in between doesn't overwrite the new password.
+     */
+    @Test
+    public void rehashSkippedWhenPasswordChanged() {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", "changed@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", "changed");
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        User verified = getUserService().getUserByUsername("changed");
+
+        String salt = this.spincastCryptoUtils.generateNewHashSecureSalt();
+        String newHash = this.passwordHasher.hash("87654321", salt);
+        assertTrue(this.userRepository.updatePassword(verified.getId(), verified.getHashedPassword(), newHash, salt));
+
+        String rehashSalt = this.spincastCryptoUtils.generateNewHashSecureSalt();
+        assertFalse(this.userRepository.updatePassword(verified.getId(),
+                                                       verified.getHashedPassword(),
+                                                       this.passwordHasher.hash("12345678", rehashSalt),
+                                                       rehashSalt));
+
+        assertEquals(newHash, getUserService().getUserByUsername("changed").getHashedPassword());
+    }
+}
@@ -0,0 +1,116 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.spincast.plugins.jdbc.SpincastDataSourceFactory;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.DataSourceProvider;
+import org.spincast.realworld.db.HikariMetricsTrackerFactory;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigPoolAutoSize;
+import org.spincast.realworld.utils.TestBase;
+
+import com.google.inject.Inject;
+
+/**
+ * The application uses the testing database, so the
+ * sizes are computed without creating the pools.
+ */
+public class PoolSizingTest extends TestBase {
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigPoolAutoSize.class;
+    }
+
+    protected static class TestingDataSourceProvider extends DataSourceProvider {
+
+        private int coresNbr;
+        private long latencyMicros;
+        private boolean readPool = true;
+
+        @Inject
+        public TestingDataSourceProvider(SpincastDataSourceFactory spincastDataSourceFactory,
+                                         AppConfig appConfig,
+                                         ReplicaRouting replicaRouting,
+                                         HikariMetricsTrackerFactory hikariMetricsTrackerFactory) {
+            super(spincastDataSourceFactory, appConfig, replicaRouting, hikariMetricsTrackerFactory);
+        }
+
+        public void setReadPool(boolean readPool) {
+            this.readPool = readPool;
+        }
+
+        public PoolSizes getPoolSizes(int coresNbr, long latencyMicros) {
+            this.coresNbr = coresNbr;
+            this.latencyMicros = latencyMicros;
+            return computePoolSizes();
+        }
+
+        @Override
+        protected int getCoresNbr() {
+            return this.coresNbr;
+        }
+
+        @Override
+        protected long measureLatencyMicros(String connectionString) {
+            return this.latencyMicros;
+        }
+
+        @Override
+        protected boolean hasReadPool() {
+            return this.readPool;
+        }
+    }
+
+    protected TestingDataSourceProvider getProvider() {
+        return getInjector().getInstance(TestingDataSourceProvider.class);
+    }
+
+    @Test
+    public void localDatabase() {
+
+        //==========================================
+        // 4 cores * 2 + 1, a third for the writes.
+        //==========================================
+        DataSourceProvider.PoolSizes sizes = getProvider().getPoolSizes(4, 500);
+        assertEquals(3, sizes.getWriteMaxSize());
+        assertEquals(6, sizes.getReadMaxSize());
+    }
+
+    @Test
+    public void remoteDatabaseCappedTotal() {
+
+        //==========================================
+        // 4 * 2 + 1 + 4 * 3 = 21, capped at 12 for
+        // the two pools together.
+        //==========================================
+        DataSourceProvider.PoolSizes sizes = getProvider().getPoolSizes(4, 3000);
+        assertEquals(4, sizes.getWriteMaxSize());
+        assertEquals(8, sizes.getReadMaxSize());
+        assertEquals(12, sizes.getWriteMaxSize() + sizes.getReadMaxSize());
+    }
+
+    @Test
+    public void latencyUnknown() {
+
+        DataSourceProvider.PoolSizes sizes = getProvider().getPoolSizes(4, -1);
+        assertEquals(getInjector().getInstance(AppConfig.class).getDbPoolWriteMaxSize(), sizes.getWriteMaxSize());
+        assertEquals(getInjector().getInstance(AppConfig.class).getDbPoolReadMaxSize(), sizes.getReadMaxSize());
+    }
+
+    @Test
+    public void latencyUnknownNoReadPool() {
+
+        TestingDataSourceProvider provider = getProvider();
+        provider.setReadPool(false);
+
+        AppConfig appConfig = getInjector().getInstance(AppConfig.class);
+        DataSourceProvider.PoolSizes sizes = provider.getPoolSizes(4, -1);
+        assertEquals(appConfig.getDbPoolWriteMaxSize() + appConfig.getDbPoolReadMaxSize(), sizes.getWriteMaxSize());
+        assertEquals(0, sizes.getReadMaxSize());
+        assertEquals(10, sizes.getWriteMaxSize());
+    }
+}
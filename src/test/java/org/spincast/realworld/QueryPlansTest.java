@@ -0,0 +1,429 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertFalse;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.spincast.core.guice.SpincastGuiceModuleBase;
+import org.spincast.core.json.JsonArray;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.jdbc.JdbcQueries;
+import org.spincast.plugins.jdbc.SpincastResultSet;
+import org.spincast.plugins.jdbc.statements.ResultSetHandler;
+import org.spincast.plugins.jdbc.statements.SelectStatement;
+import org.spincast.plugins.jdbc.statements.UpdateStatement;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.models.articles.Article;
+import org.spincast.realworld.models.articles.ArticleCursor;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.repositories.ArticleRepository;
+import org.spincast.realworld.repositories.UserRepository;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigHydrationSwitch;
+import org.spincast.realworld.utils.TestBase;
+
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.util.Modules;
+
+/**
+ * Validates the plans of the repositories queries on a
+ * database filled with a realistic volume of data, so
+ * a missing index or a query that can't use one makes
+ * the build fail.
+ * <p>
+ * The statements are captured while the repositories
+ * run, so the plans validated are the ones of the actual
+ * queries, with their actual parameters.
+ */
+public class QueryPlansTest extends TestBase {
+
+    protected static final int USERS_NBR = 10000;
+    protected static final int ARTICLES_NBR = 100000;
+    protected static final int TAGS_NBR = 200;
+
+    /**
+     * Tables on which a sequential scan is a regression.
+     */
+    protected static final Set<String> LARGE_TABLES =
+            Sets.newHashSet("users", "articles", "tags", "favorites", "followings", "comments", "timelines");
+
+    @Inject
+    protected AppConfig appConfig;
+
+    @Inject
+    protected SqlTemplateRegistry sqlTemplateRegistry;
+
+    @Inject
+    protected ArticleRepository articleRepository;
+
+    @Inject
+    protected UserRepository userRepository;
+
+    private long firstUserId;
+    private long middleArticleId;
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigHydrationSwitch.class;
+    }
+
+    @Override
+    protected Module getExtraOverridingModule() {
+        return Modules.override(super.getExtraOverridingModule()).with(new SpincastGuiceModuleBase() {
+
+            @Override
+            protected void configure() {
+                bind(SqlTemplateRegistry.class).to(PlanCapturingSqlTemplateRegistry.class).in(Scopes.SINGLETON);
+            }
+        });
+    }
+
+    @Override
+    public void beforeClass() {
+        super.beforeClass();
+        seedDatabase();
+    }
+
+    protected void seedDatabase() {
+
+        execute("INSERT INTO users(username, email, hashed_password, password_salt) " +
+                "SELECT 'seed-user-' || g, 'seed-user-' || g || '@example.com', 'x', 'x' " +
+                "FROM generate_series(1, " + USERS_NBR + ") g ");
+
+        this.firstUserId = selectLong("SELECT MIN(id) FROM users WHERE username LIKE 'seed-user-%'");
+
+        execute("INSERT INTO articles(slug, author_id, title, description, body, creation_date, modification_date) " +
+                "SELECT 'seed-article-' || g, " + this.firstUserId + " + (g % " + USERS_NBR + "), " +
+                "       'Title ' || g, 'Description ' || g, 'Body ' || g, " +
+                "       clock_timestamp() - g * INTERVAL '1 minute', clock_timestamp() - g * INTERVAL '1 minute' " +
+                "FROM generate_series(1, " + ARTICLES_NBR + ") g ");
+
+        long firstArticleId = selectLong("SELECT MIN(id) FROM articles WHERE slug LIKE 'seed-article-%'");
+
+        //==========================================
+        // Two tags per article
+        //==========================================
+        execute("INSERT INTO tags(tag, article_id) " +
+                "SELECT 'tag' || (g % " + TAGS_NBR + "), " + firstArticleId + " + g " +
+                "FROM generate_series(0, " + (ARTICLES_NBR - 1) + ") g " +
+                "UNION ALL " +
+                "SELECT 'tag' || ((g + 1) % " + TAGS_NBR + "), " + firstArticleId + " + g " +
+                "FROM generate_series(0, " + (ARTICLES_NBR - 1) + ") g ");
+
+        //==========================================
+        // "7" is coprime with the number of articles so
+        // each (user, article) pair is unique.
+        //==========================================
+        execute("INSERT INTO favorites(user_id, article_id) " +
+                "SELECT " + this.firstUserId + " + (g % " + USERS_NBR + "), " +
+                "       " + firstArticleId + " + ((g * 7) % " + ARTICLES_NBR + ") " +
+                "FROM generate_series(0, " + (ARTICLES_NBR - 1) + ") g ");
+
+        execute("INSERT INTO followings(source_user_id, target_user_id) " +
+                "SELECT " + this.firstUserId + " + (g % " + USERS_NBR + "), " +
+                "       " + this.firstUserId + " + ((g * 13 + 1) % " + USERS_NBR + ") " +
+                "FROM generate_series(0, " + (USERS_NBR * 5 - 1) + ") g " +
+                "ON CONFLICT (source_user_id, target_user_id) DO NOTHING ");
+
+        execute("INSERT INTO comments(author_id, article_id, body, creation_date) " +
+                "SELECT " + this.firstUserId + " + (g % " + USERS_NBR + "), " +
+                "       " + firstArticleId + " + (g % " + ARTICLES_NBR + "), " +
+                "       'Comment ' || g, clock_timestamp() - g * INTERVAL '1 second' " +
+                "FROM generate_series(0, " + (ARTICLES_NBR - 1) + ") g ");
+
+        //==========================================
+        // The timelines, as the fan-out would have
+        // filled them, except for one "pull" author.
+        //==========================================
+        execute("INSERT INTO timeline_pull_authors(author_id) " +
+                "VALUES (" + (this.firstUserId + 1) + ") ");
+
+        execute("INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                "SELECT followings.source_user_id, articles.id, articles.author_id, articles.creation_date " +
+                "FROM followings " +
+                "INNER JOIN articles " +
+                "ON articles.author_id = followings.target_user_id " +
+                "WHERE articles.author_id <> " + (this.firstUserId + 1) + " ");
+
+        execute("ANALYZE");
+
+        this.middleArticleId = firstArticleId + ARTICLES_NBR / 2;
+    }
+
+    @Test
+    public void listings() {
+        for (boolean singleQueryHydration : new boolean[]{true, false}) {
+            setSingleQueryHydration(singleQueryHydration);
+            try {
+                List<CapturedStatement> statements =
+                        capture(() -> this.articleRepository.findArticles(getSeedUser(), null, null, null, null, 20, 20));
+                assertSorted(find(statements, "as articleId"));
+
+                statements = capture(() -> this.articleRepository.findArticles(getSeedUser(),
+                                                                               null,
+                                                                               null,
+                                                                               null,
+                                                                               getMiddleCursor(),
+                                                                               0,
+                                                                               20));
+                assertSorted(find(statements, "as articleId"));
+
+                statements = capture(() -> this.articleRepository.findArticles(null, null, "seed-user-42", null, null, 0, 20));
+                assertSorted(find(statements, "as articleId"));
+
+                capture(() -> this.articleRepository.findArticles(null, "tag42", null, null, null, 0, 20));
+                capture(() -> this.articleRepository.findArticles(null, null, null, "seed-user-42", null, 0, 20));
+            } finally {
+                setSingleQueryHydration(true);
+            }
+        }
+    }
+
+    @Test
+    public void feed() {
+        capture(() -> this.articleRepository.getFeed(getSeedUser(), null, 0, 20));
+        capture(() -> this.articleRepository.getFeed(getSeedUser(), getMiddleCursor(), 0, 20));
+    }
+
+    @Test
+    public void article() {
+        capture(() -> this.articleRepository.getArticle("seed-article-42", getSeedUser()));
+        capture(() -> this.articleRepository.getArticleVersion("seed-article-42", getSeedUser()));
+        capture(() -> this.articleRepository.getTags("seed-article-42"));
+        capture(() -> this.articleRepository.getFavoritesCount("seed-article-42"));
+        capture(() -> this.articleRepository.isFavorited("seed-article-42", getSeedUser().getId()));
+    }
+
+    @Test
+    public void comments() {
+        List<CapturedStatement> statements = capture(() -> this.articleRepository.getComments(this.middleArticleId, getSeedUser()));
+        assertSorted(find(statements, "FROM comments"));
+
+        capture(() -> this.articleRepository.getCommentsVersion("seed-article-42", getSeedUser()));
+    }
+
+    @Test
+    public void tags() {
+        capture(() -> this.articleRepository.getTags());
+    }
+
+    @Test
+    public void users() {
+        capture(() -> this.userRepository.getUserById(this.firstUserId + 42));
+        capture(() -> this.userRepository.getUserByEmail("seed-user-42@example.com"));
+        capture(() -> this.userRepository.getUserByUsername("seed-user-42"));
+        capture(() -> this.userRepository.getUsers(Sets.newHashSet(this.firstUserId + 42, this.firstUserId + 43)));
+        capture(() -> this.userRepository.isEmailTaken("seed-user-42@example.com"));
+        capture(() -> this.userRepository.isUsernameTaken("seed-user-42"));
+        capture(() -> this.userRepository.getProfilesByUserIds(Sets.newHashSet(this.firstUserId + 42, this.firstUserId + 43),
+                                                               getSeedUser()));
+        capture(() -> this.userRepository.getProfileVersion("seed-user-43", getSeedUser()));
+    }
+
+    @Test
+    public void followings() {
+        long userId = this.firstUserId + 42;
+        capture(() -> this.userRepository.isFollowingById(userId, this.firstUserId + 43));
+        capture(() -> this.userRepository.isFollowingByUsername(userId, "seed-user-43"));
+        capture(() -> this.userRepository.getFollowingsByUsers(userId,
+                                                               Sets.newHashSet(this.firstUserId + 43, this.firstUserId + 44)));
+
+        //==========================================
+        // With the timeline backfill and prune.
+        //==========================================
+        capture(() -> this.userRepository.follow(userId, this.firstUserId + 7));
+        capture(() -> this.userRepository.unfollow(userId, this.firstUserId + 7));
+    }
+
+    @Test
+    public void favorites() {
+        long articleId = this.middleArticleId + 3;
+        capture(() -> this.articleRepository.favoriteArticle(articleId, getSeedUser()));
+        capture(() -> this.articleRepository.unfavoriteArticle(articleId, getSeedUser()));
+    }
+
+    //==========================================
+    // Helpers
+    //==========================================
+
+    protected void setSingleQueryHydration(boolean singleQueryHydration) {
+        ((AppTestingConfigHydrationSwitch)this.appConfig).setDbSingleQueryHydration(singleQueryHydration);
+    }
+
+    protected User getSeedUser() {
+        return this.userRepository.getUserById(this.firstUserId + 42);
+    }
+
+    protected ArticleCursor getMiddleCursor() {
+        Article article = this.articleRepository.getArticle("seed-article-" + (ARTICLES_NBR / 2), null);
+        return ArticleCursor.of(article);
+    }
+
+    /**
+     * Runs the scenario and validates the plans of all the
+     * statements the repositories ran.
+     *
+     * @return the captured statements, in order.
+     */
+    protected List<CapturedStatement> capture(Runnable scenario) {
+        List<CapturedStatement> statements = getPlanCapturingRegistry().capture(scenario);
+        assertFalse("No statement captured", statements.isEmpty());
+
+        for (CapturedStatement statement : statements) {
+            assertIndexed(statement);
+        }
+        return statements;
+    }
+
+    protected PlanCapturingSqlTemplateRegistry getPlanCapturingRegistry() {
+        return (PlanCapturingSqlTemplateRegistry)this.sqlTemplateRegistry;
+    }
+
+    protected CapturedStatement find(List<CapturedStatement> statements, String sqlFragment) {
+        for (CapturedStatement statement : statements) {
+            if (statement.getNamedSql().contains(sqlFragment)) {
+                return statement;
+            }
+        }
+        throw new AssertionError("No statement containing \"" + sqlFragment + "\" in : " + statements);
+    }
+
+    protected JsonObject getPlan(CapturedStatement statement) {
+        return getSpincastJsonManager().fromStringArray(statement.getPlan()).getJsonObject(0).getJsonObject("Plan");
+    }
+
+    /**
+     * No sequential scan on a large table.
+     */
+    protected void assertIndexed(CapturedStatement statement) {
+        JsonObject plan = getPlan(statement);
+
+        List<JsonObject> nodes = new ArrayList<>();
+        collectNodes(plan, nodes);
+        for (JsonObject node : nodes) {
+            if ("Seq Scan".equals(node.getString("Node Type"))) {
+                String relation = node.getString("Relation Name");
+                assertFalse("Seq Scan on \"" + relation + "\" for :\n" + statement.getNamedSql() + "\n" + plan.toJsonString(true),
+                            LARGE_TABLES.contains(relation));
+            }
+        }
+    }
+
+    /**
+     * The rows come in order from an index : there is no
+     * "Sort" at the top of the plan.
+     */
+    protected void assertSorted(CapturedStatement statement) {
+        JsonObject plan = getPlan(statement);
+        JsonObject topNode = plan;
+        while ("Limit".equals(topNode.getString("Node Type"))) {
+            topNode = topNode.getJsonArrayOrEmpty("Plans").getJsonObject(0);
+        }
+        String nodeType = topNode.getString("Node Type");
+        assertFalse("Top-level Sort for :\n" + statement.getNamedSql() + "\n" + plan.toJsonString(true),
+                    "Sort".equals(nodeType) || "Incremental Sort".equals(nodeType));
+    }
+
+    protected void collectNodes(JsonObject node, List<JsonObject> nodes) {
+        nodes.add(node);
+        JsonArray children = node.getJsonArrayOrEmpty("Plans");
+        for (int i = 0; i < children.size(); i++) {
+            collectNodes(children.getJsonObject(i), nodes);
+        }
+    }
+
+    protected void execute(String sql) {
+        getJdbcUtils().scopes().autoCommit(getTestDataSource(), new JdbcQueries<Void>() {
+
+            @Override
+            public Void run(Connection connection) {
+                UpdateStatement stm = getJdbcUtils().statements().createUpdateStatement(connection);
+                stm.sql(sql);
+                stm.update();
+                return null;
+            }
+        });
+    }
+
+    protected long selectLong(String sql) {
+        return getJdbcUtils().scopes().autoCommit(getTestDataSource(), new JdbcQueries<Long>() {
+
+            @Override
+            public Long run(Connection connection) {
+                SelectStatement stm = getJdbcUtils().statements().createSelectStatement(connection);
+                stm.sql(sql);
+                return stm.selectOne(new ResultSetHandler<Long>() {
+
+                    @Override
+                    public Long handle(SpincastResultSet rs) throws Exception {
+                        return rs.getLong(1);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * A statement run by a repository, and its plan.
+     */
+    protected static class CapturedStatement {
+
+        private final String namedSql;
+        private final String plan;
+
+        public CapturedStatement(String namedSql, String plan) {
+            this.namedSql = namedSql;
+            this.plan = plan;
+        }
+
+        public String getNamedSql() {
+            return this.namedSql;
+        }
+
+        public String getPlan() {
+            return this.plan;
+        }
+
+        @Override
+        public String toString() {
+            return getNamedSql();
+        }
+    }
+
+    /**
+     * Explains the statements run by the repositories, on
+     * their own connection, while a scenario is captured.
+     */
+    protected static class PlanCapturingSqlTemplateRegistry extends SqlTemplateRegistry {
+
+        private volatile List<CapturedStatement> captured = null;
+
+        @Override
+        public void beforeExecute(TemplateStatement statement) {
+            List<CapturedStatement> captured = this.captured;
+            if (captured != null) {
+                captured.add(new CapturedStatement(statement.getNamedSql(), statement.explain()));
+            }
+        }
+
+        public synchronized List<CapturedStatement> capture(Runnable scenario) {
+            this.captured = Collections.synchronizedList(new ArrayList<>());
+            try {
+                scenario.run();
+                return new ArrayList<>(this.captured);
+            } finally {
+                this.captured = null;
+            }
+        }
+    }
+}
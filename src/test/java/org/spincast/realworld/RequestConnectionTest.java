@@ -0,0 +1,107 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class RequestConnectionTest extends TestBase {
+
+    @Inject
+    protected RequestConnectionManager requestConnectionManager;
+
+    String jwt = null;
+
+    /**
+     * The backend process id of the connection and the
+     * number of users it sees.
+     */
+    protected long[] getPidAndUsersNbr(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+                Statement stm = connection.createStatement();
+                ResultSet rs = stm.executeQuery("SELECT pg_backend_pid(), (SELECT COUNT(*) FROM users)")) {
+            assertTrue(rs.next());
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        } catch (Exception ex) {
+            throw SpincastStatics.runtimize(ex);
+        }
+    }
+
+    @Test
+    public void t01_init() {
+        this.jwt = registerUser("snapshot1");
+        createArticle(this.jwt, "Snapshot article", "snapshot");
+    }
+
+    @Test
+    public void t02_readOnlySnapshot() {
+
+        DataSource dataSource = this.requestConnectionManager.wrap(getTestDataSource());
+
+        long[] before;
+        long[] during;
+
+        this.requestConnectionManager.begin(true);
+        try {
+            assertTrue(this.requestConnectionManager.isBound());
+            before = getPidAndUsersNbr(dataSource);
+
+            //==========================================
+            // Committed by another connection while the
+            // "request" runs.
+            //==========================================
+            registerUser("snapshot2");
+
+            during = getPidAndUsersNbr(dataSource);
+        } finally {
+            this.requestConnectionManager.end(true);
+        }
+        assertFalse(this.requestConnectionManager.isBound());
+
+        assertEquals(before[0], during[0]);
+        assertEquals(before[1], during[1]);
+
+        long[] after = getPidAndUsersNbr(dataSource);
+        assertEquals(before[1] + 1, after[1]);
+    }
+
+    @Test
+    public void t03_oneConnectionPerGetRequest() {
+
+        long acquiredBefore = this.requestConnectionManager.getAcquiredConnectionsNbr();
+
+        HttpResponse response = GET("/api/articles").send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(acquiredBefore + 1, this.requestConnectionManager.getAcquiredConnectionsNbr());
+
+        response = GET("/api/articles/snapshot-article").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(acquiredBefore + 2, this.requestConnectionManager.getAcquiredConnectionsNbr());
+
+        response = GET("/api/articles/feed").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(acquiredBefore + 3, this.requestConnectionManager.getAcquiredConnectionsNbr());
+    }
+}
@@ -0,0 +1,209 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spincast.realworld.db.ReplicaRouting;
+import org.spincast.realworld.db.RoutingDataSource;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The routing doesn't need the application to be
+ * started : the primary and the replicas are simulated
+ * by DataSources recording which one provided each
+ * connection.
+ */
+public class RoutingDataSourceTest {
+
+    protected static final long READ_YOUR_WRITES_MILLIS = 300;
+    protected static final long UNHEALTHY_MILLIS = 300;
+
+    private List<String> usedDataSources;
+    private ReplicaRouting replicaRouting;
+    private RoutingDataSource routingDataSource;
+    private boolean replica1Down;
+    private boolean replica2Down;
+    private int replica2Attempts;
+
+    @Before
+    public void before() {
+        this.usedDataSources = new ArrayList<>();
+        this.replica1Down = false;
+        this.replica2Down = false;
+        this.replica2Attempts = 0;
+        this.replicaRouting = new ReplicaRouting(READ_YOUR_WRITES_MILLIS);
+        this.routingDataSource = new RoutingDataSource(createDataSource("primary"),
+                                                       Lists.newArrayList(createDataSource("replica1"),
+                                                                          createDataSource("replica2")),
+                                                       true,
+                                                       this.replicaRouting,
+                                                       UNHEALTHY_MILLIS);
+    }
+
+    @After
+    public void after() {
+        this.replicaRouting.end();
+    }
+
+    @Test
+    public void noRequestUsesPrimary() throws Exception {
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("primary"), this.usedDataSources);
+    }
+
+    @Test
+    public void writeRequestUsesPrimary() throws Exception {
+        this.replicaRouting.begin(false, "user1");
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("primary"), this.usedDataSources);
+        assertFalse(this.replicaRouting.isReplicaRead());
+    }
+
+    @Test
+    public void readRequestsUseReplicasInTurn() throws Exception {
+        this.replicaRouting.begin(true, null);
+        assertFalse(this.replicaRouting.isReplicaRead());
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("replica1", "replica2", "replica1"), this.usedDataSources);
+        assertTrue(this.replicaRouting.isReplicaRead());
+
+        this.replicaRouting.end();
+        assertFalse(this.replicaRouting.isReplicaRead());
+    }
+
+    @Test
+    public void readPoolIsNotLagging() throws Exception {
+        RoutingDataSource readPoolRouting = new RoutingDataSource(createDataSource("primary"),
+                                                                  Lists.newArrayList(createDataSource("read")),
+                                                                  false,
+                                                                  this.replicaRouting,
+                                                                  UNHEALTHY_MILLIS);
+        this.replicaRouting.begin(true, null);
+        readPoolRouting.getConnection();
+        assertEquals(Lists.newArrayList("read"), this.usedDataSources);
+        assertFalse(this.replicaRouting.isReplicaRead());
+    }
+
+    @Test
+    public void readYourWrites() throws Exception {
+        this.replicaRouting.recordWrite("user1");
+        assertTrue(this.replicaRouting.hasWrittenRecently("user1"));
+
+        this.replicaRouting.begin(true, "user1");
+        this.routingDataSource.getConnection();
+        this.replicaRouting.end();
+
+        //==========================================
+        // Other users are not affected
+        //==========================================
+        this.replicaRouting.begin(true, "user2");
+        this.routingDataSource.getConnection();
+        this.replicaRouting.end();
+
+        assertEquals(Lists.newArrayList("primary", "replica1"), this.usedDataSources);
+
+        //==========================================
+        // Once the window is expired, the replicas
+        // are used again.
+        //==========================================
+        Thread.sleep(READ_YOUR_WRITES_MILLIS + 100);
+        assertFalse(this.replicaRouting.hasWrittenRecently("user1"));
+
+        this.replicaRouting.begin(true, "user1");
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("primary", "replica1", "replica2"), this.usedDataSources);
+    }
+
+    @Test
+    public void replicaDownFallsBackToPrimary() throws Exception {
+        this.replica2Down = true;
+        this.replicaRouting.begin(true, null);
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("replica1", "primary"), this.usedDataSources);
+        assertEquals(1, this.replica2Attempts);
+    }
+
+    @Test
+    public void replicaDownIsSkipped() throws Exception {
+        this.replica2Down = true;
+        this.replicaRouting.begin(true, null);
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+
+        //==========================================
+        // The unhealthy replica is not tried again
+        // during the back-off period.
+        //==========================================
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("replica1", "primary", "replica1", "replica1", "replica1"), this.usedDataSources);
+        assertEquals(1, this.replica2Attempts);
+
+        //==========================================
+        // Tried again once the period is expired.
+        //==========================================
+        Thread.sleep(UNHEALTHY_MILLIS + 100);
+        this.replica2Down = false;
+        this.usedDataSources.clear();
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        assertTrue(this.usedDataSources.contains("replica2"));
+        assertEquals(2, this.replica2Attempts);
+    }
+
+    @Test
+    public void allReplicasDownUsePrimary() throws Exception {
+        this.replica1Down = true;
+        this.replica2Down = true;
+        this.replicaRouting.begin(true, null);
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        this.routingDataSource.getConnection();
+        assertEquals(Lists.newArrayList("primary", "primary", "primary"), this.usedDataSources);
+        assertEquals(1, this.replica2Attempts);
+    }
+
+    protected DataSource createDataSource(String name) {
+        return (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                  new Class<?>[]{DataSource.class},
+                                                  (proxy, method, args) -> {
+                                                      if (!"getConnection".equals(method.getName())) {
+                                                          throw new UnsupportedOperationException(method.getName());
+                                                      }
+                                                      if ("replica1".equals(name) && this.replica1Down) {
+                                                          throw new SQLException("replica1 is down");
+                                                      }
+                                                      if ("replica2".equals(name)) {
+                                                          this.replica2Attempts++;
+                                                          if (this.replica2Down) {
+                                                              throw new SQLException("replica2 is down");
+                                                          }
+                                                      }
+                                                      this.usedDataSources.add(name);
+                                                      return createConnection();
+                                                  });
+    }
+
+    protected Connection createConnection() {
+        return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+                                                  new Class<?>[]{Connection.class},
+                                                  (proxy, method, args) -> null);
+    }
+}
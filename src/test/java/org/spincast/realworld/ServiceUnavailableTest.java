@@ -0,0 +1,70 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.spincast.core.guice.SpincastGuiceModuleBase;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.crypto.SpincastCryptoUtils;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.exceptions.ServiceUnavailableException;
+import org.spincast.realworld.metrics.MetricsRegistry;
+import org.spincast.realworld.services.PasswordHasher;
+import org.spincast.realworld.utils.ExecutorFactory;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.util.Modules;
+
+public class ServiceUnavailableTest extends TestBase {
+
+    @Override
+    protected Module getExtraOverridingModule() {
+        return Modules.override(super.getExtraOverridingModule()).with(new SpincastGuiceModuleBase() {
+
+            @Override
+            protected void configure() {
+                bind(PasswordHasher.class).to(RejectingPasswordHasher.class).in(Scopes.SINGLETON);
+            }
+        });
+    }
+
+    @Test
+    public void retryAfter() {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", "busy@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", "busy");
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        assertEquals(String.valueOf(ServiceUnavailableException.DEFAULT_RETRY_AFTER_SECONDS),
+                     response.getHeaderFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    /**
+     * Behaves as if too many passwords were waiting to be
+     * hashed.
+     */
+    protected static class RejectingPasswordHasher extends PasswordHasher {
+
+        @Inject
+        public RejectingPasswordHasher(AppConfig appConfig,
+                                       SpincastCryptoUtils spincastCryptoUtils,
+                                       ExecutorFactory executorFactory,
+                                       MetricsRegistry metricsRegistry) {
+            super(appConfig, spincastCryptoUtils, executorFactory, metricsRegistry);
+        }
+
+        @Override
+        public String hash(String rawPassword, String salt) {
+            throw new ServiceUnavailableException();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.spincast.plugins.jdbc.JdbcQueries;
+import org.spincast.plugins.jdbc.SpincastResultSet;
+import org.spincast.plugins.jdbc.statements.ResultSetHandler;
+import org.spincast.realworld.db.SqlTemplateRegistry;
+import org.spincast.realworld.db.TemplateStatement;
+import org.spincast.realworld.utils.TestBase;
+
+public class TemplateStatementTest extends TestBase {
+
+    protected <T> T select(String sql, ResultSetHandler<T> handler) {
+        return getJdbcUtils().scopes().autoCommit(getTestDataSource(), new JdbcQueries<T>() {
+
+            @Override
+            public T run(Connection connection) {
+                TemplateStatement stm = new TemplateStatement(connection, new SqlTemplateRegistry());
+                stm.sql(sql);
+                return stm.selectOne(handler);
+            }
+        });
+    }
+
+    @Test
+    public void resultSetHelpers() {
+
+        Boolean ok = select("SELECT NULL::bigint AS nullLong, 5::bigint AS someLong, " +
+                            "       NULL::int AS nullInt, 3 AS someInt, " +
+                            "       NULL::boolean AS nullBool, true AS someBool, " +
+                            "       NULL::timestamptz AS nullDate, now() AS someDate, " +
+                            "       'text' AS someString ",
+                            new ResultSetHandler<Boolean>() {
+
+                                @Override
+                                public Boolean handle(SpincastResultSet rs) throws Exception {
+
+                                    assertNull(rs.getLongOrNull("nullLong"));
+                                    assertEquals(0, rs.getLongOrZero("nullLong"));
+                                    assertEquals(Long.valueOf(5), rs.getLongOrNull("someLong"));
+                                    assertEquals(5, rs.getLongOrZero("someLong"));
+
+                                    assertNull(rs.getIntegerOrNull("nullInt"));
+                                    assertEquals(0, rs.getIntegerOrZero("nullInt"));
+                                    assertEquals(Integer.valueOf(3), rs.getIntegerOrNull("someInt"));
+
+                                    assertNull(rs.getBooleanOrNull("nullBool"));
+                                    assertFalse(rs.getBooleanOrFalse("nullBool"));
+                                    assertTrue(rs.getBooleanOrFalse("someBool"));
+
+                                    assertNull(rs.getInstant("nullDate"));
+                                    Instant date = rs.getInstant("someDate");
+                                    assertNotNull(date);
+
+                                    //==========================================
+                                    // Plain ResultSet methods are delegated.
+                                    //==========================================
+                                    assertEquals("text", rs.getString("someString"));
+                                    assertEquals("text", rs.getString(9));
+                                    assertEquals(9, rs.getMetaData().getColumnCount());
+                                    return true;
+                                }
+                            });
+        assertTrue(ok);
+    }
+
+    @Test
+    public void arrayParameter() {
+        List<Long> ids = Arrays.asList(3L, 1L, 2L);
+        Long sum = getJdbcUtils().scopes().autoCommit(getTestDataSource(), new JdbcQueries<Long>() {
+
+            @Override
+            public Long run(Connection connection) {
+                TemplateStatement stm = new TemplateStatement(connection, new SqlTemplateRegistry());
+                stm.sql("SELECT SUM(id) AS total FROM UNNEST(:ids) AS id ");
+                stm.setLongArray("ids", ids);
+                return stm.selectOne(new ResultSetHandler<Long>() {
+
+                    @Override
+                    public Long handle(SpincastResultSet rs) throws Exception {
+                        return rs.getLongOrNull("total");
+                    }
+                });
+            }
+        });
+        assertEquals(Long.valueOf(6), sum);
+    }
+}
@@ -0,0 +1,185 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.json.JsonArray;
+import org.spincast.core.json.JsonObject;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.repositories.ArticleCountCache;
+import org.spincast.realworld.utils.AppTestingConfig;
+import org.spincast.realworld.utils.AppTestingConfigTimelinePull;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
+/**
+ * The feed, as maintained by the timelines.
+ * <p>
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TimelineTest extends TestBase {
+
+    /**
+     * Maximum time to wait for an asynchronous fan-out.
+     */
+    protected static final long FAN_OUT_WAIT_MS = 10000;
+
+    @Inject
+    protected ArticleCountCache articleCountCache;
+
+    String reader1Jwt = null;
+    String reader2Jwt = null;
+    String authorJwt = null;
+    String popularJwt = null;
+
+    @Override
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfigTimelinePull.class;
+    }
+
+    protected void follow(String jwt, String username, boolean follow) {
+        String url = "/api/profiles/" + username + "/follow";
+        HttpResponse response;
+        if (follow) {
+            response = POST(url).addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + jwt).send();
+        } else {
+            response = DELETE(url).addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + jwt).send();
+        }
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+    }
+
+    protected JsonObject getFeed(String jwt) {
+        HttpResponse response = GET("/api/articles/feed").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + jwt).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        return response.getContentAsJsonObject();
+    }
+
+    protected List<String> getSlugs(JsonObject feed) {
+        List<String> slugs = new ArrayList<>();
+        JsonArray articles = feed.getJsonArrayOrEmpty("articles");
+        for (int i = 0; i < articles.size(); i++) {
+            slugs.add(articles.getJsonObject(i).getString("slug"));
+        }
+        return slugs;
+    }
+
+    /**
+     * Waits for the feed to match, the fan-out being
+     * asynchronous.
+     */
+    protected JsonObject waitForFeed(String jwt, Predicate<List<String>> predicate) {
+        long end = System.currentTimeMillis() + FAN_OUT_WAIT_MS;
+        while (true) {
+            JsonObject feed = getFeed(jwt);
+            if (predicate.test(getSlugs(feed)) || System.currentTimeMillis() > end) {
+                return feed;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                throw SpincastStatics.runtimize(ex);
+            }
+        }
+    }
+
+    protected void assertFeed(JsonObject feed, String... expectedSlugs) {
+        assertEquals(Arrays.asList(expectedSlugs), getSlugs(feed));
+        assertEquals(expectedSlugs.length, feed.getInteger("articlesCount").intValue());
+    }
+
+    @Test
+    public void t01_init() {
+        this.reader1Jwt = registerUser("timelinereader1");
+        this.reader2Jwt = registerUser("timelinereader2");
+        this.authorJwt = registerUser("timelineauthor");
+        this.popularJwt = registerUser("timelinepopular");
+    }
+
+    @Test
+    public void t02_followPostUnfollow() {
+
+        assertFeed(getFeed(this.reader1Jwt));
+
+        follow(this.reader1Jwt, "timelineauthor", true);
+        String slug1 = createArticle(this.authorJwt, "Timeline 1").getString("slug");
+
+        JsonObject feed = waitForFeed(this.reader1Jwt, slugs -> slugs.contains(slug1));
+        assertFeed(feed, slug1);
+
+        //==========================================
+        // Once unfollowed, the article is removed and
+        // the new ones are not added.
+        //==========================================
+        follow(this.reader1Jwt, "timelineauthor", false);
+        assertFeed(getFeed(this.reader1Jwt));
+
+        follow(this.reader2Jwt, "timelineauthor", true);
+        String slug2 = createArticle(this.authorJwt, "Timeline 2").getString("slug");
+
+        feed = waitForFeed(this.reader2Jwt, slugs -> slugs.contains(slug2));
+        assertFeed(feed, slug2, slug1);
+        assertFeed(getFeed(this.reader1Jwt));
+
+        //==========================================
+        // Following again backfills the timeline.
+        //==========================================
+        follow(this.reader1Jwt, "timelineauthor", true);
+        assertFeed(getFeed(this.reader1Jwt), slug2, slug1);
+
+        follow(this.reader1Jwt, "timelineauthor", false);
+        follow(this.reader2Jwt, "timelineauthor", false);
+    }
+
+    @Test
+    public void t03_pullAuthor() {
+
+        //==========================================
+        // The second follower switches the author to
+        // the "pull" mode.
+        //==========================================
+        follow(this.reader1Jwt, "timelinepopular", true);
+        follow(this.reader2Jwt, "timelinepopular", true);
+
+        String slug = createArticle(this.popularJwt, "Popular 1").getString("slug");
+        assertFeed(getFeed(this.reader1Jwt), slug);
+
+        //==========================================
+        // A row copied by a fan-out that ran while the
+        // author switched to the "pull" mode : not
+        // counted twice.
+        //==========================================
+        try (Connection connection = getTestDataSource().getConnection();
+                PreparedStatement stm = connection.prepareStatement("INSERT INTO timelines(user_id, article_id, author_id, creation_date) " +
+                                                                    "SELECT users.id, articles.id, articles.author_id, articles.creation_date " +
+                                                                    "FROM users, articles " +
+                                                                    "WHERE users.username = 'timelinereader1' " +
+                                                                    "AND articles.slug = ? ")) {
+            stm.setString(1, slug);
+            assertEquals(1, stm.executeUpdate());
+        } catch (Exception ex) {
+            throw SpincastStatics.runtimize(ex);
+        }
+        this.articleCountCache.invalidateFeeds();
+
+        assertFeed(getFeed(this.reader1Jwt), slug);
+
+        follow(this.reader1Jwt, "timelinepopular", false);
+        assertEquals(Collections.emptyList(), getSlugs(getFeed(this.reader1Jwt)));
+    }
+}
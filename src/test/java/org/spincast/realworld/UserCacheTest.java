@@ -0,0 +1,137 @@
+package org.spincast.realworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.spincast.core.json.JsonObject;
+import org.spincast.core.utils.SpincastStatics;
+import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.db.RequestConnectionManager;
+import org.spincast.realworld.models.users.User;
+import org.spincast.realworld.services.UserCache;
+import org.spincast.realworld.utils.TestBase;
+import org.spincast.shaded.org.apache.http.HttpStatus;
+
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
+/**
+ * Tests in this file are meant to all be ran together
+ * and in order since they may depend on each other!
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class UserCacheTest extends TestBase {
+
+    @Inject
+    protected UserCache userCache;
+
+    @Inject
+    protected RequestConnectionManager requestConnectionManager;
+
+    String jwt = null;
+
+    @Test
+    public void t01_register() {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", "cached@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", "cached");
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        this.jwt = response.getContentAsJsonObject().getString("user.token");
+        assertNotNull(this.jwt);
+    }
+
+    @Test
+    public void t02_currentUserCached() {
+
+        long hitsBefore = this.userCache.getHitsNbr();
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse response = GET("/api/user").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt).send();
+            assertEquals(HttpStatus.SC_OK, response.getStatus());
+            assertEquals("cached", response.getContentAsJsonObject().getString("user.username"));
+        }
+
+        assertEquals(hitsBefore + 2, this.userCache.getHitsNbr());
+    }
+
+    @Test
+    public void t03_updateInvalidates() {
+
+        User user = getUserService().getCachedUserByUsername("cached");
+        assertNotNull(user);
+
+        JsonObject userToUpdate = getSpincastJsonManager().create();
+        userToUpdate.set("user.username", "cached2");
+        userToUpdate.set("user.bio", "New bio");
+        HttpResponse response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                                .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt)
+                                                .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        assertNull(getUserService().getCachedUserByUsername("cached"));
+
+        User updated = getUserService().getCachedUserByUsername("cached2");
+        assertNotNull(updated);
+        assertEquals("New bio", updated.getBio());
+
+        updated = getUserService().getCachedUserById(user.getId());
+        assertEquals("cached2", updated.getUsername());
+    }
+
+    @Test
+    public void t04_olderSnapshotNotCached() {
+
+        User user = getUserService().getUserByUsername("cached2");
+        assertNotNull(user);
+        this.userCache.invalidate(user);
+
+        DataSource dataSource = this.requestConnectionManager.wrap(getTestDataSource());
+        this.requestConnectionManager.begin(true);
+        try {
+            //==========================================
+            // The first query takes the snapshot.
+            //==========================================
+            try (Connection connection = dataSource.getConnection();
+                    Statement stm = connection.createStatement();
+                    ResultSet rs = stm.executeQuery("SELECT COUNT(*) FROM users")) {
+                rs.next();
+            } catch (Exception ex) {
+                throw SpincastStatics.runtimize(ex);
+            }
+            assertNotNull(this.requestConnectionManager.getSnapshotStartNanos());
+
+            //==========================================
+            // The user is modified after the snapshot
+            // was taken : the user read from the snapshot
+            // is stale.
+            //==========================================
+            this.userCache.invalidate(user);
+            assertSame(user, this.userCache.getUserById(user.getId(), () -> user));
+        } finally {
+            this.requestConnectionManager.end(true);
+        }
+
+        long missesBefore = this.userCache.getMissesNbr();
+        assertSame(user, this.userCache.getUserById(user.getId(), () -> user));
+        assertEquals(missesBefore + 1, this.userCache.getMissesNbr());
+
+        assertSame(user, this.userCache.getUserById(user.getId(), () -> null));
+        assertEquals(missesBefore + 1, this.userCache.getMissesNbr());
+    }
+}
@@ -4,15 +4,27 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 import org.spincast.core.json.JsonObject;
 import org.spincast.plugins.httpclient.HttpResponse;
+import org.spincast.realworld.configs.AppConfig;
+import org.spincast.realworld.configs.AppConstants;
 import org.spincast.realworld.models.users.User;
 import org.spincast.realworld.utils.TestBase;
 import org.spincast.shaded.org.apache.http.HttpStatus;
 
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.net.HttpHeaders;
+import com.google.inject.Inject;
+
 /**
  * Tests in this file are meant to all be ran together
  * and in order since they may depend on each other!
@@ -20,6 +32,11 @@ import org.spincast.shaded.org.apache.http.HttpStatus;
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
 public class UsersTest extends TestBase {
 
+    @Inject
+    protected AppConfig appConfig;
+
+    String jwt = null;
+
     @Test
     public void t01_register() {
 
@@ -36,11 +53,15 @@ public class UsersTest extends TestBase {
 
         JsonObject createdUser = response.getContentAsJsonObject();
         assertEquals("titi", createdUser.getString("user.username"));
+        this.jwt = createdUser.getString("user.token");
 
         user = getUserService().getUserByUsername("titi");
         assertNotNull(user);
         assertNotNull(user.getId());
         assertEquals("titi", user.getUsername());
+
+        DecodedJWT decodedJwt = JWT.decode(this.jwt);
+        assertEquals(user.getId(), decodedJwt.getClaim(AppConstants.JWT_CLAIMS_USER_ID).asLong());
     }
 
     @Test
@@ -78,4 +99,55 @@ public class UsersTest extends TestBase {
         HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
         assertEquals(HttpStatus.SC_OK, response.getStatus());
     }
+
+    @Test
+    public void t05_renameKeepsToken() {
+
+        JsonObject userToUpdate = getSpincastJsonManager().create();
+        userToUpdate.set("user.username", "titi3");
+
+        HttpResponse response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                                .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt)
+                                                .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals(this.jwt, response.getContentAsJsonObject().getString("user.token"));
+
+        response = GET("/api/user").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + this.jwt).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("titi3", response.getContentAsJsonObject().getString("user.username"));
+    }
+
+    @Test
+    public void t06_usernameOnlyToken() {
+
+        //==========================================
+        // A token created before the id was added
+        //==========================================
+        String oldJwt = JWT.create()
+                           .withClaim(AppConstants.JWT_CLAIMS_USERNAME, "titi3")
+                           .withExpiresAt(Date.from(Instant.now().plus(10, ChronoUnit.MINUTES)))
+                           .sign(Algorithm.HMAC256(this.appConfig.getAuthJwtSecret()));
+
+        HttpResponse response = GET("/api/user").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + oldJwt).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("titi3", response.getContentAsJsonObject().getString("user.username"));
+
+        //==========================================
+        // Renamed : a new token, with the id, is returned.
+        //==========================================
+        JsonObject userToUpdate = getSpincastJsonManager().create();
+        userToUpdate.set("user.username", "titi4");
+
+        response = PUT("/api/user").setJsonStringBody(userToUpdate)
+                                   .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + oldJwt)
+                                   .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        String newJwt = response.getContentAsJsonObject().getString("user.token");
+        assertNotNull(JWT.decode(newJwt).getClaim(AppConstants.JWT_CLAIMS_USER_ID).asLong());
+
+        response = GET("/api/user").addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + newJwt).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        assertEquals("titi4", response.getContentAsJsonObject().getString("user.username"));
+    }
 }
@@ -1,5 +1,8 @@
 package org.spincast.realworld.utils;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.spincast.core.utils.SpincastUtils;
 import org.spincast.plugins.config.SpincastConfigPluginConfig;
 import org.spincast.realworld.configs.AppConfigDefault;
@@ -15,6 +18,8 @@ public class AppTestingConfig extends AppConfigDefault {
     @Inject
     protected SpincastTestingPostgres spincastTestingPostgres;
 
+    private final List<Long> adminUserIds = new CopyOnWriteArrayList<>();
+
     @Inject
     protected AppTestingConfig(SpincastConfigPluginConfig spincastConfigPluginConfig,
                                SpincastUtils spincastUtils) {
@@ -44,4 +49,24 @@ public class AppTestingConfig extends AppConfigDefault {
     public String getDbConnectionString() {
         return getSpincastTestingPostgres().getDbConnectionString();
     }
+
+    /**
+     * No calibration : a low cost keeps the tests fast.
+     */
+    @Override
+    public int getAuthPasswordHashingIterations() {
+        return 1000;
+    }
+
+    /**
+     * Empty until a test adds an administrator.
+     */
+    @Override
+    public List<Long> getAuthAdminUserIds() {
+        return this.adminUserIds;
+    }
+
+    public void addAuthAdminUserId(long userId) {
+        this.adminUserIds.add(userId);
+    }
 }
@@ -0,0 +1,45 @@
+package org.spincast.realworld.utils;
+
+import org.spincast.core.utils.SpincastUtils;
+import org.spincast.plugins.config.SpincastConfigPluginConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Testing configurations where the lookups of concurrent
+ * requests are batched and the articles are hydrated
+ * using separate queries, without connection bound to
+ * the requests.
+ */
+public class AppTestingConfigBatching extends AppTestingConfig {
+
+    @Inject
+    protected AppTestingConfigBatching(SpincastConfigPluginConfig spincastConfigPluginConfig,
+                                       SpincastUtils spincastUtils) {
+        super(spincastConfigPluginConfig, spincastUtils);
+    }
+
+    @Override
+    public boolean isDbSingleQueryHydration() {
+        return false;
+    }
+
+    @Override
+    public boolean isDbRequestScopedConnection() {
+        return false;
+    }
+
+    @Override
+    public boolean isDbBatchingEnabled() {
+        return true;
+    }
+
+    /**
+     * Long enough for the concurrent hydrations to share
+     * their batches.
+     */
+    @Override
+    public long getDbBatchingWindowMillis() {
+        return 20;
+    }
+}
@@ -0,0 +1,31 @@
+package org.spincast.realworld.utils;
+
+import org.spincast.core.utils.SpincastUtils;
+import org.spincast.plugins.config.SpincastConfigPluginConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Testing configurations where the hydration of the
+ * articles can be switched between a single query and
+ * separate queries while the application runs.
+ */
+public class AppTestingConfigHydrationSwitch extends AppTestingConfig {
+
+    private volatile boolean singleQueryHydration = true;
+
+    @Inject
+    protected AppTestingConfigHydrationSwitch(SpincastConfigPluginConfig spincastConfigPluginConfig,
+                                              SpincastUtils spincastUtils) {
+        super(spincastConfigPluginConfig, spincastUtils);
+    }
+
+    @Override
+    public boolean isDbSingleQueryHydration() {
+        return this.singleQueryHydration;
+    }
+
+    public void setDbSingleQueryHydration(boolean singleQueryHydration) {
+        this.singleQueryHydration = singleQueryHydration;
+    }
+}
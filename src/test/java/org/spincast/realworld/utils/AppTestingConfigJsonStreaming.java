@@ -0,0 +1,29 @@
+package org.spincast.realworld.utils;
+
+import org.spincast.core.utils.SpincastUtils;
+import org.spincast.plugins.config.SpincastConfigPluginConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Testing configurations where the listings are streamed,
+ * using the cached article fragments.
+ */
+public class AppTestingConfigJsonStreaming extends AppTestingConfig {
+
+    @Inject
+    protected AppTestingConfigJsonStreaming(SpincastConfigPluginConfig spincastConfigPluginConfig,
+                                            SpincastUtils spincastUtils) {
+        super(spincastConfigPluginConfig, spincastUtils);
+    }
+
+    @Override
+    public boolean isJsonStreamingEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean isJsonFragmentCacheEnabled() {
+        return true;
+    }
+}
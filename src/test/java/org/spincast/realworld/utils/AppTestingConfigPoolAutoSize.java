@@ -0,0 +1,29 @@
+package org.spincast.realworld.utils;
+
+import org.spincast.core.utils.SpincastUtils;
+import org.spincast.plugins.config.SpincastConfigPluginConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Testing configurations where the connection pools
+ * are auto-sized.
+ */
+public class AppTestingConfigPoolAutoSize extends AppTestingConfig {
+
+    @Inject
+    protected AppTestingConfigPoolAutoSize(SpincastConfigPluginConfig spincastConfigPluginConfig,
+                                           SpincastUtils spincastUtils) {
+        super(spincastConfigPluginConfig, spincastUtils);
+    }
+
+    @Override
+    public boolean isDbPoolAutoSize() {
+        return true;
+    }
+
+    @Override
+    public int getDbPoolAutoSizeMax() {
+        return 12;
+    }
+}
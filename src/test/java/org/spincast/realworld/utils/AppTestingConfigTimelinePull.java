@@ -0,0 +1,24 @@
+package org.spincast.realworld.utils;
+
+import org.spincast.core.utils.SpincastUtils;
+import org.spincast.plugins.config.SpincastConfigPluginConfig;
+
+import com.google.inject.Inject;
+
+/**
+ * Testing configurations where an author switches to
+ * the "pull" mode of the timelines with few followers.
+ */
+public class AppTestingConfigTimelinePull extends AppTestingConfig {
+
+    @Inject
+    protected AppTestingConfigTimelinePull(SpincastConfigPluginConfig spincastConfigPluginConfig,
+                                           SpincastUtils spincastUtils) {
+        super(spincastConfigPluginConfig, spincastUtils);
+    }
+
+    @Override
+    public long getDbTimelinePullAuthorMinFollowers() {
+        return 2;
+    }
+}
@@ -1,23 +1,31 @@
 package org.spincast.realworld.utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
 import java.io.File;
 
 import javax.sql.DataSource;
 
 import org.spincast.core.config.SpincastConfig;
 import org.spincast.core.guice.SpincastGuiceModuleBase;
+import org.spincast.core.json.JsonObject;
+import org.spincast.plugins.httpclient.HttpResponse;
 import org.spincast.plugins.jacksonjson.SpincastJsonManager;
 import org.spincast.plugins.jdbc.JdbcUtils;
 import org.spincast.realworld.App;
 import org.spincast.realworld.configs.AppConfig;
 import org.spincast.realworld.services.ArticleService;
 import org.spincast.realworld.services.UserService;
+import org.spincast.shaded.org.apache.http.HttpStatus;
 import org.spincast.testing.core.AppTestingConfigs;
 import org.spincast.testing.core.postgres.PostgresDataDir;
 import org.spincast.testing.core.postgres.SpincastTestingPostgres;
 import org.spincast.testing.core.utils.SpincastConfigTestingDefault;
 import org.spincast.testing.defaults.AppBasedDefaultContextTypesTestingBase;
 
+import com.google.common.collect.Sets;
+import com.google.common.net.HttpHeaders;
 import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.Scopes;
@@ -67,6 +75,47 @@ public abstract class TestBase extends AppBasedDefaultContextTypesTestingBase {
         return this.testDataSource;
     }
 
+    /**
+     * Registers a user, using "12345678" as the password.
+     *
+     * @return the JWT of the user.
+     */
+    protected String registerUser(String username) {
+
+        JsonObject registrationData = getSpincastJsonManager().create();
+        registrationData.set("user.email", username + "@example.com");
+        registrationData.set("user.password", "12345678");
+        registrationData.set("user.username", username);
+
+        HttpResponse response = POST("/api/users").setJsonStringBody(registrationData).send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        String jwt = response.getContentAsJsonObject().getString("user.token");
+        assertNotNull(jwt);
+        return jwt;
+    }
+
+    /**
+     * Creates an article using the API.
+     *
+     * @return the created article.
+     */
+    protected JsonObject createArticle(String jwt, String title, String... tags) {
+
+        JsonObject articleToCreate = getSpincastJsonManager().create();
+        articleToCreate.set("article.title", title);
+        articleToCreate.set("article.description", "Description of " + title);
+        articleToCreate.set("article.body", "Body of " + title);
+        articleToCreate.set("article.tagList", Sets.newHashSet(tags));
+
+        HttpResponse response = POST("/api/articles").setJsonStringBody(articleToCreate)
+                                                     .addHeaderValue(HttpHeaders.AUTHORIZATION, "Token " + jwt)
+                                                     .send();
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+
+        return response.getContentAsJsonObject().getJsonObject("article");
+    }
+
     /**
      * Starts the actual application so we can
      * make real HTTP requests to it.
@@ -131,7 +180,7 @@ public abstract class TestBase extends AppBasedDefaultContextTypesTestingBase {
                 // the app, for example to use a testing
                 // database instance instead of the provided one.
                 //==========================================
-                return AppTestingConfig.class;
+                return getAppTestingConfigClass();
             }
 
             @Override
@@ -141,6 +190,14 @@ public abstract class TestBase extends AppBasedDefaultContextTypesTestingBase {
         };
     }
 
+    /**
+     * The configurations class to use, so a test class can
+     * run the same tests using other configurations.
+     */
+    protected Class<? extends AppTestingConfig> getAppTestingConfigClass() {
+        return AppTestingConfig.class;
+    }
+
     @Override
     public void afterClass() {
         getPg().stopPostgres();